@@ -27,6 +27,7 @@ import org.qcmg.qbamfilter.query.QueryExecutor;
 import org.qcmg.qio.record.RecordWriter;
 
 import au.edu.qimr.indel.Options;
+import htsjdk.samtools.QueryInterval;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMRecordIterator;
 import htsjdk.samtools.SAMSequenceRecord;
@@ -34,7 +35,11 @@ import htsjdk.samtools.SamFiles;
 import htsjdk.samtools.SamReader;
 
 public class IndelMT {
-	public static final int MAXRAMREADS = 1500; //maximum number of total reads in RAM
+	
+	/*
+	 * indels closer than this share a bam query interval, as they would mostly need the same bins of the bam index anyway
+	 */
+	static final int MAX_INTERVAL_GAP = 16 * 1024;
 	
 	class ContigPileup implements Runnable {
 
@@ -46,28 +51,22 @@ public class IndelMT {
 		private File bam;
 		private File index;
 		private QueryExecutor exec;
+		private final long maxPoolBytes;
 		
-		//unit Test only
-		ContigPileup() {
-			this.qIn = null;
-			this.qOut = null;
-			this.mainThread = null;
-			this.pLatch = new CountDownLatch(2); // testing only
-		}
-
 		/**
 		 * 
-		 * @param qIn  store SAM record from input file
-		 * @param qOutGood  store unmatched record based on query
-		 * @param qOutBad  store unmatched record based on query (null is allowed)
-		 * @param query  query string
-		 * @param maxRecords  queue size
+		 * @param contig  the contig to pileup
+		 * @param qIn  the indels on this contig, in start order
+		 * @param bam  the bam to pileup
+		 * @param index  the index of the bam
+		 * @param exec  query to filter reads with (null is allowed)
+		 * @param qOut  store the pileup of each indel
 		 * @param mainThread  parent thread
-		 * @param rLatch  the counter for reading thread
-		 * @param fLatch  the counter for filtering thread (current type)
+		 * @param latch  the counter for pileup threads
+		 * @param maxPoolBytes  memory budget for the reads held by this thread
 		 */
 		ContigPileup(SAMSequenceRecord contig,  AbstractQueue<IndelPosition> qIn, File bam, File index, QueryExecutor exec,
-				AbstractQueue<IndelPileup> qOut, Thread mainThread, CountDownLatch latch)  {
+				AbstractQueue<IndelPileup> qOut, Thread mainThread, CountDownLatch latch, long maxPoolBytes)  {
 			this.qIn = qIn;
 			this.qOut = qOut;
 			this.mainThread = mainThread;
@@ -76,74 +75,66 @@ public class IndelMT {
 			this.index = index;
 			this.contig = contig;
 			this.exec = exec; 
+			this.maxPoolBytes = maxPoolBytes;
  		}
 
 		@Override
 		public void run() {
-		 	List<SAMRecord> currentPool = new ArrayList<>();
-		 	List<SAMRecord> nextPool = new ArrayList<>(); 
 		 	int size = qIn != null ? qIn.size() : -1;	
 			if (size <= 0) {
 		 		logger.debug("There is no indel in contig: " + contig.getSequenceName() );		 		
 		 		return;
 		 	}
 			
-			IndelPosition topPos = qIn.poll();
+			ReadPool pool = new ReadPool(maxPoolBytes);
 			try (SamReader bReader =  SAMFileReaderFactory.createSAMFileReader(bam, index); ) { 
-				SAMRecordIterator ite = bReader.query(contig.getSequenceName(), 0, contig.getSequenceLength(), false);		
-			 	while (ite.hasNext()) {	
-			 		SAMRecord re = ite.next(); 
-			 		//bam file already sorted, skip non-indel region record
-			 		if (re.getAlignmentEnd() < topPos.getStart()) {
-			 			continue; 
-			 		}
-			 		
-			 		//only interested pass filter record
-			 		boolean passFilter = exec != null ? exec.Execute(re) : ( ! re.getReadUnmappedFlag() && ! re.getDuplicateReadFlag());
-			 		
-			 	 	if ( ! passFilter ) {
-			 	 		continue;
-			 	 	}
-			 			 		
-			 		//whether in current indel region
-			 		if (re.getAlignmentStart() <= topPos.getEnd() && currentPool.size() < MAXRAMREADS ) {
-			 			currentPool.add(re);
-			 		} else {
-			 			nextPool.add(re); 
-			 			//pileup
-			 			IndelPileup pileup = new IndelPileup(topPos, options.getSoftClipWindow(), options.getNearbyIndelWindow(), options.getMaxEventofStrongSupport());
-			 			pileup.pileup(currentPool);
-			 			if (null != qOut) {
-			 				qOut.add(pileup);
-			 			}
-			 			
-			 			//prepare for next indel position
-			 			if ( (topPos = qIn.poll()) == null) {
-			 				break; 
-			 			}
-			 			
-			 			resetPool(topPos,  currentPool, nextPool); 	 
-			 		}
-			 	}	 	
-			
-			 	//after loop check all pool
-			 	do {			
-			 		//check whether previous loop also used up all indel position
-			 		if (topPos == null) {
-			 			break; 			 			
-			 		}
-			 		
-		 			IndelPileup pileup = new IndelPileup(topPos, options.getSoftClipWindow(), options.getNearbyIndelWindow(),options.getMaxEventofStrongSupport());
-		 			pileup.pileup(currentPool);
-		 			if (null != qOut) {
-		 				qOut.add(pileup);
-		 			}
-					if ((topPos = qIn.poll()) == null) {
-						break; 
+				//only read the parts of the contig around the indels
+				int contigIndex = bReader.getFileHeader().getSequenceIndex(contig.getSequenceName());
+				QueryInterval[] intervals = contigIndex < 0 ? new QueryInterval[0] : getQueryIntervals(qIn, contigIndex);
+				
+				IndelPosition topPos = qIn.poll();
+				if (intervals.length > 0) {
+					try (SAMRecordIterator ite = bReader.queryOverlapping(intervals)) {
+					 	while (ite.hasNext()) {	
+					 		SAMRecord re = ite.next(); 
+					 		//bam file already sorted, skip non-indel region record
+					 		if (re.getAlignmentEnd() < topPos.getStart()) {
+					 			continue; 
+					 		}
+					 		
+					 		//only interested pass filter record
+					 		boolean passFilter = exec != null ? exec.Execute(re) : ( ! re.getReadUnmappedFlag() && ! re.getDuplicateReadFlag());
+					 		
+					 	 	if ( ! passFilter ) {
+					 	 		continue;
+					 	 	}
+					 	 	
+					 	 	//all reads of the indels before this read have been seen
+					 	 	while (re.getAlignmentStart() > topPos.getEnd()) {
+					 	 		pileup(topPos, pool);
+					 	 		if ( (topPos = qIn.poll()) == null) {
+					 	 			break; 
+					 	 		}
+					 	 	}
+					 	 	if (topPos == null) {
+					 	 		break;
+					 	 	}
+					 	 	
+					 	 	pool.add(re);
+					 	}
 					}
-					
-					resetPool(topPos,  currentPool, nextPool); 							
-			 	} while (true);					 					 
+				}
+			
+			 	//after loop pileup the remaining indels
+			 	while (topPos != null) {
+			 		pileup(topPos, pool);
+			 		topPos = qIn.poll();
+			 	}
+			 	
+			 	if (pool.getDroppedCount() > 0) {
+			 		logger.warn(pool.getDroppedCount() + " reads from " + contig.getSequenceName() + " on " + bam.getName() 
+			 			+ " were not piled up as they would have exceeded the memory budget of " + maxPoolBytes + " bytes");
+			 	}
 			} catch (Exception e) {
 				e.printStackTrace();
 				mainThread.interrupt();
@@ -151,48 +142,44 @@ public class IndelMT {
 				pLatch.countDown();
 				logger.info( size + " indels have completed pileup from " + contig.getSequenceName() + " on " + bam.getName());
  			}			
-		}		
-		/**
-		 * it swap SAMRecord between currentPool and nextPool. After then, the currentPool will contain all SAMRecord overlapping topPos positions,
-		 * the nextPool will contain all SAMRecord start after topPos position.  All SAMRecord end before topPos position will be removed from both pools.
-		 * @param topPos   pileup position
-		 * @param currentPool a list of SAMRecord overlapped the previous pileup Position
-		 * @param nextPool a list of SAMRecord behind previous pileup Position
-		 */
-		 void resetPool(IndelPosition topPos, List<SAMRecord> currentPool, List<SAMRecord> nextPool) { 
-			
-			List<SAMRecord> tmpCurrentPool = new ArrayList<>();
-             List<SAMRecord> tmpPool = new ArrayList<>(nextPool);
-			
-			//check read record behind on current position			
-			for (SAMRecord  re : tmpPool ) {
-				//aligned position before indel
-				if (re.getAlignmentEnd() < topPos.getStart()) {
-					nextPool.remove(re);
-				//aligned position cross indel
-				} else if (re.getAlignmentStart() <= topPos.getEnd()) {		 
-					tmpCurrentPool.add(re);	
-					nextPool.remove(re);
-				}			 
-			}	
-			
-			tmpPool.clear();
-			tmpPool.addAll(currentPool);
-			//check already read record  for previous pileup
-			for ( SAMRecord  re1 : tmpPool ) {
-				//aligned position before indel
-				if (re1.getAlignmentEnd() < topPos.getStart()) { 
-					currentPool.remove(re1);
-				//aligned position after indel
-				} else if (re1.getAlignmentStart() > topPos.getEnd()) { 
-					nextPool.add(re1);
-					currentPool.remove(re1);
-				}
+		}
+		
+		private void pileup(IndelPosition topPos, ReadPool pool) {
+ 			IndelPileup pileup = new IndelPileup(topPos, options.getSoftClipWindow(), options.getNearbyIndelWindow(), options.getMaxEventofStrongSupport());
+ 			pileup.pileup(pool.getOverlapping(topPos.getStart(), topPos.getEnd()));
+ 			if (null != qOut) {
+ 				qOut.add(pileup);
+ 			}
+		}
+	}
+	
+	/**
+	 * Merges the indels into the intervals of the contig that need to be read, joining indels that are less than {@link #MAX_INTERVAL_GAP} apart
+	 * 
+	 * @param indels indels of a contig, in start order
+	 * @param contigIndex index of the contig in the bam header
+	 * @return the intervals to query, in order
+	 */
+	static QueryInterval[] getQueryIntervals(Collection<IndelPosition> indels, int contigIndex) {
+		List<QueryInterval> intervals = new ArrayList<>();
+		int start = -1;
+		int end = -1;
+		for (IndelPosition indel : indels) {
+			if (start > 0 && indel.getStart() - end > MAX_INTERVAL_GAP) {
+				intervals.add(new QueryInterval(contigIndex, start, end));
+				start = -1;
 			}
-			
-			//merge samrecord
-			currentPool.addAll(tmpCurrentPool);
-		}				
+			if (start < 0) {
+				start = indel.getStart();
+				end = indel.getEnd();
+			} else {
+				end = Math.max(end, indel.getEnd());
+			}
+		}
+		if (start > 0) {
+			intervals.add(new QueryInterval(contigIndex, start, end));
+		}
+		return intervals.toArray(new QueryInterval[0]);
 	}
 			
 	Options options; 
@@ -269,6 +256,9 @@ public class IndelMT {
 		
         final CountDownLatch pileupLatch = new CountDownLatch(sortedContigs.size() * 2); // filtering thread               
         
+        //share half of the heap between the pileup threads
+        final long maxPoolBytes = Runtime.getRuntime().maxMemory() / (2L * threadNo);
+        
         final AbstractQueue<IndelPileup> tumourQueue = new ConcurrentLinkedQueue<>();
         final AbstractQueue<IndelPileup> normalQueue = new ConcurrentLinkedQueue<>();
         // set up executor services
@@ -295,7 +285,7 @@ public class IndelMT {
     				return 1;
     			}
     			 pileupThreads.execute(new ContigPileup(contig, getIndelList(contig), options.getControlBam(), index, query,
-    				normalQueue, Thread.currentThread(), pileupLatch));
+    				normalQueue, Thread.currentThread(), pileupLatch, maxPoolBytes));
     		}
     		
     		//getIndelList must be called repeatedly, since it will be empty after pileup
@@ -309,7 +299,7 @@ public class IndelMT {
     				return 1;
     			}
     			 pileupThreads.execute(new ContigPileup(contig, getIndelList(contig), options.getTestBam() , index, query,
-    					 tumourQueue, Thread.currentThread() ,pileupLatch));
+    					 tumourQueue, Thread.currentThread() ,pileupLatch, maxPoolBytes));
     		 }
     	}
     	pileupThreads.shutdown();
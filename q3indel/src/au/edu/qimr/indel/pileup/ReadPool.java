@@ -0,0 +1,89 @@
+package au.edu.qimr.indel.pileup;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import htsjdk.samtools.SAMRecord;
+
+/**
+ * Reads of a contig that may overlap the indel being piled up, or the indels after it, held in alignment start order.
+ * <p>
+ * Indels are piled up in start order, so a read that ends before the current indel is of no further use. These are removed from
+ * the front of the pool as it moves along the contig. Reads that end early but are behind a longer read are left in place,
+ * and are skipped when the overlapping reads are collected, until they reach the front.
+ * <p>
+ * The pool has a memory budget rather than a maximum number of reads. Reads that would take it over budget are not added.
+ */
+final class ReadPool {
+
+	/*
+	 * approximate memory used by a record in addition to its bases and base qualities
+	 */
+	static final int RECORD_OVERHEAD_BYTES = 512;
+
+	private final ArrayDeque<SAMRecord> reads = new ArrayDeque<>();
+	private final long maxBytes;
+	private long bytes;
+	private long droppedCount;
+
+	ReadPool(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	static long getSize(SAMRecord re) {
+		return RECORD_OVERHEAD_BYTES + 2L * re.getReadLength();
+	}
+
+	/**
+	 * Reads must be added in alignment start order
+	 * @return false if the read was not added as it would take the pool over its memory budget
+	 */
+	boolean add(SAMRecord re) {
+		long size = getSize(re);
+		if (bytes + size > maxBytes) {
+			droppedCount++;
+			return false;
+		}
+		reads.add(re);
+		bytes += size;
+		return true;
+	}
+
+	/**
+	 * Removes the reads at the front of the pool that end before the supplied start, which must not be less than the start of the previous call.
+	 *
+	 * @return the reads that overlap the supplied (1-based, inclusive) range, in alignment start order
+	 */
+	List<SAMRecord> getOverlapping(int start, int end) {
+		while ( ! reads.isEmpty() && reads.peekFirst().getAlignmentEnd() < start) {
+			bytes -= getSize(reads.pollFirst());
+		}
+
+		List<SAMRecord> overlapping = new ArrayList<>();
+		for (SAMRecord re : reads) {
+			if (re.getAlignmentStart() > end) {
+				break;
+			}
+			if (re.getAlignmentEnd() >= start) {
+				overlapping.add(re);
+			}
+		}
+		return overlapping;
+	}
+
+	int size() {
+		return reads.size();
+	}
+
+	long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return the number of reads that were not added as the pool was over its memory budget
+	 */
+	long getDroppedCount() {
+		return droppedCount;
+	}
+}
@@ -1,5 +1,6 @@
 package au.edu.qimr.indel.pileup;
 
+import htsjdk.samtools.QueryInterval;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SamReader;
 
@@ -16,66 +17,90 @@ import org.qcmg.common.vcf.VcfRecord;
 import org.qcmg.picard.SAMFileReaderFactory;
 
 import au.edu.qimr.indel.Q3IndelException;
-import au.edu.qimr.indel.pileup.IndelMT.ContigPileup;
 
 import static org.junit.Assert.*;
 
 public class ContigPileupTest {
 	@org.junit.Rule
 	public  TemporaryFolder testFolder = new TemporaryFolder();
+	
+	private static final int MAX_READS = 1500;
 
 	@Test
-	public void resetPoolTest() throws IOException{			
+	public void readPoolTest() throws IOException{			
 		File inputBam = testFolder.newFile("input.sam");
 		createSam(inputBam);
 		
 		//get pool
-		List<SAMRecord> pool = new ArrayList<>();
-		List<SAMRecord> nextpool = new ArrayList<>();
-		SamReader inreader =  SAMFileReaderFactory.createSAMFileReader( inputBam);	
+		ReadPool pool = new ReadPool(Long.MAX_VALUE);
+		try (SamReader inreader =  SAMFileReaderFactory.createSAMFileReader( inputBam)) {
+	        for(SAMRecord record : inreader){ 
+	        	assertTrue(pool.add(record));
+	        }    
+		}
+        assertEquals(MAX_READS + 21, pool.size());
 				
 		VcfRecord vcf = new VcfRecord(new String[] {"chr11", "500", null, "TAAAAAGGGGGTTTTTCCCCC", "T" });
 		IndelPosition topPos = new IndelPosition(vcf);
-		
-        for(SAMRecord record : inreader){ 
-        	//two testing data overlap indel
-        	if(record.getAlignmentStart() < topPos.getEnd())
-        		pool.add(record);   
-        	else
-        		nextpool.add(record);
-        }    
-        inreader.close();
-        
-        //before resetPool
-        assertEquals(IndelMT.MAXRAMREADS + 20, pool.size());
-        assertEquals(1, nextpool.size());
        
-        //reset for first indel
-        IndelMT mt = new IndelMT();
-        ContigPileup pileup = mt.new ContigPileup();      
-        pileup.resetPool(topPos, pool, nextpool);
-        assertEquals(IndelMT.MAXRAMREADS + 20, pool.size());
-        assertEquals(1, nextpool.size());
+        //first indel, all but the last read overlap
+        assertEquals(MAX_READS + 20, pool.getOverlapping(topPos.getStart(), topPos.getEnd()).size());
+        assertEquals(MAX_READS + 21, pool.size());
         
         vcf = new VcfRecord(new String[] {"chr11", "510", null, "TAAAAAGGGGGTTTTTCCCCC", "T" });
         topPos = new IndelPosition(vcf);
-        pileup.resetPool(topPos, pool, nextpool);
-        assertEquals(IndelMT.MAXRAMREADS + 20, pool.size());
-        assertEquals(1, nextpool.size());
+        assertEquals(MAX_READS + 20, pool.getOverlapping(topPos.getStart(), topPos.getEnd()).size());
+        assertEquals(MAX_READS + 21, pool.size());
        
         //deletion just start one base after first input read
         vcf = new VcfRecord(new String[] {"chr11", "551", null, "TAAAAAGGGGGTTTTTCCCCC", "T" });
         topPos = new IndelPosition(vcf);
-        pileup.resetPool(topPos, pool, nextpool);
-        assertEquals(10, pool.size());
-        assertEquals(1, nextpool.size());
+        assertEquals(10, pool.getOverlapping(topPos.getStart(), topPos.getEnd()).size());
+        assertEquals(11, pool.size());
 
         vcf = new VcfRecord(new String[] {"chr11", "561", null, "TAAAAAGGGGGTTTTTCCCCC", "T" });
         topPos = new IndelPosition(vcf);
-        pileup.resetPool(topPos, pool, nextpool);
-        assertEquals(0, pool.size());
-        assertEquals(1, nextpool.size());
-      		
+        assertEquals(0, pool.getOverlapping(topPos.getStart(), topPos.getEnd()).size());
+        assertEquals(1, pool.size());
+        assertEquals(ReadPool.getSize(pool.getOverlapping(611, 611).get(0)), pool.getBytes());
+	}
+	
+	@Test
+	public void readPoolBudgetTest() throws IOException{			
+		File inputBam = testFolder.newFile("input.sam");
+		createSam(inputBam);
+		
+		ReadPool pool = null;
+		try (SamReader inreader =  SAMFileReaderFactory.createSAMFileReader( inputBam)) {
+	        for(SAMRecord record : inreader){ 
+	        	if (null == pool) {
+	        		pool = new ReadPool(100 * ReadPool.getSize(record));
+	        	}
+	        	pool.add(record);
+	        }    
+		}
+        assertEquals(100, pool.size());
+        assertEquals(MAX_READS + 21 - 100, pool.getDroppedCount());
+        
+        //space is freed as reads are evicted
+        assertEquals(0, pool.getOverlapping(700, 700).size());
+        assertEquals(0, pool.getBytes());
+	}
+	
+	@Test
+	public void queryIntervalsTest() {
+		List<IndelPosition> indels = new ArrayList<>();
+		for (int position : new int[] {100, 110, 100 + IndelMT.MAX_INTERVAL_GAP, 200 + 2 * IndelMT.MAX_INTERVAL_GAP}) {
+			indels.add(new IndelPosition(new VcfRecord(new String[] {"chr11", position + "", null, "TAAAA", "T" })));
+		}
+		QueryInterval[] intervals = IndelMT.getQueryIntervals(indels, 1);
+		assertEquals(2, intervals.length);
+		assertEquals(1, intervals[0].referenceIndex);
+		assertEquals(indels.get(0).getStart(), intervals[0].start);
+		assertEquals(indels.get(2).getEnd(), intervals[0].end);
+		assertEquals(indels.get(3).getStart(), intervals[1].start);
+		assertEquals(indels.get(3).getEnd(), intervals[1].end);
+		assertEquals(0, IndelMT.getQueryIntervals(new ArrayList<>(), 1).length);
 	}
 	
    public static void createSam(File inputBam){
@@ -87,7 +112,7 @@ public class ContigPileupTest {
 		data.add("@SQ	SN:chr11	LN:243199373");
 		data.add("@CO	create by qcmg.qbamfilter.filter::TestFile");
 
-		for(int i = 0; i < IndelMT.MAXRAMREADS + 10; i ++ ) {
+		for(int i = 0; i < MAX_READS + 10; i ++ ) {
 			data.add(i + "997_1173_1256	99	chr11	401	60	100M20D31M	=	600	351	" +
 					"TATGTTTTTTAGTAGAGACAGGGTCTCACTGTGTTGCCCAGGCTAGTCTCTAACTCCTGGGCTCAAATTATCCTCCCCACTTGGCCTCCCAAAAGGATTGGATTACAGGCATAAGCCACTGCCCCAAGCCC	" +
 					"FFFFFFJFJJJJFJJFJFJJFAJJJJJJJJJJFJJJJJJJFJJJJJJJFJFJJJJJJJJJFJAJJJJJJJJJJJJJJJJFJFJJJJFJJJFFFJJJJAFFJFJJJJJFJFJFJJJFJJJFFJJJAFFJJJJ	" +
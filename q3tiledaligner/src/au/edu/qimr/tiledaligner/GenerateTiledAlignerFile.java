@@ -10,13 +10,14 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.zip.GZIPOutputStream;
 
 import org.qcmg.common.date.DateUtils;
@@ -24,12 +25,26 @@ import org.qcmg.common.log.QLogger;
 import org.qcmg.common.log.QLoggerFactory;
 import org.qcmg.common.util.Constants;
 import org.qcmg.common.util.FileUtils;
+import org.qcmg.common.util.NumberUtils;
 
-import gnu.trove.list.array.TLongArrayList;
-import gnu.trove.procedure.TLongProcedure;
+import gnu.trove.procedure.TIntIntProcedure;
 import htsjdk.samtools.reference.FastaSequenceFile;
 import htsjdk.samtools.reference.ReferenceSequence;
 
+/**
+ * Generates the tiled aligner file, which contains the start positions of every tile (13-mer) in the reference,
+ * or the number of times the tile occurs if this is greater than the positions cutoff.
+ * <p>
+ * Tiles are 2-bit encoded on the fly (as per <code>NumberUtils.convertTileToInt</code>), and so the reference is processed in 2 passes, 
+ * each of which runs over a number of contigs in parallel:
+ * <ol>
+ * <li>count the number of occurrences of each tile into an array indexed by the encoded tile</li>
+ * <li>having laid out the index from these counts, fill in the positions for tiles under the cutoff</li>
+ * </ol>
+ * The positions are written directly to a (memory-mapped) {@link TiledAlignerIndex} file, 
+ * which is either the output file (<code>-binary</code>) or a temporary file from which the gzipped text file is written.
+ * Tiles that contain bases other than A, C, G and T are not included.
+ */
 public class GenerateTiledAlignerFile {
 	
 	private static QLogger logger;
@@ -47,9 +62,13 @@ public class GenerateTiledAlignerFile {
 	
 	private final int tileSize = 13;
 	private int positionsCutoff = 5000;
+	private boolean binaryOutput;
+	private int noOfThreads = 4;
 	
-	private final Map<String, TLongArrayList> tilesAndPositions = new HashMap<>(1024 * 1024 * 96);		// should prevent a resize - we are expecting 64Mish
-	private final Map<String, AtomicInteger> tilesAndCounts = new HashMap<>();
+	/*
+	 * number of occurrences of each tile, indexed by the encoded tile
+	 */
+	private AtomicIntegerArray tileCounts;
 	private final List<String> chrLengthPosition = new ArrayList<>();
 	
 	private int exitStatus;
@@ -62,117 +81,242 @@ public class GenerateTiledAlignerFile {
 		return exitStatus;
 	}
 	
-	void performBinning() throws IOException {
-		long longPosition = 1;
-		while (true) {
-			// load next contig
-			loadNextReferenceSequence();
-			
-			if (null == referenceBases) {
-				// nothing left - exit
-				break;
+	void performBinning() throws Exception {
+		tileCounts = new AtomicIntegerArray(1 << (2 * tileSize));
+		
+		/*
+		 * first pass - count the tiles
+		 */
+		long noOfBases = walkReference(true, (bases, length, startPosition) -> forEachTile(bases, length, tileSize, (tile, i) -> {
+			tileCounts.incrementAndGet(tile);
+			return true;
+		}));
+		if (noOfBases > 0xffffffffL) {
+			throw new IllegalArgumentException("Reference is too large: " + noOfBases + " bases. Positions need to fit into an unsigned int");
+		}
+		
+		/*
+		 * lay out the index - tiles that occur more than positionsCutoff + 1 times have their counts reported rather than their positions
+		 */
+		final int maxPositions = positionsCutoff + 1;
+		int noOfTiles = 0;
+		int noOfCommonTiles = 0;
+		for (int tile = 0, len = tileCounts.length() ; tile < len ; tile++) {
+			int count = tileCounts.get(tile);
+			if (count > 0) {
+				noOfTiles++;
+				if (count > maxPositions) {
+					noOfCommonTiles++;
+				}
 			}
-			
-			chrLengthPosition.add(currentChr + Constants.COLON + referenceBasesLength + Constants.COLON + longPosition); 
-			
-			int counter = 0;
-			int millionCount = 0;
-			int lastTilePosition = referenceBasesLength - tileSize;
-			for (int i = 0 ; i < referenceBasesLength; i++) {
-				if (i < lastTilePosition) {
+		}
+		logger.info("no of tiles: " + noOfTiles + ", no of tiles with counts rather than positions: " + noOfCommonTiles);
+		int[] keys = new int[noOfTiles];
+		int[] counts = new int[noOfTiles];
+		for (int tile = 0, i = 0, len = tileCounts.length() ; tile < len ; tile++) {
+			int count = tileCounts.get(tile);
+			if (count > 0) {
+				keys[i] = tile;
+				counts[i++] = count > maxPositions ? 0 : count;
+			}
+		}
+		
+		File indexFile = binaryOutput ? new File(outputFile) : File.createTempFile("tiles", ".bin", new File(outputFile).getAbsoluteFile().getParentFile());
+		try {
+			try (TiledAlignerIndex.Writer writer = new TiledAlignerIndex.Writer(indexFile, tileSize, getHeader(noOfTiles), keys, counts)) {
+				keys = null;
+				counts = null;
 				
-					String tile = new String(Arrays.copyOfRange(referenceBases, i, i + tileSize), StandardCharsets.UTF_8);
-					
-					AtomicInteger ai = tilesAndCounts.get(tile);
-					if (null != ai) {
-						ai.incrementAndGet();
-					} else {
-						
-						TLongArrayList positions = tilesAndPositions.get(tile);
-						if (null == positions) {
-							positions = new TLongArrayList();
-							tilesAndPositions.put(tile, positions);
-						}
-						
-						if (positions.size() <= positionsCutoff) {
-							positions.add(longPosition);
-						} else {
-							// time to bump this into the counts map, and remove from positions map
-							tilesAndCounts.put(tile,  new AtomicInteger(positions.size() + 1));
-							tilesAndPositions.remove(tile);
-						}
+				AtomicLongArray nextOffsets = new AtomicLongArray(tileCounts.length());
+				for (int tile = 0, len = tileCounts.length() ; tile < len ; tile++) {
+					int count = tileCounts.get(tile);
+					if (count > 0 && count <= maxPositions) {
+						nextOffsets.set(tile, writer.getOffset(tile));
 					}
-					
-					if (counter++ > 1000000) {
-						logger.info("hit " + ++millionCount + "M kmers, positions map size: " + tilesAndPositions.size() + ", counts map size: " + tilesAndCounts.size());
-						counter = 0;
+				}
+				
+				/*
+				 * second pass - fill in the positions
+				 */
+				walkReference(false, (bases, length, startPosition) -> forEachTile(bases, length, tileSize, (tile, i) -> {
+					if (tileCounts.get(tile) <= maxPositions) {
+						writer.setPosition(nextOffsets.getAndIncrement(tile), (int) (startPosition + i));
 					}
+					return true;
+				}));
+				
+				/*
+				 * contigs are processed concurrently, and so positions need sorting
+				 */
+				logger.info("sorting positions");
+				writer.sortPositions();
+			}
+			logger.info("written " + noOfTiles + " tiles to binary file: " + indexFile.getAbsolutePath());
+			
+			if ( ! binaryOutput) {
+				writeOutput(TiledAlignerIndex.open(indexFile.getAbsolutePath()), noOfTiles);
+			}
+		} finally {
+			if ( ! binaryOutput) {
+				indexFile.delete();
+			}
+		}
+	}
+	
+	/**
+	 * Processes a contig, whose first base is at <code>startPosition</code> in the (1-based) concatenated reference
+	 */
+	@FunctionalInterface
+	interface ContigProcessor {
+		void process(byte[] bases, int length, long startPosition);
+	}
+	
+	/**
+	 * Reads through the reference, passing each contig to the processor. 
+	 * Up to <code>noOfThreads</code> contigs are processed (and held in memory) at once.
+	 * 
+	 * @param recordContigs if true, the contig names, lengths and start positions are added to the header
+	 * @return the number of bases in the reference
+	 */
+	private long walkReference(boolean recordContigs, ContigProcessor processor) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(noOfThreads);
+		Semaphore permits = new Semaphore(noOfThreads);
+		List<Future<?>> futures = new ArrayList<>();
+		long longPosition = 1;
+		try {
+			while (true) {
+				// load next contig
+				loadNextReferenceSequence();
+				
+				if (null == referenceBases) {
+					// nothing left - exit
+					break;
 				}
-				longPosition++;
+				
+				if (recordContigs) {
+					chrLengthPosition.add(currentChr + Constants.COLON + referenceBasesLength + Constants.COLON + longPosition);
+				}
+				
+				final byte[] bases = referenceBases;
+				final int length = referenceBasesLength;
+				final long startPosition = longPosition;
+				permits.acquire();
+				futures.add(executor.submit(() -> {
+					try {
+						processor.process(bases, length, startPosition);
+					} finally {
+						permits.release();
+					}
+				}));
+				longPosition += referenceBasesLength;
 			}
+			
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		} finally {
+			executor.shutdownNow();
+			referenceBases = null;
 		}
-		
-		// print some stats
-		logger.info("no of entries in tilesAndPositions: " + tilesAndPositions.size() + ", counts map size: " + tilesAndCounts.size());
-		
-		writeOutput();
+		return longPosition - 1;
 	}
 	
-	private void writeOutput() throws IOException {
-		List<String> orderedTiles = new ArrayList<>(tilesAndPositions.keySet());
-		orderedTiles.addAll(tilesAndCounts.keySet());
-		orderedTiles.sort(null);
-		
-		
+	/**
+	 * Passes each 2-bit encoded tile (as generated by <code>NumberUtils.convertTileToInt</code>) and its offset in the bases array to the procedure.
+	 * The encoding is rolled along the bases, rather than each tile being created and converted.
+	 * <p>
+	 * Tiles that start at or beyond <code>length - tileSize</code> are not included, and neither are tiles containing bases other than A, C, G and T.
+	 */
+	static void forEachTile(byte[] bases, int length, int tileSize, TIntIntProcedure procedure) {
+		int highShift = 2 * (tileSize - 1);
+		int tile = 0;
+		int validBases = 0;
+		for (int i = 0, end = length - 1 ; i < end ; i++) {
+			int val = NumberUtils.convertCharToInt((char) bases[i], false);
+			if (val == -1) {
+				validBases = 0;
+				continue;
+			}
+			tile = (tile >>> 2) | (val << highShift);
+			if (++validBases >= tileSize) {
+				procedure.execute(tile, i - tileSize + 1);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the tile represented by the supplied 2-bit encoded tile
+	 */
+	static String decodeTile(int tile, int tileSize) {
+		char[] bases = new char[tileSize];
+		for (int i = 0 ; i < tileSize ; i++) {
+			bases[i] = "ACGT".charAt((tile >>> (i * 2)) & 3);
+		}
+		return new String(bases);
+	}
+	
+	/*
+	 * Some header info
+	 * 		tool, version, date, runBy, ref file used
+	 */
+	private String getHeader(int numberOfTiles) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("##q3TiledAligner version: " + version + "\n");
+		sb.append("##RunBy: " + System.getProperty("user.name") + "\n");
+		sb.append("##RunOn: " + DateUtils.getCurrentDateAsString() + "\n");
+		sb.append("##Reference: " + inputFile + "\n");
+		sb.append("##List of positions/Count cutoff: " + positionsCutoff + "\n");
+		sb.append("##Tile length: " + tileSize + "\n");
+		sb.append("##Number of tiles: " + numberOfTiles + "\n");
 		
+		sb.append("##contig:contigLength:longPosition\n");
+		for (String s : chrLengthPosition) {
+			sb.append("##" + s + "\n");
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Writes the gzipped text file, with the tiles in lexicographical order.
+	 * As the first base of a tile is in the least significant bits of the encoded tile, this is the order of the encoded tiles with their bases reversed.
+	 */
+	private void writeOutput(TiledAlignerIndex index, int noOfTiles) throws IOException {
+		int maxPositions = positionsCutoff + 1;
 		try (OutputStream writer = new GZIPOutputStream(new FileOutputStream(new File(outputFile)), 1024 * 1024)) {
 			/*
-			 * Some header info
-			 * 		tool, version, date, runBy, ref file used, column headers
+			 * header info, and column headers
 			 */
-			
-			writer.write(("##q3TiledAligner version: " + version + "\n").getBytes());
-			writer.write(("##RunBy: " + System.getProperty("user.name") + "\n").getBytes());
-			writer.write(("##RunOn: " + DateUtils.getCurrentDateAsString() + "\n").getBytes());
-			writer.write(("##Reference: " + inputFile + "\n").getBytes());
-			writer.write(("##List of positions/Count cutoff: " + positionsCutoff + "\n").getBytes());
-			writer.write(("##Tile length: " + tileSize + "\n").getBytes());
-			writer.write(("##Number of tiles: " + orderedTiles.size() + "\n").getBytes());
-			
-			writer.write(("##contig:contigLength:longPosition\n").getBytes());
-			for (String s : chrLengthPosition) {
-				writer.write(("##" + s + "\n").getBytes());
-			}
-			
+			writer.write(getHeader(noOfTiles).getBytes());
 			writer.write(("#Tile\tlist of positions OR count (C12345)\n").getBytes());
 			
-			
-			
-			for (String tile : orderedTiles) {
-				final StringBuilder sb = new StringBuilder(tile + Constants.TAB);
-				TLongArrayList positions = tilesAndPositions.get(tile);
-				if (null != positions) {
-					positions.forEach(new TLongProcedure() {
-						@Override
-						public boolean execute(long l) {
-							sb.append(l).append(Constants.COMMA);
-							return true;
-						}
-					});
-					
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0, len = tileCounts.length() ; i < len ; i++) {
+				int tile = 0;
+				for (int j = 0 ; j < tileSize ; j++) {
+					tile |= ((i >>> (j * 2)) & 3) << ((tileSize - 1 - j) * 2);
+				}
+				int count = tileCounts.get(tile);
+				if (count == 0) {
+					continue;
+				}
+				
+				sb.setLength(0);
+				sb.append(decodeTile(tile, tileSize)).append(Constants.TAB);
+				if (count > maxPositions) {
+					sb.append('C').append(count);
+				} else {
+					for (int position : index.get(tile)) {
+						sb.append(Integer.toUnsignedLong(position)).append(Constants.COMMA);
+					}
 					// remove trailing comma
 					sb.setLength(sb.length() - 1);
-				} else {
-					// get counts
-					AtomicInteger ai = tilesAndCounts.get(tile);
-					sb.append('C').append(ai.get());
 				}
 				sb.append("\n");
 				writer.write(sb.toString().getBytes());
 			}
 		}
 	}
-
+	
 	void loadNextReferenceSequence() {
 		if (null == sequenceFile) {
 			sequenceFile = new FastaSequenceFile(new File(inputFile), true);
@@ -193,12 +337,14 @@ public class GenerateTiledAlignerFile {
 			currentChr = refSeq.getName();
 			referenceBases = refSeq.getBases();
 			referenceBasesLength = refSeq.length();
-			logger.info("Will process records from: " + currentChr + ", length: " + referenceBasesLength + ", current map size: " + tilesAndPositions.size() + ", counts map size: " + tilesAndCounts.size());
+			logger.info("Will process records from: " + currentChr + ", length: " + referenceBasesLength);
 		}
 	}
 	
 	void closeReferenceFile() {
 		if (null != sequenceFile) sequenceFile.close();
+		// allows the reference to be read again
+		sequenceFile = null;
 	}
 	
 	public static void main(String[] args) throws Exception {
@@ -256,13 +402,16 @@ public class GenerateTiledAlignerFile {
 				return 1;
 			}
 			/*
-			 * final check is to make sure output is a gzip file
+			 * final check is to make sure output is a gzip file (unless it is to be a binary file)
 			 */
-			if ( ! FileUtils.isFileNameGZip(new File(outputFile))) {
+			binaryOutput = options.hasBinaryOption();
+			if ( ! binaryOutput && ! FileUtils.isFileNameGZip(new File(outputFile))) {
 				throw new Exception(Messages.getMessage("OUTPUT_FILE_NEEDS_TO_BE_GZIP"));
 			}
 			
 			options.getPositionsCutoff().ifPresent(i -> positionsCutoff = i);
+			options.getNoOfThreads().ifPresent(i -> noOfThreads = i);
+			logger.info("positionsCutoff: " + positionsCutoff + ", threads: " + noOfThreads);
 			
 			return engage();
 		}
@@ -22,6 +22,8 @@ final class GenerateTiledAlignerFileOptions {
 	private static final String VERSION_DESCRIPTION = Messages.getMessage("VERSION_OPTION_DESCRIPTION");
 	private static final String LOG_OPTION_DESCRIPTION = Messages.getMessage("LOG_OPTION_DESCRIPTION");
 	private static final String LOG_LEVEL_OPTION_DESCRIPTION = Messages.getMessage("LOG_LEVEL_OPTION_DESCRIPTION");
+	private static final String BINARY_OPTION_DESCRIPTION = Messages.getMessage("BINARY_OPTION_DESCRIPTION");
+	private static final String NO_OF_THREADS_OPTION_DESCRIPTION = Messages.getMessage("NO_OF_THREADS_OPTION_DESCRIPTION");
 	private static final String POSITIONS_CUTOFF_OPTION_DESCRIPTION = Messages.getMessage("POSITIONS_CUTOFF_OPTION_DESCRIPTION");
 	private static final String OUTPUT_FILE_DESCRIPTION = Messages.getMessage("OUTPUT_FILE_DESCRIPTION");
 	private static final String REF_FILE_DESCRIPTION = Messages.getMessage("REF_FILE_DESCRIPTION");
@@ -31,6 +33,7 @@ final class GenerateTiledAlignerFileOptions {
 	private final String outputFileName;
 	private final String log;
 	private final Integer positionsCutoff;
+	private final Integer noOfThreads;
 	private final String reference;
 	private final String logLevel;
 
@@ -41,7 +44,9 @@ final class GenerateTiledAlignerFileOptions {
 		parser.accepts("reference", REF_FILE_DESCRIPTION).withRequiredArg().ofType(String.class);
 		parser.accepts("output", OUTPUT_FILE_DESCRIPTION).withRequiredArg().ofType(String.class);
 		parser.accepts("log", LOG_OPTION_DESCRIPTION).withRequiredArg().ofType(String.class);
+		parser.accepts("binary", BINARY_OPTION_DESCRIPTION);
 		parser.accepts("positionsCutoff", POSITIONS_CUTOFF_OPTION_DESCRIPTION).withRequiredArg().ofType(Integer.class);
+		parser.accepts("threads", NO_OF_THREADS_OPTION_DESCRIPTION).withRequiredArg().ofType(Integer.class);
 		parser.accepts("loglevel", LOG_LEVEL_OPTION_DESCRIPTION).withRequiredArg().ofType(String.class);
 		parser.posixlyCorrect(true);
 
@@ -53,6 +58,7 @@ final class GenerateTiledAlignerFileOptions {
 		logLevel = (String) options.valueOf("loglevel");
 		
 		positionsCutoff =  (Integer) options.valueOf("positionsCutoff");
+		noOfThreads = (Integer) options.valueOf("threads");
 		reference = (String) options.valueOf("reference");
 		
 		// output
@@ -75,6 +81,10 @@ final class GenerateTiledAlignerFileOptions {
 		return options.has("help");
 	}
 	
+	boolean hasBinaryOption() {
+		return options.has("binary");
+	}
+	
 	boolean hasLogOption() {
 		return options.has("log");
 	}
@@ -87,6 +97,10 @@ final class GenerateTiledAlignerFileOptions {
 		return null != positionsCutoff ? OptionalInt.of(positionsCutoff.intValue()) : OptionalInt.empty();
 	}
 	
+	OptionalInt getNoOfThreads() {
+		return null != noOfThreads ? OptionalInt.of(noOfThreads.intValue()) : OptionalInt.empty();
+	}
+	
 	Optional<String> getReference() {
 		return Optional.ofNullable(reference);
 	}
@@ -27,6 +27,7 @@ import gnu.trove.map.hash.TIntObjectHashMap;
 public class ReadTiledAligerFile {
 	
 	private static final TIntObjectMap<int[]> map = TCollections.synchronizedMap(new TIntObjectHashMap<>(1024 * 8));
+	private static TiledAlignerIndex index;
 	
 	public static void getTiledDataInMap(String tiledAlignerFile, int bufferSize) throws IOException {
 		getTiledDataInMap(tiledAlignerFile, bufferSize, 1);
@@ -105,11 +106,25 @@ public class ReadTiledAligerFile {
 		}
 	}
 
-	public static TIntObjectMap<int[]> getCache(String tiledAlignerFile, int bufferSize, int threadCount) throws IOException {
+	/**
+	 * Returns the tiled aligner data from the supplied file.
+	 * If the file is a binary tiled aligner file, it is memory-mapped (once) and returned as a {@link TiledAlignerIndex}, otherwise the text file is loaded into a map, which is returned as a {@link TileMap}.
+	 */
+	public static TileLookup getCache(String tiledAlignerFile, int bufferSize, int threadCount) throws IOException {
+		if (TiledAlignerIndex.isIndexFile(tiledAlignerFile)) {
+			return getIndex(tiledAlignerFile);
+		}
 		if (map.isEmpty()) {
 			getTiledDataInMap(tiledAlignerFile, bufferSize, threadCount);
 		}
-		return map;
+		return new TileMap(map);
+	}
+	
+	private static synchronized TiledAlignerIndex getIndex(String tiledAlignerFile) throws IOException {
+		if (null == index) {
+			index = TiledAlignerIndex.open(tiledAlignerFile);
+		}
+		return index;
 	}
 	
 	public static void main(String[] args) throws IOException {
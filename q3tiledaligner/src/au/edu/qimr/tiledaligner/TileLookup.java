@@ -0,0 +1,32 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2020.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+
+package au.edu.qimr.tiledaligner;
+
+/**
+ * Read-only lookup of the start positions of tiles, keyed by the tile as encoded by <code>NumberUtils.convertTileToInt</code>.
+ * <p>
+ * This is all that the tiled aligner needs from its cache, and is implemented by {@link TileMap} (the text tiled aligner file loaded into a map)
+ * and {@link TiledAlignerIndex} (the memory-mapped binary tiled aligner file).
+ */
+public interface TileLookup {
+
+	/**
+	 * Returns the start positions for this tile, an empty array if this is a commonly occurring tile, or null if the tile is not present
+	 */
+	int[] get(int tile);
+
+	boolean containsKey(int tile);
+
+	/**
+	 * @return the number of tiles
+	 */
+	int size();
+
+	default boolean isEmpty() {
+		return size() == 0;
+	}
+}
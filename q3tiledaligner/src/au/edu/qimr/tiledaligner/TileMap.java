@@ -0,0 +1,42 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2020.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+
+package au.edu.qimr.tiledaligner;
+
+import gnu.trove.map.TIntObjectMap;
+
+/**
+ * {@link TileLookup} backed by a map, as used when the text tiled aligner file is loaded into memory.
+ * The map is not copied, and so tiles added to it are visible through the lookup.
+ */
+public class TileMap implements TileLookup {
+
+	private final TIntObjectMap<int[]> map;
+
+	public TileMap(TIntObjectMap<int[]> map) {
+		this.map = map;
+	}
+
+	@Override
+	public int[] get(int tile) {
+		return map.get(tile);
+	}
+
+	@Override
+	public boolean containsKey(int tile) {
+		return map.containsKey(tile);
+	}
+
+	@Override
+	public int size() {
+		return map.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return map.isEmpty();
+	}
+}
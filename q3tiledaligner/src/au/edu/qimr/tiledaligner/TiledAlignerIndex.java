@@ -0,0 +1,482 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2020.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+
+package au.edu.qimr.tiledaligner;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.qcmg.common.util.Constants;
+import org.qcmg.common.util.NumberUtils;
+import org.qcmg.qio.record.StringFileReader;
+
+import au.edu.qimr.tiledaligner.util.TiledAlignerUtil;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Binary, memory-mapped version of the tiled aligner file.
+ * <p>
+ * The file consists of a header, followed by the sorted tile keys (as generated by <code>NumberUtils.convertTileToInt</code>),
+ * an offsets array (one more entry than there are keys) and the packed start positions for all tiles:
+ * <pre>
+ * int    magic number
+ * int    version
+ * int    tile length
+ * int    number of tiles (n)
+ * long   number of positions (p)
+ * int    length of text header (h)
+ * byte[h]  text header (UTF-8) - the ## lines from the text version of the file
+ * int[n]   tile keys, sorted
+ * long[n+1] offsets into the positions array - positions for tile i are at [offsets[i], offsets[i+1])
+ * int[p]   positions
+ * </pre>
+ * Tiles that occur too often to have their positions recorded (the C12345 entries in the text file) have no positions, which is represented by an empty array,
+ * as is the case when the text file is loaded by {@link ReadTiledAligerFile}.
+ * <p>
+ * The file is memory-mapped rather than loaded, and lookups are performed directly against the mapped buffers,
+ * so start-up is immediate, and the pages are shared between JVMs on the same node via the page cache.
+ * This class implements {@link TileLookup}, as does the {@link TileMap} returned by {@link ReadTiledAligerFile#getCache(String, int, int)} for text files,
+ * so that the two can be used interchangeably by the tiled aligner.
+ *
+ */
+public class TiledAlignerIndex implements TileLookup {
+
+	public static final int MAGIC_NUMBER = 0x51335441;		// Q3TA
+	public static final int VERSION = 1;
+
+	/*
+	 * positions are mapped in segments of 2^28 ints (1GB)
+	 */
+	static final int SEGMENT_BITS = 28;
+	static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+	static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	private static final int FIXED_HEADER_LENGTH = 28;
+	private static final int[] EMPTY = new int[0];
+
+	private final int tileLength;
+	private final int noOfTiles;
+	private final long noOfPositions;
+	private final String header;
+	private final IntBuffer keys;
+	private final LongBuffer offsets;
+	private final IntBuffer[] positions;
+
+	private TiledAlignerIndex(int tileLength, int noOfTiles, long noOfPositions, String header, IntBuffer keys, LongBuffer offsets, IntBuffer[] positions) {
+		this.tileLength = tileLength;
+		this.noOfTiles = noOfTiles;
+		this.noOfPositions = noOfPositions;
+		this.header = header;
+		this.keys = keys;
+		this.offsets = offsets;
+		this.positions = positions;
+	}
+
+	/**
+	 * Returns true if the supplied file starts with the binary tiled aligner file magic number
+	 */
+	public static boolean isIndexFile(String file) {
+		File f = new File(file);
+		if ( ! f.isFile() || f.length() < FIXED_HEADER_LENGTH) {
+			return false;
+		}
+		try (DataInputStream dis = new DataInputStream(new FileInputStream(f))) {
+			return dis.readInt() == MAGIC_NUMBER;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Memory-maps the supplied binary tiled aligner file
+	 */
+	public static TiledAlignerIndex open(String file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+				FileChannel channel = raf.getChannel()) {
+
+			ByteBuffer fixedHeader = ByteBuffer.allocate(FIXED_HEADER_LENGTH);
+			channel.read(fixedHeader, 0);
+			fixedHeader.flip();
+			if (fixedHeader.getInt() != MAGIC_NUMBER) {
+				throw new IOException(file + " is not a binary tiled aligner file");
+			}
+			int version = fixedHeader.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported binary tiled aligner file version: " + version + " in " + file);
+			}
+			int tileLength = fixedHeader.getInt();
+			int noOfTiles = fixedHeader.getInt();
+			long noOfPositions = fixedHeader.getLong();
+			int headerLength = fixedHeader.getInt();
+
+			ByteBuffer headerBuffer = ByteBuffer.allocate(headerLength);
+			channel.read(headerBuffer, FIXED_HEADER_LENGTH);
+			String header = new String(headerBuffer.array(), StandardCharsets.UTF_8);
+
+			long keysStart = FIXED_HEADER_LENGTH + headerLength;
+			long offsetsStart = keysStart + (long) noOfTiles * Integer.BYTES;
+			long positionsStart = offsetsStart + ((long) noOfTiles + 1) * Long.BYTES;
+			if (channel.size() != positionsStart + noOfPositions * Integer.BYTES) {
+				throw new IOException("Binary tiled aligner file " + file + " is truncated. Expected length: " + (positionsStart + noOfPositions * Integer.BYTES) + ", actual length: " + channel.size());
+			}
+
+			IntBuffer keys = channel.map(MapMode.READ_ONLY, keysStart, offsetsStart - keysStart).asIntBuffer();
+			LongBuffer offsets = channel.map(MapMode.READ_ONLY, offsetsStart, positionsStart - offsetsStart).asLongBuffer();
+			IntBuffer[] positions = new IntBuffer[getNumberOfSegments(noOfPositions)];
+			for (int i = 0 ; i < positions.length ; i++) {
+				long segmentLength = Math.min(SEGMENT_SIZE, noOfPositions - (i * SEGMENT_SIZE));
+				positions[i] = channel.map(MapMode.READ_ONLY, positionsStart + (i * SEGMENT_SIZE * Integer.BYTES), segmentLength * Integer.BYTES).asIntBuffer();
+			}
+			/*
+			 * mappings remain valid once the channel has been closed
+			 */
+			return new TiledAlignerIndex(tileLength, noOfTiles, noOfPositions, header, keys, offsets, positions);
+		}
+	}
+
+	static int getNumberOfSegments(long noOfPositions) {
+		return (int) ((noOfPositions + SEGMENT_SIZE - 1) >>> SEGMENT_BITS);
+	}
+
+	public int getTileLength() {
+		return tileLength;
+	}
+
+	public long getNumberOfPositions() {
+		return noOfPositions;
+	}
+
+	public String getHeader() {
+		return header;
+	}
+
+	/**
+	 * Returns the index of the key in the keys array, or a negative value if it is not present
+	 */
+	private int indexOf(int key) {
+		int low = 0;
+		int high = noOfTiles - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midVal = keys.get(mid);
+			if (midVal < key) {
+				low = mid + 1;
+			} else if (midVal > key) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	private int[] getPositions(int index) {
+		long start = offsets.get(index);
+		long end = offsets.get(index + 1);
+		int length = (int) (end - start);
+		if (length == 0) {
+			return EMPTY;
+		}
+		int[] result = new int[length];
+		int copied = 0;
+		while (copied < length) {
+			long offset = start + copied;
+			int segment = (int) (offset >>> SEGMENT_BITS);
+			int indexInSegment = (int) (offset & SEGMENT_MASK);
+			int toCopy = (int) Math.min(length - copied, SEGMENT_SIZE - indexInSegment);
+			positions[segment].get(indexInSegment, result, copied, toCopy);
+			copied += toCopy;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the start positions for this tile, an empty array if this is a commonly occurring tile, or null if the tile is not present
+	 */
+	@Override
+	public int[] get(int key) {
+		int index = indexOf(key);
+		return index < 0 ? null : getPositions(index);
+	}
+
+	@Override
+	public boolean containsKey(int key) {
+		return indexOf(key) >= 0;
+	}
+
+	@Override
+	public int size() {
+		return noOfTiles;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return noOfTiles == 0;
+	}
+
+	/**
+	 * @return the (sorted) tile keys
+	 */
+	public int[] keys() {
+		int[] result = new int[noOfTiles];
+		keys.get(0, result);
+		return result;
+	}
+
+	/**
+	 * Writes a binary tiled aligner file.
+	 * <p>
+	 * The keys and the number of positions for each key must be supplied up front, so that the layout of the file can be determined.
+	 * The positions for each key are then supplied (in any order) via {@link #setPositions(int, int[])},
+	 * or one at a time via {@link #setPosition(long, int)} followed by a call to {@link #sortPositions()}.
+	 * Keys that are not supplied with positions (ie. commonly occurring tiles) should have a count of 0.
+	 */
+	public static class Writer implements Closeable {
+
+		private final RandomAccessFile raf;
+		private final FileChannel channel;
+		private final int[] keys;
+		private final long[] offsets;
+		private final long positionsStart;
+		private final MappedByteBuffer[] positions;
+
+		/**
+		 * @param keys tile keys - need not be sorted, must not contain duplicates or negative values. If already sorted, the array is used as is rather than copied.
+		 * @param counts number of positions for each tile key
+		 */
+		public Writer(File file, int tileLength, String header, int[] keys, int[] counts) throws IOException {
+			if (keys.length != counts.length) {
+				throw new IllegalArgumentException("keys and counts arrays must be the same length");
+			}
+			int n = keys.length;
+			this.offsets = new long[n + 1];
+
+			if (isStrictlyAscending(keys)) {
+				this.keys = keys;
+				for (int i = 0 ; i < n ; i++) {
+					offsets[i + 1] = offsets[i] + counts[i];
+				}
+			} else {
+				/*
+				 * sort keys, taking the counts along with them
+				 */
+				long[] keysAndCounts = new long[n];
+				for (int i = 0 ; i < n ; i++) {
+					keysAndCounts[i] = ((long) keys[i] << 32) | (counts[i] & 0xffffffffL);
+				}
+				Arrays.sort(keysAndCounts);
+				this.keys = new int[n];
+				for (int i = 0 ; i < n ; i++) {
+					this.keys[i] = (int) (keysAndCounts[i] >>> 32);
+					if (i > 0 && this.keys[i] == this.keys[i - 1]) {
+						throw new IllegalArgumentException("Duplicate tile key: " + this.keys[i]);
+					}
+					offsets[i + 1] = offsets[i] + (int) keysAndCounts[i];
+				}
+			}
+			long noOfPositions = offsets[n];
+
+			byte[] headerBytes = (null == header ? "" : header).getBytes(StandardCharsets.UTF_8);
+			long keysStart = FIXED_HEADER_LENGTH + headerBytes.length;
+			long offsetsStart = keysStart + (long) n * Integer.BYTES;
+			positionsStart = offsetsStart + ((long) n + 1) * Long.BYTES;
+
+			raf = new RandomAccessFile(file, "rw");
+			raf.setLength(0);
+			channel = raf.getChannel();
+
+			ByteBuffer headerBuffer = ByteBuffer.allocate(FIXED_HEADER_LENGTH + headerBytes.length);
+			headerBuffer.putInt(MAGIC_NUMBER).putInt(VERSION).putInt(tileLength).putInt(n).putLong(noOfPositions).putInt(headerBytes.length).put(headerBytes);
+			headerBuffer.flip();
+			channel.write(headerBuffer, 0);
+
+			MappedByteBuffer keysAndOffsets = channel.map(MapMode.READ_WRITE, keysStart, positionsStart - keysStart);
+			keysAndOffsets.asIntBuffer().put(this.keys);
+			keysAndOffsets.position((int) (offsetsStart - keysStart));
+			keysAndOffsets.slice().asLongBuffer().put(offsets);
+			keysAndOffsets.force();
+
+			positions = new MappedByteBuffer[getNumberOfSegments(noOfPositions)];
+			for (int i = 0 ; i < positions.length ; i++) {
+				long segmentLength = Math.min(SEGMENT_SIZE, noOfPositions - (i * SEGMENT_SIZE));
+				positions[i] = channel.map(MapMode.READ_WRITE, positionsStart + (i * SEGMENT_SIZE * Integer.BYTES), segmentLength * Integer.BYTES);
+			}
+		}
+
+		/**
+		 * Returns true if the keys are in ascending order with no duplicates.
+		 * Throws an IllegalArgumentException if a negative key is found.
+		 */
+		private static boolean isStrictlyAscending(int[] keys) {
+			boolean ascending = true;
+			for (int i = 0 ; i < keys.length ; i++) {
+				if (keys[i] < 0) {
+					throw new IllegalArgumentException("Invalid tile key: " + keys[i]);
+				}
+				if (i > 0 && keys[i] <= keys[i - 1]) {
+					ascending = false;
+				}
+			}
+			return ascending;
+		}
+
+		/**
+		 * Returns the offset in the positions array of the first position for the supplied key
+		 */
+		public long getOffset(int key) {
+			int index = Arrays.binarySearch(keys, key);
+			if (index < 0) {
+				throw new IllegalArgumentException("Tile key not present in index: " + key);
+			}
+			return offsets[index];
+		}
+
+		/**
+		 * Sets a single position at the supplied offset in the positions array (see {@link #getOffset(int)}).
+		 * As only absolute puts are performed against the mapped buffers, different offsets may be set concurrently from multiple threads.
+		 */
+		public void setPosition(long offset, int position) {
+			positions[(int) (offset >>> SEGMENT_BITS)].putInt((int) (offset & SEGMENT_MASK) * Integer.BYTES, position);
+		}
+
+		private int getPosition(long offset) {
+			return positions[(int) (offset >>> SEGMENT_BITS)].getInt((int) (offset & SEGMENT_MASK) * Integer.BYTES);
+		}
+
+		/**
+		 * Sorts the positions of each tile into ascending order.
+		 * Positions are treated as unsigned ints, as they have been converted from (long) positions that may be greater than Integer.MAX_VALUE.
+		 */
+		public void sortPositions() {
+			int[] buffer = new int[1024];
+			for (int i = 0 ; i < keys.length ; i++) {
+				long start = offsets[i];
+				int length = (int) (offsets[i + 1] - start);
+				if (length < 2) {
+					continue;
+				}
+				if (buffer.length < length) {
+					buffer = new int[length];
+				}
+				/*
+				 * flipping the sign bit allows a signed sort to give the unsigned order
+				 */
+				for (int j = 0 ; j < length ; j++) {
+					buffer[j] = getPosition(start + j) ^ Integer.MIN_VALUE;
+				}
+				Arrays.sort(buffer, 0, length);
+				for (int j = 0 ; j < length ; j++) {
+					setPosition(start + j, buffer[j] ^ Integer.MIN_VALUE);
+				}
+			}
+		}
+
+		/**
+		 * Sets the positions for the supplied key. The number of positions must match the count supplied to the constructor for this key.
+		 */
+		public void setPositions(int key, int[] keyPositions) {
+			int index = Arrays.binarySearch(keys, key);
+			if (index < 0) {
+				throw new IllegalArgumentException("Tile key not present in index: " + key);
+			}
+			long start = offsets[index];
+			if (offsets[index + 1] - start != keyPositions.length) {
+				throw new IllegalArgumentException("Tile key: " + key + " expected " + (offsets[index + 1] - start) + " positions, received " + keyPositions.length);
+			}
+			for (int i = 0 ; i < keyPositions.length ; i++) {
+				setPosition(start + i, keyPositions[i]);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			for (MappedByteBuffer mbb : positions) {
+				mbb.force();
+			}
+			channel.close();
+			raf.close();
+		}
+	}
+
+	/**
+	 * Creates a binary tiled aligner file from an existing (text) tiled aligner file.
+	 * The text file is read twice - first to get the tiles and their counts, and then to get the positions.
+	 *
+	 * @param textFile existing tiled aligner file, as generated by {@link GenerateTiledAlignerFile}
+	 * @param binaryFile binary file to create
+	 */
+	public static void convert(String textFile, String binaryFile) throws IOException {
+		TIntArrayList keys = new TIntArrayList(1024 * 1024 * 64);
+		TIntArrayList counts = new TIntArrayList(1024 * 1024 * 64);
+		int tileLength = 0;
+
+		try (StringFileReader reader = new StringFileReader(new File(textFile))) {
+			for (String rec : reader) {
+				int tabIndex = rec.indexOf(Constants.TAB);
+				int key = NumberUtils.convertTileToInt(rec.substring(0, tabIndex));
+				if (key > -1) {
+					tileLength = tabIndex;
+					keys.add(key);
+					counts.add(rec.charAt(tabIndex + 1) == 'C' ? 0 : getNumberOfPositions(rec, tabIndex + 1));
+				}
+			}
+		}
+
+		try (StringFileReader reader = new StringFileReader(new File(textFile))) {
+			String header = reader.getHeader().stream().filter(s -> s.startsWith("##")).reduce("", (a, b) -> a + b + "\n");
+			try (Writer writer = new Writer(new File(binaryFile), tileLength, header, keys.toArray(), counts.toArray())) {
+				/*
+				 * free up some memory
+				 */
+				keys = null;
+				counts = null;
+				for (String rec : reader) {
+					int tabIndex = rec.indexOf(Constants.TAB);
+					int key = NumberUtils.convertTileToInt(rec.substring(0, tabIndex));
+					if (key > -1 && rec.charAt(tabIndex + 1) != 'C') {
+						writer.setPositions(key, TiledAlignerUtil.convertStringToIntArray(rec.substring(tabIndex + 1)));
+					}
+				}
+			}
+		}
+	}
+
+	private static int getNumberOfPositions(String rec, int from) {
+		int count = 1;
+		for (int i = from, len = rec.length() ; i < len ; i++) {
+			if (rec.charAt(i) == ',') {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Converts an existing text tiled aligner file into the binary format.
+	 * Usage: TiledAlignerIndex &lt;text tiled aligner file&gt; &lt;binary output file&gt;
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: TiledAlignerIndex <text tiled aligner file> <binary output file>");
+			System.exit(1);
+		}
+		long start = System.currentTimeMillis();
+		convert(args[0], args[1]);
+		System.out.println("Converted " + args[0] + " to " + args[1] + " in " + (System.currentTimeMillis() - start) + "ms");
+	}
+}
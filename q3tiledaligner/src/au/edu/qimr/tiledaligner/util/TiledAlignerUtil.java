@@ -6,6 +6,7 @@
 
 package au.edu.qimr.tiledaligner.util;
 
+import au.edu.qimr.tiledaligner.TileLookup;
 import au.edu.qimr.tiledaligner.PositionChrPositionMap;
 import au.edu.qimr.tiledaligner.PositionChrPositionMap.LongRange;
 import au.edu.qimr.tiledaligner.model.IntLongPairs;
@@ -56,6 +57,12 @@ public class TiledAlignerUtil {
 	
 	public static final int MINIMUM_BLAT_RECORD_SCORE = 20;
 	
+	/*
+	 * Smith-Waterman alignments against a buffered reference only consider the diagonals within this many bases of the diagonal of the tile match,
+	 * which is the same as the standard buffer put either side of the sequence
+	 */
+	static final int SW_BAND = 60;
+	
 	public static final AtomicInteger swCounter = new AtomicInteger();
 	
 	public static Map<String, byte[]> referenceCache = new THashMap<>();
@@ -134,7 +141,7 @@ public class TiledAlignerUtil {
 	 * @param debug
 	 * @return
 	 */
-	public static long [][] getStartPositionsArray(TIntObjectMap<int[]> cache, String contig, int tileSize, boolean rc, boolean debug) {
+	public static long [][] getStartPositionsArray(TileLookup cache, String contig, int tileSize, boolean rc, boolean debug) {
 		int length = contig.length();
 		int arraySize = (length - tileSize) + 1;
 		if (arraySize <= 0) {
@@ -469,6 +476,14 @@ public class TiledAlignerUtil {
 	 * @return
 	 */
 	public static String[] getIntelligentSwDiffs(String ref, String sequence, float maxMisMatchCount, int maxBlockCount, boolean preferStrict) {
+		return getIntelligentSwDiffs(ref, sequence, maxMisMatchCount, maxBlockCount, preferStrict, -ref.length(), sequence.length());
+	}
+	
+	/**
+	 * As above, but the alignments only consider the cells whose diagonal (position in the sequence minus position in the ref) lies between
+	 * minDiagonal and maxDiagonal (inclusive)
+	 */
+	public static String[] getIntelligentSwDiffs(String ref, String sequence, float maxMisMatchCount, int maxBlockCount, boolean preferStrict, int minDiagonal, int maxDiagonal) {
 		if (org.qcmg.common.string.StringUtils.isNullOrEmpty(ref)
 				|| org.qcmg.common.string.StringUtils.isNullOrEmpty(sequence)) {
 			throw new IllegalArgumentException("ref or sequence (or both) supplied to ClinVarUtil.getSwDiffs were null. ref: " + ref + ", sequence: " + sequence);
@@ -481,14 +496,14 @@ public class TiledAlignerUtil {
 		 * if there is no preference, or they are both preferred (!?!#) return based on score
 		 */
 		if (( ! preferLenient && ! preferStrict) || (preferLenient && preferStrict)) {
-			SmithWatermanGotoh nmLenient = new SmithWatermanGotoh(ref, sequence, 5, -4, 16, 4);
+			SmithWatermanGotoh nmLenient = new SmithWatermanGotoh(ref, sequence, 5, -4, 16, 4, minDiagonal, maxDiagonal);
 			String [] diffsLenient = nmLenient.traceback();
 			int [] scoresLenient = getCountsFromSWString(diffsLenient[1]);
 			
 			swCounter.addAndGet(2);
 			boolean lenientPassesTest = scoresLenient[1] < maxMisMatchCount && getInsertionCount(diffsLenient[1]) < maxBlockCount;
 			
-			SmithWatermanGotoh nmStrict = new SmithWatermanGotoh(ref, sequence, 4, -14, 14, 1);
+			SmithWatermanGotoh nmStrict = new SmithWatermanGotoh(ref, sequence, 4, -14, 14, 1, minDiagonal, maxDiagonal);
 			String [] diffsStrict = nmStrict.traceback();
 			int [] scoresStrict = getCountsFromSWString(diffsStrict[1]);
 			boolean strictPassesTest = scoresStrict[1] < maxMisMatchCount && getInsertionCount(diffsStrict[1]) < maxBlockCount;
@@ -518,7 +533,7 @@ public class TiledAlignerUtil {
 			}
 			
 		} else if (preferLenient) {
-			SmithWatermanGotoh nmLenient = new SmithWatermanGotoh(ref, sequence, 5, -4, 16, 4);
+			SmithWatermanGotoh nmLenient = new SmithWatermanGotoh(ref, sequence, 5, -4, 16, 4, minDiagonal, maxDiagonal);
 			String [] diffsLenient = nmLenient.traceback();
 			int [] scoresLenient = getCountsFromSWString(diffsLenient[1]);
 			
@@ -532,7 +547,7 @@ public class TiledAlignerUtil {
 			 * If we are here then the lenient mode did not result in a result that passed the test
 			 * now run strict to see if we can get a pass
 			 */
-			SmithWatermanGotoh nmStrict = new SmithWatermanGotoh(ref, sequence, 4, -14, 14, 1);
+			SmithWatermanGotoh nmStrict = new SmithWatermanGotoh(ref, sequence, 4, -14, 14, 1, minDiagonal, maxDiagonal);
 			String [] diffsStrict = nmStrict.traceback();
 			int [] scoresStrict = getCountsFromSWString(diffsStrict[1]);
 			boolean strictPassesTest = scoresStrict[1] < maxMisMatchCount && getInsertionCount(diffsStrict[1]) < maxBlockCount;
@@ -542,7 +557,7 @@ public class TiledAlignerUtil {
 				return diffsStrict;
 			}
 		} else {
-			SmithWatermanGotoh nmStrict = new SmithWatermanGotoh(ref, sequence, 4, -14, 14, 1);
+			SmithWatermanGotoh nmStrict = new SmithWatermanGotoh(ref, sequence, 4, -14, 14, 1, minDiagonal, maxDiagonal);
 			String [] diffsStrict = nmStrict.traceback();
 			int [] scoresStrict = getCountsFromSWString(diffsStrict[1]);
 			boolean strictPassesTest = scoresStrict[1] < maxMisMatchCount && getInsertionCount(diffsStrict[1]) < maxBlockCount;
@@ -554,7 +569,7 @@ public class TiledAlignerUtil {
 			/*
 			 * now run lenient
 			 */
-			SmithWatermanGotoh nmLenient = new SmithWatermanGotoh(ref, sequence, 5, -4, 16, 4);
+			SmithWatermanGotoh nmLenient = new SmithWatermanGotoh(ref, sequence, 5, -4, 16, 4, minDiagonal, maxDiagonal);
 			String [] diffsLenient = nmLenient.traceback();
 			int [] scoresLenient = getCountsFromSWString(diffsLenient[1]);
 			
@@ -730,7 +745,7 @@ public class TiledAlignerUtil {
 		});
 	}
 	
-	public static Map<String, List<BLATRecord>> runTiledAlignerCache(String refFile, Map<ChrPosition, LongRange> refIndexMap, TIntObjectMap<int[]> cache, Map<String, String> sequencesNameMap, int tileLength, String originatingMethod, boolean log, boolean recordsMustComeFromChrInName) {
+	public static Map<String, List<BLATRecord>> runTiledAlignerCache(String refFile, Map<ChrPosition, LongRange> refIndexMap, TileLookup cache, Map<String, String> sequencesNameMap, int tileLength, String originatingMethod, boolean log, boolean recordsMustComeFromChrInName) {
 		
 		/*
 		 * check sequenceNameMap
@@ -768,7 +783,7 @@ public class TiledAlignerUtil {
 		return results;
 	}
 	
-	public static Map<String, List<BLATRecord>> runTiledAlignerCacheSWAll(String refFile, TIntObjectMap<int[]> cache,
+	public static Map<String, List<BLATRecord>> runTiledAlignerCacheSWAll(String refFile, TileLookup cache,
 																		  Map<String, String> sequencesNameMap, int tileLength,
 																		  String originatingMethod, boolean log,
 																		  boolean recordsMustComeFromChrInName) {
@@ -789,7 +804,7 @@ public class TiledAlignerUtil {
 	}
 	
 	public static Map<String, List<BLATRecord>> runTiledAlignerCacheSWAll(String refFile, Map<ChrPosition, LongRange> refIndexMap,
-																		  TIntObjectMap<int[]> cache, Map<String, String> sequencesNameMap,
+																		  TileLookup cache, Map<String, String> sequencesNameMap,
 																		  int tileLength, String originatingMethod, boolean log,
 																		  boolean recordsMustComeFromChrInName) {
 		/*
@@ -851,7 +866,7 @@ public class TiledAlignerUtil {
 		}
 	}
 	
-	public static List<BLATRecord> getBlatRecordsSWAll(String refFile, Map<ChrPosition, LongRange> refIndexMap, TIntObjectMap<int[]> cache, String sequence, final String name, int tileLength, String originatingMethod, boolean log, boolean recordsMustComeFromChrInName) {
+	public static List<BLATRecord> getBlatRecordsSWAll(String refFile, Map<ChrPosition, LongRange> refIndexMap, TileLookup cache, String sequence, final String name, int tileLength, String originatingMethod, boolean log, boolean recordsMustComeFromChrInName) {
 		if (null == cache || cache.isEmpty()) {
 			throw new IllegalArgumentException("Null or empty cache passed to getBlatRecordsSWAll");
 		}
@@ -1411,7 +1426,13 @@ public class TiledAlignerUtil {
 			 */
 			float misMatchCutoff = 0.1f * seqLength;			// looking at a 10% max mismatch rate
 			
-			String [] swDiffs = getIntelligentSwDiffs(bufferedReference, fragString, misMatchCutoff, 6, preferStrictSW);
+			/*
+			 * the tile match is on the diagonal given by its position in the sequence minus its position in the buffered reference
+			 * (the reference may have been cut short at the start of the contig, so work out where the tile match is from the end)
+			 */
+			int tileMatchPositionInReference = (bufferedCP.getEndPosition() - length - buffersToUse[1]) - bufferedCP.getStartPosition();
+			int tileMatchDiagonal = startPositionInSequence - tileMatchPositionInReference;
+			String [] swDiffs = getIntelligentSwDiffs(bufferedReference, fragString, misMatchCutoff, 6, preferStrictSW, tileMatchDiagonal - SW_BAND, tileMatchDiagonal + SW_BAND);
 			if (swDiffs.length > 0) {
 				br = BLATRecordUtil.getBLATRecord(bufferedCP, swDiffs, name, sequence, ! reverseComplement, bufferedReference);
 			}
@@ -0,0 +1,116 @@
+package au.edu.qimr.tiledaligner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.qcmg.common.util.NumberUtils;
+import org.qcmg.qio.record.StringFileReader;
+
+public class GenerateTiledAlignerFileTest {
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void forEachTile() {
+		String bases = "ACGTACGTACGTACNGTTGCAAGTCCAGTacgtACGTACGTACGTAGGGA";
+		List<String> tiles = new ArrayList<>();
+		GenerateTiledAlignerFile.forEachTile(bases.getBytes(), bases.length(), 13, (tile, i) -> {
+			assertEquals(NumberUtils.convertTileToInt(bases.substring(i, i + 13)), tile);
+			tiles.add(GenerateTiledAlignerFile.decodeTile(tile, 13));
+			return true;
+		});
+
+		List<String> expected = new ArrayList<>();
+		for (int i = 0 ; i < bases.length() - 13 ; i++) {
+			String tile = bases.substring(i, i + 13);
+			if (NumberUtils.convertTileToInt(tile) > -1) {
+				expected.add(tile);
+			}
+		}
+		assertEquals(expected, tiles);
+	}
+
+	@Test
+	public void forEachTileShortContig() {
+		List<Integer> tiles = new ArrayList<>();
+		GenerateTiledAlignerFile.forEachTile("ACGTACGTACGTA".getBytes(), 13, 13, (tile, i) -> tiles.add(tile));
+		assertEquals(0, tiles.size());
+		GenerateTiledAlignerFile.forEachTile("ACGTACGTACGTAC".getBytes(), 14, 13, (tile, i) -> tiles.add(tile));
+		assertEquals(1, tiles.size());
+	}
+
+	@Test
+	public void matchesStringBinning() throws Exception {
+		/*
+		 * random reference over several contigs, with repeats, Ns and lower case bases
+		 */
+		Random r = new Random(2);
+		char[] bases = new char[] {'A', 'C', 'G', 'T'};
+		StringBuilder fasta = new StringBuilder();
+		List<String> contigs = new ArrayList<>();
+		String repeat = null;
+		for (int c = 0 ; c < 6 ; c++) {
+			StringBuilder contig = new StringBuilder();
+			for (int i = 0 ; i < 1500 + r.nextInt(1000) ; i++) {
+				contig.append(bases[r.nextInt(4)]);
+			}
+			if (null == repeat) {
+				repeat = contig.substring(0, 60);
+			}
+			contig.append(repeat).append("NNNNN").append(repeat.toLowerCase()).append(repeat);
+			contigs.add(contig.toString());
+			fasta.append(">chr").append(c + 1).append('\n').append(contig).append('\n');
+		}
+		File ref = testFolder.newFile("ref.fa");
+		try (FileWriter fw = new FileWriter(ref)) {
+			fw.write(fasta.toString());
+		}
+
+		File output = new File(testFolder.getRoot(), "tiles.gz");
+		assertEquals(0, new GenerateTiledAlignerFile().setup(new String[] {"-reference", ref.getAbsolutePath(), "-output", output.getAbsolutePath(), "-positionsCutoff", "4", "-threads", "3", "-log", testFolder.newFile("gen.log").getAbsolutePath()}));
+
+		/*
+		 * bin the tiles as strings
+		 */
+		Map<String, List<Long>> tilesAndPositions = new TreeMap<>();
+		long position = 1;
+		for (String contig : contigs) {
+			for (int i = 0 ; i < contig.length() ; i++, position++) {
+				if (i < contig.length() - 13) {
+					String tile = contig.substring(i, i + 13);
+					if (NumberUtils.convertTileToInt(tile) > -1) {
+						tilesAndPositions.computeIfAbsent(tile, k -> new ArrayList<>()).add(position);
+					}
+				}
+			}
+		}
+		List<String> expected = new ArrayList<>();
+		for (Map.Entry<String, List<Long>> entry : tilesAndPositions.entrySet()) {
+			List<Long> positions = entry.getValue();
+			String value = positions.size() > 5 ? "C" + positions.size() : positions.toString().replaceAll("[\\[\\] ]", "");
+			expected.add(entry.getKey() + "\t" + value);
+		}
+
+		List<String> actual = new ArrayList<>();
+		try (StringFileReader reader = new StringFileReader(output)) {
+			assertTrue(reader.getHeader().contains("##Number of tiles: " + expected.size()));
+			assertTrue(reader.getHeader().contains("##chr2:" + contigs.get(1).length() + ":" + (contigs.get(0).length() + 1)));
+			for (String rec : reader) {
+				actual.add(rec);
+			}
+		}
+		assertEquals(expected, actual);
+	}
+}
@@ -0,0 +1,182 @@
+package au.edu.qimr.tiledaligner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.qcmg.common.util.NumberUtils;
+
+import au.edu.qimr.tiledaligner.util.TiledAlignerUtil;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+public class TiledAlignerIndexTest {
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void writeAndRead() throws IOException {
+		File f = testFolder.newFile("index.bin");
+		try (TiledAlignerIndex.Writer writer = new TiledAlignerIndex.Writer(f, 13, "##header\n", new int[] {300, 5, 42, 7}, new int[] {2, 1, 0, 3})) {
+			writer.setPositions(7, new int[] {70, 71, -1294967296});
+			writer.setPositions(300, new int[] {3000, 3001});
+			writer.setPositions(5, new int[] {50});
+		}
+		assertTrue(TiledAlignerIndex.isIndexFile(f.getAbsolutePath()));
+
+		TiledAlignerIndex index = TiledAlignerIndex.open(f.getAbsolutePath());
+		assertEquals(4, index.size());
+		assertFalse(index.isEmpty());
+		assertEquals(13, index.getTileLength());
+		assertEquals(6, index.getNumberOfPositions());
+		assertEquals("##header\n", index.getHeader());
+		assertArrayEquals(new int[] {5, 7, 42, 300}, index.keys());
+
+		assertArrayEquals(new int[] {50}, index.get(5));
+		assertArrayEquals(new int[] {70, 71, -1294967296}, index.get(7));
+		assertArrayEquals(new int[] {3000, 3001}, index.get(300));
+		// common tile
+		assertArrayEquals(new int[] {}, index.get(42));
+		// missing tiles
+		assertNull(index.get(0));
+		assertNull(index.get(6));
+		assertNull(index.get(301));
+		assertNull(index.get(-1));
+		assertTrue(index.containsKey(42));
+		assertFalse(index.containsKey(43));
+	}
+
+	@Test
+	public void emptyIndex() throws IOException {
+		File f = testFolder.newFile("index.bin");
+		new TiledAlignerIndex.Writer(f, 13, null, new int[] {}, new int[] {}).close();
+		TiledAlignerIndex index = TiledAlignerIndex.open(f.getAbsolutePath());
+		assertTrue(index.isEmpty());
+		assertNull(index.get(1));
+	}
+
+	@Test
+	public void writerInvalidInput() throws IOException {
+		File f = testFolder.newFile("index.bin");
+		try {
+			new TiledAlignerIndex.Writer(f, 13, null, new int[] {1, 1}, new int[] {0, 0}).close();
+			fail("Should have thrown an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {}
+		try {
+			new TiledAlignerIndex.Writer(f, 13, null, new int[] {-1}, new int[] {0}).close();
+			fail("Should have thrown an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {}
+		try (TiledAlignerIndex.Writer writer = new TiledAlignerIndex.Writer(f, 13, null, new int[] {1}, new int[] {2})) {
+			writer.setPositions(1, new int[] {1});
+			fail("Should have thrown an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {}
+	}
+
+	@Test
+	public void isIndexFile() throws IOException {
+		File f = testFolder.newFile("not_an_index.txt");
+		try (FileWriter fw = new FileWriter(f)) {
+			fw.write("##q3TiledAligner version: null\n#Tile\tlist of positions OR count (C12345)\nAAAAAAAAAAAAA\tC12345\n");
+		}
+		assertFalse(TiledAlignerIndex.isIndexFile(f.getAbsolutePath()));
+		assertFalse(TiledAlignerIndex.isIndexFile(testFolder.getRoot().getAbsolutePath() + "/missing.bin"));
+	}
+
+	@Test
+	public void convertTextFile() throws IOException {
+		File text = testFolder.newFile("tiles.gz");
+		try (OutputStream os = new GZIPOutputStream(Files.newOutputStream(text.toPath()))) {
+			os.write(("##q3TiledAligner version: null\n"
+				+ "##Tile length: 13\n"
+				+ "#Tile\tlist of positions OR count (C12345)\n"
+				+ "AAAAAAAAAAAAA\tC12345\n"
+				+ "AAAAAAAAAAAAC\t1,2,3000000000\n"
+				+ "AAAAAAAAAAANC\t5\n"
+				+ "TTTTTTTTTTTTT\t99\n").getBytes());
+		}
+		File bin = testFolder.newFile("tiles.bin");
+		TiledAlignerIndex.convert(text.getAbsolutePath(), bin.getAbsolutePath());
+
+		TiledAlignerIndex index = TiledAlignerIndex.open(bin.getAbsolutePath());
+		assertEquals(3, index.size());
+		assertEquals(13, index.getTileLength());
+		assertTrue(index.getHeader().contains("##Tile length: 13"));
+		assertArrayEquals(new int[] {}, index.get(NumberUtils.convertTileToInt("AAAAAAAAAAAAA")));
+		assertArrayEquals(new int[] {1, 2, -1294967296}, index.get(NumberUtils.convertTileToInt("AAAAAAAAAAAAC")));
+		assertArrayEquals(new int[] {99}, index.get(NumberUtils.convertTileToInt("TTTTTTTTTTTTT")));
+
+		/*
+		 * getCache should pick up that this is a binary file
+		 */
+		assertEquals(index.size(), ReadTiledAligerFile.getCache(bin.getAbsolutePath(), 64, 1).size());
+	}
+
+	@Test
+	public void generateBinaryMatchesText() throws Exception {
+		/*
+		 * random reference, with a repeated section so that some tiles have multiple positions, and a cutoff that results in some common tiles
+		 */
+		Random r = new Random(1);
+		char[] bases = new char[] {'A', 'C', 'G', 'T'};
+		StringBuilder chr1 = new StringBuilder();
+		for (int i = 0 ; i < 2000 ; i++) {
+			chr1.append(bases[r.nextInt(4)]);
+		}
+		String repeat = chr1.substring(100, 200);
+		chr1.append(repeat).append(repeat).append("NNNNNNNNNNNNNNNNNNNN").append(repeat);
+		File ref = testFolder.newFile("ref.fa");
+		try (FileWriter fw = new FileWriter(ref)) {
+			fw.write(">chr1\n" + chr1 + "\n>chr2\n" + repeat + chr1.substring(500, 1000) + "\n");
+		}
+
+		File text = new File(testFolder.getRoot(), "tiles.gz");
+		File bin = new File(testFolder.getRoot(), "tiles.bin");
+		assertEquals(0, new GenerateTiledAlignerFile().setup(new String[] {"-reference", ref.getAbsolutePath(), "-output", text.getAbsolutePath(), "-positionsCutoff", "3", "-log", testFolder.newFile("text.log").getAbsolutePath()}));
+		assertEquals(0, new GenerateTiledAlignerFile().setup(new String[] {"-reference", ref.getAbsolutePath(), "-output", bin.getAbsolutePath(), "-positionsCutoff", "3", "-binary", "-log", testFolder.newFile("bin.log").getAbsolutePath()}));
+
+		TIntObjectMap<int[]> map = loadTextFile(text);
+		TileLookup expected = new TileMap(map);
+		TileLookup index = TiledAlignerIndex.open(bin.getAbsolutePath());
+		assertEquals(expected.size(), index.size());
+		boolean commonTileFound = false;
+		for (int key : map.keys()) {
+			int[] positions = index.get(key);
+			commonTileFound |= positions.length == 0;
+			assertTrue(index.containsKey(key));
+			assertArrayEquals(expected.get(key), positions);
+		}
+		assertTrue(commonTileFound);
+	}
+
+	/*
+	 * loads the text file in the same way as ReadTiledAligerFile
+	 */
+	private static TIntObjectMap<int[]> loadTextFile(File f) throws IOException {
+		TIntObjectMap<int[]> map = new TIntObjectHashMap<>();
+		try (org.qcmg.qio.record.StringFileReader reader = new org.qcmg.qio.record.StringFileReader(f)) {
+			for (String rec : reader) {
+				int tabIndex = rec.indexOf('\t');
+				int key = NumberUtils.convertTileToInt(rec.substring(0, tabIndex));
+				if (key > -1) {
+					map.put(key, TiledAlignerUtil.convertStringToIntArray(rec.substring(tabIndex + 1)));
+				}
+			}
+		}
+		return map;
+	}
+}
@@ -14,6 +14,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.Random;
 
 import org.apache.commons.lang3.Range;
 import org.junit.BeforeClass;
@@ -29,6 +30,7 @@ import org.qcmg.common.util.NumberUtils;
 
 import au.edu.qimr.tiledaligner.PositionChrPositionMap;
 import au.edu.qimr.tiledaligner.PositionChrPositionMap.LongRange;
+import au.edu.qimr.tiledaligner.TileMap;
 import au.edu.qimr.tiledaligner.model.TARecord;
 import gnu.trove.list.TLongList;
 import gnu.trove.list.array.TLongArrayList;
@@ -91,7 +93,7 @@ public class TiledAlignerUtilTest {
 		int [] array = new int[10];
 		Arrays.fill(array, 10);
 		cache.put(1, array);
-		map = TiledAlignerUtil.runTiledAlignerCache(ref.getAbsolutePath(), null, cache, sequencesNameMap, 13, null, false, false);
+		map = TiledAlignerUtil.runTiledAlignerCache(ref.getAbsolutePath(), null, new TileMap(cache), sequencesNameMap, 13, null, false, false);
 		assertEquals(1, map.size());
 		assertEquals(0, map.values().iterator().next().size());
 	}
@@ -541,6 +543,44 @@ public class TiledAlignerUtilTest {
 		assertEquals("||.|.||||||||||||..||||..|||||.|||||||.|||||||||||||.|||||||||.|||||||||||||||||||||||.||||||||||||||||..|||||||||||||||||||||||||||||||||||||||||||||||||||||||||||||||||||||||||||||||||||.|||||||||||||||||||||||||||||||||||||||||||||||||||||||||||||||", bestSW[1]);
 	}
 	
+	@Test
+	public void bandedSwMatchesUnbanded() {
+		/*
+		 * sequences with mismatches and indels, placed in a reference buffered by the standard amount either side,
+		 * so that the tile match diagonal is -SW_BAND
+		 */
+		Random random = new Random(17);
+		int aligned = 0;
+		for (int i = 0 ; i < 100 ; i++) {
+			StringBuilder ref = new StringBuilder();
+			for (int j = 0 ; j < 2 * TiledAlignerUtil.SW_BAND + 100 + random.nextInt(200) ; j++) {
+				ref.append("ACGT".charAt(random.nextInt(4)));
+			}
+			StringBuilder seq = new StringBuilder();
+			for (int j = TiledAlignerUtil.SW_BAND ; j < ref.length() - TiledAlignerUtil.SW_BAND ; j++) {
+				int r = random.nextInt(60);
+				if (r == 0) {
+					seq.append("ACGT".charAt(random.nextInt(4)));
+				} else if (r == 1) {
+					seq.append(ref.charAt(j)).append("GATTACA", 0, 1 + random.nextInt(7));
+				} else if (r == 2) {
+					j += random.nextInt(8);
+				} else {
+					seq.append(ref.charAt(j));
+				}
+			}
+			for (boolean preferStrict : new boolean[] {true, false}) {
+				String [] unbanded = TiledAlignerUtil.getIntelligentSwDiffs(ref.toString(), seq.toString(), 0.1f * seq.length(), 6, preferStrict);
+				String [] banded = TiledAlignerUtil.getIntelligentSwDiffs(ref.toString(), seq.toString(), 0.1f * seq.length(), 6, preferStrict, -2 * TiledAlignerUtil.SW_BAND, 0);
+				assertArrayEquals(unbanded, banded);
+				if (banded.length > 0) {
+					aligned++;
+				}
+			}
+		}
+		assertTrue(aligned > 150);
+	}
+	
 	@Test
 	public void getBestStartPositions8() {
 		Map	<String, TLongList> map = new HashMap<>();
@@ -118,7 +118,7 @@ public class Options {
             System.exit(0);
         }
 
-        gap = (options.has("gap")) ? (int) options.valueOf("gap") : 1000;  //CADD default is 1000
+        gap = (options.has("gap")) ? (Integer) options.valueOf("gap") : 1000;  //CADD default is 1000
         bufferSize = (options.has("buffer")) ? (Integer) options.valueOf("buffer") : 0; //TRF default is 0
 
         miunCutoff = ((Integer) options.valueOf("miunCutoff"));
@@ -227,7 +227,7 @@ public class Options {
                 parser.accepts("buffer", "check TRF region on both sides of indel within this nominated size").withRequiredArg().ofType(Integer.class);//.describedAs("integer");
 
             if (mm.equals(MODE.cadd))
-                parser.accepts("gap", "adjacent variants size").withRequiredArg().ofType(String.class).describedAs("gap size");
+                parser.accepts("gap", "adjacent variants size").withRequiredArg().ofType(Integer.class).describedAs("gap size");
 
             if (mm.equals(MODE.vcf2maf)) {
                 parser.accepts("outdir", Messages.getMessage("MAF_OUTPUT_DIRECTORY_OPTION_DESCRIPTION")).withRequiredArg().ofType(String.class).describedAs("output file location");
@@ -435,7 +435,7 @@ public class Options {
     } //trf
 
     public int getGapSize() {
-        return (mode == MODE.trf) ? gap : -1;
+        return (mode == MODE.cadd) ? gap : -1;
     } //cadd
 
     //hom
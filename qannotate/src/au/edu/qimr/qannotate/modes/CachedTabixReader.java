@@ -0,0 +1,268 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+*/
+package au.edu.qimr.qannotate.modes;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.qcmg.common.util.TabTokenizer;
+
+import htsjdk.tribble.index.Block;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndex;
+
+/**
+ * Queries a bgzipped, tabix indexed file, keeping the most recently used decompressed blocks (keyed by their file offset) in memory.
+ * <p>
+ * Neighbouring queries often need the same blocks, which {@link htsjdk.tribble.readers.TabixReader} would read and inflate again for each query.
+ * A single instance can be queried from several threads at the same time, and they share the cache.
+ */
+final class CachedTabixReader implements Closeable {
+
+	/*
+	 * bgzf blocks hold up to 64kb, so this is up to 32mb of decompressed data per file
+	 */
+	static final int DEFAULT_CACHE_SIZE = 512;
+
+	private static final int BGZF_HEADER_LENGTH = 18;
+	private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+	private record InflatedBlock(byte[] data, int compressedLength) {}
+
+	private final TabixIndex index;
+	private final FileChannel channel;
+	private final long fileLength;
+	private final int sequenceColumn;
+	private final int startColumn;
+	private final int endColumn;
+	private final boolean isVcf;
+	private final boolean zeroBased;
+	private final char metaCharacter;
+	private final Map<Long, InflatedBlock> cache;
+
+	CachedTabixReader(String file) throws IOException {
+		this(file, DEFAULT_CACHE_SIZE);
+	}
+
+	CachedTabixReader(String file, final int cacheSize) throws IOException {
+		this.index = new TabixIndex(new File(file + ".tbi"));
+		TabixFormat format = index.getFormatSpec();
+		this.sequenceColumn = format.sequenceColumn - 1;
+		this.startColumn = format.startPositionColumn - 1;
+		this.endColumn = format.endPositionColumn - 1;
+		this.isVcf = (format.flags & 0xffff) == TabixFormat.VCF_FLAGS;
+		this.zeroBased = (format.flags & TabixFormat.ZERO_BASED) != 0;
+		this.metaCharacter = format.metaCharacter;
+		this.channel = FileChannel.open(new File(file).toPath(), StandardOpenOption.READ);
+		this.fileLength = channel.size();
+		this.cache = new LinkedHashMap<>(cacheSize * 2, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, InflatedBlock> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	/**
+	 * @return the lines, in file order, of the records on the supplied contig that overlap the supplied (1-based, inclusive) range
+	 */
+	List<String> query(String chr, int start, int end) throws IOException {
+		if ( ! index.containsChromosome(chr)) {
+			return Collections.emptyList();
+		}
+		List<String> lines = new ArrayList<>();
+		/*
+		 * ask the index for a slightly larger range, and check the records against the actual range here
+		 */
+		for (Block block : index.getBlocks(chr, Math.max(1, start - 1), end + 1)) {
+			if ( ! readLines(block.getStartPosition(), block.getEndPosition(), chr, start, end, lines)) {
+				break;
+			}
+		}
+		return lines;
+	}
+
+	/*
+	 * adds the overlapping records that start before the end virtual offset
+	 * returns false once a record past the range (or on another contig) is found, as later blocks won't have any overlapping records either
+	 */
+	private boolean readLines(long startOffset, long endOffset, String chr, int start, int end, List<String> lines) throws IOException {
+		long address = startOffset >>> 16;
+		int offset = (int) (startOffset & 0xffff);
+		InflatedBlock block = getBlock(address);
+		byte[] partial = null;
+
+		while (null != block) {
+			byte[] data = block.data();
+			int lineStart = offset;
+			for (int i = offset; i < data.length; i++) {
+				if (data[i] == '\n') {
+					String line;
+					if (null != partial) {
+						line = concat(partial, data, lineStart, i);
+						partial = null;
+					} else {
+						line = new String(data, lineStart, i - lineStart, StandardCharsets.ISO_8859_1);
+					}
+					int overlap = overlaps(line, chr, start, end);
+					if (overlap > 0) {
+						return false;
+					}
+					if (overlap == 0) {
+						lines.add(line);
+					}
+					lineStart = i + 1;
+					/*
+					 * stop when the next line starts at or after the end of this chunk
+					 */
+					long next = lineStart < data.length ? (address << 16) | lineStart : (address + block.compressedLength()) << 16;
+					if (next >= endOffset) {
+						return true;
+					}
+				}
+			}
+			if (lineStart < data.length) {
+				partial = null == partial ? Arrays.copyOfRange(data, lineStart, data.length) : concatBytes(partial, data, lineStart, data.length);
+			}
+			address += block.compressedLength();
+			offset = 0;
+			block = getBlock(address);
+		}
+		/*
+		 * last line of the file, without a line break
+		 */
+		if (null != partial) {
+			int overlap = overlaps(new String(partial, StandardCharsets.ISO_8859_1), chr, start, end);
+			if (overlap == 0) {
+				lines.add(new String(partial, StandardCharsets.ISO_8859_1));
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * -1 if the record is before the range (or is a header line), 0 if it overlaps, and 1 if it is after the range or on another contig
+	 */
+	private int overlaps(String line, String chr, int start, int end) {
+		if (line.isEmpty() || line.charAt(0) == metaCharacter) {
+			return -1;
+		}
+		String[] params = TabTokenizer.partialTokenize(line, '\t', Math.max(Math.max(sequenceColumn, startColumn), Math.max(endColumn, isVcf ? 3 : 0)) + 1);
+		if ( ! chr.equals(params[sequenceColumn])) {
+			return 1;
+		}
+		int recordStart = Integer.parseInt(params[startColumn]) + (zeroBased ? 1 : 0);
+		int recordEnd = recordStart;
+		if (isVcf) {
+			recordEnd = recordStart + params[3].length() - 1;
+		} else if (endColumn >= 0 && endColumn != startColumn) {
+			recordEnd = Integer.parseInt(params[endColumn]);
+		}
+		if (recordStart > end) {
+			return 1;
+		}
+		return recordEnd < start ? -1 : 0;
+	}
+
+	private static String concat(byte[] partial, byte[] data, int from, int to) {
+		return new String(concatBytes(partial, data, from, to), StandardCharsets.ISO_8859_1);
+	}
+
+	private static byte[] concatBytes(byte[] partial, byte[] data, int from, int to) {
+		byte[] bytes = Arrays.copyOf(partial, partial.length + to - from);
+		System.arraycopy(data, from, bytes, partial.length, to - from);
+		return bytes;
+	}
+
+	/**
+	 * @return the decompressed block at the supplied file offset, or null if there are no more blocks
+	 */
+	private InflatedBlock getBlock(long address) throws IOException {
+		synchronized (cache) {
+			InflatedBlock block = cache.get(address);
+			if (null != block) {
+				return block;
+			}
+		}
+		if (address + BGZF_HEADER_LENGTH > fileLength) {
+			return null;
+		}
+		InflatedBlock block = readBlock(address);
+		if (block.data().length == 0) {
+			/*
+			 * empty (end of file) block
+			 */
+			return null;
+		}
+		synchronized (cache) {
+			cache.put(address, block);
+		}
+		return block;
+	}
+
+	private InflatedBlock readBlock(long address) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(BGZF_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(header, address);
+		int extraLength = header.getShort(10) & 0xffff;
+		int blockLength = (header.getShort(16) & 0xffff) + 1;
+		if (header.get(0) != 31 || (header.get(1) & 0xff) != 139 || header.get(12) != 'B' || header.get(13) != 'C') {
+			throw new IOException("Invalid bgzf block at offset " + address);
+		}
+
+		ByteBuffer compressed = ByteBuffer.allocate(blockLength).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(compressed, address);
+		int uncompressedLength = compressed.getInt(blockLength - 4);
+		byte[] data = new byte[uncompressedLength];
+		int dataStart = 12 + extraLength;
+		Inflater inflater = INFLATER.get();
+		inflater.reset();
+		inflater.setInput(compressed.array(), dataStart, blockLength - dataStart - 8);
+		try {
+			int inflated = 0;
+			while (inflated < uncompressedLength && ! inflater.finished()) {
+				int n = inflater.inflate(data, inflated, uncompressedLength - inflated);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				inflated += n;
+			}
+			if (inflated != uncompressedLength) {
+				throw new IOException("Could not decompress bgzf block at offset " + address);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Could not decompress bgzf block at offset " + address, e);
+		}
+		return new InflatedBlock(data, blockLength);
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of file at offset " + position);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -6,9 +6,16 @@
 package au.edu.qimr.qannotate.modes;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.qcmg.common.log.QLogger;
 import org.qcmg.common.log.QLoggerFactory;
@@ -22,7 +29,6 @@ import org.qcmg.common.vcf.header.VcfHeaderUtils;
 import org.qcmg.qio.vcf.VcfFileReader;
 import org.qcmg.qio.record.RecordWriter;
 import au.edu.qimr.qannotate.Options;
-import htsjdk.tribble.readers.TabixReader;
 
 
 public class  CaddMode extends AbstractMode{
@@ -30,12 +36,34 @@ public class  CaddMode extends AbstractMode{
 	private static final Comparator<ChrPosition> COMPARATOR = new ChrPositionComparator();
 	private final static String CADD = "CADD";
 	
+	/*
+	 * windows that may be queried ahead of the one being written, per thread
+	 */
+	private static final int PENDING_WINDOWS_PER_THREAD = 4;
+	
 	private static long outputNo = 0;
 	private static long blockNo = 0;	
 	private static long inputNo = 0;
 	private final QLogger logger= QLoggerFactory.getLogger(CaddMode.class);
 	
 	public static final String description = "query CADD library for this variant. Format: (Ref>Alt|isDerived|Consequence|ConsScore|ConsDetail|scoreSegDup|priPhyloP|GerpRS|mirSVR-E|cHmmTssA|motifDist|ESP_AFR|ESP_EUR|TG_AMR|FeatureID|FeatureID|CCDS|relcDNApos)";	
+	
+	/*
+	 * adjacent variants that are queried (and written) together
+	 */
+	private static final class Window {
+		private final String chr;
+		private final int start;
+		private int end;
+		private final Map<ChrPosition, List<VcfRecord>> positionRecordMap = new HashMap<>();
+		private int blockSize;
+		private int outputSize;
+		
+		private Window(String chr, int start) {
+			this.chr = chr;
+			this.start = start;
+		}
+	}
 		
 	public CaddMode( Options options) throws Exception {		
 		
@@ -44,14 +72,16 @@ public class  CaddMode extends AbstractMode{
 		final int gap = options.getGapSize();
 		
 		final String[] database = options.getDatabaseFiles();
-		final TabixReader[] tabixs = new TabixReader[database.length];
+		final CachedTabixReader[] tabixs = new CachedTabixReader[database.length];
 		for(int i = 0; i < database.length; i ++)
-			tabixs[i] = new TabixReader( database[i] );
+			tabixs[i] = new CachedTabixReader( database[i] );
 		
-		
-		String chr = null;
-		int pos = 0; 
-		int start = 1;
+		/*
+		 * windows are queried in parallel, each against all databases in turn, and written in input order
+		 */
+		final int threadNo = Math.max(1, Runtime.getRuntime().availableProcessors());
+		final ExecutorService queryThreads = Executors.newFixedThreadPool(threadNo);
+		final Deque<Future<Window>> pending = new ArrayDeque<>();
 		
 		try (VcfFileReader reader = new VcfFileReader(input);
 				RecordWriter<VcfRecord> writer = new RecordWriter<>( output)){
@@ -64,50 +94,79 @@ public class  CaddMode extends AbstractMode{
         	}
 
 			//read chrunk and annotateion	 
+        	Window window = null;
 			for (final VcfRecord re : reader){ 
-				//annotation
-				if( !re.getChromosome().equals(chr) || (re.getPosition() - pos) > gap){
-					//s1: annotate variants in hash map
-					if(chr != null) 
-						addAnnotation( chr, start-1, pos + 1, tabixs, writer );
-						
-					//s2: reset	hash map				
-					positionRecordMap.clear();
-					chr = re.getChromosome();
-					start = re.getPosition();						
+				if( null == window || !re.getChromosome().equals(window.chr) || (re.getPosition() - window.end) > gap){
+					//s1: annotate variants of the last window
+					if (null != window) {
+						submit(window, tabixs, queryThreads, pending, threadNo * PENDING_WINDOWS_PER_THREAD, writer);
+					}
+					//s2: start a new window
+					window = new Window(re.getChromosome(), re.getPosition());
 				}
 				
-				//add every variants into hashmap
-				pos = re.getPosition();
-				add2Map(re); 
+				//add every variants into window
+				window.end = re.getPosition();
+				add2Map(re, window.positionRecordMap); 
 			}
 			
 			//last block
-			if(chr != null)
-		    		addAnnotation( chr, start-1, pos+1 , tabixs, writer );			
-		}//end try	
+			if (null != window) {
+				submit(window, tabixs, queryThreads, pending, threadNo * PENDING_WINDOWS_PER_THREAD, writer);
+			}
+			while ( ! pending.isEmpty()) {
+				write(pending.poll().get(), writer);
+			}
+		} finally {
+			queryThreads.shutdownNow();
+			for (CachedTabixReader tabix : tabixs) {
+				tabix.close();
+			}
+		}
 
 		logger.info("total input variants is  " + inputNo);		 
 		logger.info("total annotated variants is  " + outputNo);
 		logger.info("total query CADD library time is " + blockNo);
 	}
 	
-	private void addAnnotation(String chr, int start, int end, TabixReader[] tabixs, RecordWriter<VcfRecord> writer) throws Exception {
+	/*
+	 * queues the window for annotation, writing out the earliest windows while more than maxPending are queued
+	 */
+	private void submit(Window window, CachedTabixReader[] tabixs, ExecutorService queryThreads, Deque<Future<Window>> pending, int maxPending, RecordWriter<VcfRecord> writer) throws Exception {
+		pending.add(queryThreads.submit(() -> addAnnotation(window, tabixs)));
+		while (pending.size() > maxPending) {
+			write(pending.poll().get(), writer);
+		}
+	}
+	
+	private void write(Window window, RecordWriter<VcfRecord> writer) throws Exception {
+		final List<ChrPosition> orderedList = new ArrayList<>(window.positionRecordMap.keySet());
+		orderedList.sort(COMPARATOR);
+		for (final ChrPosition position : orderedList) {
+			for(VcfRecord re: window.positionRecordMap.get(position)) {
+				writer.add( re );
+			}
+		}
+			 			
+		//get stats   			
+		logger.debug(String.format("%8d: query(%s, %8d, %8d) [ %8d,%8d,%8d ] ", blockNo++, window.chr, window.start - 1, window.end + 1, window.blockSize, window.positionRecordMap.size(), window.outputSize ));			
+	    	inputNo += window.positionRecordMap.size();   	
+	    	outputNo += window.outputSize;
+	}
+	
+	private static Window addAnnotation(Window window, CachedTabixReader[] tabixs) throws Exception {
 		
-	    	String line; 
 	    	String[] eles;
 	    	String last = null;
 	
-	    	int blockSize = 0; 
-	    	int outputSize = 0;
+	    	String chr = window.chr;
 	    	if(chr.startsWith("chr"))  chr = chr.substring(3);
 	    	if(chr.equalsIgnoreCase("m")) chr = "MT"; 
 
     	
-		for(TabixReader tabix : tabixs){	
-			TabixReader.Iterator it = tabix.query(chr, start, end);
-			while(( line = it.next())!= null){
-				blockSize ++;  
+		for(CachedTabixReader tabix : tabixs){	
+			for (String line : tabix.query(chr, window.start, window.end + 1)) {
+				window.blockSize ++;  
 				
 				//only retrive the first annotation entry from CADD library
 	    			eles = TabTokenizer.tokenize(line, '\t');	
@@ -123,7 +182,7 @@ public class  CaddMode extends AbstractMode{
 		    		int e = s + eles[2].length() - 1;   //start position + length -1
 		    		
 		    		ChrPosition cp  = new ChrRangePosition(chr, s, e);
-		    		List<VcfRecord> inputVcfs = positionRecordMap.get(cp);	    
+		    		List<VcfRecord> inputVcfs = window.positionRecordMap.get(cp);	    
 				if ( (null == inputVcfs) || inputVcfs.size() == 0 ) {
 					continue; 
 				}
@@ -145,33 +204,20 @@ public class  CaddMode extends AbstractMode{
 			    				String info = inputVcf.getInfoRecord().getField(CADD);
 			    				info = (info == null)? CADD + "=" + cadd : CADD + "=" + info + "," + cadd;
 			    				inputVcf.appendInfo( info);
-			    				outputSize ++;
+			    				window.outputSize ++;
 			    			}
 			    		}
 		    		}
 			}
 		}
-		
-		//output
-		final List<ChrPosition> orderedList = new ArrayList<>(positionRecordMap.keySet());
-		orderedList.sort(COMPARATOR);
-		for (final ChrPosition position : orderedList) {
-			for(VcfRecord re: positionRecordMap.get(position)) {
-				writer.add( re );
-			}
-		}
-			 			
-		//get stats   			
-		logger.debug(String.format("%8d: query(%s, %8d, %8d) [ %8d,%8d,%8d ] ", blockNo++, chr, start, end, blockSize, positionRecordMap.size(), outputSize ));			
-	    	inputNo += positionRecordMap.size();   	
-	    	outputNo += outputSize;
+		return window;
 	}
 		
 	/**
 	 * it remove "chr" and change "chrM" to "MT"  for reference name 
 	 * @param re input vcf record
 	 */
-	private void add2Map(VcfRecord re){
+	private static void add2Map(VcfRecord re, Map<ChrPosition, List<VcfRecord>> positionRecordMap){
 		ChrPosition pos = re.getChrPosition();
 		String chr = pos.getChromosome();	
 		boolean change = false; 
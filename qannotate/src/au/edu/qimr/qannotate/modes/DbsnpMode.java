@@ -9,7 +9,9 @@ import static org.qcmg.common.util.Constants.EQ;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.qcmg.common.log.QLogger;
 import org.qcmg.common.log.QLoggerFactory;
@@ -21,12 +23,14 @@ import org.qcmg.common.util.Constants;
 import org.qcmg.common.util.IndelUtils;
 import org.qcmg.common.util.TabTokenizer;
 import org.qcmg.common.vcf.VcfRecord;
+import org.qcmg.common.vcf.header.VcfHeader;
 import org.qcmg.common.vcf.header.VcfHeaderRecord;
 import org.qcmg.common.vcf.header.VcfHeaderUtils;
 import org.qcmg.common.vcf.header.VcfHeaderUtils.VcfInfoType;
-import org.qcmg.qio.vcf.VcfFileReader;
+import org.qcmg.qio.record.StringFileReader;
 
 import au.edu.qimr.qannotate.Options;
+import htsjdk.tribble.readers.TabixReader;
 
 public class DbsnpMode extends AbstractMode{
 	private final static QLogger logger = QLoggerFactory.getLogger(DbsnpMode.class);
@@ -62,67 +66,157 @@ public class DbsnpMode extends AbstractMode{
 		}
 	}
 	
+	/**
+	 * Reads the dbSNP file from start to finish, or queries it through its tabix index when there are few enough variants
+	 * (see {@link QueryPositions#useIndex(File)}).
+	 * Either way, lines are only turned into {@link VcfRecord}s if they overlap the start of one of the variants.
+	 */
 	@Override
 	void addAnnotation(String dbSNPFile) throws IOException{
-		 				 
-		try (VcfFileReader reader= new VcfFileReader( dbSNPFile )) {
+		addAnnotation(dbSNPFile, new QueryPositions(positionRecordMap.keySet()).useIndex(new File(dbSNPFile)));
+	}
+	
+	void addAnnotation(String dbSNPFile, boolean useIndex) throws IOException{
+		
+		File dbSNP = new File(dbSNPFile);
+		QueryPositions positions = new QueryPositions(positionRecordMap.keySet());
+		
+		try (StringFileReader reader = new StringFileReader(dbSNP)) {
+			VcfHeader dbSNPHeader = new VcfHeader(reader.getHeader());
 			//add dbSNP version into header		
-			VcfHeaderRecord dbre = reader.getVcfHeader().firstMatchedRecord(VcfHeaderUtils.STANDARD_DBSNP_LINE);
+			VcfHeaderRecord dbre = dbSNPHeader.firstMatchedRecord(VcfHeaderUtils.STANDARD_DBSNP_LINE);
 			 
 			if (dbre != null)  
 				header.addOrReplace(String.format("##INFO=<ID=%s,Number=0,Type=%s,Description=\"%s\">",
 								VcfHeaderUtils.INFO_DB, VcfInfoType.Flag.name(),
 								VcfHeaderUtils.INFO_DB_DESC )  );  		
 		 
-			if (reader.getVcfHeader().getInfoRecord(VcfHeaderUtils.INFO_CAF) != null )	
+			if (dbSNPHeader.getInfoRecord(VcfHeaderUtils.INFO_CAF) != null )	
 				header.addOrReplace( String.format("##INFO=<ID=%s,Number=.,Type=String,Description=\"%s\">", VcfHeaderUtils.INFO_VAF, VcfHeaderUtils.INFO_VAF_DESC  )	);
 
-			if (reader.getVcfHeader().getInfoRecord(VcfHeaderUtils.INFO_VLD) != null )	
-				header.addOrReplace( reader.getVcfHeader().getInfoRecord(VcfHeaderUtils.INFO_VLD));
+			if (dbSNPHeader.getInfoRecord(VcfHeaderUtils.INFO_VLD) != null )	
+				header.addOrReplace( dbSNPHeader.getInfoRecord(VcfHeaderUtils.INFO_VLD));
 		 
 			int dbSnpNo = 0;
-			for (final VcfRecord dbSNPVcf : reader) {
-				 
-				//each dbSNP check twice, since indel alleles followed by one reference base, eg. chr1 100 . TT T ...
-				ChrPosition dbSnpCP = dbSNPVcf.getChrPosition();
-				final String chr = IndelUtils.getFullChromosome(dbSNPVcf.getChromosome());
-				if ( ! chr.equals(dbSnpCP.getChromosome())) {
-					dbSnpCP = ChrPositionUtils.cloneWithNewChromosomeName(dbSnpCP, chr);
-				}
-				List<VcfRecord> inputVcfs = positionRecordMap.get(dbSnpCP);
-				if (null != inputVcfs && inputVcfs.size() != 0){
-					for(VcfRecord re: inputVcfs) {
-						if(annotateDBsnp(re, dbSNPVcf )) {
-							dbSnpNo ++;						
+			if (useIndex) {
+				logger.info("querying indexed dbSNP file for " + positions.getWindowCount() + " regions");
+				dbSnpNo = annotateFromIndex(dbSNPFile, positions);
+			} else {
+				String lastChr = null;
+				String fullChr = null;
+				for (String line : reader) {
+					int t1 = line.indexOf(Constants.TAB);
+					int t2 = t1 < 0 ? -1 : line.indexOf(Constants.TAB, t1 + 1);
+					int t3 = t2 < 0 ? -1 : line.indexOf(Constants.TAB, t2 + 1);
+					int t4 = t3 < 0 ? -1 : line.indexOf(Constants.TAB, t3 + 1);
+					if (t4 > 0) {
+						if (null == lastChr || ! line.startsWith(lastChr) || lastChr.length() != t1) {
+							lastChr = line.substring(0, t1);
+							fullChr = IndelUtils.getFullChromosome(lastChr);
+						}
+						int start = Integer.parseInt(line, t1 + 1, t2, 10);
+						if (positions.firstStartWithin(fullChr, start, start + Math.max(0, t4 - t3 - 2)) < 0) {
+							continue;
 						}
 					}
+					dbSnpNo += annotate(getRecord(line));
 				}
-				
-				//check RSPOS for MNV only
-				if ( ! StringUtils.doesStringContainSubString(dbSNPVcf.getInfo(), "VC=MNV", false)) {
+			}
+			 
+			logger.info(String.format("found %d matched dbSNP ", dbSnpNo));
+		}
+	}
+	
+	/*
+	 * Queries windows of nearby variants. A record overlapping the variants of more than one window is only used
+	 * in the window holding the first of those variants, so that it is used once, as when reading the whole file.
+	 */
+	private int annotateFromIndex(String dbSNPFile, QueryPositions positions) throws IOException {
+		int dbSnpNo = 0;
+		try (TabixReader tabix = new TabixReader(dbSNPFile)) {
+			Map<String, String> dbChromosomes = new HashMap<>();
+			for (String chr : tabix.getChromosomes()) {
+				dbChromosomes.put(IndelUtils.getFullChromosome(chr), chr);
+			}
+			
+			for (String chr : positions.getChromosomes()) {
+				String dbChr = dbChromosomes.get(chr);
+				if (null == dbChr) {
 					continue;
 				}
-				
-				//if RSPOS different to column 2
-				String rspos = dbSNPVcf.getInfoRecord().getField("RSPOS");
-				if( ! StringUtils.isNullOrEmpty(rspos)) {
-					int start = Integer.parseInt(rspos);
-					if(start == dbSnpCP.getStartPosition() || start > dbSnpCP.getEndPosition()) continue; 
+				int [] windows = positions.getWindows(chr);
+				for (int w = 0 ; w < windows.length - 1 ; w++) {
+					int first = windows[w];
+					int last = windows[w + 1] - 1;
 					
-					dbSnpCP = new ChrRangePosition(chr, start, dbSnpCP.getEndPosition() );	
-					inputVcfs = positionRecordMap.get(dbSnpCP);
-					if (null != inputVcfs && inputVcfs.size() != 0) {
-						for(VcfRecord re: inputVcfs) {
-							if(annotateDBsnp(re, dbSNPVcf )) {
-								dbSnpNo ++;					
-							}
+					//tabix regions are 0-based and half open
+					TabixReader.Iterator iter = tabix.query(dbChr, positions.getStart(chr, first) - 1, positions.getStart(chr, last));
+					String line;
+					while ((line = iter.next()) != null) {
+						VcfRecord dbSNPVcf = getRecord(line);
+						int start = dbSNPVcf.getPosition();
+						int index = positions.firstStartWithin(chr, start, dbSNPVcf.getChrPosition().getEndPosition());
+						if (index >= first && index <= last) {
+							dbSnpNo += annotate(dbSNPVcf);
 						}
 					}
 				}
 			}
-			 
-			logger.info(String.format("found %d matched dbSNP ", dbSnpNo));
 		}
+		return dbSnpNo;
+	}
+	
+	private static VcfRecord getRecord(String line) {
+		final String[] params = TabTokenizer.tokenize(line);
+		if (8 > params.length) {
+			throw new IllegalArgumentException("Bad VCF format. Insufficient columns: '" + line + "'");
+		}
+		return new VcfRecord(params);
+	}
+	
+	/**
+	 * @return the number of input variants annotated with the supplied dbSNP record
+	 */
+	private int annotate(VcfRecord dbSNPVcf) {
+		int dbSnpNo = 0;
+		 
+		//each dbSNP check twice, since indel alleles followed by one reference base, eg. chr1 100 . TT T ...
+		ChrPosition dbSnpCP = dbSNPVcf.getChrPosition();
+		final String chr = IndelUtils.getFullChromosome(dbSNPVcf.getChromosome());
+		if ( ! chr.equals(dbSnpCP.getChromosome())) {
+			dbSnpCP = ChrPositionUtils.cloneWithNewChromosomeName(dbSnpCP, chr);
+		}
+		List<VcfRecord> inputVcfs = positionRecordMap.get(dbSnpCP);
+		if (null != inputVcfs && inputVcfs.size() != 0){
+			for(VcfRecord re: inputVcfs) {
+				if(annotateDBsnp(re, dbSNPVcf )) {
+					dbSnpNo ++;						
+				}
+			}
+		}
+		
+		//check RSPOS for MNV only
+		if ( ! StringUtils.doesStringContainSubString(dbSNPVcf.getInfo(), "VC=MNV", false)) {
+			return dbSnpNo;
+		}
+		
+		//if RSPOS different to column 2
+		String rspos = dbSNPVcf.getInfoRecord().getField("RSPOS");
+		if( ! StringUtils.isNullOrEmpty(rspos)) {
+			int start = Integer.parseInt(rspos);
+			if(start == dbSnpCP.getStartPosition() || start > dbSnpCP.getEndPosition()) return dbSnpNo; 
+			
+			dbSnpCP = new ChrRangePosition(chr, start, dbSnpCP.getEndPosition() );	
+			inputVcfs = positionRecordMap.get(dbSnpCP);
+			if (null != inputVcfs && inputVcfs.size() != 0) {
+				for(VcfRecord re: inputVcfs) {
+					if(annotateDBsnp(re, dbSNPVcf )) {
+						dbSnpNo ++;					
+					}
+				}
+			}
+		}
+		return dbSnpNo;
 	}
 	
 	/**
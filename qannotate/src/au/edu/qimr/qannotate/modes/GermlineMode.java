@@ -81,6 +81,7 @@ public class GermlineMode extends AbstractMode{
  			}
  		}
  		
+ 		QueryPositions positions = new QueryPositions(positionRecordMap.keySet());
  		int updatedRecordCount = 0;
  		try (InputStream fileStream = new FileInputStream(dbGermlineFile);
 	 		InputStream gzipStream =  (FileUtils.isFileNameGZip(new File(dbGermlineFile)))  ? new GZIPInputStream(fileStream) : fileStream;
@@ -97,6 +98,13 @@ public class GermlineMode extends AbstractMode{
 	 				logger.info("Hit " + mCounter + "M germlinedb records");
 	 			}
 	 			
+	 			/*
+	 			 * skip lines whose contig and position don't match a variant without tokenizing them
+	 			 */
+	 			if ( ! mayMatch(line, positions)) {
+	 				continue;
+	 			}
+	 			
 	 			String[] usParams = TabTokenizer.tokenize(line, '_');
 	 			if (null != usParams && usParams.length > 3) {
 	 				// contig is first followed by position
@@ -123,6 +131,27 @@ public class GermlineMode extends AbstractMode{
  		
 	 }
  	
+ 	/**
+ 	 * Lines that aren't of the form contig_position_ref_alt... are passed through, so that they are reported as they would otherwise be.
+ 	 * @return false if the line is well formed and its contig and position don't match any of the positions
+ 	 */
+ 	static boolean mayMatch(String line, QueryPositions positions) {
+ 		int u1 = line.indexOf('_');
+ 		int u2 = u1 < 0 ? -1 : line.indexOf('_', u1 + 1);
+ 		if (u2 < 0 || line.indexOf('_', u2 + 1) < 0 || u2 == u1 + 1) {
+ 			return true;
+ 		}
+ 		int position = 0;
+ 		for (int i = u1 + 1 ; i < u2 ; i++) {
+ 			char c = line.charAt(i);
+ 			if (c < '0' || c > '9' || position > 100_000_000) {
+ 				return true;
+ 			}
+ 			position = position * 10 + (c - '0');
+ 		}
+ 		return positions.contains(line.substring(0, u1), position);
+ 	}
+ 	
  	/**
  	 * 
  	 * @param inputVcf  contains vcf record which INFO field will be updated if the ref and alts match
@@ -0,0 +1,123 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+*/
+package au.edu.qimr.qannotate.modes;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.qcmg.common.model.ChrPosition;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Sorted start positions of the variants being annotated, by chromosome.
+ * <p>
+ * Used to discard database lines that can't match any of the variants before a record is built from them, and to decide
+ * whether a database should be read in full or queried through its tabix index.
+ */
+final class QueryPositions {
+
+	/*
+	 * positions closer than this are queried together
+	 */
+	static final int MAX_WINDOW_GAP = 1000;
+
+	/*
+	 * approximate number of bytes of compressed file read for each indexed query (one bgzf block)
+	 */
+	static final int BYTES_PER_QUERY = 65536;
+
+	private final Map<String, int[]> startsByChromosome = new HashMap<>();
+
+	QueryPositions(Collection<ChrPosition> positions) {
+		Map<String, TIntArrayList> starts = new HashMap<>();
+		for (ChrPosition cp : positions) {
+			starts.computeIfAbsent(cp.getChromosome(), f -> new TIntArrayList()).add(cp.getStartPosition());
+		}
+		starts.forEach((chr, list) -> {
+			int [] array = list.toArray();
+			Arrays.sort(array);
+			int size = 0;
+			for (int i = 0 ; i < array.length ; i++) {
+				if (i == 0 || array[i] != array[i - 1]) {
+					array[size++] = array[i];
+				}
+			}
+			startsByChromosome.put(chr, Arrays.copyOf(array, size));
+		});
+	}
+
+	Set<String> getChromosomes() {
+		return startsByChromosome.keySet();
+	}
+
+	/**
+	 * @return the index (into the sorted starts of the chromosome) of the first start within the supplied range, or -1 if there isn't one
+	 */
+	int firstStartWithin(String chr, int start, int end) {
+		int [] starts = startsByChromosome.get(chr);
+		if (null == starts) {
+			return -1;
+		}
+		int i = Arrays.binarySearch(starts, start);
+		if (i < 0) {
+			i = -i - 1;
+		}
+		return (i < starts.length && starts[i] <= end) ? i : -1;
+	}
+
+	boolean contains(String chr, int position) {
+		return firstStartWithin(chr, position, position) >= 0;
+	}
+
+	/**
+	 * Groups the starts of the chromosome into windows where neighbouring starts are no more than {@link #MAX_WINDOW_GAP} apart
+	 * @return the index of the first start of each window, followed by the number of starts of the chromosome
+	 */
+	int[] getWindows(String chr) {
+		int [] starts = startsByChromosome.get(chr);
+		if (null == starts || starts.length == 0) {
+			return new int[] {0};
+		}
+		TIntArrayList windows = new TIntArrayList();
+		windows.add(0);
+		for (int i = 1 ; i < starts.length ; i++) {
+			if (starts[i] - starts[i - 1] > MAX_WINDOW_GAP) {
+				windows.add(i);
+			}
+		}
+		windows.add(starts.length);
+		return windows.toArray();
+	}
+
+	int getStart(String chr, int index) {
+		return startsByChromosome.get(chr)[index];
+	}
+
+	int getWindowCount() {
+		int count = 0;
+		for (String chr : startsByChromosome.keySet()) {
+			count += getWindows(chr).length - 1;
+		}
+		return count;
+	}
+
+	/**
+	 * An indexed database is queried when the windows would read less of the file than reading it from start to finish.
+	 *
+	 * @return true if the database has a tabix index and should be queried through it
+	 */
+	boolean useIndex(File database) {
+		if ( ! new File(database.getPath() + ".tbi").exists()) {
+			return false;
+		}
+		return (long) getWindowCount() * BYTES_PER_QUERY < database.length();
+	}
+}
@@ -32,6 +32,12 @@ public class Annotate {
     /** Number of variants processed per chunk. Controls peak memory: peak ≈ CHUNK_SIZE × N_sources × avg-annotation-bytes. */
     static final int CHUNK_SIZE = 100_000;
 
+    /** Maximum number of sub ranges that a chunk is split into for an indexed annotation source. */
+    static final int MAX_SUB_RANGES = 4;
+
+    /** Sub ranges are not made smaller than this, as each one starts with a seek. */
+    static final int MIN_SUB_RANGE_SIZE = 1_000;
+
     private static final ChrPositionAnnotations POISON_PILL =
             new ChrPositionAnnotations(null, null, "", "", "");
 
@@ -88,13 +94,13 @@ public class Annotate {
         }
         logger.info("Headers have been checked - OK");
 
-        List<AnnotationSource> annotationSources = new ArrayList<>();
-        AnnotateUtils.populateAnnotationSources(ais, annotationSources);
+        int maxSubRanges = Math.min(MAX_SUB_RANGES, Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, ais.getInputs().size())));
+        List<List<AnnotationSource>> annotationSources = AnnotateUtils.getAnnotationSourceGroups(ais, maxSubRanges);
         logger.info("annotationSources have been loaded (size: " + annotationSources.size() + ")");
-        annotationSources.forEach(as -> logger.info(as.toString()));
+        annotationSources.forEach(group -> logger.info(group.getFirst().toString() + (group.size() > 1 ? " (indexed, " + group.size() + " sub ranges)" : "")));
 
-        // One thread per source, reused across all chunks.
-        ExecutorService sourceExecutor = Executors.newFixedThreadPool(annotationSources.size());
+        // One thread per source (and per sub range of an indexed source), reused across all chunks.
+        ExecutorService sourceExecutor = Executors.newFixedThreadPool(annotationSources.stream().mapToInt(List::size).sum());
 
         // Consumer (writer) thread — started once up front so writing overlaps sweeping.
         BlockingQueue<ChrPositionAnnotations> queue = new LinkedBlockingQueue<>(50_000);
@@ -178,6 +184,9 @@ public class Annotate {
      * Sweeps all annotation sources in parallel over one chunk of variants,
      * assembles per-variant result arrays, and hands them to the writer queue.
      * <p>
+     * Indexed sources have several {@link AnnotationSource} instances, and the chunk is split into that many contiguous
+     * sub ranges, each swept by its own instance. Instance k always gets sub range k, so each instance still only moves forward.
+     * <p>
      * Peak live memory while this method runs:
      *   chunk.size() × annotationSources.size() × (avg annotation string bytes)
      * which is independent of total VCF size.
@@ -186,27 +195,42 @@ public class Annotate {
      * files; they must not be shared between concurrent calls to this method.
      */
     private static void processChunk(List<VariantWork> chunk,
-                                     List<AnnotationSource> annotationSources,
+                                     List<List<AnnotationSource>> annotationSources,
                                      ExecutorService sourceExecutor,
                                      BlockingQueue<ChrPositionAnnotations> queue) throws Exception {
 
         final int numSources = annotationSources.size();
+        final int n = chunk.size();
 
-        // Sweep all sources in parallel over this chunk.
-        List<Future<String[]>> futures = new ArrayList<>(numSources);
-        for (AnnotationSource source : annotationSources) {
-            futures.add(sourceExecutor.submit(new SourceSweeper(source, chunk)));
+        // Sweep all sources (and sub ranges) in parallel over this chunk.
+        List<List<Future<String[]>>> futures = new ArrayList<>(numSources);
+        for (List<AnnotationSource> group : annotationSources) {
+            int subRanges = getSubRangeCount(n, group.size());
+            List<Future<String[]>> groupFutures = new ArrayList<>(subRanges);
+            for (int r = 0; r < subRanges; r++) {
+                List<VariantWork> subRange = chunk.subList(getSubRangeStart(n, subRanges, r), getSubRangeStart(n, subRanges, r + 1));
+                groupFutures.add(sourceExecutor.submit(new SourceSweeper(group.get(r), subRange)));
+            }
+            futures.add(groupFutures);
         }
 
         // Collect results — String[numSources][chunk.size()].
         String[][] chunkResults = new String[numSources][];
         for (int s = 0; s < numSources; s++) {
-            chunkResults[s] = futures.get(s).get();
+            List<Future<String[]>> groupFutures = futures.get(s);
+            if (groupFutures.size() == 1) {
+                chunkResults[s] = groupFutures.getFirst().get();
+            } else {
+                chunkResults[s] = new String[n];
+                for (int r = 0; r < groupFutures.size(); r++) {
+                    String[] subRangeResults = groupFutures.get(r).get();
+                    System.arraycopy(subRangeResults, 0, chunkResults[s], getSubRangeStart(n, groupFutures.size(), r), subRangeResults.length);
+                }
+            }
         }
 
         // Assemble per-variant annotation arrays and enqueue for writing.
         // After this loop chunkResults goes out of scope and is eligible for GC.
-        final int n = chunk.size();
         for (int i = 0; i < n; i++) {
             VariantWork v = chunk.get(i);
             String[] annotations = new String[numSources];
@@ -217,6 +241,14 @@ public class Annotate {
         }
     }
 
+    static int getSubRangeCount(int chunkSize, int maxSubRanges) {
+        return Math.max(1, Math.min(maxSubRanges, chunkSize / MIN_SUB_RANGE_SIZE));
+    }
+
+    static int getSubRangeStart(int chunkSize, int subRanges, int subRange) {
+        return (int) ((long) chunkSize * subRange / subRanges);
+    }
+
     private static VariantWork toVariantWork(ChrPosition cp, String gatkAD, String gatkGT, String originalAlt) {
         String contig = cp.getChromosome().startsWith("chr") ? cp.getChromosome().substring(3) : cp.getChromosome();
         long cpAsLong = ChrPositionUtils.convertContigAndPositionToLong(contig, cp.getStartPosition());
@@ -49,19 +49,46 @@ public class AnnotateUtils {
      */
     public static void populateAnnotationSources(AnnotationInputs ais, List<AnnotationSource> annotationSources) throws IOException {
         for (AnnotationInput ai : ais.getInputs()) {
-            String fileName = ai.getFile();
-            String fieldNames = ai.getFields();
-
-            logger.info("fileName: " + fileName + ", positions: " + ai.getChrIndex() + ", " + ai.getPositionIndex() + ", " + ai.getRefIndex() + ", " + ai.getAltIndex() + ", fieldNames: " + fieldNames);
+            annotationSources.add(createAnnotationSource(ai, null));
+        }
+    }
 
-            if (ai.isSnpEffVcf()) {
-                annotationSources.add(new AnnotationSourceSnpEffVCF(new StringFileReader(new File(fileName), 1024 * 1024), ai.getChrIndex(), ai.getPositionIndex(), ai.getRefIndex(), ai.getAltIndex(), fieldNames, ai.isChrStartsWithChr()));
-            } else if (fileName.contains("vcf")) {
-                annotationSources.add(new AnnotationSourceVCF(new StringFileReader(new File(fileName), 1024 * 1024), ai.getChrIndex(), ai.getPositionIndex(), ai.getRefIndex(), ai.getAltIndex(), fieldNames, ai.isChrStartsWithChr()));
-            } else {
-                annotationSources.add(new AnnotationSourceTSV(new StringFileReader(new File(fileName), 1024 * 1024), ai.getChrIndex(), ai.getPositionIndex(), ai.getRefIndex(), ai.getAltIndex(), fieldNames, ai.isChrStartsWithChr()));
+    /**
+     * Creates the annotation sources, with a group of sources per input.
+     * Inputs that are block compressed are indexed (see {@link AnnotationSourceIndex}), and get up to maxSubRanges sources
+     * so that a chunk of variants can be split into sub ranges that are annotated at the same time.
+     * Other inputs get a single source.
+     */
+    public static List<List<AnnotationSource>> getAnnotationSourceGroups(AnnotationInputs ais, int maxSubRanges) throws IOException {
+        List<List<AnnotationSource>> groups = new ArrayList<>();
+        for (AnnotationInput ai : ais.getInputs()) {
+            AnnotationSourceIndex index = AnnotationSourceIndex.getIndex(new File(ai.getFile()), ai.getChrIndex(), ai.getPositionIndex(), ai.isChrStartsWithChr());
+            int subRanges = null == index ? 1 : Math.max(1, maxSubRanges);
+            List<AnnotationSource> group = new ArrayList<>(subRanges);
+            for (int i = 0; i < subRanges; i++) {
+                group.add(createAnnotationSource(ai, index));
             }
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    static AnnotationSource createAnnotationSource(AnnotationInput ai, AnnotationSourceIndex index) throws IOException {
+        String fileName = ai.getFile();
+        String fieldNames = ai.getFields();
+
+        logger.info("fileName: " + fileName + ", positions: " + ai.getChrIndex() + ", " + ai.getPositionIndex() + ", " + ai.getRefIndex() + ", " + ai.getAltIndex() + ", fieldNames: " + fieldNames);
+
+        AnnotationSource source;
+        if (ai.isSnpEffVcf()) {
+            source = new AnnotationSourceSnpEffVCF(new StringFileReader(new File(fileName), 1024 * 1024), ai.getChrIndex(), ai.getPositionIndex(), ai.getRefIndex(), ai.getAltIndex(), fieldNames, ai.isChrStartsWithChr());
+        } else if (fileName.contains("vcf")) {
+            source = new AnnotationSourceVCF(new StringFileReader(new File(fileName), 1024 * 1024), ai.getChrIndex(), ai.getPositionIndex(), ai.getRefIndex(), ai.getAltIndex(), fieldNames, ai.isChrStartsWithChr());
+        } else {
+            source = new AnnotationSourceTSV(new StringFileReader(new File(fileName), 1024 * 1024), ai.getChrIndex(), ai.getPositionIndex(), ai.getRefIndex(), ai.getAltIndex(), fieldNames, ai.isChrStartsWithChr());
         }
+        source.setIndex(index);
+        return source;
     }
 
     public static int checkHeaders(AnnotationInputs ais) {
@@ -1,11 +1,14 @@
 package au.edu.qimr.qannotate.nanno;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.stream.Collectors;
 
 import org.qcmg.common.log.QLogger;
@@ -18,6 +21,9 @@ import org.qcmg.common.util.ChrPositionUtils;
 import org.qcmg.common.util.TabTokenizer;
 import org.qcmg.qio.record.RecordReader;
 
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+
 public abstract class AnnotationSource implements Closeable {
 
     public static final String FIELD_DELIMITER_EQ = "=";
@@ -34,7 +40,12 @@ public abstract class AnnotationSource implements Closeable {
 
 
     protected final RecordReader<String> reader;
-    protected final Iterator<String> iter;
+    protected Iterator<String> iter;
+    /*
+     * only set for block compressed sources that have an index
+     */
+    private AnnotationSourceIndex index;
+    private SeekableLineIterator seekableIter;
     protected final int chrPositionInRecord;
     protected final int positionPositionInRecord;
     protected final int refPositionInFile;
@@ -57,6 +68,92 @@ public abstract class AnnotationSource implements Closeable {
     }
 
 
+    /**
+     * Reads this source through the supplied index, so that it can skip the records between the requested positions.
+     * The reader that this source was created with is closed.
+     */
+    public void setIndex(AnnotationSourceIndex index) throws IOException {
+        if (null == index) {
+            return;
+        }
+        this.index = index;
+        /*
+         * the header has been read by now, and the records are read through the index from here on
+         */
+        reader.close();
+        this.seekableIter = new SeekableLineIterator(new BlockCompressedInputStream(reader.getFile()), index.getFirstRecordOffset());
+        this.iter = seekableIter;
+    }
+
+    public boolean hasIndex() {
+        return null != index;
+    }
+
+    /*
+     * Iterates over the lines of a block compressed file, keeping track of the virtual offset of the next line so that it
+     * can jump ahead to a later offset
+     */
+    static final class SeekableLineIterator implements Iterator<String>, Closeable {
+        private final BlockCompressedInputStream in;
+        private String next;
+        private long nextOffset;
+        private boolean eof;
+
+        SeekableLineIterator(BlockCompressedInputStream in, long firstRecordOffset) throws IOException {
+            this.in = in;
+            if (firstRecordOffset < 0) {
+                eof = true;
+            } else {
+                in.seek(firstRecordOffset);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (null == next && ! eof) {
+                try {
+                    nextOffset = in.getFilePointer();
+                    next = in.readLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                eof = null == next;
+            }
+            return null != next;
+        }
+
+        @Override
+        public String next() {
+            if ( ! hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String line = next;
+            next = null;
+            return line;
+        }
+
+        /**
+         * Moves to the supplied offset if it is in a later block than the next line
+         */
+        void seekAhead(long offset) {
+            long position = null != next ? nextOffset : in.getFilePointer();
+            if (eof || BlockCompressedFilePointerUtil.getBlockAddress(offset) <= BlockCompressedFilePointerUtil.getBlockAddress(position)) {
+                return;
+            }
+            try {
+                in.seek(offset);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            next = null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
     public abstract String annotationToReturn(String[] record);
 
     public static String getEmptyRecordReturnValue(String fieldNames) {
@@ -131,7 +228,13 @@ public abstract class AnnotationSource implements Closeable {
             currentRecords = nextRecords;
         }
 
-//        String startsWithString = (chrStartsWithChr ? requestedCp.getChromosome() : requestedCp.getChromosome().substring(3));
+        /*
+         * the records between here and the bin holding the requested position can't be a match
+         */
+        if (null != seekableIter && matchWithNextCP != 0 && requestedCpAsLong > -1) {
+            seekableIter.seekAhead(index.getOffset(requestedCpAsLong));
+        }
+
         while (iter.hasNext()) {
             /*
              * check to see if this record is the one we want
@@ -168,6 +271,15 @@ public abstract class AnnotationSource implements Closeable {
         }
     }
 
+    /**
+     * Closes the block compressed stream used when this source has an index
+     */
+    protected void closeIndexedReader() throws IOException {
+        if (null != seekableIter) {
+            seekableIter.close();
+        }
+    }
+
     public static ChrPosition getChrPositionFromRecord(String[] nextRecordArray, int chrPositionInRecord, int positionPositionInRecord, String nextRecord) {
         if (null == nextRecordArray) {
             int firstTabIndex = nextRecord.indexOf(DEFAULT_DELIMITER);
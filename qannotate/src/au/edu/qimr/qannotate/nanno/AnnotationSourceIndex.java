@@ -0,0 +1,213 @@
+package au.edu.qimr.qannotate.nanno;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import org.qcmg.common.log.QLogger;
+import org.qcmg.common.log.QLoggerFactory;
+import org.qcmg.common.util.TabTokenizer;
+
+import gnu.trove.list.array.TLongArrayList;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.IOUtil;
+
+/**
+ * Index of a block compressed (bgzip) annotation source, holding the virtual file offset of the first record of each genomic bin.
+ * <p>
+ * This allows an {@link AnnotationSource} to jump over the parts of the file that lie between the variants being annotated,
+ * rather than reading (and decompressing) every line.
+ * The index is built by reading the source once, and is saved beside it (with a {@link #SUFFIX} suffix) so that later runs can load it.
+ * It is rebuilt if the source has changed, or if it is read with different chromosome and position columns.
+ */
+public final class AnnotationSourceIndex {
+
+	static final QLogger logger = QLoggerFactory.getLogger(AnnotationSourceIndex.class);
+
+	public static final String SUFFIX = ".nidx";
+
+	/*
+	 * bins are 2^BIN_SHIFT bases long
+	 */
+	static final int BIN_SHIFT = 14;
+
+	private static final int MAGIC = 0x4E494458;
+	private static final int VERSION = 1;
+
+	/*
+	 * chromosome and position (as returned by ChrPositionUtils.convertContigAndPositionToLong) of the first record of each bin,
+	 * and the virtual offset of that record
+	 */
+	private final long[] positions;
+	private final long[] offsets;
+	private final long firstRecordOffset;
+
+	AnnotationSourceIndex(long[] positions, long[] offsets, long firstRecordOffset) {
+		this.positions = positions;
+		this.offsets = offsets;
+		this.firstRecordOffset = firstRecordOffset;
+	}
+
+	/**
+	 * @return the index for the supplied source, loaded from beside the source if it is there and up to date, and built otherwise.
+	 * Returns null if the source is not block compressed, or if its records are not in an order that the index can search
+	 * (eg. non-standard contigs, whose keys are hash codes), in which case the source is swept without an index.
+	 */
+	public static AnnotationSourceIndex getIndex(File source, int chrPositionInRecord, int positionPositionInRecord, boolean chrStartsWithChr) throws IOException {
+		if ( ! IOUtil.isBlockCompressed(source.toPath())) {
+			return null;
+		}
+		File indexFile = new File(source.getPath() + SUFFIX);
+		if (indexFile.exists()) {
+			AnnotationSourceIndex index = load(indexFile, source, chrPositionInRecord, positionPositionInRecord, chrStartsWithChr);
+			if (null != index) {
+				return index;
+			}
+			logger.info("index " + indexFile.getName() + " is out of date - will rebuild");
+		}
+
+		logger.info("building index for " + source.getName());
+		AnnotationSourceIndex index;
+		try {
+			index = build(source, chrPositionInRecord - 1, positionPositionInRecord - 1, chrStartsWithChr);
+		} catch (IllegalArgumentException e) {
+			logger.warn("not indexing " + source.getName() + " - it will be swept instead: " + e.getMessage());
+			return null;
+		}
+		logger.info("built index for " + source.getName() + " with " + index.size() + " bins");
+		try {
+			index.save(indexFile, source, chrPositionInRecord, positionPositionInRecord, chrStartsWithChr);
+		} catch (IOException e) {
+			logger.warn("could not save index " + indexFile.getAbsolutePath() + ": " + e.getMessage());
+		}
+		return index;
+	}
+
+	/*
+	 * column numbers are 0-based here.
+	 * Throws an IllegalArgumentException if the records are not sorted by chromosome and position.
+	 */
+	static AnnotationSourceIndex build(File source, int chrPositionInRecord, int positionPositionInRecord, boolean chrStartsWithChr) throws IOException {
+		TLongArrayList positions = new TLongArrayList();
+		TLongArrayList offsets = new TLongArrayList();
+		boolean canUseStartsWith = chrPositionInRecord == 0 && positionPositionInRecord == 1;
+		long firstRecordOffset = -1;
+		long lastBin = -1;
+		long lastCp = Long.MIN_VALUE;
+
+		try (BlockCompressedInputStream in = new BlockCompressedInputStream(source)) {
+			boolean inHeader = true;
+			while (true) {
+				long offset = in.getFilePointer();
+				String line = in.readLine();
+				if (null == line) {
+					break;
+				}
+				if (inHeader) {
+					if (line.startsWith("#")) {
+						continue;
+					}
+					inHeader = false;
+					firstRecordOffset = offset;
+				}
+				long cp;
+				try {
+					String[] array = canUseStartsWith ? null : TabTokenizer.partialTokenize(line, AnnotationSource.DEFAULT_DELIMITER, Math.max(chrPositionInRecord, positionPositionInRecord) + 1);
+					cp = AnnotationSource.getChrPositionAsLongFromRecord(array, chrPositionInRecord, positionPositionInRecord, line, chrStartsWithChr);
+				} catch (RuntimeException e) {
+					/*
+					 * not a record that the sweep could use either
+					 */
+					continue;
+				}
+				/*
+				 * getOffset relies on the positions being sorted
+				 */
+				if (cp < lastCp) {
+					throw new IllegalArgumentException("Annotation source " + source.getAbsolutePath() + " is not sorted by chromosome and position - record: " + line + " comes after a later position");
+				}
+				lastCp = cp;
+				long bin = cp >>> BIN_SHIFT;
+				if (bin != lastBin) {
+					lastBin = bin;
+					positions.add(cp);
+					offsets.add(offset);
+				}
+			}
+		}
+		return new AnnotationSourceIndex(positions.toArray(), offsets.toArray(), firstRecordOffset);
+	}
+
+	static AnnotationSourceIndex load(File indexFile, File source, int chrPositionInRecord, int positionPositionInRecord, boolean chrStartsWithChr) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION
+					|| in.readLong() != source.length() || in.readLong() != source.lastModified()
+					|| in.readInt() != chrPositionInRecord || in.readInt() != positionPositionInRecord
+					|| in.readBoolean() != chrStartsWithChr) {
+				return null;
+			}
+			long firstRecordOffset = in.readLong();
+			int size = in.readInt();
+			long[] positions = new long[size];
+			long[] offsets = new long[size];
+			for (int i = 0 ; i < size ; i++) {
+				positions[i] = in.readLong();
+				offsets[i] = in.readLong();
+			}
+			return new AnnotationSourceIndex(positions, offsets, firstRecordOffset);
+		}
+	}
+
+	void save(File indexFile, File source, int chrPositionInRecord, int positionPositionInRecord, boolean chrStartsWithChr) throws IOException {
+		File tmp = new File(indexFile.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(source.length());
+			out.writeLong(source.lastModified());
+			out.writeInt(chrPositionInRecord);
+			out.writeInt(positionPositionInRecord);
+			out.writeBoolean(chrStartsWithChr);
+			out.writeLong(firstRecordOffset);
+			out.writeInt(positions.length);
+			for (int i = 0 ; i < positions.length ; i++) {
+				out.writeLong(positions[i]);
+				out.writeLong(offsets[i]);
+			}
+		}
+		Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	int size() {
+		return positions.length;
+	}
+
+	/**
+	 * @return the virtual offset of the first record, or -1 if there are no records
+	 */
+	long getFirstRecordOffset() {
+		return firstRecordOffset;
+	}
+
+	/**
+	 * All records before the returned offset are for positions before the requested position.
+	 *
+	 * @return the virtual offset of the record starting the last bin that starts at or before the requested position,
+	 * or the offset of the first record if there is no such bin
+	 */
+	long getOffset(long requestedCpAsLong) {
+		int i = Arrays.binarySearch(positions, requestedCpAsLong);
+		if (i < 0) {
+			i = -i - 2;
+		}
+		return i < 0 ? firstRecordOffset : offsets[i];
+	}
+}
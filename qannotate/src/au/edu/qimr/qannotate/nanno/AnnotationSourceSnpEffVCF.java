@@ -261,6 +261,7 @@ public class AnnotationSourceSnpEffVCF extends AnnotationSource {
 
     @Override
     public void close() throws IOException {
+        closeIndexedReader();
         if (null != reader) {
             reader.close();
         }
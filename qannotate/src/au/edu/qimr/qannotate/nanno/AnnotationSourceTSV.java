@@ -126,6 +126,7 @@ public class AnnotationSourceTSV extends AnnotationSource {
 	
 	@Override
 	public void close() throws IOException {
+		closeIndexedReader();
 		if (null != reader) {
 			reader.close();
 		}
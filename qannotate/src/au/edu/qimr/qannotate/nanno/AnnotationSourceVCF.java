@@ -107,6 +107,7 @@ public class AnnotationSourceVCF extends AnnotationSource {
 	
 	@Override
 	public void close() throws IOException {
+		closeIndexedReader();
 		if (null != reader) {
 			reader.close();
 		}
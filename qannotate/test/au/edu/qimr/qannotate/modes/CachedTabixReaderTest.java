@@ -0,0 +1,110 @@
+package au.edu.qimr.qannotate.modes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.tribble.readers.TabixReader;
+import htsjdk.variant.vcf.VCFCodec;
+
+public class CachedTabixReaderTest {
+
+	@Rule
+	public final TemporaryFolder testFolder = new TemporaryFolder();
+
+	private static final String[] BASES = {"A", "C", "G", "T"};
+
+	private File createIndexedVcf() throws Exception {
+		File file = testFolder.newFile("db.vcf.gz");
+		try (Writer writer = new OutputStreamWriter(new BlockCompressedOutputStream(file))) {
+			writer.write("##fileformat=VCFv4.2\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n");
+			for (String chr : new String[] {"1", "2"}) {
+				for (int position = 1; position < 100_000; position += 3) {
+					/*
+					 * some deletions, so that records overlap the positions after their start
+					 */
+					String ref = position % 11 == 0 ? BASES[position % 4] + "CGT" : BASES[position % 4];
+					writer.write(chr + "\t" + position + "\trs" + position + "\t" + ref + "\t" + BASES[(position + 1) % 4] + "\t.\t.\tID=" + chr + "_" + position + "\n");
+				}
+			}
+		}
+		IndexFactory.createIndex(file, new VCFCodec(), IndexFactory.IndexType.TABIX).write(new File(file.getAbsolutePath() + ".tbi"));
+		return file;
+	}
+
+	private static List<String> tabixQuery(TabixReader tabix, String chr, int start, int end) throws Exception {
+		List<String> lines = new ArrayList<>();
+		TabixReader.Iterator it = tabix.query(chr, start - 1, end);
+		String line;
+		while ((line = it.next()) != null) {
+			lines.add(line);
+		}
+		return lines;
+	}
+
+	@Test
+	public void queriesMatchTabixReader() throws Exception {
+		File file = createIndexedVcf();
+		Random random = new Random(1);
+		/*
+		 * a tiny cache, so that blocks are evicted and read again
+		 */
+		try (CachedTabixReader cached = new CachedTabixReader(file.getAbsolutePath(), 2)) {
+			TabixReader tabix = new TabixReader(file.getAbsolutePath());
+			int nonEmpty = 0;
+			for (int i = 0; i < 500; i++) {
+				String chr = random.nextBoolean() ? "1" : "2";
+				int start = 1 + random.nextInt(100_010);
+				int end = start + random.nextInt(i % 10 == 0 ? 20_000 : 10);
+				List<String> expected = tabixQuery(tabix, chr, start, end);
+				assertEquals(expected, cached.query(chr, start, end));
+				if ( ! expected.isEmpty()) {
+					nonEmpty++;
+				}
+			}
+			assertTrue(nonEmpty > 250);
+			tabix.close();
+
+			assertEquals(1, cached.query("1", 1, 1).size());
+			assertEquals("1\t99997\trs99997\tC\tG\t.\t.\tID=1_99997", cached.query("1", 99_997, 200_000).get(0));
+			assertTrue(cached.query("3", 1, 100).isEmpty());
+			assertTrue(cached.query("2", 100_010, 200_000).isEmpty());
+		}
+	}
+
+	@Test
+	public void concurrentQueries() throws Exception {
+		File file = createIndexedVcf();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try (CachedTabixReader cached = new CachedTabixReader(file.getAbsolutePath(), 8)) {
+			TabixReader tabix = new TabixReader(file.getAbsolutePath());
+			List<Future<List<String>>> results = new ArrayList<>();
+			for (int start = 1; start < 100_000; start += 997) {
+				final int s = start;
+				results.add(executor.submit(() -> cached.query("2", s, s + 1500)));
+			}
+			int i = 0;
+			for (int start = 1; start < 100_000; start += 997) {
+				assertEquals(tabixQuery(tabix, "2", start, start + 1500), results.get(i++).get());
+			}
+			tabix.close();
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -8,6 +8,9 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,6 +25,10 @@ import org.qcmg.common.vcf.header.VcfHeader;
 import org.qcmg.common.vcf.header.VcfHeaderUtils;
 import org.qcmg.qio.vcf.VcfFileReader;
 
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.variant.vcf.VCFCodec;
+
 public class DbsnpModeTest {
 	@org.junit.Rule
 	public  TemporaryFolder testFolder = new TemporaryFolder();
@@ -106,6 +113,44 @@ public class DbsnpModeTest {
 		}		 
 	}		
 	
+	@Test
+	public void indexedQueriesMatchFullScan() throws Exception {
+		createVcf(input);
+		createDbsnp(dbSNP);
+		
+		DbsnpMode mode = new DbsnpMode();
+		mode.loadVcfRecordsFromFile(input);
+		mode.addAnnotation(dbSNP.getAbsolutePath(), false);
+		List<String> scanned = getRecords(mode);
+		assertTrue(scanned.contains("chrY\t22012840\trs111477956\tC\tA\t.\tMIUN\tSOMATIC;DB;VLD\tGT:GD:AC:MR:NNS\t0/1:C/A:A0[0],15[36.2],C11[36.82],9[33]\t0/1:C/A:A0[0],33[35.73],C6[30.5],2[34]:15:13"));
+		
+		File gzip = new File(dbSNP.getAbsolutePath() + ".gz");
+		try (Writer writer = new OutputStreamWriter(new BlockCompressedOutputStream(gzip))) {
+			for (String line : Files.readAllLines(dbSNP.toPath())) {
+				writer.write(line + "\n");
+			}
+		}
+		IndexFactory.createIndex(gzip, new VCFCodec(), IndexFactory.IndexType.TABIX).write(new File(gzip.getAbsolutePath() + ".tbi"));
+		
+		mode = new DbsnpMode();
+		mode.loadVcfRecordsFromFile(input);
+		mode.addAnnotation(gzip.getAbsolutePath(), true);
+		assertEquals(scanned, getRecords(mode));
+		
+		/*
+		 * too many regions for such a small file
+		 */
+		assertFalse(new QueryPositions(mode.positionRecordMap.keySet()).useIndex(gzip));
+		assertFalse(new QueryPositions(mode.positionRecordMap.keySet()).useIndex(dbSNP));
+	}
+	
+	private static List<String> getRecords(DbsnpMode mode) {
+		List<String> records = new ArrayList<>();
+		mode.positionRecordMap.values().forEach(list -> list.forEach(r -> records.add(r.toString().trim())));
+		records.sort(null);
+		return records;
+	}
+	
 	/**
 	 * create input vcf file containing 2 dbSNP SNPs and one verified SNP
 	 * @throws IOException
@@ -1,6 +1,7 @@
 package au.edu.qimr.qannotate.modes;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedWriter;
@@ -14,6 +15,7 @@ import java.util.List;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.qcmg.common.model.ChrPointPosition;
 import org.qcmg.common.util.Constants;
 import org.qcmg.common.vcf.VcfRecord;
 import org.qcmg.common.vcf.VcfUtils;
@@ -38,6 +40,19 @@ public class GermlineModeTest {
 		 assertEquals("ABC:11:2:1:12", GermlineMode.getDataForInfoField("ABC", new String[]{"11","2","1","12"}));
 	 }
 	 
+	 @Test
+	 public void mayMatch() {
+		 QueryPositions positions = new QueryPositions(List.of(new ChrPointPosition("chr1", 16534), new ChrPointPosition("chr2", 100)));
+		 assertTrue(GermlineMode.mayMatch("chr1_16534_C_T:1:1:1:1", positions));
+		 assertFalse(GermlineMode.mayMatch("chr1_16535_C_T:1:1:1:1", positions));
+		 assertFalse(GermlineMode.mayMatch("chr3_100_C_T:1:1:1:1", positions));
+		 /*
+		  * malformed lines are passed through
+		  */
+		 assertTrue(GermlineMode.mayMatch("chr1_16535_C", positions));
+		 assertTrue(GermlineMode.mayMatch("chrUn_gl000220_16535_C_T:1", positions));
+	 }
+	 
 	 @Test
 	 public void annotate() {
 		 
@@ -0,0 +1,197 @@
+package au.edu.qimr.qannotate.nanno;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.qcmg.common.model.ChrPositionRefAlt;
+import org.qcmg.common.util.ChrPositionUtils;
+import org.qcmg.qio.record.StringFileReader;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+
+public class AnnotationSourceIndexTest {
+
+	@Rule
+	public final TemporaryFolder testFolder = new TemporaryFolder();
+
+	private static final String[] BASES = {"A", "C", "G", "T"};
+
+	private File createSource(String name) throws Exception {
+		File file = testFolder.newFile(name);
+		try (Writer writer = new OutputStreamWriter(new BlockCompressedOutputStream(file))) {
+			writer.write("##source=test\n#chr\tpos\tref\talt\tscore\n");
+			for (String chr : new String[] {"1", "2", "X"}) {
+				for (int position = 1; position < 300_000; position += 7) {
+					writer.write(chr + "\t" + position + "\t" + BASES[position % 4] + "\t" + BASES[(position + 1) % 4] + "\t" + chr + "_" + position + "\n");
+				}
+			}
+		}
+		return file;
+	}
+
+	private static AnnotationSource getSource(File file) throws Exception {
+		return new AnnotationSourceTSV(new StringFileReader(file), 1, 2, 3, 4, "score", false);
+	}
+
+	@Test
+	public void indexedSourceMatchesSweep() throws Exception {
+		File file = createSource("source.tsv.gz");
+		AnnotationSourceIndex index = AnnotationSourceIndex.getIndex(file, 1, 2, false);
+		assertTrue(new File(file.getPath() + AnnotationSourceIndex.SUFFIX).exists());
+		/*
+		 * one bin per 16kb of each chromosome
+		 */
+		assertEquals(3 * (300_000 >> AnnotationSourceIndex.BIN_SHIFT) + 3, index.size());
+
+		List<ChrPositionRefAlt> requests = new ArrayList<>();
+		for (String chr : new String[] {"chr1", "chr2", "chrX"}) {
+			for (int position = 50; position < 300_000; position += 20_011) {
+				int p = position - position % 7 + 1;
+				requests.add(new ChrPositionRefAlt(chr, p, p, BASES[p % 4], BASES[(p + 1) % 4]));
+				requests.add(new ChrPositionRefAlt(chr, p, p, BASES[p % 4], "N"));
+				requests.add(new ChrPositionRefAlt(chr, p + 1, p + 1, BASES[(p + 1) % 4], "N"));
+			}
+		}
+
+		try (AnnotationSource sweep = getSource(file);
+				AnnotationSource indexed = getSource(file)) {
+			indexed.setIndex(AnnotationSourceIndex.getIndex(file, 1, 2, false));
+			assertTrue(indexed.hasIndex());
+			int matches = 0;
+			for (ChrPositionRefAlt cp : requests) {
+				long cpAsLong = ChrPositionUtils.convertContigAndPositionToLong(cp.getChromosome().substring(3), cp.getStartPosition());
+				String expected = sweep.getAnnotation(cpAsLong, cp);
+				assertEquals(expected, indexed.getAnnotation(cpAsLong, cp));
+				if (expected.equals("score=" + cp.getChromosome().substring(3) + "_" + cp.getStartPosition())) {
+					matches++;
+				}
+			}
+			assertEquals(requests.size() / 3, matches);
+		}
+	}
+
+	@Test
+	public void offsets() throws Exception {
+		File file = createSource("offsets.tsv.gz");
+		AnnotationSourceIndex index = AnnotationSourceIndex.build(file, 0, 1, false);
+		long first = index.getFirstRecordOffset();
+		assertEquals(first, index.getOffset(0));
+		assertEquals(first, index.getOffset(ChrPositionUtils.convertContigAndPositionToLong("1", 1)));
+		long chr2 = index.getOffset(ChrPositionUtils.convertContigAndPositionToLong("2", 1));
+		assertTrue(chr2 > first);
+		assertTrue(index.getOffset(ChrPositionUtils.convertContigAndPositionToLong("2", 100_000)) > chr2);
+		assertEquals(index.getOffset(ChrPositionUtils.convertContigAndPositionToLong("1", Integer.MAX_VALUE)), index.getOffset(ChrPositionUtils.convertContigAndPositionToLong("2", 0)));
+	}
+
+	@Test
+	public void cachedIndexIsReplacedWhenColumnsChange() throws Exception {
+		File file = createSource("cached.tsv.gz");
+		AnnotationSourceIndex index = AnnotationSourceIndex.getIndex(file, 1, 2, false);
+		File indexFile = new File(file.getPath() + AnnotationSourceIndex.SUFFIX);
+		assertEquals(index.size(), AnnotationSourceIndex.load(indexFile, file, 1, 2, false).size());
+		assertNull(AnnotationSourceIndex.load(indexFile, file, 2, 1, false));
+		assertNull(AnnotationSourceIndex.load(indexFile, file, 1, 2, true));
+	}
+
+	@Test
+	public void unsortedSourceIsNotIndexed() throws Exception {
+		File file = testFolder.newFile("unsorted.tsv.gz");
+		try (Writer writer = new OutputStreamWriter(new BlockCompressedOutputStream(file))) {
+			writer.write("#chr\tpos\tref\talt\tscore\n1\t100\tA\tC\t1_100\n2\t1\tA\tC\t2_1\n1\t200\tA\tC\t1_200\n");
+		}
+		try {
+			AnnotationSourceIndex.build(file, 0, 1, false);
+			fail("Should have thrown an IllegalArgumentException");
+		} catch (IllegalArgumentException iae) {
+			assertTrue(iae.getMessage().contains("is not sorted"));
+		}
+		assertNull(AnnotationSourceIndex.getIndex(file, 1, 2, false));
+		assertFalse(new File(file.getPath() + AnnotationSourceIndex.SUFFIX).exists());
+	}
+
+	@Test
+	public void sourceWithAltContigsInReferenceOrderIsSwept() throws Exception {
+		/*
+		 * GRCh37 order - the keys of non-standard contigs are hash codes, and GL000231.1 has a larger one than GL000210.1
+		 */
+		assertTrue(ChrPositionUtils.convertContigAndPositionToLong("GL000231.1", 1) > ChrPositionUtils.convertContigAndPositionToLong("GL000210.1", 1));
+		File file = testFolder.newFile("b37.tsv.gz");
+		try (Writer writer = new OutputStreamWriter(new BlockCompressedOutputStream(file))) {
+			writer.write("#chr\tpos\tref\talt\tscore\n");
+			for (String chr : new String[] {"1", "2", "X", "Y", "MT", "GL000207.1", "GL000231.1", "GL000210.1"}) {
+				writer.write(chr + "\t100\tA\tC\t" + chr + "_100\n");
+			}
+		}
+		assertNull(AnnotationSourceIndex.getIndex(file, 1, 2, false));
+
+		File inputJson = testFolder.newFile("inputs.json");
+		try (Writer writer = new FileWriter(inputJson)) {
+			writer.write("{\"outputFieldOrder\": \"score\", \"inputs\": [{\"file\": \"" + file.getAbsolutePath()
+					+ "\", \"chrIndex\": 1, \"positionIndex\": 2, \"refIndex\": 3, \"altIndex\": 4, \"fields\": \"score\"}]}\n");
+		}
+		AnnotationInputs ais = AnnotateUtils.getInputs(inputJson.getAbsolutePath());
+		List<List<AnnotationSource>> groups = AnnotateUtils.getAnnotationSourceGroups(ais, 4);
+		assertEquals(1, groups.size());
+		assertEquals(1, groups.get(0).size());
+		try (AnnotationSource source = groups.get(0).get(0)) {
+			assertFalse(source.hasIndex());
+			ChrPositionRefAlt cp = new ChrPositionRefAlt("chr2", 100, 100, "A", "C");
+			assertEquals("score=2_100", source.getAnnotation(ChrPositionUtils.convertContigAndPositionToLong("2", 100), cp));
+		}
+	}
+
+	@Test
+	public void readerIsClosedWhenIndexed() throws Exception {
+		File file = createSource("closed.tsv.gz");
+		AtomicBoolean closed = new AtomicBoolean();
+		StringFileReader reader = new StringFileReader(file) {
+			@Override
+			public void close() throws IOException {
+				closed.set(true);
+				super.close();
+			}
+		};
+		try (AnnotationSource source = new AnnotationSourceTSV(reader, 1, 2, 3, 4, "score", false)) {
+			source.setIndex(AnnotationSourceIndex.getIndex(file, 1, 2, false));
+			assertTrue(closed.get());
+			ChrPositionRefAlt cp = new ChrPositionRefAlt("chr2", 8, 8, "A", "C");
+			assertEquals("score=2_8", source.getAnnotation(ChrPositionUtils.convertContigAndPositionToLong("2", 8), cp));
+		}
+	}
+
+	@Test
+	public void plainTextIsNotIndexed() throws Exception {
+		File file = testFolder.newFile("plain.tsv");
+		try (Writer writer = new FileWriter(file)) {
+			writer.write("#chr\tpos\tref\talt\tscore\n1\t1\tA\tC\t1_1\n");
+		}
+		assertNull(AnnotationSourceIndex.getIndex(file, 1, 2, false));
+	}
+
+	@Test
+	public void subRanges() {
+		assertEquals(1, Annotate.getSubRangeCount(10, 4));
+		assertEquals(2, Annotate.getSubRangeCount(2 * Annotate.MIN_SUB_RANGE_SIZE, 4));
+		assertEquals(4, Annotate.getSubRangeCount(Annotate.CHUNK_SIZE, 4));
+		assertEquals(1, Annotate.getSubRangeCount(Annotate.CHUNK_SIZE, 1));
+		assertEquals(0, Annotate.getSubRangeStart(10, 3, 0));
+		assertEquals(3, Annotate.getSubRangeStart(10, 3, 1));
+		assertEquals(6, Annotate.getSubRangeStart(10, 3, 2));
+		assertEquals(10, Annotate.getSubRangeStart(10, 3, 3));
+	}
+}
@@ -50,15 +50,34 @@ public enum Comparator {
                 case Small -> Integer.parseInt(v1) < Integer.parseInt(v2);
                 case Equal -> v1.equalsIgnoreCase(v2);
                 case NotEqual -> !v1.equalsIgnoreCase(v2);
-                case StartWith -> v1.toLowerCase().startsWith(v2.toLowerCase());
-                case NotStartWith -> !v1.toLowerCase().startsWith(v2.toLowerCase());
-                case EndWith -> v1.toLowerCase().endsWith(v2.toLowerCase());
-                case NotEndWith -> !v1.toLowerCase().endsWith(v2.toLowerCase());
-                case Contain -> v1.toLowerCase().contains(v2.toLowerCase());
-                case NotContain -> !v1.toLowerCase().contains(v2.toLowerCase());
+                case StartWith -> startsWithIgnoreCase(v1, v2);
+                case NotStartWith -> !startsWithIgnoreCase(v1, v2);
+                case EndWith -> endsWithIgnoreCase(v1, v2);
+                case NotEndWith -> !endsWithIgnoreCase(v1, v2);
+                case Contain -> containsIgnoreCase(v1, v2);
+                case NotContain -> !containsIgnoreCase(v1, v2);
             };
 
         }
+        
+        /*
+         * case insensitive string matching that doesn't create lower case copies of the strings
+         */
+        static boolean startsWithIgnoreCase(String v1, String v2) {
+        	return v1.regionMatches(true, 0, v2, 0, v2.length());
+        }
+        static boolean endsWithIgnoreCase(String v1, String v2) {
+        	int offset = v1.length() - v2.length();
+        	return offset >= 0 && v1.regionMatches(true, offset, v2, 0, v2.length());
+        }
+        static boolean containsIgnoreCase(String v1, String v2) {
+        	for (int i = 0, max = v1.length() - v2.length() ; i <= max ; i++) {
+        		if (v1.regionMatches(true, i, v2, 0, v2.length())) {
+        			return true;
+        		}
+        	}
+        	return false;
+        }
 
  
         /**
@@ -16,18 +16,29 @@ public class FlagFilter  implements SamRecordFilter{
     private final Comparator op;
 
     public enum SAMFlag{
-        ReadPaired,
-        ProperPair,
-        ReadUnmapped,
-        Mateunmapped,
-        ReadNegativeStrand,
-        MateNegativeStrand,
-        FirstOfpair,
-        SecondOfpair,
-        NotprimaryAlignment,
-        ReadFailsVendorQuality,
-        DuplicateRead,
-        SupplementaryRead;
+        ReadPaired(0x1, false),
+        ProperPair(0x2, true),
+        ReadUnmapped(0x4, true),
+        Mateunmapped(0x8, true),
+        ReadNegativeStrand(0x10, false),
+        MateNegativeStrand(0x20, true),
+        FirstOfpair(0x40, true),
+        SecondOfpair(0x80, true),
+        NotprimaryAlignment(0x100, false),
+        ReadFailsVendorQuality(0x200, false),
+        DuplicateRead(0x400, false),
+        SupplementaryRead(0x800, false);
+        
+        private final int bit;
+        /*
+         * flags that are only checked for paired reads
+         */
+        private final boolean requiresPaired;
+        
+        SAMFlag(int bit, boolean requiresPaired) {
+        	this.bit = bit;
+        	this.requiresPaired = requiresPaired;
+        }
         
         /**
      * Here we assume all read with valid Flag. Any query regard to Mate read information, 
@@ -143,6 +154,19 @@ public class FlagFilter  implements SamRecordFilter{
         flag = SAMFlag.getFlag(flagName);
     }
 
+    /**
+     * Expresses this condition as a test on the raw flag bits: the condition is satisfied if <code>(flags & masks[0]) == masks[0] && (flags & masks[1]) == 0</code>
+     * @return an array containing the bits that must be set, and the bits that must be clear,
+     * or null if the condition can't be expressed in this way (eg. a mate related flag that is required to be false)
+     */
+    public int[] getFlagMasks() {
+    	boolean mustBeSet = (op == Comparator.Equal) == flagValue;
+    	if (mustBeSet) {
+    		return new int[] {flag.bit | (flag.requiresPaired ? SAMFlag.ReadPaired.bit : 0), 0};
+    	}
+    	return flag.requiresPaired ? null : new int[] {0, flag.bit};
+    }
+
     /**
      * check the record Flag value. 
      * @param record: a SAMRecord
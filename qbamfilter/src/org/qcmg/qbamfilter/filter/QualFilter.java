@@ -34,7 +34,7 @@ public class QualFilter implements SamRecordFilter {
     
     /**
      * @param record: a SAMRecord
-     * @return true if the average base quality score is satisfied by the condition
+     * @return true if the average base quality score is satisfied by the condition, and false if the base qualities are missing (*)
      * Usage example: if you want filter out all reads average base quality score less than 30
      * SAMRecordFilter myfilter = new QualFilter( "average", Comparator.Small, "30" );
      * if(myfilter.filterout(record)){ System.out.println(record.toString);}
@@ -43,6 +43,9 @@ public class QualFilter implements SamRecordFilter {
 	public boolean filterOut(final SAMRecord record){
     	//we may test the case of *, that means the quality value is missing
     	byte[] qualities = record.getBaseQualities();
+    	if (qualities.length == 0) {
+    		return false;
+    	}
     	
     	int total = 0;
     	for (byte q : qualities) {
@@ -44,12 +44,11 @@ public class  SeqFilter implements SamRecordFilter {
      */
     @Override
 	public boolean filterOut(SAMRecord record) {    	
-	    	String base = record.getReadString();
-	
-	    	//traditional counting base is fast
+	    	// count on the raw bases, rather than creating a string
+	    	byte[] bases = record.getReadBases();
 	    	int count = 0;
-	    	for(int i = 0; i < base.length(); i ++) {
-	    		if( base.charAt(i) == 'N' ) {
+	    	for (byte b : bases) {
+	    		if (b == 'N') {
 	    			count ++;
 	    		}
 	    	}
@@ -16,6 +16,10 @@ public final class TagValueFilter implements SamRecordFilter{
     private final short tagShort;
     private final String value;
     private final Comparator op;
+    /*
+     * the value as an int, for numeric comparisons on integer tags - null if not applicable
+     */
+    private final Integer intValue;
 
 
     /**
@@ -29,12 +33,25 @@ public final class TagValueFilter implements SamRecordFilter{
         tagShort = SAMTag.makeBinaryTag(tag);
         this.value = value;
         op = comp;
+        intValue = isNumeric(comp) ? parseInt(value) : null;
+    }
+    
+    private static boolean isNumeric(Comparator comp) {
+    	return comp == Comparator.GreatEqual || comp == Comparator.Great || comp == Comparator.SmallEqual || comp == Comparator.Small;
+    }
+    
+    private static Integer parseInt(String value) {
+    	try {
+    		return Integer.valueOf(value);
+    	} catch (NumberFormatException e) {
+    		return null;
+    	}
     }
 
     /**
      * check the optional filed in SAMRecord. return true if that field value is satisfied by the condition
      * @param record: a SAMRecord
-     * @return true if this optional field is satisfied with the query
+     * @return true if this optional field is satisfied with the query. Numeric comparisons (eg. &gt;) are not satisfied if either value is not an integer.
      * Usage example: if you want filter out all reads with field "ZM",and its value is one.
      * CigarFilter myfilter = new TagValueFilter("ZM",Comparator.Equal, "1" );
      * if(myfilter.filterout(record) == true){ System.out.println(record.toString);}
@@ -43,6 +60,19 @@ public final class TagValueFilter implements SamRecordFilter{
     public boolean filterOut(final SAMRecord record){
         Object ob = record.getAttribute(tagShort);
         if (ob != null) {
+        	if (isNumeric(op)) {
+        		if (null == intValue) {
+        			return false;
+        		}
+        		/*
+        		 * integer tags can be compared without going via a string
+        		 */
+        		if (ob instanceof Integer || ob instanceof Short || ob instanceof Byte) {
+        			return op.eval(((Number) ob).intValue(), intValue.intValue());
+        		}
+        		Integer tagValue = parseInt(ob.toString());
+        		return null != tagValue && op.eval(tagValue.intValue(), intValue.intValue());
+        	}
             return op.eval(ob.toString(), value);
         }
         return false;
@@ -7,6 +7,7 @@
 package org.qcmg.qbamfilter.grammars;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import htsjdk.samtools.filter.SamRecordFilter;
 import htsjdk.samtools.SAMRecord;
@@ -33,6 +34,17 @@ public class Expression implements SamRecordFilter{
         operator = op;   
     }
 
+    public queryTree.Operator getOperator() {
+    	return operator;
+    }
+    
+    /**
+     * @return the child nodes of this expression, which may be conditions (filters) or nested expressions
+     */
+    public List<SamRecordFilter> getConditions() {
+    	return conditions;
+    }
+
     /**
      * it execute the query based on the filter condition and operator
      * and operators stored in operators arrayList.
@@ -0,0 +1,483 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+package org.qcmg.qbamfilter.query;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.filter.SamRecordFilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.qcmg.qbamfilter.filter.CigarFilter;
+import org.qcmg.qbamfilter.filter.FlagFilter;
+import org.qcmg.qbamfilter.filter.IsizeFilter;
+import org.qcmg.qbamfilter.filter.MDFilter;
+import org.qcmg.qbamfilter.filter.MRNMFilter;
+import org.qcmg.qbamfilter.filter.MapQFilter;
+import org.qcmg.qbamfilter.filter.PosFilter;
+import org.qcmg.qbamfilter.filter.QualFilter;
+import org.qcmg.qbamfilter.filter.RNameFilter;
+import org.qcmg.qbamfilter.filter.SeqFilter;
+import org.qcmg.qbamfilter.filter.TagValueFilter;
+import org.qcmg.qbamfilter.grammars.Expression;
+import org.qcmg.qbamfilter.grammars.queryTree;
+
+/**
+ * A query tree (as built by {@link queryTree}) compiled into a flat predicate program.
+ * <p>
+ * Compilation:
+ * <ul>
+ * <li>nested expressions with the same operator are merged, and single child expressions are replaced by their child</li>
+ * <li>flag conditions within an <code>and</code> are fused into a single test on the raw flag bits</li>
+ * <li>the tree is laid out in arrays, with the children of each node held in a contiguous range of the evaluation order array</li>
+ * </ul>
+ * The children of each <code>and</code>/<code>or</code> node are initially ordered by an estimate of their cost, so that cheap tests on fixed fields run before
+ * the tests that need the cigar, MD or bases to be decoded. Once enough records have been seen, they are re-ordered using the measured cost and selectivity,
+ * so that the tests most likely to short-circuit the node, for the least cost, come first.
+ * <p>
+ * Re-ordering can only leave the result unchanged if no condition throws for a record that an earlier condition would have short-circuited,
+ * eg. <code>and (flag_ReadUnmapped == false, someTest)</code>, where <code>someTest</code> throws on unmapped reads.
+ * The conditions of this package don't throw, and so can be evaluated in any order. Any other condition keeps the order given in the query,
+ * as does every node above it in the tree.
+ * <p>
+ * Statistics are gathered on a sample of records, by each thread into its own counts, which are added to the totals used for re-ordering
+ * at intervals. Instances can be shared between threads.
+ */
+public final class CompiledQuery implements SamRecordFilter {
+
+	static final byte AND = 0;
+	static final byte OR = 1;
+	static final byte LEAF = 2;
+
+	/*
+	 * gather statistics for 1 in every 64 records
+	 */
+	private static final int SAMPLE_MASK = 63;
+	/*
+	 * re-order after this many sampled records, and then again each time the number of sampled records doubles
+	 */
+	static final int INITIAL_REORDER_SAMPLES = 1024;
+	/*
+	 * number of records each thread samples before adding its counts to the totals
+	 */
+	static final int MERGE_SAMPLES = 256;
+	/*
+	 * rough conversion of the estimated costs into nanoseconds, for nodes that have not yet been measured
+	 */
+	private static final double NANOS_PER_COST_UNIT = 10;
+
+	private final byte[] type;
+	private final SamRecordFilter[] leaves;
+	private final int[] childStart;
+	private final int[] childCount;
+	private final double[] estimatedCost;
+	private final boolean[] fixedOrder;
+	private final int root;
+
+	/*
+	 * child node ids, in evaluation order - replaced (rather than modified) on re-ordering
+	 */
+	private volatile int[] order;
+
+	/*
+	 * totals of the sampled counts of all threads - guarded by this
+	 */
+	private final Statistics totals;
+	private long nextReorder = INITIAL_REORDER_SAMPLES;
+
+	private final ThreadLocal<Statistics> threadStatistics;
+
+	private CompiledQuery(List<Node> nodes, int root) {
+		int n = nodes.size();
+		type = new byte[n];
+		leaves = new SamRecordFilter[n];
+		childStart = new int[n];
+		childCount = new int[n];
+		estimatedCost = new double[n];
+		fixedOrder = new boolean[n];
+		totals = new Statistics(n);
+		threadStatistics = ThreadLocal.withInitial(() -> new Statistics(n));
+		this.root = root;
+
+		int[] children = new int[n];
+		int next = 0;
+		for (int i = 0 ; i < n ; i++) {
+			Node node = nodes.get(i);
+			type[i] = node.type;
+			leaves[i] = node.filter;
+			estimatedCost[i] = node.cost;
+			fixedOrder[i] = node.mayThrow;
+			childStart[i] = next;
+			childCount[i] = node.children.size();
+			for (Node child : node.children) {
+				children[next++] = child.id;
+			}
+		}
+		order = children;
+	}
+
+	/**
+	 * Compiles the supplied query tree, which is typically the {@link Expression} returned by {@link queryTree#script()}
+	 */
+	public static CompiledQuery compile(SamRecordFilter tree) {
+		if (null == tree) {
+			throw new IllegalArgumentException("Null query tree passed to CompiledQuery");
+		}
+		List<Node> nodes = new ArrayList<>();
+		Node rootNode = build(tree, nodes);
+		return new CompiledQuery(nodes, rootNode.id);
+	}
+
+	/*
+	 * nodes are added to the list in post order, with their children sorted by estimated cost, unless one of them may throw
+	 */
+	private static Node build(SamRecordFilter filter, List<Node> nodes) {
+		if ( ! (filter instanceof Expression exp)) {
+			return addNode(new Node(LEAF, filter, estimateCost(filter), List.of()), nodes);
+		}
+		byte op = exp.getOperator() == queryTree.Operator.AND ? AND : OR;
+
+		List<SamRecordFilter> flattened = new ArrayList<>();
+		flatten(exp, exp.getOperator(), flattened);
+		if (flattened.size() == 1) {
+			return build(flattened.getFirst(), nodes);
+		}
+
+		List<Node> children = new ArrayList<>();
+		int setMask = 0;
+		int clearMask = 0;
+		int fusedPosition = -1;
+		for (SamRecordFilter child : flattened) {
+			int[] masks = op == AND && child instanceof FlagFilter ff ? ff.getFlagMasks() : null;
+			if (null != masks) {
+				setMask |= masks[0];
+				clearMask |= masks[1];
+				if (fusedPosition < 0) {
+					fusedPosition = children.size();
+				}
+			} else {
+				children.add(build(child, nodes));
+			}
+		}
+		if (fusedPosition >= 0) {
+			/*
+			 * the fused flags take the place of the first of them
+			 */
+			FlagMaskFilter fused = new FlagMaskFilter(setMask, clearMask);
+			children.add(fusedPosition, addNode(new Node(LEAF, fused, estimateCost(fused), List.of()), nodes));
+		}
+		if (children.size() == 1) {
+			return children.getFirst();
+		}
+		Node node = new Node(op, null, 0, children);
+		if ( ! node.mayThrow) {
+			children.sort(Comparator.comparingDouble((Node c) -> c.cost));
+		}
+		return addNode(node, nodes);
+	}
+
+	/*
+	 * expressions whose operator matches that of their parent are merged into the parent.
+	 * single child expressions take the operator of their parent.
+	 */
+	private static void flatten(Expression exp, queryTree.Operator op, List<SamRecordFilter> flattened) {
+		for (SamRecordFilter child : exp.getConditions()) {
+			if (child instanceof Expression childExp && (childExp.getOperator() == op || childExp.getConditions().size() == 1)) {
+				flatten(childExp, op, flattened);
+			} else {
+				flattened.add(child);
+			}
+		}
+	}
+
+	private static Node addNode(Node node, List<Node> nodes) {
+		node.id = nodes.size();
+		nodes.add(node);
+		return node;
+	}
+
+	/*
+	 * relative cost of evaluating a condition, based on which parts of the record need to be decoded
+	 */
+	static double estimateCost(SamRecordFilter filter) {
+		if (filter instanceof FlagMaskFilter) {
+			return 0.5;
+		}
+		if (filter instanceof FlagFilter || filter instanceof MapQFilter
+				|| filter instanceof PosFilter || filter instanceof IsizeFilter) {
+			return 1;
+		}
+		if (filter instanceof RNameFilter || filter instanceof MRNMFilter) {
+			return 2;
+		}
+		if (filter instanceof TagValueFilter) {
+			return 5;
+		}
+		if (filter instanceof CigarFilter) {
+			return 8;
+		}
+		if (filter instanceof MDFilter) {
+			return 10;
+		}
+		if (filter instanceof SeqFilter || filter instanceof QualFilter) {
+			return 20;
+		}
+		return 10;
+	}
+
+	/*
+	 * conditions that are known not to throw, and so can be evaluated in any order
+	 */
+	static boolean cannotThrow(SamRecordFilter filter) {
+		return filter instanceof FlagMaskFilter || filter instanceof FlagFilter || filter instanceof MapQFilter
+				|| filter instanceof PosFilter || filter instanceof IsizeFilter || filter instanceof RNameFilter
+				|| filter instanceof MRNMFilter || filter instanceof TagValueFilter || filter instanceof CigarFilter
+				|| filter instanceof MDFilter || filter instanceof SeqFilter || filter instanceof QualFilter;
+	}
+
+	@Override
+	public boolean filterOut(final SAMRecord record) {
+		int[] currentOrder = order;
+		Statistics statistics = threadStatistics.get();
+		if ((statistics.recordCount++ & SAMPLE_MASK) != 0) {
+			return evaluate(root, record, currentOrder);
+		}
+		boolean result = evaluateAndSample(root, record, currentOrder, statistics);
+		if (++statistics.sampleCount >= MERGE_SAMPLES) {
+			merge(statistics);
+		}
+		return result;
+	}
+
+	private boolean evaluate(int node, SAMRecord record, int[] currentOrder) {
+		switch (type[node]) {
+			case LEAF -> {
+				return leaves[node].filterOut(record);
+			}
+			case AND -> {
+				for (int i = childStart[node], end = i + childCount[node] ; i < end ; i++) {
+					if ( ! evaluate(currentOrder[i], record, currentOrder)) {
+						return false;
+					}
+				}
+				return true;
+			}
+			default -> {
+				for (int i = childStart[node], end = i + childCount[node] ; i < end ; i++) {
+					if (evaluate(currentOrder[i], record, currentOrder)) {
+						return true;
+					}
+				}
+				return false;
+			}
+		}
+	}
+
+	private boolean evaluateAndSample(int node, SAMRecord record, int[] currentOrder, Statistics statistics) {
+		long start = System.nanoTime();
+		boolean result;
+		switch (type[node]) {
+			case LEAF -> result = leaves[node].filterOut(record);
+			case AND -> {
+				result = true;
+				for (int i = childStart[node], end = i + childCount[node] ; i < end && result ; i++) {
+					result = evaluateAndSample(currentOrder[i], record, currentOrder, statistics);
+				}
+			}
+			default -> {
+				result = false;
+				for (int i = childStart[node], end = i + childCount[node] ; i < end && ! result ; i++) {
+					result = evaluateAndSample(currentOrder[i], record, currentOrder, statistics);
+				}
+			}
+		}
+		statistics.nanos[node] += System.nanoTime() - start;
+		statistics.evaluations[node]++;
+		if (result) {
+			statistics.passes[node]++;
+		}
+		return result;
+	}
+
+	/*
+	 * adds the counts of a thread to the totals, and re-orders if enough records have now been sampled
+	 */
+	private synchronized void merge(Statistics statistics) {
+		totals.add(statistics);
+		statistics.clear();
+		if (totals.sampleCount >= nextReorder) {
+			reorder();
+		}
+	}
+
+	/*
+	 * for an and node, children are ordered by cost / probability of failing, and for an or node, by cost / probability of passing
+	 */
+	private void reorder() {
+		nextReorder = totals.sampleCount * 2;
+		int[] newOrder = order.clone();
+		for (int node = 0 ; node < type.length ; node++) {
+			if (type[node] == LEAF || fixedOrder[node]) {
+				continue;
+			}
+			boolean and = type[node] == AND;
+			Integer[] children = new Integer[childCount[node]];
+			for (int i = 0 ; i < children.length ; i++) {
+				children[i] = newOrder[childStart[node] + i];
+			}
+			Arrays.sort(children, Comparator.comparingDouble((Integer c) -> rank(c, and)));
+			for (int i = 0 ; i < children.length ; i++) {
+				newOrder[childStart[node] + i] = children[i];
+			}
+		}
+		order = newOrder;
+	}
+
+	private double rank(int node, boolean and) {
+		long evaluations = totals.evaluations[node];
+		double cost = evaluations > 0 ? (double) totals.nanos[node] / evaluations : estimatedCost[node] * NANOS_PER_COST_UNIT;
+		/*
+		 * add one to each of the counts so that unevaluated nodes don't have a zero probability
+		 */
+		double passRate = (totals.passes[node] + 1.0) / (evaluations + 2.0);
+		double shortCircuitProbability = and ? 1 - passRate : passRate;
+		return cost / shortCircuitProbability;
+	}
+
+	int getNumberOfNodes() {
+		return type.length;
+	}
+
+	/**
+	 * Describes the program, with the children of each node in their current evaluation order
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		append(root, order, sb);
+		return sb.toString();
+	}
+
+	private void append(int node, int[] currentOrder, StringBuilder sb) {
+		if (type[node] == LEAF) {
+			sb.append(leaves[node] instanceof FlagMaskFilter ? leaves[node].toString() : leaves[node].getClass().getSimpleName());
+			return;
+		}
+		sb.append(type[node] == AND ? "and(" : "or(");
+		for (int i = childStart[node], end = i + childCount[node] ; i < end ; i++) {
+			if (i > childStart[node]) {
+				sb.append(", ");
+			}
+			append(currentOrder[i], currentOrder, sb);
+		}
+		sb.append(')');
+	}
+
+	@Override
+	@Deprecated
+	public boolean filterOut(SAMRecord arg0, SAMRecord arg1) {
+		return false;
+	}
+
+	private static final class Node {
+		private final byte type;
+		private final SamRecordFilter filter;
+		private final double cost;
+		private final List<Node> children;
+		private final boolean mayThrow;
+		private int id;
+
+		/*
+		 * the cost and whether the node may throw are taken from the children of and/or nodes
+		 */
+		Node(byte type, SamRecordFilter filter, double cost, List<Node> children) {
+			this.type = type;
+			this.filter = filter;
+			this.children = children;
+			if (type == LEAF) {
+				this.cost = cost;
+				this.mayThrow = ! cannotThrow(filter);
+			} else {
+				double total = 0;
+				boolean anyMayThrow = false;
+				for (Node child : children) {
+					total += child.cost;
+					anyMayThrow |= child.mayThrow;
+				}
+				this.cost = total;
+				this.mayThrow = anyMayThrow;
+			}
+		}
+	}
+
+	/**
+	 * Counts of the sampled evaluations of each node
+	 */
+	private static final class Statistics {
+		private final long[] evaluations;
+		private final long[] passes;
+		private final long[] nanos;
+		private long recordCount;
+		private long sampleCount;
+
+		Statistics(int noOfNodes) {
+			evaluations = new long[noOfNodes];
+			passes = new long[noOfNodes];
+			nanos = new long[noOfNodes];
+		}
+
+		void add(Statistics other) {
+			for (int i = 0 ; i < evaluations.length ; i++) {
+				evaluations[i] += other.evaluations[i];
+				passes[i] += other.passes[i];
+				nanos[i] += other.nanos[i];
+			}
+			sampleCount += other.sampleCount;
+		}
+
+		/*
+		 * the record count is left as it is, so that the thread carries on sampling 1 in every 64 records
+		 */
+		void clear() {
+			Arrays.fill(evaluations, 0);
+			Arrays.fill(passes, 0);
+			Arrays.fill(nanos, 0);
+			sampleCount = 0;
+		}
+	}
+
+	/**
+	 * A number of flag conditions, fused into a single test on the raw flag bits
+	 */
+	static final class FlagMaskFilter implements SamRecordFilter {
+		private final int setMask;
+		private final int clearMask;
+
+		FlagMaskFilter(int setMask, int clearMask) {
+			this.setMask = setMask;
+			this.clearMask = clearMask;
+		}
+
+		@Override
+		public boolean filterOut(SAMRecord record) {
+			int flags = record.getFlags();
+			return (flags & setMask) == setMask && (flags & clearMask) == 0;
+		}
+
+		@Override
+		@Deprecated
+		public boolean filterOut(SAMRecord arg0, SAMRecord arg1) {
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return "FlagMaskFilter[set=0x" + Integer.toHexString(setMask) + ", clear=0x" + Integer.toHexString(clearMask) + "]";
+		}
+	}
+}
@@ -54,7 +54,12 @@ public class QueryExecutor {
             CommonTreeNodeStream myStream = new CommonTreeNodeStream(ParserTree);
             queryTree  myAST = new queryTree(myStream);      
             queryTree.script_return result = myAST.script();
-            queryExecutor =  result.exp;
+            /*
+             * flatten the query tree into a predicate program that orders the conditions by their cost and selectivity
+             */
+            CompiledQuery compiled = CompiledQuery.compile(result.exp);
+            logger.info("Compiled query: " + compiled);
+            queryExecutor = compiled;
         } catch(RecognitionException e ){
         		logger.error("RecognitionException caught while instantiating QueryExecutor", e);
         		throw  e;
@@ -7,14 +7,20 @@
 package org.qcmg.qbamfilter.query;
 
 import java.io.File;
-import java.util.AbstractQueue;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.CountDownLatch;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import htsjdk.samtools.SAMFileHeader;
@@ -27,74 +33,81 @@ import org.qcmg.common.log.QLogger;
 import org.qcmg.common.util.Constants;
 import org.qcmg.picard.SAMFileReaderFactory;
 import org.qcmg.picard.SAMWriterFactory;
-import org.qcmg.picard.SAMRecordFilterWrapper;
 
+/**
+ * Filters a bam file using a pipeline of threads: a reading thread, a number of filtering threads, and a writing thread
+ * for each of the satisfied and (optional) unmatched outputs.
+ * <p>
+ * Records are passed between the threads in batches of {@link #BATCH_SIZE} through bounded queues, so that memory use is capped
+ * and the threads block (rather than sleep) when they get ahead of each other.
+ * Each batch is numbered as it is read, and filtered batches are re-assembled into input order before being written.
+ * The writers compress their bam output on multiple threads, so that a single deflate thread is not the limiting factor.
+ */
 public class QueryMT {
 
-	public class WritingUnmatched implements Runnable {
-		private final File unmatchedFile;
-		private final AbstractQueue<SAMRecord> outBadQueue;
-		private final CountDownLatch fLatch;
-		private final CountDownLatch wBadLatch;
-		private final CountDownLatch wGoodLatch;
-
-		public WritingUnmatched(File funmatch,
-				AbstractQueue<SAMRecord> outBadQueue, Thread currentThread,
-				CountDownLatch fLatch, CountDownLatch wGoodLatch, CountDownLatch wBadLatch) {
-			this.unmatchedFile = funmatch;
-			this.outBadQueue = outBadQueue;
-			this.fLatch = fLatch;
-			this.wBadLatch = wBadLatch;
-			this.wGoodLatch = wGoodLatch;
+	static final int BATCH_SIZE = 1000;
+
+	/*
+	 * a numbered batch of records from the input, and the result of filtering it
+	 */
+	record Batch(long number, List<SAMRecord> records) {}
+	record FilteredBatch(long number, List<SAMRecord> satisfied, List<SAMRecord> unmatched) {}
+
+	private static final Batch NO_MORE_BATCHES = new Batch(-1, Collections.emptyList());
+	private static final List<SAMRecord> NO_MORE_RECORDS = new ArrayList<>(0);
+
+	/**
+	 * Re-assembles items that are supplied out of order (by number) into their original order.
+	 * <p>
+	 * Only items within capacity of the next item to be taken are accepted, so a thread supplying an item too far ahead will wait,
+	 * which bounds the number of items held. The thread supplying the next item is never blocked.
+	 */
+	static class OrderedBuffer<T> {
+		private final Map<Long, T> items = new HashMap<>();
+		private final int capacity;
+		private long next;
+		private long end = Long.MAX_VALUE;
+
+		OrderedBuffer(int capacity) {
+			this.capacity = capacity;
 		}
 
-		@Override
-		public void run() {
-			try {
-				boolean presorted = header.getSortOrder().equals(sort); 
-				boolean index =  sort.equals(SAMFileHeader.SortOrder.coordinate);
-				SAMFileHeader he = header.clone();
-				he.setSortOrder(sort);
-				 
-				
-				logger.info("input bam are presorted: " + presorted);
-				logger.info("set sort to unmatched reads output:" + sort);
-				logger.info("create index file for unmatched reads output " + index);				
-				int unmatchedCount = 0;
-				SAMWriterFactory writeFactory = new SAMWriterFactory(he, presorted, unmatchedFile,tmpdir, index);
-				try ( SAMFileWriter writer = writeFactory.getWriter()) {
-					SAMRecord record;					
-					while (true) {
-						if (  (record = outBadQueue.poll()) == null ){
-							if ((fLatch.getCount() == 0) && wGoodLatch.getCount() == 0)
-								break;
-							try {
-								Thread.sleep(sleepUnit);
-							} catch (InterruptedException e) {
-								e.printStackTrace();
-							}
-						} else {
-							writer.addAlignment(record);
-							unmatchedCount ++ ;						
-						}
-					}
-				} finally {
-					writeFactory.renameIndex(); //try already closed writer
-					logger.info(writeFactory.getLogMessage());
-					logger.info("completed writing threads, added " + unmatchedCount
-									+ " records to the output: " + unmatchedFile.getAbsolutePath());
+		synchronized void put(long number, T item) throws InterruptedException {
+			while (number >= next + capacity) {
+				wait();
+			}
+			items.put(number, item);
+			notifyAll();
+		}
+
+		/**
+		 * Sets the total number of items that will be supplied
+		 */
+		synchronized void setEnd(long end) {
+			this.end = end;
+			notifyAll();
+		}
+
+		/**
+		 * @return the next item in order, or null once all items have been taken
+		 */
+		synchronized T take() throws InterruptedException {
+			T item;
+			while ((item = items.remove(next)) == null) {
+				if (next >= end) {
+					return null;
 				}
-				
-			} finally {
-				wBadLatch.countDown();
+				wait();
 			}
+			next++;
+			notifyAll();
+			return item;
 		}
 	}
 
 	private final QLogger logger;
 	private final int noOfThreads;
 	private final int maxRecords;
-	private final int checkPoint;
 	private final File input;
 	private final File output;
 	private final File filterOut;
@@ -102,13 +115,11 @@ public class QueryMT {
 	private final SAMFileHeader header;
 	private final SAMFileHeader.SortOrder sort;
 	private final File tmpdir;
-	private final int sleepUnit = 10;
 	private final ValidationStringency validation;
 
 	public QueryMT(Options options, QLogger logger) throws Exception {
 		noOfThreads = options.getThreadNumber();
 		maxRecords = options.getMaxRecordNumber();
-		checkPoint = options.getCheckPoint();
 
 		this.logger = logger;
 		input = new File(options.getInputFileName());
@@ -124,385 +135,246 @@ public class QueryMT {
 			tmpdir = new File(options.getTmpDir());
 		else
 			tmpdir = null;
-		
+
 		validation = options.getValidation();
 	}
 
 	public void executor() throws Exception {
-		// create queue to store the records from input
-		final AbstractQueue<SAMRecordFilterWrapper> readQueue = new ConcurrentLinkedQueue<>();
-		final AbstractQueue<SAMRecordFilterWrapper> postfilteringQueue = new ConcurrentLinkedQueue<>();
-		final AbstractQueue<SAMRecord> outBadQueue = filterOut == null ? null
-				: new ConcurrentLinkedQueue<>();
-
-		final CountDownLatch rLatch = new CountDownLatch(1); // reading thread
-		final CountDownLatch fLatch = new CountDownLatch(noOfThreads); // filtering
-																		// thread
-		final CountDownLatch wGoodLatch = new CountDownLatch(1); // writing
-																	// thread
-																	// for
-																	// satisfied
-																	// records
-		final CountDownLatch wBadLatch = new CountDownLatch(1); // writing
-																// thread for
-																// unmatched
-																// records
-
-		// set up and kick-off single writing thread to output the satisfied
-		// Records
-		// Writing Threads
-		ExecutorService writeThreadA = Executors.newSingleThreadExecutor();
-		ExecutorService writeThreadB = Executors.newSingleThreadExecutor();
-
-		writeThreadA.execute(new Writing(postfilteringQueue, output,
-				outBadQueue, Thread.currentThread(), fLatch, wGoodLatch));
-		writeThreadA.shutdown();
-		// kick-off single writing thread to output the unmatched Records if
-		// required
+		/*
+		 * read queue holds up to maxRecords records, the re-ordering and unmatched stages a few batches per filtering thread
+		 */
+		final int readQueueBatches = Math.max(noOfThreads * 2, maxRecords / BATCH_SIZE);
+		final BlockingQueue<Batch> readQueue = new ArrayBlockingQueue<>(readQueueBatches);
+		final OrderedBuffer<FilteredBatch> filteredBuffer = new OrderedBuffer<>(noOfThreads * 4);
+		final BlockingQueue<List<SAMRecord>> unmatchedQueue = filterOut == null ? null : new ArrayBlockingQueue<>(noOfThreads * 4);
+		logger.info("batch size: " + BATCH_SIZE + ", read queue size (batches): " + readQueueBatches);
+
+		int noOfTasks = noOfThreads + 2 + (filterOut == null ? 0 : 1);
+		ExecutorService service = Executors.newFixedThreadPool(noOfTasks);
+		CompletionService<Void> completionService = new ExecutorCompletionService<>(service);
+
+		completionService.submit(new Writing(filteredBuffer, output, unmatchedQueue));
 		if (filterOut != null) {
-			writeThreadB.execute(new WritingUnmatched(filterOut, outBadQueue,
-					Thread.currentThread(), fLatch,wGoodLatch, wBadLatch));
-			writeThreadB.shutdown();
+			completionService.submit(new WritingUnmatched(filterOut, unmatchedQueue));
 		}
-
-		// Filtering Threads
-		ExecutorService filterThreads = Executors
-				.newFixedThreadPool(noOfThreads);
 		for (int i = 0; i < noOfThreads; i++) {
-			filterThreads.execute(new Filtering(readQueue, postfilteringQueue,
-					Thread.currentThread(), rLatch, fLatch, wGoodLatch,
-					wBadLatch));
+			completionService.submit(new Filtering(readQueue, filteredBuffer));
 		}
-		filterThreads.shutdown();
+		completionService.submit(new Reading(readQueue, filteredBuffer));
+		service.shutdown();
 
-		// setup and kick-off single reading thread
-		ExecutorService readThreads = Executors.newSingleThreadExecutor();
-		readThreads.execute(new Reading(readQueue, Thread.currentThread(),
-				rLatch, fLatch));
-		readThreads.shutdown();
-
-		// wait for threads to complete
+		// wait for threads to complete, giving up as soon as any of them fails
 		try {
 			logger.info("waiting for  threads to finish (max wait will be 100 hours)");
-			readThreads.awaitTermination(Constants.EXECUTOR_SERVICE_AWAIT_TERMINATION, TimeUnit.HOURS);
-			filterThreads.awaitTermination(Constants.EXECUTOR_SERVICE_AWAIT_TERMINATION, TimeUnit.HOURS);
-			writeThreadA.awaitTermination(Constants.EXECUTOR_SERVICE_AWAIT_TERMINATION, TimeUnit.HOURS);
-
-			if (outBadQueue != null) {
-				writeThreadB.awaitTermination(Constants.EXECUTOR_SERVICE_AWAIT_TERMINATION, TimeUnit.HOURS);
-				if (!outBadQueue.isEmpty())
-					throw new Exception(" threads have completed but Queue of unmatched Records isn't empty):  "
-									+ outBadQueue.size());
+			for (int i = 0; i < noOfTasks; i++) {
+				Future<Void> f = completionService.poll(Constants.EXECUTOR_SERVICE_AWAIT_TERMINATION, TimeUnit.HOURS);
+				if (null == f) {
+					throw new Exception("timed out waiting for threads to finish");
+				}
+				try {
+					f.get();
+				} catch (ExecutionException e) {
+					throw e.getCause() instanceof Exception ex ? ex : e;
+				}
 			}
-
-			if (!readQueue.isEmpty() || !postfilteringQueue.isEmpty())
-				throw new Exception(" threads have completed but queue isn't empty  (inputQueue, postfilteringQueue ):  "
-								+ readQueue.size() + ", " + postfilteringQueue.size());
-
 			logger.info("all threads finished");
 		} catch (Exception e) {
 			logger.error("exception caught whilst waiting for threads to finish: " + e.getMessage(), e);
 			throw e;
 		} finally {
 			// kill off any remaining threads
-			readThreads.shutdownNow();
-			writeThreadA.shutdownNow();
-			filterThreads.shutdownNow();
-			if (filterOut != null)
-				writeThreadB.shutdownNow();
+			service.shutdownNow();
 		}
 	}
 
-	class Reading implements Runnable {
-		private final AbstractQueue<SAMRecordFilterWrapper> queue;
-		private final Thread mainThread;
-		final CountDownLatch rLatch;
-		final CountDownLatch fLatch;
+	private SAMWriterFactory getWriterFactory(File file) {
+		boolean presorted = header.getSortOrder().equals(sort);
+		boolean index =  sort.equals(SAMFileHeader.SortOrder.coordinate);
+		//make sure don't change the input header since the other writer should use it.
+		SAMFileHeader he = header.clone();
+		he.setSortOrder(sort);
+
+		logger.info("input bam are presorted: " + presorted);
+		logger.info("set sort to " + sort + " for output: " + file.getAbsolutePath());
+		logger.info("create index file " + index);
+		// at least 2 compression threads, so that deflating is always done off the writing thread
+		return new SAMWriterFactory(he, presorted, file, tmpdir, index, Math.max(2, noOfThreads));
+	}
 
-		Reading(AbstractQueue<SAMRecordFilterWrapper> q, Thread mainThread,
-				CountDownLatch rLatch, CountDownLatch fLatch) {
-			queue = q;
+	class Reading implements Callable<Void> {
+		private final BlockingQueue<Batch> queue;
+		private final OrderedBuffer<FilteredBatch> filteredBuffer;
 
-			this.mainThread = mainThread;
-			this.rLatch = rLatch;
-			this.fLatch = fLatch;
+		Reading(BlockingQueue<Batch> queue, OrderedBuffer<FilteredBatch> filteredBuffer) {
+			this.queue = queue;
+			this.filteredBuffer = filteredBuffer;
 		}
 
 		@Override
-		public void run() {
+		public Void call() throws Exception {
 			logger.info("start read input: " + input.getAbsolutePath());
-			int countSleep = 0;
 			long count = 0;
+			long batchNumber = 0;
 			try (SamReader reader = SAMFileReaderFactory.createSAMFileReader(input, null, validation)){
+				List<SAMRecord> batch = new ArrayList<>(BATCH_SIZE);
 				for (SAMRecord record : reader) {
-					SAMRecordFilterWrapper wrapper = new SAMRecordFilterWrapper(record, ++count);
-					queue.add(wrapper);
-
-					if (fLatch.getCount() == 0)
-						throw new Exception(
-								"No filtering threads left, but reading from input is not yet completed");
-
-					if (count % checkPoint == 0) { // checkPoint defaults to 100000
-						while (queue.size() >= maxRecords) {								
-							try {
-								Thread.sleep(100);
-								countSleep++;
-							} catch (Exception e) {
-								logger.info(Thread.currentThread().getName() + " " + e.getMessage());
-							}
-						}
+					batch.add(record);
+					if (batch.size() == BATCH_SIZE) {
+						queue.put(new Batch(batchNumber++, batch));
+						batch = new ArrayList<>(BATCH_SIZE);
 					}
+					count++;
+				}
+				if ( ! batch.isEmpty()) {
+					queue.put(new Batch(batchNumber++, batch));
+				}
+				filteredBuffer.setEnd(batchNumber);
+				for (int i = 0; i < noOfThreads; i++) {
+					queue.put(NO_MORE_BATCHES);
+				}
 
-				}// end for loop
-				 
-				logger.info("completed reading thread, read " + count
-						+ " records from input: " + input.getAbsolutePath());
+				logger.info("completed reading thread, read " + count + " records (" + batchNumber
+						+ " batches) from input: " + input.getAbsolutePath());
 			} catch (Exception e) {
 				logger.error("Exception caught in Reading thread", e);
-				mainThread.interrupt();
-			} finally {
-				rLatch.countDown();
-				logger.debug(String.format("Exit Reading thread, total slept %d times * %d milli-seconds, "
-					+ "since input queue are full.fLatch  is %d; queues size is %d ",
-					countSleep, sleepUnit, fLatch.getCount(), queue.size()));
+				throw e;
 			}
-
+			return null;
 		}
 	}
 
-	class Filtering implements Runnable {
-
-		private final AbstractQueue<SAMRecordFilterWrapper> qIn;
-		private final AbstractQueue<SAMRecordFilterWrapper> qOut;
-
-		private final Thread mainThread;
-		final CountDownLatch rLatch;
-		final CountDownLatch fLatch;
-		final CountDownLatch wGoodLatch;
-		final CountDownLatch wBadLatch;
-
-        /**
-		 * 
-		 * @param qIn : store SAM record from input file
-		 * @param qOutGood : store unmatched record based on query
-		 * @param qOutBad: store unmatched record based on query (null is allowed)
-		 * @param query : query string
-		 * @param maxRecords : queue size
-		 * @param mainThread : parent thread
-		 * @param rLatch : the counter for reading thread
-		 * @param fLatch : the counter for filtering thread (current type)
+	class Filtering implements Callable<Void> {
+
+		private final BlockingQueue<Batch> qIn;
+		private final OrderedBuffer<FilteredBatch> qOut;
+
+		/**
+		 *
+		 * @param qIn : batches of SAM records from the input file
+		 * @param qOut : filtered batches, to be re-ordered for writing
 		 */
-		Filtering(AbstractQueue<SAMRecordFilterWrapper> qIn,
-				AbstractQueue<SAMRecordFilterWrapper> qOut, Thread mainThread,
-				CountDownLatch rLatch, CountDownLatch fLatch,
-				CountDownLatch wGoodLatch, CountDownLatch wBadLatch) {
+		Filtering(BlockingQueue<Batch> qIn, OrderedBuffer<FilteredBatch> qOut) {
 			this.qIn = qIn;
 			this.qOut = qOut;
-			this.mainThread = mainThread;
-			this.rLatch = rLatch;
-			this.fLatch = fLatch;
-			this.wGoodLatch = wGoodLatch;
-			this.wBadLatch = wBadLatch;
-
 		}
 
 		@Override
-		public void run() {
-
-			long sleepcount = 0;
+		public Void call() throws Exception {
 			long count = 0;
-            int countOutputSleep = 0;
-			boolean run = true;
-
 			try {
 				QueryExecutor ExQuery = new QueryExecutor(query);
-				SAMRecordFilterWrapper record;
-
-				while (run) {
-					record = qIn.poll();
-
-					if (record == null) {
-						// must check whether reading thread finished first.
-						if (rLatch.getCount() == 0) {
-							run = false;
-						}
-
-						// qIn maybe filled again during sleep, so sleep should
-						// be secondly
-						try {
-							Thread.sleep(sleepUnit);
-							sleepcount++;
-						} catch (InterruptedException e) {
-							logger.info(Thread.currentThread().getName() + " "
-									+ e);
-						}
-
-					} else {
-						// pass the record to filter and then to output queue
-						record.setPassesFilter(ExQuery.Execute(record.getRecord()));
-						qOut.add(record);
-
-						if (++count % 500000 == 0) {
-							int sortingQueueSize = qOut.size();
-							if (count % 1000000 == 0) {
-								logger.info("filter thread record count: " + count
-										+ ", sorting queue size: "
-										+ sortingQueueSize);
-							}
-							while (sortingQueueSize > 200000) {
-								Thread.sleep(250);
-								sortingQueueSize = qOut.size();
-							}
+				Batch batch;
+				while ((batch = qIn.take()) != NO_MORE_BATCHES) {
+					List<SAMRecord> satisfied = new ArrayList<>(batch.records().size());
+					List<SAMRecord> unmatched = filterOut == null ? Collections.emptyList() : new ArrayList<>();
+					for (SAMRecord record : batch.records()) {
+						if (ExQuery.Execute(record)) {
+							satisfied.add(record);
+						} else if (filterOut != null) {
+							unmatched.add(record);
 						}
+					}
+					qOut.put(batch.number(), new FilteredBatch(batch.number(), satisfied, unmatched));
 
-					} // end else
-				}// end while
-				logger.info("completed filtering thread: "
-						+ Thread.currentThread().getName());
+					count += batch.records().size();
+					if (count % 1000000 < BATCH_SIZE) {
+						logger.info("filter thread record count: " + count + ", read queue size (batches): " + qIn.size());
+					}
+				}
+				logger.info("completed filtering thread: " + Thread.currentThread().getName() + ", filtered " + count + " records");
 			} catch (Exception e) {
 				logger.error("exception caught in Filterer thread", e);
-				mainThread.interrupt();
-			} finally {
-				fLatch.countDown();
-				logger.debug(String.format(" total slept %d times since input queue is " +
-						"empty and %d time since either output queue is full. " +
-						"each sleep take %d mill-second. queue size for qIn, qOutqOutBad are %d,%d",
-						sleepcount, countOutputSleep, sleepUnit, qIn.size(), qOut.size()));
-
+				throw e;
 			}
+			return null;
 		}
 	}
 
-	class Writing implements Runnable {
+	class Writing implements Callable<Void> {
 		private final File file;
-		private final AbstractQueue<SAMRecordFilterWrapper> queue;
-		private final Thread mainThread;
-		private final AbstractQueue<SAMRecord> outBadQueue;
-
-		final CountDownLatch fLatch;
-		final CountDownLatch wLatch;
-
-		private long count = 1;
-		private long filteredCount;
-		private final boolean writeUnmatchedOutput;
-
-		Writing(AbstractQueue<SAMRecordFilterWrapper> q, File f,
-				AbstractQueue<SAMRecord> outBadQueue, Thread mainThread,
-				CountDownLatch fLatch, CountDownLatch wLatch) {
-			queue = q;
-			file = f;
-			this.mainThread = mainThread;
-			this.fLatch = fLatch;
-			this.wLatch = wLatch;
-			this.outBadQueue = outBadQueue;
-			writeUnmatchedOutput = null != outBadQueue;
+		private final OrderedBuffer<FilteredBatch> filteredBuffer;
+		private final BlockingQueue<List<SAMRecord>> unmatchedQueue;
+
+		Writing(OrderedBuffer<FilteredBatch> filteredBuffer, File f, BlockingQueue<List<SAMRecord>> unmatchedQueue) {
+			this.filteredBuffer = filteredBuffer;
+			this.file = f;
+			this.unmatchedQueue = unmatchedQueue;
 		}
 
 		@Override
-		public void run() {
-			int countSleep = 0;
-			boolean run = true;
-			
-			boolean presorted = header.getSortOrder().equals(sort);
-			boolean index =  sort.equals(SAMFileHeader.SortOrder.coordinate);
-			//make sure don't change the input header since the writer of unmatched reads  should use it.
-			SAMFileHeader he = header.clone();
-			he.setSortOrder(sort);
-			SAMWriterFactory writeFactory = new SAMWriterFactory(he , presorted, file,tmpdir, index);
-
-			logger.info("input bam are presorted: " + presorted);
-			logger.info("set sort to " + sort);
-			logger.info("create index file " + index);
-				
+		public Void call() throws Exception {
+			long filteredCount = 0;
+			SAMWriterFactory writeFactory = getWriterFactory(file);
 			try {
-				List<SAMRecordFilterWrapper> unorderedRecords = new ArrayList<>();
-				SAMRecordFilterWrapper record;
-				while (run) {
-					// when queue is empty,maybe filtering is done
-					if ((record = queue.poll()) == null) {
-						if (fLatch.getCount() == 0)
-							run = false;
-						try {
-							Thread.sleep(sleepUnit);
-							countSleep++;
-						} catch (Exception e) {
-							logger.info(Thread.currentThread().getName() + " " + e.getMessage());
+				try (SAMFileWriter writer = writeFactory.getWriter()) {
+					FilteredBatch batch;
+					while ((batch = filteredBuffer.take()) != null) {
+						for (SAMRecord record : batch.satisfied()) {
+							writer.addAlignment(record);
+							if (++filteredCount % 1000000 == 0)
+								logger.info("writer thread record count: " + filteredCount);
 						}
-
-						if ((count % checkPoint == 0) && (!mainThread.isAlive()))
-							throw new Exception( "Writing threads failed since parent thread died.");
-
-					} else {
-						if (count == record.getPosition()) {
-							addRecordToWriter(record, writeFactory.getWriter());
-
-							// check the list to see if the next element has already been retrieved
-							int size = unorderedRecords.size();
-							if (size > 0) {
-								int i = 0;
-								if (size > 1) {
-									Collections.sort(unorderedRecords);
-								}
-								while (i < size
-										&& (record = unorderedRecords
-												.getFirst()).getPosition() == count) {
-									addRecordToWriter(record, writeFactory.getWriter());
-									unorderedRecords.removeFirst();
-									i++;
-								}
-							}
-						} else if (count < record.getPosition()) {
-							unorderedRecords.add(record);
-						} else {
-							logger.error("count: " + count + " is higher that recently processed record: " + record.getPosition());
+						// batches arrive in order, so their unmatched records can be handed straight to the unmatched writer
+						if (unmatchedQueue != null && ! batch.unmatched().isEmpty()) {
+							unmatchedQueue.put(batch.unmatched());
 						}
 					}
 				}
-			logger.info(writeFactory.getLogMessage());
-
-			if (!mainThread.isAlive())
-				throw new Exception("Writing threads failed since parent thread died.");
-			else
-				logger.info("completed writing threads, added " + filteredCount
-						+ " records to the output: " + file.getAbsolutePath());
-
+				writeFactory.renameIndex();
+				if (writeFactory.getLogMessage() != null) {
+					logger.info(writeFactory.getLogMessage());
+				}
+				logger.info("completed writing threads, added " + filteredCount + " records to the output: " + file.getAbsolutePath());
 			} catch (Exception e) {
 				logger.error("Exception caught in Writer thread", e);
 				logger.debug(file.getAbsolutePath() + " failed ");
-				mainThread.interrupt();
+				throw e;
 			} finally {
-				wLatch.countDown();
-				logger.debug("Exit Writing threads, total " + countSleep
-						+ " times get null from writing queue.");
+				if (unmatchedQueue != null) {
+					/*
+					 * let the unmatched writer finish, unless it is interrupted first
+					 */
+					unmatchedQueue.put(NO_MORE_RECORDS);
+				}
 			}
+			return null;
 		}
+	}
+
+	class WritingUnmatched implements Callable<Void> {
+		private final File unmatchedFile;
+		private final BlockingQueue<List<SAMRecord>> unmatchedQueue;
 
-		private void addRecordToWriter(SAMRecordFilterWrapper record, SAMFileWriter writer) {
-			if (record.getPassesFilter()) {
-				writer.addAlignment(record.getRecord());
-				if (++filteredCount % 1000000 == 0)
-					logger.info("writer thread record count: " + filteredCount);
-
-			} else if (writeUnmatchedOutput) {
-				// deal with unmatched records here
-				
-				outBadQueue.add(record.getRecord());
-				
-				if (count % 1000000 == 0 ) {
-					int queueSize = outBadQueue.size();
-					logger.info("unmatched records queue size: " + queueSize);
-					while (queueSize > 100000) {
-						try {
-							Thread.sleep(100);
-						} catch (InterruptedException e) {
-							e.printStackTrace();
-							break;
+		WritingUnmatched(File funmatch, BlockingQueue<List<SAMRecord>> unmatchedQueue) {
+			this.unmatchedFile = funmatch;
+			this.unmatchedQueue = unmatchedQueue;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			long unmatchedCount = 0;
+			SAMWriterFactory writeFactory = getWriterFactory(unmatchedFile);
+			try {
+				try (SAMFileWriter writer = writeFactory.getWriter()) {
+					List<SAMRecord> records;
+					while ((records = unmatchedQueue.take()) != NO_MORE_RECORDS) {
+						for (SAMRecord record : records) {
+							writer.addAlignment(record);
 						}
-						queueSize = outBadQueue.size();
+						unmatchedCount += records.size();
 					}
 				}
+				writeFactory.renameIndex();
+				if (writeFactory.getLogMessage() != null) {
+					logger.info(writeFactory.getLogMessage());
+				}
+				logger.info("completed writing threads, added " + unmatchedCount
+						+ " records to the output: " + unmatchedFile.getAbsolutePath());
+			} catch (Exception e) {
+				logger.error("Exception caught in unmatched Writer thread", e);
+				throw e;
 			}
-			count++;
+			return null;
 		}
 	}
 
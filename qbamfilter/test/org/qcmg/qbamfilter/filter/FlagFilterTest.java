@@ -136,4 +136,33 @@ public class FlagFilterTest {
     public void invalidFlagTest() throws Exception{
        new FlagFilter("ReadNotPair", Comparator.NotEqual, "1");
     }
+    @Test
+    public void flagMasksMatchFilter() throws Exception {
+        String[] flagNames = {
+            "ReadPaired", "ProperPair","ReadUnmapped", "Mateunmapped",
+            "ReadNegativeStrand",  "MateNegativeStrand",  "FirstOfpair", "SecondOfpair",
+            "NotprimaryAlignment",  "ReadFailsVendorQuality", "DuplicateRead", "SupplementaryRead"};
+        SAMRecord record = new SAMRecord(null);
+        for (String flagName : flagNames) {
+            for (Comparator comp : new Comparator[] {Comparator.Equal, Comparator.NotEqual}) {
+                for (String value : new String[] {"true", "false"}) {
+                    FlagFilter filter = new FlagFilter(flagName, comp, value);
+                    int[] masks = filter.getFlagMasks();
+                    if (null == masks) {
+                        continue;
+                    }
+                    for (int flags = 0 ; flags < 0x1000 ; flags++) {
+                        record.setFlags(flags);
+                        boolean expected = filter.filterOut(record);
+                        boolean actual = (flags & masks[0]) == masks[0] && (flags & masks[1]) == 0;
+                        assertEquals(flagName + " " + comp + " " + value + " " + flags, expected, actual);
+                    }
+                }
+            }
+        }
+        // mate related flags that must be false can't be expressed as masks
+        assertNull(new FlagFilter("ProperPair", Comparator.Equal, "false").getFlagMasks());
+        assertNotNull(new FlagFilter("DuplicateRead", Comparator.Equal, "false").getFlagMasks());
+    }
+
 }
@@ -118,4 +118,13 @@ public class QualFilterTest {
         assertFalse(new QualFilter("average", Comparator.Small, "36").filterOut(rec));
         assertFalse(new QualFilter("average", Comparator.Small, "0").filterOut(rec));
     }
+    
+    @Test
+    public void testFilterMissingQual() throws Exception {
+    	SAMRecord rec = new SAMRecord(null);
+    	rec.setBaseQualityString("*");
+
+        assertFalse(new QualFilter("average", Comparator.Small, "20").filterOut(rec));
+        assertFalse(new QualFilter("average", Comparator.GreatEqual, "0").filterOut(rec));
+    }
 }
@@ -82,4 +82,18 @@ public class TagValueFilterTest {
         new File(TestFile.INPUT_FILE_NAME).delete();
     }
 
+    
+    @Test
+    public void testNumericComparisonOfNonIntegers() {
+        SAMRecord re = new SAMRecord(null);
+        re.setAttribute("ZM", 5);
+        re.setAttribute("XS", "abc");
+        re.setAttribute("XF", 2.5f);
+
+        assertTrue(new TagValueFilter("ZM", Comparator.Great, "3").filterOut(re));
+        assertFalse(new TagValueFilter("ZM", Comparator.Great, "x").filterOut(re));
+        assertFalse(new TagValueFilter("XS", Comparator.Great, "3").filterOut(re));
+        assertFalse(new TagValueFilter("XF", Comparator.Small, "3").filterOut(re));
+        assertTrue(new TagValueFilter("XS", Comparator.Equal, "abc").filterOut(re));
+    }
 }
@@ -0,0 +1,232 @@
+package org.qcmg.qbamfilter.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.filter.SamRecordFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.tree.CommonTree;
+import org.antlr.runtime.tree.CommonTreeNodeStream;
+import org.junit.Test;
+import org.qcmg.qbamfilter.grammars.Expression;
+import org.qcmg.qbamfilter.grammars.queryLexer;
+import org.qcmg.qbamfilter.grammars.queryParser;
+import org.qcmg.qbamfilter.grammars.queryTree;
+
+public class CompiledQueryTest {
+
+	private static SamRecordFilter parse(String query) throws Exception {
+		queryParser parser = new queryParser(new CommonTokenStream(new queryLexer(new ANTLRStringStream(query))));
+		CommonTree tree = (CommonTree) parser.script().getTree();
+		return new queryTree(new CommonTreeNodeStream(tree)).script().exp;
+	}
+
+	@Test
+	public void flattenAndFuseFlags() throws Exception {
+		CompiledQuery cq = CompiledQuery.compile(parse("and (flag_DuplicateRead == false, and (flag_ReadPaired == true, mapq > 10), and (cigar_M > 40, seq_numberN < 2))"));
+		/*
+		 * the nested ands are merged into the root, and the flag conditions are fused into a single node
+		 */
+		assertEquals("and(FlagMaskFilter[set=0x1, clear=0x400], MapQFilter, CigarFilter, SeqFilter)", cq.toString());
+		assertEquals(5, cq.getNumberOfNodes());
+
+		/*
+		 * single condition
+		 */
+		cq = CompiledQuery.compile(parse("mapq > 10"));
+		assertEquals("MapQFilter", cq.toString());
+
+		/*
+		 * flags in an or are not fused
+		 */
+		cq = CompiledQuery.compile(parse("or (MD_mismatch > 3, or (flag_DuplicateRead == true, flag_ReadUnmapped == true))"));
+		assertEquals("or(FlagFilter, FlagFilter, MDFilter)", cq.toString());
+	}
+
+	@Test
+	public void reorderByMeasuredSelectivity() throws Exception {
+		CompiledQuery cq = CompiledQuery.compile(parse("and (mapq > 10, pos > 1000)"));
+		assertEquals("and(MapQFilter, PosFilter)", cq.toString());
+		/*
+		 * all reads pass the mapq condition, and most fail the pos condition, so the pos condition should be moved to the front
+		 */
+		SAMRecord record = new SAMRecord(null);
+		record.setMappingQuality(60);
+		record.setAlignmentStart(1);
+		for (int i = 0 ; i < CompiledQuery.INITIAL_REORDER_SAMPLES * 64 ; i++) {
+			cq.filterOut(record);
+		}
+		assertEquals("and(PosFilter, MapQFilter)", cq.toString());
+	}
+
+	@Test
+	public void matchesQueryTree() throws Exception {
+		String[] queries = new String[] {
+			"and (flag_DuplicateRead == false, flag_ProperPair == true, mapq >= 20, cigar_M > 50, or (option_ZM >= 5, MD_mismatch <= 2, rname == chr1), seq_numberN < 2)",
+			"or (and (flag_ReadNegativeStrand != true, flag_FirstOfpair == true, option_ZM < 3), and (isize > 100, isize < 500, rname != mrnm), qual_average > 30)",
+			"and (or (mapq < 10, cigar_S > 5), or (flag_Mateunmapped == false, option_XS =~ ab*), MD_mismatch > 1)",
+		};
+		Random r = new Random(7);
+		String[] refs = new String[] {"chr1", "chr2", "chrX"};
+		SAMRecord[] records = new SAMRecord[500];
+		for (int i = 0 ; i < records.length ; i++) {
+			SAMRecord record = new SAMRecord(null);
+			record.setFlags(r.nextInt(0x1000));
+			record.setMappingQuality(r.nextInt(61));
+			record.setReferenceName(refs[r.nextInt(3)]);
+			record.setMateReferenceName(refs[r.nextInt(3)]);
+			record.setAlignmentStart(1 + r.nextInt(10000));
+			record.setInferredInsertSize(r.nextInt(1000) - 200);
+			int softClip = r.nextInt(10);
+			record.setCigarString(softClip + "S" + (100 - softClip) + "M");
+			StringBuilder bases = new StringBuilder();
+			byte[] quals = new byte[100];
+			for (int j = 0 ; j < 100 ; j++) {
+				bases.append(r.nextInt(40) == 0 ? 'N' : "ACGT".charAt(r.nextInt(4)));
+				quals[j] = (byte) (10 + r.nextInt(30));
+			}
+			record.setReadString(bases.toString());
+			record.setBaseQualities(quals);
+			if (r.nextBoolean()) {
+				record.setAttribute("ZM", r.nextInt(10));
+			}
+			if (r.nextBoolean()) {
+				record.setAttribute("XS", r.nextBoolean() ? "abc" : "xyz");
+			}
+			if (r.nextInt(4) > 0) {
+				record.setAttribute("MD", r.nextInt(4) == 0 ? "100" : "20A30C10^GT39");
+			}
+			records[i] = record;
+		}
+
+		for (String query : queries) {
+			SamRecordFilter tree = parse(query);
+			CompiledQuery cq = CompiledQuery.compile(tree);
+			int passed = 0;
+			/*
+			 * enough passes to trigger re-ordering
+			 */
+			for (int pass = 0 ; pass < 200 ; pass++) {
+				for (SAMRecord record : records) {
+					boolean expected = tree.filterOut(record);
+					assertEquals(query, expected, cq.filterOut(record));
+					if (expected) {
+						passed++;
+					}
+				}
+			}
+			assertTrue(passed > 0 && passed < 200 * records.length);
+		}
+	}
+
+	/*
+	 * a condition from outside this package, that throws for unmapped reads
+	 */
+	private static final class MappedOnlyFilter implements SamRecordFilter {
+		@Override
+		public boolean filterOut(SAMRecord record) {
+			if (record.getReadUnmappedFlag()) {
+				throw new IllegalStateException("unmapped read");
+			}
+			return record.getMappingQuality() > 0;
+		}
+
+		@Override
+		public boolean filterOut(SAMRecord first, SAMRecord second) {
+			return false;
+		}
+	}
+
+	@Test
+	public void conditionThatMayThrowKeepsQueryOrder() throws Exception {
+		Expression guarded = new Expression();
+		guarded.addOperator(queryTree.Operator.AND);
+		guarded.addCondition(parse("pos > 1000"));
+		guarded.addCondition(parse("flag_ReadUnmapped == false"));
+		guarded.addCondition(new MappedOnlyFilter());
+		Expression root = new Expression();
+		root.addOperator(queryTree.Operator.OR);
+		root.addCondition(parse("mapq > 100"));
+		root.addCondition(guarded);
+
+		CompiledQuery cq = CompiledQuery.compile(root);
+		assertEquals("or(MapQFilter, and(PosFilter, FlagFilter, MappedOnlyFilter))", cq.toString());
+
+		/*
+		 * nearly all reads are unmapped, and so would move the flag test to the front, and the and node in front of the mapq test, if they could be re-ordered
+		 */
+		SAMRecord unmapped = new SAMRecord(null);
+		unmapped.setReadPairedFlag(true);
+		unmapped.setReadUnmappedFlag(true);
+		unmapped.setAlignmentStart(2000);
+		SAMRecord mapped = new SAMRecord(null);
+		mapped.setReadPairedFlag(true);
+		mapped.setMappingQuality(60);
+		mapped.setAlignmentStart(2000);
+		for (int i = 0 ; i < CompiledQuery.INITIAL_REORDER_SAMPLES * 64 * 4 ; i++) {
+			assertEquals(i % 100 == 0, cq.filterOut(i % 100 == 0 ? mapped : unmapped));
+		}
+		assertEquals("or(MapQFilter, and(PosFilter, FlagFilter, MappedOnlyFilter))", cq.toString());
+
+		/*
+		 * the condition isn't moved ahead of a more expensive one by the initial ordering either
+		 */
+		Expression expensiveGuard = new Expression();
+		expensiveGuard.addOperator(queryTree.Operator.AND);
+		expensiveGuard.addCondition(parse("qual_average > 10"));
+		expensiveGuard.addCondition(new MappedOnlyFilter());
+		assertEquals("and(QualFilter, MappedOnlyFilter)", CompiledQuery.compile(expensiveGuard).toString());
+
+		/*
+		 * nodes that don't contain the condition can still be re-ordered
+		 */
+		cq = CompiledQuery.compile(parse("and (mapq > 10, pos > 1000)"));
+		for (int i = 0 ; i < CompiledQuery.INITIAL_REORDER_SAMPLES * 64 ; i++) {
+			cq.filterOut(unmapped);
+		}
+		assertEquals("and(PosFilter, MapQFilter)", cq.toString());
+	}
+
+	@Test
+	public void reorderWhenSharedBetweenThreads() throws Exception {
+		CompiledQuery cq = CompiledQuery.compile(parse("and (mapq > 10, pos > 1000)"));
+		SAMRecord record = new SAMRecord(null);
+		record.setMappingQuality(60);
+		record.setAlignmentStart(1);
+		int threads = 4;
+		ExecutorService service = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Integer>> futures = new ArrayList<>();
+			for (int t = 0 ; t < threads ; t++) {
+				futures.add(service.submit(() -> {
+					int passed = 0;
+					for (int i = 0 ; i < CompiledQuery.INITIAL_REORDER_SAMPLES * 64 / threads ; i++) {
+						if (cq.filterOut(record)) {
+							passed++;
+						}
+					}
+					return passed;
+				}));
+			}
+			for (Future<Integer> future : futures) {
+				assertEquals(0, future.get().intValue());
+			}
+		} finally {
+			service.shutdown();
+		}
+		/*
+		 * the samples of all threads count towards re-ordering
+		 */
+		assertEquals("and(PosFilter, MapQFilter)", cq.toString());
+	}
+}
@@ -0,0 +1,129 @@
+package org.qcmg.qbamfilter.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.qcmg.common.log.QLoggerFactory;
+import org.qcmg.picard.SAMFileReaderFactory;
+import org.qcmg.picard.SAMWriterFactory;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamReader;
+
+public class QueryMTTest {
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void orderedBuffer() throws Exception {
+		QueryMT.OrderedBuffer<Integer> buffer = new QueryMT.OrderedBuffer<>(4);
+		int n = 10000;
+		ExecutorService service = Executors.newFixedThreadPool(4);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0 ; t < 4 ; t++) {
+			final int thread = t;
+			futures.add(service.submit(() -> {
+				for (int i = thread ; i < n ; i += 4) {
+					buffer.put(i, i);
+				}
+				return null;
+			}));
+		}
+		buffer.setEnd(n);
+		for (int i = 0 ; i < n ; i++) {
+			assertEquals(i, buffer.take().intValue());
+		}
+		assertNull(buffer.take());
+		for (Future<?> f : futures) {
+			f.get();
+		}
+		service.shutdown();
+	}
+
+	@Test
+	public void multiThreadedFilterKeepsOrder() throws Exception {
+		File input = testFolder.newFile("input.bam");
+		File output = new File(testFolder.getRoot(), "output.bam");
+		File unmatched = new File(testFolder.getRoot(), "unmatched.bam");
+		File log = new File(testFolder.getRoot(), "output.log");
+		String query = "and (mapq > 20, flag_DuplicateRead == false)";
+
+		/*
+		 * several batches, the last of which is not full
+		 */
+		List<SAMRecord> records = createBam(input, QueryMT.BATCH_SIZE * 5 + 123);
+
+		Options options = new Options(new String[] {"-i", input.getAbsolutePath(), "-o", output.getAbsolutePath(), "-f", unmatched.getAbsolutePath(),
+				"-q", query, "-t", "3", "-m", "2", "-log", log.getAbsolutePath()});
+		new QueryMT(options, QLoggerFactory.getLogger(QueryMTTest.class)).executor();
+
+		QueryExecutor executor = new QueryExecutor(query);
+		List<String> expectedSatisfied = new ArrayList<>();
+		List<String> expectedUnmatched = new ArrayList<>();
+		for (SAMRecord record : records) {
+			(executor.Execute(record) ? expectedSatisfied : expectedUnmatched).add(record.getSAMString());
+		}
+		assertTrue( ! expectedSatisfied.isEmpty() && ! expectedUnmatched.isEmpty());
+		assertEquals(expectedSatisfied, read(output));
+		assertEquals(expectedUnmatched, read(unmatched));
+		assertTrue(new File(output.getAbsolutePath() + ".bai").exists());
+		assertTrue(new File(unmatched.getAbsolutePath() + ".bai").exists());
+	}
+
+	private static List<String> read(File bam) throws Exception {
+		List<String> records = new ArrayList<>();
+		try (SamReader reader = SAMFileReaderFactory.createSAMFileReader(bam)) {
+			for (SAMRecord record : reader) {
+				records.add(record.getSAMString());
+			}
+		}
+		return records;
+	}
+
+	private static List<SAMRecord> createBam(File bam, int number) {
+		SAMFileHeader header = new SAMFileHeader();
+		header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+		SAMSequenceDictionary dict = new SAMSequenceDictionary();
+		dict.addSequence(new SAMSequenceRecord("chr1", 10_000_000));
+		header.setSequenceDictionary(dict);
+
+		Random r = new Random(11);
+		List<SAMRecord> records = new ArrayList<>(number);
+		int position = 1;
+		SAMWriterFactory factory = new SAMWriterFactory(header, true, bam, false);
+		try (SAMFileWriter writer = factory.getWriter()) {
+			for (int i = 0 ; i < number ; i++) {
+				position += r.nextInt(5);
+				SAMRecord record = new SAMRecord(header);
+				record.setReadName("read_" + i);
+				record.setReferenceName("chr1");
+				record.setAlignmentStart(position);
+				record.setMappingQuality(r.nextInt(61));
+				record.setFlags(r.nextInt(10) == 0 ? 1024 : 0);
+				record.setCigarString("50M");
+				record.setReadString("ACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTAC");
+				record.setBaseQualityString("IIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIII");
+				writer.addAlignment(record);
+				records.add(record);
+			}
+		}
+		return records;
+	}
+}
@@ -133,6 +133,9 @@ public final class FileMerger {
 
 	private final File tmpdir;
 
+	/** The number of threads to use when merging indexed BAM files region by region. */
+	private final int threads;
+
 	private final QLogger logger = QLoggerFactory.getLogger(FileMerger.class);
 
 
@@ -190,6 +193,21 @@ public final class FileMerger {
 					  final String commandLine, final int numberRecords, final boolean includeOutputFile,
 					  final boolean ignoreReadGroupClashes, final boolean createIndex, final String tmpdir,
 					  final ValidationStringency validation, final String[] comments, String uuid) throws BamMergeException, IOException, Exception {
+		this(outputFileName, inputFileNames, groupReplacements, commandLine, numberRecords, includeOutputFile, ignoreReadGroupClashes,
+				createIndex, tmpdir, validation, comments, uuid, 1);
+	}
+
+	/**
+	 * As above, with the number of threads to use. When this is greater than 1, all the input files are indexed coordinate sorted BAM files,
+	 * the output is a BAM file and all records are to be merged, the merge is performed region by region in parallel by a {@link RegionMerger}.
+	 *
+	 * @param threads: the number of threads to use
+	 */
+	public FileMerger(final String outputFileName, final String[] inputFileNames, final String[] groupReplacements,
+					  final String commandLine, final int numberRecords, final boolean includeOutputFile,
+					  final boolean ignoreReadGroupClashes, final boolean createIndex, final String tmpdir,
+					  final ValidationStringency validation, final String[] comments, String uuid, int threads) throws BamMergeException, IOException, Exception {
+		this.threads = threads;
 		this.includeOutputFile = includeOutputFile;
 		this.ignoreReadGroupClashes = ignoreReadGroupClashes;
 		this.createIndex = createIndex;
@@ -383,8 +401,12 @@ public final class FileMerger {
 			try {
 				openReader();
 				mergeHeaders();
-				openWriter();
-				mergeAlignments();
+				if (canMergeByRegion()) {
+					mergeAlignmentsByRegion();
+				} else {
+					openWriter();
+					mergeAlignments();
+				}
 
 			} finally {
 				close();
@@ -780,46 +802,103 @@ public final class FileMerger {
 
 		while (iter.hasNext() && !hasReachedNumberRecords()) {
 			SAMRecord record = iter.next();
-			SAMReadGroupRecord srgr = record.getReadGroup();
+			updateRecord(record, iter.getCurrentSAMFileReader());
+			outputWriterfactory.getWriter().addAlignment(record);
+			mergeCount++;
+		}
+	}
 
-			if (null == srgr) {
-				logger.warn(record.getSAMString());
-				logger.warn(record.getAttribute(RG_TAG).toString());
-				logger.warn(record.getHeader().toString());
-				throw new BamMergeException("BAD_RECORD_RG");
-			}
+	/**
+	 * Merges the alignments of the source BAM files region by region on
+	 * multiple threads, performing the same group replacements and zc
+	 * annotations as {@link #mergeAlignments()}.
+	 *
+	 * @throws Exception
+	 *             if any of the regions could not be merged.
+	 */
+	private void mergeAlignmentsByRegion() throws Exception {
+		Vector<SamReader> readers = inputReader.getSAMFileReaders();
+		RegionMerger merger = new RegionMerger(getInputFiles(), mergedHeader, outputFile, tmpdir, threads, RegionMerger.DEFAULT_INTERVAL_SIZE,
+				createIndex, validation, (record, inputIndex) -> updateRecord(record, readers.get(inputIndex)));
+		mergeCount = merger.merge();
+		if (createIndex) {
+			BAMFileUtils.renameIndex(outputFile, SamFiles.findIndex(outputFile));
+		}
+	}
 
-			SamReader fileReader = iter.getCurrentSAMFileReader();
-			if ( ! replacementMap.isEmpty()) {
-				String oldGroup = srgr.getReadGroupId();
-				File file = inputReader.getFile(fileReader);
-				String newGroup = getReplacementGroup(file, oldGroup);
-				if (null != newGroup) {
-					record.setAttribute(RG, newGroup);
-				}
+	/**
+	 * @return true if more than one thread is available, all records are to be
+	 *         merged, and the input and output files are suitable for merging
+	 *         region by region.
+	 */
+	private boolean canMergeByRegion() throws IOException {
+		return threads > 1 && numberRecords < 0 && RegionMerger.canMerge(getInputFiles(), outputFile, validation);
+	}
+
+	/**
+	 * @return the input files, in the same order as the readers of the input reader.
+	 */
+	private List<File> getInputFiles() {
+		List<File> files = new ArrayList<>();
+		for (SamReader reader : inputReader.getSAMFileReaders()) {
+			files.add(inputReader.getFile(reader));
+		}
+		return files;
+	}
+
+	/**
+	 * Performs the group replacement and zc annotation of a record from the
+	 * specified input reader.
+	 *
+	 * @throws BamMergeException
+	 *             if the record has no read group, or a zc annotation value
+	 *             that is not part of the RG:zc annotations in the related
+	 *             input SAM/BAM.
+	 */
+	private void updateRecord(SAMRecord record, SamReader fileReader) throws BamMergeException {
+		SAMReadGroupRecord srgr = record.getReadGroup();
+
+		if (null == srgr) {
+			logger.warn(record.getSAMString());
+			logger.warn(record.getAttribute(RG_TAG).toString());
+			logger.warn(record.getHeader().toString());
+			throw new BamMergeException("BAD_RECORD_RG");
+		}
+
+		if ( ! replacementMap.isEmpty()) {
+			String oldGroup = srgr.getReadGroupId();
+			File file = inputReader.getFile(fileReader);
+			String newGroup = getReplacementGroup(file, oldGroup);
+			if (null != newGroup) {
+				record.setAttribute(RG, newGroup);
 			}
-			Integer oldZc = record.getIntegerAttribute(ZC);
-			if (null == oldZc) {
-				Integer zc = inputReader.getDefaultZc(fileReader);
-				record.setAttribute(ZC, zc);
-			} else {
-				Set<Integer> permissibleZcs = inputReader.getOldZcs(fileReader);
-				if (!permissibleZcs.contains(oldZc)) {
-					throw new BamMergeException("BAD_RECORD_ZC");
-				}
-				Map<Integer, Integer> replacementZcs = inputReader.getReplacementZcs(fileReader);
-				if (null != replacementZcs) {
-					Integer replacement = replacementZcs.get(oldZc);
-					if (null != replacement) {
-						record.setAttribute(ZC, replacement);
-					}
+		}
+		Integer oldZc = record.getIntegerAttribute(ZC);
+		if (null == oldZc) {
+			Integer zc = inputReader.getDefaultZc(fileReader);
+			record.setAttribute(ZC, zc);
+		} else {
+			Set<Integer> permissibleZcs = inputReader.getOldZcs(fileReader);
+			if (!permissibleZcs.contains(oldZc)) {
+				throw new BamMergeException("BAD_RECORD_ZC");
+			}
+			Map<Integer, Integer> replacementZcs = inputReader.getReplacementZcs(fileReader);
+			if (null != replacementZcs) {
+				Integer replacement = replacementZcs.get(oldZc);
+				if (null != replacement) {
+					record.setAttribute(ZC, replacement);
 				}
 			}
-			outputWriterfactory.getWriter().addAlignment(record);
-			mergeCount++;
 		}
 	}
 
+	/**
+	 * @return the number of records merged into the output SAM/BAM.
+	 */
+	public long getMergeCount() {
+		return mergeCount;
+	}
+
 	/**
 	 * @return true if the maximum number of merged records has been reached.
 	 */
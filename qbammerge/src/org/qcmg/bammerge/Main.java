@@ -49,7 +49,8 @@ public final class Main {
 						options.getTmpDir(),
 						options.getValidation(),
 						options.getComment(),
-						options.getUUID());
+						options.getUUID(),
+						options.getThreads());
  
 				exitStatus = 0;// SUCCESS
 			}
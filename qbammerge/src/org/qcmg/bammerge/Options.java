@@ -35,6 +35,7 @@ public final class Options {
 	private static final String COMMENT_OPTION_DESCRIPTION = Messages.getMessage("COMMENT_OPTION_DESCRIPTION");	 
 	private static final String TMPDIR_OPTION_DESCRIPTION = Messages.getMessage("TMPDIR_OPTION_DESCRIPTION");
 	private static final String UUID_OPTION_DESCRIPTION = Messages.getMessage("UUID_OPTION_DESCRIPTION");
+	private static final String THREADS_OPTION_DESCRIPTION = Messages.getMessage("THREADS_OPTION_DESCRIPTION");
 	private final OptionParser parser = new OptionParser();
 	private final OptionSet options;
 	private final String[] inputFileNames;
@@ -75,6 +76,7 @@ public final class Options {
 		parser.accepts("co", COMMENT_OPTION_DESCRIPTION).withRequiredArg().ofType(String.class);
 		parser.accepts("uuid", UUID_OPTION_DESCRIPTION).withRequiredArg().ofType(String.class);
 		parser.accepts("bai", INDEX_OPTION_DESCRIPTION);
+		parser.accepts("threads", THREADS_OPTION_DESCRIPTION).withRequiredArg().ofType(Integer.class).describedAs("threads");
 		
 		options = parser.parse(args);
 
@@ -296,6 +298,15 @@ public final class Options {
 	public boolean hasCreateIndexOption() {
 		return options.has("bai");
 	}
+
+	/**
+	 * Gets the number of threads.
+	 * 
+	 * @return the number of threads, defaults to 1
+	 */
+	public int getThreads() {
+		return options.has("threads") ? (Integer) options.valueOf("threads") : 1;
+	}
 	
 	public ValidationStringency getValidation() throws Exception{	
 		
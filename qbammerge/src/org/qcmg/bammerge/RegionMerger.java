@@ -0,0 +1,310 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+package org.qcmg.bammerge;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import htsjdk.samtools.BAMFileSpan;
+import htsjdk.samtools.BAMFileWriter;
+import htsjdk.samtools.BAMIndexMerger;
+import htsjdk.samtools.BAMIndexer;
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.Chunk;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileSource;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordCoordinateComparator;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.ValidationStringency;
+import htsjdk.samtools.seekablestream.SeekableMemoryStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import htsjdk.samtools.util.FileExtensions;
+import htsjdk.samtools.util.IOUtil;
+
+import org.qcmg.common.log.QLogger;
+import org.qcmg.common.log.QLoggerFactory;
+import org.qcmg.picard.SAMFileReaderFactory;
+
+/**
+ * Merges indexed, coordinate sorted bam files by splitting the genome into intervals and merging each interval on its own thread.
+ * <p>
+ * Each interval is merged (using the same coordinate ordering as {@link org.qcmg.picard.MultiSAMFileIterator}) into its own
+ * BGZF-compressed part file, with no terminator block. Records are assigned to the interval that contains their alignment start,
+ * and unplaced unmapped records make up the final part.
+ * The output bam is then the header, followed by the part files concatenated in order (without being re-compressed), followed by a terminator block.
+ * If an index is requested, each part is indexed as it is written and the part indexes are merged.
+ */
+public final class RegionMerger {
+
+	/**
+	 * Updates a record (read group, zc etc.) as it is merged
+	 */
+	public interface RecordUpdater {
+		/**
+		 * @param record the record to update
+		 * @param inputIndex the position of the file that the record came from in the list of input files
+		 */
+		void update(SAMRecord record, int inputIndex) throws BamMergeException;
+	}
+
+	public static final int DEFAULT_INTERVAL_SIZE = 10_000_000;
+
+	private static final QLogger logger = QLoggerFactory.getLogger(RegionMerger.class);
+
+	/*
+	 * a region to merge - a null contig denotes the unplaced unmapped reads
+	 */
+	record Interval(String contig, int start, int end) {}
+
+	private record Part(File file, byte[] index, long records) {}
+
+	private final List<File> inputs;
+	private final SAMFileHeader header;
+	private final File output;
+	private final File tmpdir;
+	private final int threads;
+	private final int intervalSize;
+	private final boolean createIndex;
+	private final ValidationStringency validation;
+	private final RecordUpdater updater;
+
+	/*
+	 * each thread has its own readers, which are closed once the merge is complete
+	 */
+	private final List<List<SamReader>> allReaders = Collections.synchronizedList(new ArrayList<>());
+	private final ThreadLocal<List<SamReader>> readers = new ThreadLocal<>();
+
+	public RegionMerger(List<File> inputs, SAMFileHeader header, File output, File tmpdir, int threads, int intervalSize,
+			boolean createIndex, ValidationStringency validation, RecordUpdater updater) {
+		if (header.getSortOrder() != SAMFileHeader.SortOrder.coordinate) {
+			throw new IllegalArgumentException("RegionMerger requires a coordinate sorted header");
+		}
+		this.inputs = inputs;
+		this.header = header;
+		this.output = output;
+		this.tmpdir = tmpdir;
+		this.threads = threads;
+		this.intervalSize = intervalSize;
+		this.createIndex = createIndex;
+		this.validation = validation;
+		this.updater = updater;
+	}
+
+	/**
+	 * Returns true if all the supplied files can be merged region by region, ie. they are indexed coordinate sorted bam files
+	 */
+	public static boolean canMerge(List<File> inputs, File output, ValidationStringency validation) throws IOException {
+		if ( ! output.getName().endsWith(FileExtensions.BAM)) {
+			return false;
+		}
+		for (File f : inputs) {
+			try (SamReader reader = SAMFileReaderFactory.createSAMFileReader(f, null, validation)) {
+				if (reader.type() != SamReader.Type.BAM_TYPE || ! reader.hasIndex()
+						|| reader.getFileHeader().getSortOrder() != SAMFileHeader.SortOrder.coordinate) {
+					logger.info("unable to merge by region as " + f.getAbsolutePath() + " is not an indexed, coordinate sorted bam file");
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Splits the contigs in the header into intervals of (at most) intervalSize bases, followed by an interval for the unplaced unmapped reads
+	 */
+	static List<Interval> getIntervals(SAMFileHeader header, int intervalSize) {
+		List<Interval> intervals = new ArrayList<>();
+		for (SAMSequenceRecord ssr : header.getSequenceDictionary().getSequences()) {
+			int length = Math.max(1, ssr.getSequenceLength());
+			for (int start = 1 ; start <= length ; start += intervalSize) {
+				/*
+				 * last interval extends to the end of the contig (an end of 0), and beyond, should any records be positioned past the end
+				 */
+				int end = start + intervalSize > length ? 0 : start + intervalSize - 1;
+				intervals.add(new Interval(ssr.getSequenceName(), start, end));
+			}
+		}
+		intervals.add(new Interval(null, 0, 0));
+		return intervals;
+	}
+
+	/**
+	 * @return the number of records merged
+	 */
+	public long merge() throws Exception {
+		List<Interval> intervals = getIntervals(header, intervalSize);
+		Path partDir = Files.createTempDirectory((null != tmpdir ? tmpdir : output.getAbsoluteFile().getParentFile()).toPath(), "qbammerge");
+		logger.info("merging " + intervals.size() + " intervals on " + threads + " threads, part files in: " + partDir);
+
+		ExecutorService service = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Part>> futures = new ArrayList<>(intervals.size());
+			for (int i = 0 ; i < intervals.size() ; i++) {
+				final Interval interval = intervals.get(i);
+				final File partFile = partDir.resolve("part_" + i + FileExtensions.BAM).toFile();
+				futures.add(service.submit(() -> mergeInterval(interval, partFile)));
+			}
+			return writeOutput(futures);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ex ? ex : e;
+		} finally {
+			service.shutdownNow();
+			service.awaitTermination(1, TimeUnit.MINUTES);
+			for (List<SamReader> list : allReaders) {
+				for (SamReader reader : list) {
+					reader.close();
+				}
+			}
+			try (var files = Files.list(partDir)) {
+				for (Path p : (Iterable<Path>) files::iterator) {
+					Files.deleteIfExists(p);
+				}
+			}
+			Files.deleteIfExists(partDir);
+		}
+	}
+
+	/*
+	 * concatenates the header and the parts as they become available, merging the part indexes if required
+	 */
+	private long writeOutput(List<Future<Part>> futures) throws Exception {
+		long count = 0;
+		ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+		BAMFileWriter.writeHeader(headerBytes, header);
+
+		ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+		BAMIndexMerger indexMerger = createIndex ? new BAMIndexMerger(indexBytes, headerBytes.size()) : null;
+
+		long length = headerBytes.size();
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output.toPath()), 1024 * 1024)) {
+			headerBytes.writeTo(out);
+			for (Future<Part> f : futures) {
+				Part part = f.get();
+				long partLength = Files.copy(part.file().toPath(), out);
+				Files.delete(part.file().toPath());
+				if (null != indexMerger) {
+					indexMerger.processIndex(BAMIndexMerger.openIndex(new SeekableMemoryStream(part.index(), part.file().getName()), header.getSequenceDictionary()), partLength);
+				}
+				length += partLength;
+				count += part.records();
+			}
+			out.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK);
+			length += BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length;
+		}
+
+		if (null != indexMerger) {
+			indexMerger.finish(length);
+			String path = output.getAbsolutePath();
+			Path index = IOUtil.addExtension(Path.of(path.substring(0, path.length() - FileExtensions.BAM.length())), FileExtensions.BAI_INDEX);
+			Files.write(index, indexBytes.toByteArray());
+		}
+		logger.info("merged " + count + " records into " + output.getAbsolutePath());
+		return count;
+	}
+
+	private List<SamReader> getReaders() throws IOException {
+		List<SamReader> list = readers.get();
+		if (null == list) {
+			list = new ArrayList<>(inputs.size());
+			for (File f : inputs) {
+				list.add(SAMFileReaderFactory.createSAMFileReader(f, null, validation));
+			}
+			readers.set(list);
+			allReaders.add(list);
+		}
+		return list;
+	}
+
+	private record Head(SAMRecord record, int inputIndex, SAMRecordIterator iterator) {}
+
+	private Part mergeInterval(Interval interval, File partFile) throws Exception {
+		List<SamReader> inputReaders = getReaders();
+		List<SAMRecordIterator> iterators = new ArrayList<>(inputReaders.size());
+		SAMRecordCoordinateComparator comparator = new SAMRecordCoordinateComparator();
+		PriorityQueue<Head> heads = new PriorityQueue<>(Math.max(1, inputReaders.size()), (a, b) -> {
+			int diff = comparator.compare(a.record(), b.record());
+			return diff != 0 ? diff : Integer.compare(a.inputIndex(), b.inputIndex());
+		});
+
+		long count = 0;
+		ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+		BAMIndexer indexer = createIndex ? new BAMIndexer(indexBytes, header, false) : null;
+		BlockCompressedOutputStream out = new BlockCompressedOutputStream(new BufferedOutputStream(Files.newOutputStream(partFile.toPath()), 1024 * 1024), (Path) null);
+		try {
+			for (int i = 0 ; i < inputReaders.size() ; i++) {
+				SamReader reader = inputReaders.get(i);
+				SAMRecordIterator iter = null == interval.contig() ? reader.queryUnmapped() : reader.query(interval.contig(), interval.start(), interval.end(), false);
+				iterators.add(iter);
+				SAMRecord next = nextInInterval(iter, interval);
+				if (null != next) {
+					heads.add(new Head(next, i, iter));
+				}
+			}
+
+			BAMRecordCodec codec = new BAMRecordCodec(header);
+			codec.setOutputStream(out, partFile.getAbsolutePath());
+			Head head;
+			while ((head = heads.poll()) != null) {
+				SAMRecord record = head.record();
+				updater.update(record, head.inputIndex());
+				record.setHeaderStrict(header);
+				long start = out.getFilePointer();
+				codec.encode(record);
+				if (null != indexer) {
+					record.setFileSource(new SAMFileSource(null, new BAMFileSpan(new Chunk(start, out.getFilePointer()))));
+					indexer.processAlignment(record);
+				}
+				count++;
+
+				SAMRecord next = nextInInterval(head.iterator(), interval);
+				if (null != next) {
+					heads.add(new Head(next, head.inputIndex(), head.iterator()));
+				}
+			}
+		} finally {
+			for (SAMRecordIterator iter : iterators) {
+				iter.close();
+			}
+			out.close(false);
+		}
+		if (null != indexer) {
+			indexer.finish();
+		}
+		logger.debug("merged " + count + " records for interval " + interval);
+		return new Part(partFile, indexBytes.toByteArray(), count);
+	}
+
+	/*
+	 * returns the next record that starts within the interval, skipping those that start before it (and so belong to the previous interval)
+	 */
+	private static SAMRecord nextInInterval(SAMRecordIterator iter, Interval interval) {
+		while (iter.hasNext()) {
+			SAMRecord record = iter.next();
+			if (null == interval.contig() || record.getAlignmentStart() >= interval.start()) {
+				return record;
+			}
+		}
+		return null;
+	}
+}
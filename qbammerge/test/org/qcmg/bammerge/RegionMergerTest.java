@@ -0,0 +1,150 @@
+package org.qcmg.bammerge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.qcmg.picard.SAMFileReaderFactory;
+import org.qcmg.picard.SAMWriterFactory;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamReader;
+
+public class RegionMergerTest {
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void getIntervals() {
+		SAMFileHeader header = createHeader("RG1");
+		List<RegionMerger.Interval> intervals = RegionMerger.getIntervals(header, RegionMerger.DEFAULT_INTERVAL_SIZE);
+		assertEquals(List.of(new RegionMerger.Interval("chr1", 1, 10_000_000), new RegionMerger.Interval("chr1", 10_000_001, 20_000_000),
+				new RegionMerger.Interval("chr1", 20_000_001, 0), new RegionMerger.Interval("chr2", 1, 0),
+				new RegionMerger.Interval(null, 0, 0)), intervals);
+	}
+
+	@Test
+	public void mergeByRegionMatchesSerialMerge() throws Exception {
+		Random r = new Random(9);
+		String[] inputs = new String[4];
+		for (int i = 0 ; i < inputs.length ; i++) {
+			File f = testFolder.newFile("input" + i + ".bam");
+			createBam(f, "RG" + i, 1500, r);
+			inputs[i] = f.getAbsolutePath();
+		}
+		/*
+		 * the same group replacement is applied in both modes
+		 */
+		String[] replacements = new String[] {inputs[2] + ":RG2:RG2X"};
+
+		File serial = new File(testFolder.getRoot(), "serial.bam");
+		File parallel = new File(testFolder.getRoot(), "parallel.bam");
+		FileMerger serialMerger = new FileMerger(serial.getAbsolutePath(), inputs, replacements, "commandLine", -1, false, false, true, null, null, null, null, 1);
+		FileMerger parallelMerger = new FileMerger(parallel.getAbsolutePath(), inputs, replacements, "commandLine", -1, false, false, true, null, null, null, null, 3);
+		assertEquals(serialMerger.getMergeCount(), parallelMerger.getMergeCount());
+		assertEquals(inputs.length * 1500, parallelMerger.getMergeCount());
+		assertTrue(new File(parallel.getAbsolutePath() + ".bai").exists());
+
+		try (SamReader sReader = SAMFileReaderFactory.createSAMFileReader(serial);
+				SamReader pReader = SAMFileReaderFactory.createSAMFileReader(parallel)) {
+			assertEquals(sReader.getFileHeader().getReadGroups(), pReader.getFileHeader().getReadGroups());
+			int count = 0;
+			boolean replaced = false;
+			try (SAMRecordIterator sIter = sReader.iterator();
+					SAMRecordIterator pIter = pReader.iterator()) {
+				while (sIter.hasNext()) {
+					SAMRecord s = sIter.next();
+					assertEquals(s.getSAMString(), pIter.next().getSAMString());
+					replaced |= "RG2X".equals(s.getReadGroup().getId());
+					count++;
+				}
+				assertTrue( ! pIter.hasNext());
+			}
+			assertEquals(inputs.length * 1500, count);
+			assertTrue(replaced);
+
+			/*
+			 * the merged index gives the same results
+			 */
+			for (String contig : new String[] {"chr1", "chr2"}) {
+				for (int start = 1 ; start < 25_000_000 ; start += 2_345_678) {
+					assertEquals(query(sReader.query(contig, start, start + 100_000, false)), query(pReader.query(contig, start, start + 100_000, false)));
+				}
+			}
+			List<String> unmapped = query(pReader.queryUnmapped());
+			assertTrue( ! unmapped.isEmpty());
+			assertEquals(query(sReader.queryUnmapped()), unmapped);
+		}
+	}
+
+	private static List<String> query(SAMRecordIterator iter) {
+		List<String> records = new ArrayList<>();
+		try (iter) {
+			iter.forEachRemaining(record -> records.add(record.getSAMString()));
+		}
+		return records;
+	}
+
+	private static SAMFileHeader createHeader(String readGroup) {
+		SAMFileHeader header = new SAMFileHeader();
+		header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+		SAMSequenceDictionary dict = new SAMSequenceDictionary();
+		dict.addSequence(new SAMSequenceRecord("chr1", 25_000_000));
+		dict.addSequence(new SAMSequenceRecord("chr2", 1_000_000));
+		header.setSequenceDictionary(dict);
+		header.addReadGroup(new SAMReadGroupRecord(readGroup));
+		return header;
+	}
+
+	/*
+	 * mapped records spread over both contigs, unmapped records placed with their mates, and unplaced unmapped records
+	 */
+	private static void createBam(File bam, String readGroup, int number, Random r) {
+		SAMFileHeader header = createHeader(readGroup);
+		List<SAMRecord> records = new ArrayList<>(number);
+		for (int i = 0 ; i < number ; i++) {
+			SAMRecord record = new SAMRecord(header);
+			record.setReadName(readGroup + "_" + i);
+			record.setAttribute("RG", readGroup);
+			record.setReadString("ACGTACGTAC");
+			record.setBaseQualityString("IIIIIIIIII");
+			int type = r.nextInt(20);
+			if (type == 0) {
+				record.setReadUnmappedFlag(true);
+			} else {
+				record.setReferenceName(type < 15 ? "chr1" : "chr2");
+				record.setAlignmentStart(1 + r.nextInt(type < 15 ? 25_000_000 : 1_000_000));
+				if (type == 1) {
+					record.setReadPairedFlag(true);
+					record.setReadUnmappedFlag(true);
+					record.setMateReferenceName(record.getReferenceName());
+					record.setMateAlignmentStart(record.getAlignmentStart());
+				} else {
+					record.setCigarString("10M");
+					record.setMappingQuality(r.nextInt(61));
+				}
+			}
+			records.add(record);
+		}
+		records.sort(new htsjdk.samtools.SAMRecordCoordinateComparator());
+		SAMWriterFactory factory = new SAMWriterFactory(header, true, bam, true);
+		try (SAMFileWriter writer = factory.getWriter()) {
+			records.forEach(writer::addAlignment);
+		}
+		factory.renameIndex();
+	}
+}
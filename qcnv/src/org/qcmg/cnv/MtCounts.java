@@ -13,13 +13,15 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.AbstractQueue;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SamReader;
@@ -29,9 +31,10 @@ import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.ValidationStringency;
 
 import org.qcmg.common.log.*;
-import org.qcmg.common.util.Constants;
+import org.qcmg.common.string.StringUtils;
 import org.qcmg.picard.SAMFileReaderFactory;
 import org.qcmg.picard.SAMRecordFilterWrapper;
+import org.qcmg.qbamfilter.query.QueryExecutor;
 
 public class MtCounts {
 		
@@ -43,6 +46,11 @@ public class MtCounts {
  
     final int windowSize;
  	final QLogger logger;
+ 	
+ 	/*
+ 	 * approximate number of bases counted by each thread
+ 	 */
+ 	static final int RANGE_SIZE = 10_000_000;
 
     MtCounts(String[] inputs, String[] ids, String output,  int thread,int windowSize, String query, QLogger logger) throws Exception{
       	this.Output = new File(output); 
@@ -61,7 +69,7 @@ public class MtCounts {
     	
     }  	     	   	    
 	/**
-	 * it call threads, parallel the BAMFileReader.query for single genome  
+	 * it call threads, parallel the counting for single genome. Large contigs are split into ranges that are counted separately 
 	 * @throws Exception 
 	 */
     void callCounts() throws Exception {
@@ -75,18 +83,31 @@ public class MtCounts {
 	    ExecutorService queryThreads = Executors.newFixedThreadPool(noOfThreads);	       
 	    logger.info("starting parallel counts based on genome file name");     
     	   
-	    //parallel query by genomes and output to tmp files 
-        int index = 0;
+	    //parallel query by genomes and ranges of large genomes
+	    final int rangeSize = getRangeSize(windowSize);
+	    List<Future<Void>> futures = new ArrayList<>();
    		for ( SAMSequenceRecord chr : genome){	 	   	    	   
-	    	   queryThreads.execute(new WindowCount(inputs, ids, chr, infoQueue,windowSize, query));
-	    	   index ++;	    	  
+   			ReferenceInfo info = new ReferenceInfo(chr, windowSize);
+   			for (int i = 0; i < inputs.length; i++) {
+   				info.initCounts(ids[i]);
+   				for (int from = 0; from <= chr.getSequenceLength(); from += rangeSize) {
+   					int to = Math.min(from + rangeSize - 1, chr.getSequenceLength());
+   					futures.add(queryThreads.submit(new WindowCount(inputs[i], ids[i], info, from, to, query)));
+   				}
+   			}
+   			infoQueue.add(info);
 	    }	  
    		
        //wait threads finish
-   	   logger.info("submited counting threads are " + index);	 
+   	   logger.info("submited counting threads are " + futures.size());	 
        queryThreads.shutdown();
-       queryThreads.awaitTermination(Constants.EXECUTOR_SERVICE_AWAIT_TERMINATION, TimeUnit.HOURS);
-       queryThreads.shutdownNow();
+       try {
+	       for (Future<Void> future : futures) {
+	    	   future.get();
+	       }
+       } finally {
+    	   queryThreads.shutdownNow();
+       }
        
        logger.info("completed parallel query based on genome file name");	       
 
@@ -97,55 +118,56 @@ public class MtCounts {
        logger.info("created final output: " + Output.getCanonicalPath());
  
     }
+    
+    /**
+     * @return the number of bases in each range of a contig that is counted by a single thread, which is a multiple of the window size
+     */
+    static int getRangeSize(int windowSize) {
+    	return Math.max(1, RANGE_SIZE / windowSize) * windowSize;
+    }
 
 	
     /**
-	 * query on Test BAM and Ref BAM records which mapped to specified gemoem 
+	 * count the reads of one sample which start in a range of a genome
 	 * @author q.xu
 	 *
 	 */
-	public static class WindowCount implements Runnable {
+	public static class WindowCount implements Callable<Void> {
 	 
-		File Output;
-		String[] inputs;
-		String[] ids;
-		int windowSize;
-		String query;
-		SAMSequenceRecord chr;
-		AbstractQueue<ReferenceInfo> queue;
+		final String input;
+		final String id;
+		final ReferenceInfo info;
+		final int from;
+		final int to;
+		final String query;
 		
 		/**
 		 * 
-		 * @param windowSize: fixed window size, set value less than 0 if count each base
-		 * @param infoQueue
+		 * @param input: bam file
+		 * @param id: sample id of the bam file
+		 * @param info: counts of the genome, which this range is added to
+		 * @param from: first alignment start of the range
+		 * @param to: last alignment start of the range
+		 * @param query: qbamfilter query (null is allowed)
 		 */
-		WindowCount(  String[] inputs, String[] ids, SAMSequenceRecord chr, AbstractQueue<ReferenceInfo> infoQueue, int windowSize, String query  ) {
-
-			this.inputs = inputs;
-			this.ids = ids; 
-			this.chr = chr;
-			this.windowSize = windowSize;
-			queue = infoQueue;
+		WindowCount(String input, String id, ReferenceInfo info, int from, int to, String query) {
+			this.input = input;
+			this.id = id;
+			this.info = info;
+			this.from = from;
+			this.to = to;
 			this.query = query;
 		}
 	 
 		@Override
-		public void run() {
-			try {	
-				
-				ReferenceInfo info = new ReferenceInfo(chr, windowSize);				 
-				for(int i = 0; i <inputs.length; i++){
-					info.addCounts(ids[i], inputs[i],query);
-				}
-			   			
-				queue.add(info );
- 		 
-			} catch (Exception e) {
-				System.out.println(Thread.currentThread().getName() + " "
-						+ e.getMessage());
-				Thread.currentThread().interrupt();
-			} 
-			
+		public Void call() throws Exception {
+			QueryExecutor qbamFilter = StringUtils.isNullOrEmpty(query) ? null : new QueryExecutor(query);
+			SAMSequenceRecord chr = info.getReferenceRecord();
+			int firstWindow = from / info.getWindowSize();
+			int[] counts = new int[to / info.getWindowSize() - firstWindow + 1];
+			new StartCounter(new File(input), qbamFilter).count(chr.getSequenceName(), chr.getSequenceLength(), from, to, info.getWindowSize(), counts);
+			info.addCounts(id, firstWindow, counts);
+			return null;
 		}		
 	}
 }
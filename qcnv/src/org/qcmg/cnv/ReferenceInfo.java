@@ -6,19 +6,10 @@
  */
 package org.qcmg.cnv;
 
-import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.qcmg.common.string.StringUtils;
-import org.qcmg.picard.SAMFileReaderFactory;
-import org.qcmg.qbamfilter.query.QueryExecutor;
-
-import htsjdk.samtools.SamReader;
-import htsjdk.samtools.SAMRecord;
-import htsjdk.samtools.SAMRecordIterator;
 import htsjdk.samtools.SAMSequenceRecord;
-import htsjdk.samtools.ValidationStringency;
 
 public class ReferenceInfo {
 	
@@ -43,29 +34,12 @@ public class ReferenceInfo {
 			windowNumber = chr.getSequenceLength() / windowSize + 1;
 	}
 	
-	public void addCounts(String id, String bam, String query) throws Exception { 
-		
+	/**
+	 * Sets the counts of the sample to zero, ready for the counts of each part of the contig to be added with {@link #addCounts(String, int, int[])}
+	 */
+	public void initCounts(String id) {
 		//initialize array to store the counts 
-		int[] chrArray = new int[ref.getSequenceLength() / windowSize + 1];
-		for (int i = 0; i < chrArray.length; i ++)
-			chrArray[i] = 0;
-		
-		QueryExecutor qbamFilter = null; 
-		if ( ! StringUtils.isNullOrEmpty(query) )
-			qbamFilter = new QueryExecutor(query);
-		
-		//check each reads start point and counts it into belonging window
-		try (SamReader rbam =   SAMFileReaderFactory.createSAMFileReader(new File(bam),null,  ValidationStringency.SILENT);) {  
-			SAMRecordIterator ite =	rbam.query(ref.getSequenceName(), 0, ref.getSequenceLength(),true);
-			while(ite.hasNext()){
-				SAMRecord record = ite.next();
-				if(qbamFilter != null && !qbamFilter.Execute(record))
-					continue; 
-					
-				int pos = record.getAlignmentStart() / windowSize ;
-				chrArray[pos] ++; 
-			}		
-		}
+		int[] chrArray = new int[getCountsLength()];
 		
 		for( String key :counts.keySet()){
 			if(key.contains(id))
@@ -75,7 +49,21 @@ public class ReferenceInfo {
 		}
 	   
 		counts.put(id, chrArray);		
-	}   
+	}
+	
+	/**
+	 * Adds the supplied counts, of some part of the contig, to the counts of the sample, window by window
+	 * @param firstWindow: the window of the contig that partCounts[0] is the count of
+	 */
+	public synchronized void addCounts(String id, int firstWindow, int[] partCounts) {
+		int[] chrArray = counts.get(id);
+		for (int i = 0; i < partCounts.length; i ++)
+			chrArray[firstWindow + i] += partCounts[i];
+	}
+	
+	int getCountsLength() {
+		return ref.getSequenceLength() / windowSize + 1;
+	}
 
 	public int[] getCount(String id){return counts.get(id);}
 	public SAMSequenceRecord getReferenceRecord(){ return ref;}
@@ -0,0 +1,177 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+package org.qcmg.cnv;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+
+import org.qcmg.picard.SAMFileReaderFactory;
+import org.qcmg.qbamfilter.query.QueryExecutor;
+
+import htsjdk.samtools.BAMFileSpan;
+import htsjdk.samtools.BAMIndex;
+import htsjdk.samtools.Chunk;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.ValidationStringency;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+
+/**
+ * Counts the reads of a contig by the window their alignment start falls in.
+ * <p>
+ * Reads are counted if they lie within the contig, as they would be by a contained query over the whole contig.
+ * A range of alignment starts is counted at a time, so that a large contig can be counted by several threads.
+ * <p>
+ * Without a filter query, only the fixed length fields and the cigar of each bam record are read, straight from the decompressed
+ * bgzf blocks, rather than decoding the records. The records are fully decoded when there is a query, or the input is not an indexed bam.
+ */
+final class StartCounter {
+
+	/*
+	 * refID, pos, l_read_name, mapq, bin, n_cigar_op, flag, l_seq, next_refID, next_pos, tlen
+	 */
+	private static final int FIXED_LENGTH = 32;
+	private static final int FLAG_UNMAPPED = 0x4;
+
+	/*
+	 * cigar operations M, D, N, = and X consume the reference
+	 */
+	private static final int REFERENCE_CONSUMING_OPERATIONS = (1 << 0) | (1 << 2) | (1 << 3) | (1 << 7) | (1 << 8);
+
+	private final File bam;
+	private final QueryExecutor filter;
+
+	StartCounter(File bam, QueryExecutor filter) {
+		this.bam = bam;
+		this.filter = filter;
+	}
+
+	/**
+	 * Adds the reads on the contig whose alignment start is within the supplied range to the counts of their windows.
+	 * The window of a read is its alignment start divided by the window size, and <code>counts</code> covers the windows of the range only,
+	 * ie. <code>counts[0]</code> is the window that <code>from</code> falls in, and it needs <code>to / windowSize - from / windowSize + 1</code> entries.
+	 */
+	void count(String contig, int contigLength, int from, int to, int windowSize, int[] counts) throws Exception {
+		try (SamReader reader = SAMFileReaderFactory.createSAMFileReader(bam, null, ValidationStringency.SILENT)) {
+			int contigIndex = reader.getFileHeader().getSequenceIndex(contig);
+			if (contigIndex < 0) {
+				return;
+			}
+			if (null == filter && reader.type() == SamReader.Type.BAM_TYPE && reader.hasIndex()) {
+				BAMIndex index = reader.indexing().getIndex();
+				BAMFileSpan span = index.getSpanOverlapping(contigIndex, Math.max(1, from), to);
+				if (null != span) {
+					countRecordPrefixes(span, contigIndex, contigLength, from, to, windowSize, counts);
+				}
+				return;
+			}
+
+			try (SAMRecordIterator ite = reader.query(contig, from, to, false)) {
+				while (ite.hasNext()) {
+					SAMRecord record = ite.next();
+					int start = record.getAlignmentStart();
+					if (start < from || start > to) {
+						continue;
+					}
+					int end = record.getReadUnmappedFlag() ? start : record.getAlignmentEnd();
+					if (end > contigLength) {
+						continue;
+					}
+					if (null != filter && ! filter.Execute(record)) {
+						continue;
+					}
+					counts[start / windowSize - from / windowSize] ++;
+				}
+			}
+		}
+	}
+
+	private void countRecordPrefixes(BAMFileSpan span, int contigIndex, int contigLength, int from, int to, int windowSize, int[] counts) throws IOException {
+		byte[] record = new byte[1024];
+		try (BlockCompressedInputStream in = new BlockCompressedInputStream(bam)) {
+			for (Chunk chunk : span.getChunks()) {
+				in.seek(chunk.getChunkStart());
+				while (in.getFilePointer() < chunk.getChunkEnd()) {
+					if ( ! readFully(in, record, 4)) {
+						/*
+						 * end of file
+						 */
+						return;
+					}
+					int length = getInt(record, 0);
+					if (length > record.length) {
+						record = new byte[Math.max(length, 2 * record.length)];
+					}
+					if ( ! readFully(in, record, length)) {
+						throw new EOFException("Unexpected end of file in " + bam.getAbsolutePath());
+					}
+
+					int refId = getInt(record, 0);
+					int start = getInt(record, 4) + 1;
+					if (refId != contigIndex || start > to) {
+						/*
+						 * records are sorted, so there are no more in range
+						 */
+						return;
+					}
+					if (start < from) {
+						continue;
+					}
+					int flag = getUnsignedShort(record, 14);
+					int end = (flag & FLAG_UNMAPPED) != 0 ? start : start + getReferenceLength(record) - 1;
+					if (end > contigLength) {
+						continue;
+					}
+					counts[start / windowSize - from / windowSize] ++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of reference bases covered by the cigar of the supplied bam record (without its length prefix)
+	 */
+	static int getReferenceLength(byte[] record) {
+		int readNameLength = record[8] & 0xff;
+		int cigarLength = getUnsignedShort(record, 12);
+		int referenceLength = 0;
+		for (int i = 0, offset = FIXED_LENGTH + readNameLength; i < cigarLength; i++, offset += 4) {
+			int op = getInt(record, offset);
+			if ((REFERENCE_CONSUMING_OPERATIONS & (1 << (op & 0xf))) != 0) {
+				referenceLength += op >>> 4;
+			}
+		}
+		return referenceLength;
+	}
+
+	private static int getInt(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 | (bytes[offset + 2] & 0xff) << 16 | (bytes[offset + 3] & 0xff) << 24;
+	}
+
+	private static int getUnsignedShort(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+	}
+
+	/**
+	 * @return false if the end of the stream was reached before any bytes were read
+	 */
+	private static boolean readFully(BlockCompressedInputStream in, byte[] bytes, int length) throws IOException {
+		int offset = 0;
+		while (offset < length) {
+			int read = in.read(bytes, offset, length - offset);
+			if (read <= 0) {
+				if (offset == 0) {
+					return false;
+				}
+				throw new EOFException("Unexpected end of bam record");
+			}
+			offset += read;
+		}
+		return true;
+	}
+}
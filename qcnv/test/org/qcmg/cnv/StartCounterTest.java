@@ -0,0 +1,141 @@
+package org.qcmg.cnv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.qcmg.picard.SAMFileReaderFactory;
+import org.qcmg.qbamfilter.query.QueryExecutor;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.ValidationStringency;
+
+public class StartCounterTest {
+
+	@Rule
+	public final TemporaryFolder testFolder = new TemporaryFolder();
+
+	private static final int WINDOW_SIZE = 1000;
+	private static final String[] CIGARS = {"50M", "10S40M", "20M5D30M", "30M2000N20M", "5H45M", "20M3I27M"};
+
+	private File createBam() throws Exception {
+		SAMFileHeader header = new SAMFileHeader();
+		header.addSequence(new SAMSequenceRecord("chr1", 50_000));
+		header.addSequence(new SAMSequenceRecord("chr2", 30_000));
+		header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+
+		File bam = testFolder.newFile("input.bam");
+		Random random = new Random(1);
+		try (SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(header, false, bam)) {
+			for (int i = 0; i < 20_000; i++) {
+				SAMSequenceRecord contig = header.getSequence(random.nextInt(2));
+				SAMRecord record = new SAMRecord(header);
+				record.setReadName("read" + i);
+				record.setReferenceName(contig.getSequenceName());
+				record.setAlignmentStart(1 + random.nextInt(contig.getSequenceLength()));
+				record.setReadBases("ACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTAC".getBytes());
+				record.setBaseQualities(SAMRecord.NULL_QUALS);
+				if (i % 10 == 0) {
+					//unmapped, placed with its mate
+					record.setReadUnmappedFlag(true);
+					record.setCigarString("*");
+				} else {
+					//some of these will run off the end of the contig
+					record.setCigarString(CIGARS[i % CIGARS.length]);
+					record.setMappingQuality(60);
+				}
+				record.setDuplicateReadFlag(i % 7 == 0);
+				writer.addAlignment(record);
+			}
+		}
+		return bam;
+	}
+
+	/*
+	 * counts the way qcnv always has, with a contained query over the whole contig
+	 */
+	private static int[] getExpected(File bam, SAMSequenceRecord contig, QueryExecutor filter) throws Exception {
+		int[] counts = new int[contig.getSequenceLength() / WINDOW_SIZE + 1];
+		try (SamReader reader = SAMFileReaderFactory.createSAMFileReader(bam, null, ValidationStringency.SILENT);
+				SAMRecordIterator ite = reader.query(contig.getSequenceName(), 0, contig.getSequenceLength(), true)) {
+			while (ite.hasNext()) {
+				SAMRecord record = ite.next();
+				if (null != filter && ! filter.Execute(record)) {
+					continue;
+				}
+				counts[record.getAlignmentStart() / WINDOW_SIZE] ++;
+			}
+		}
+		return counts;
+	}
+
+	private static int[] count(File bam, SAMSequenceRecord contig, QueryExecutor filter, int rangeSize) throws Exception {
+		int[] counts = new int[contig.getSequenceLength() / WINDOW_SIZE + 1];
+		StartCounter counter = new StartCounter(bam, filter);
+		for (int from = 0; from <= contig.getSequenceLength(); from += rangeSize) {
+			int to = Math.min(from + rangeSize - 1, contig.getSequenceLength());
+			int[] rangeCounts = new int[to / WINDOW_SIZE - from / WINDOW_SIZE + 1];
+			counter.count(contig.getSequenceName(), contig.getSequenceLength(), from, to, WINDOW_SIZE, rangeCounts);
+			for (int i = 0; i < rangeCounts.length; i++) {
+				counts[from / WINDOW_SIZE + i] += rangeCounts[i];
+			}
+		}
+		return counts;
+	}
+
+	@Test
+	public void countsMatchContainedQuery() throws Exception {
+		File bam = createBam();
+		for (SAMSequenceRecord contig : new SAMSequenceRecord[] {new SAMSequenceRecord("chr1", 50_000), new SAMSequenceRecord("chr2", 30_000)}) {
+			int[] expected = getExpected(bam, contig, null);
+			int total = 0;
+			for (int count : expected) {
+				total += count;
+			}
+			assertTrue(total > 9_000);
+
+			assertArrayEquals(expected, count(bam, contig, null, 100_000));
+			assertArrayEquals(expected, count(bam, contig, null, 7 * WINDOW_SIZE));
+			assertArrayEquals(expected, count(bam, contig, null, WINDOW_SIZE));
+
+			//reads are fully decoded for the query
+			QueryExecutor filter = new QueryExecutor("and (Flag_DuplicateRead == false, MAPQ > 0)");
+			expected = getExpected(bam, contig, filter);
+			assertArrayEquals(expected, count(bam, contig, filter, 100_000));
+			assertArrayEquals(expected, count(bam, contig, filter, 7 * WINDOW_SIZE));
+		}
+	}
+
+	@Test
+	public void referenceLength() {
+		byte[] record = new byte[32 + 3 + 12];
+		record[8] = 3;
+		record[12] = 3;
+		int[] ops = {(10 << 4) | 4, (40 << 4), (7 << 4) | 2};	//10S40M7D
+		for (int i = 0; i < ops.length; i++) {
+			for (int j = 0; j < 4; j++) {
+				record[35 + 4 * i + j] = (byte) (ops[i] >>> (8 * j));
+			}
+		}
+		assertEquals(47, StartCounter.getReferenceLength(record));
+	}
+
+	@Test
+	public void rangeSize() {
+		assertEquals(10_000_000, MtCounts.getRangeSize(1000));
+		assertEquals(9_999_990, MtCounts.getRangeSize(30));
+		assertEquals(20_000_000, MtCounts.getRangeSize(20_000_000));
+	}
+}
@@ -16,15 +16,29 @@ public class Settings {
 	//final static means compile-time constant
     //just final means it's a constant but is initialized at run-time
     public static final String s3RegionKey = "aws.s3Region";
+    public static final String s3StreamBlockSizeKey = "aws.s3Stream.blockSize";
+    public static final String s3StreamCacheBlocksKey = "aws.s3Stream.cacheBlocks";
+    public static final String s3StreamReadAheadBlocksKey = "aws.s3Stream.readAheadBlocks";
+    public static final String s3StreamConnectionsKey = "aws.s3Stream.connections";
 
     public final Region s3Region;
 
+    //block cache and read ahead of s3 streams, see the aws.s3Stream section of application.conf
+    public final int s3StreamBlockSize;
+    public final int s3StreamCacheBlocks;
+    public final int s3StreamReadAheadBlocks;
+    public final int s3StreamConnections;
+
     private static Settings instance = null;
 
     private Settings() {
         Config config = ConfigFactory.load();
         try {
             s3Region = Region.fromValue(config.getString(s3RegionKey));
+            s3StreamBlockSize = config.getInt(s3StreamBlockSizeKey);
+            s3StreamCacheBlocks = config.getInt(s3StreamCacheBlocksKey);
+            s3StreamReadAheadBlocks = config.getInt(s3StreamReadAheadBlocksKey);
+            s3StreamConnections = config.getInt(s3StreamConnectionsKey);
         } catch (Exception e) {
             throw new IllegalArgumentException("Application is misconfigured: " + e.getMessage(), e);
         }
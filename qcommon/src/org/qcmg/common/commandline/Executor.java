@@ -41,8 +41,7 @@ public class Executor {
 		Process process = processBuilder.start();
 		outputStreamConsumer = new StreamConsumer(process.getInputStream());
 		errorStreamConsumer = new StreamConsumer(process.getErrorStream());
-		outputStreamConsumer.run();
-		errorStreamConsumer.run();
+		consumeStreams(outputStreamConsumer, errorStreamConsumer);
 		errCode = process.waitFor();
 	}
 
@@ -50,11 +49,20 @@ public class Executor {
 		Process process = Runtime.getRuntime().exec(execCommand);
 		outputStreamConsumer = new StreamConsumer(process.getInputStream());
 		errorStreamConsumer = new StreamConsumer(process.getErrorStream());
-		outputStreamConsumer.run();
-		errorStreamConsumer.run();
+		consumeStreams(outputStreamConsumer, errorStreamConsumer);
 		errCode = process.waitFor();
 	}
 
+	/*
+	 * the error stream is consumed on a separate thread so that a process writing more than a pipe buffer's worth to stderr does not block
+	 */
+	private static void consumeStreams(StreamConsumer output, StreamConsumer error) throws InterruptedException {
+		Thread errorThread = new Thread(error::run);
+		errorThread.start();
+		output.run();
+		errorThread.join();
+	}
+
 	public StreamConsumer getOutputStreamConsumer() {
 		return outputStreamConsumer;
 	}
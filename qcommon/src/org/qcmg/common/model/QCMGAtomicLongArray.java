@@ -6,115 +6,186 @@
  */
 package org.qcmg.common.model;
 
+import java.util.Arrays;
 import java.util.TreeMap;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicLongArray;
 
+/**
+ * Array of counters that can be incremented concurrently by a number of threads, and that grows as required (up to <code>maxCapacity</code>).
+ * <p>
+ * To avoid all threads contending on the same cache lines, the counts are striped - each thread increments the counters in the stripe that it hashes to,
+ * and the stripes are summed when the counts are read (typically once, at report time).
+ * <p>
+ * Each stripe is made up of fixed size chunks that are allocated on demand, and so growing the array never involves copying (or losing) counts,
+ * and never blocks incrementing threads. Only the (rare) allocation of a chunk takes a lock, on the stripe that needs it.
+ */
 public class QCMGAtomicLongArray {
-	
-	private static final int MAX_CAPACITY = 2048 * 2048;	// 4 mill 
-	
-	// atomic boolean used as a lock when resizing the array
-	private final AtomicBoolean resizingInProgress = new AtomicBoolean(false);
-	
-	private AtomicLongArray array;
+
+	private static final int MAX_CAPACITY = 2048 * 2048;	// 4 mill
+
+	private static final int NO_OF_STRIPES = getNoOfStripes();
+	private static final int STRIPE_MASK = NO_OF_STRIPES - 1;
+	private static final int MIN_CHUNK_BITS = 6;
+	private static final int MAX_CHUNK_BITS = 12;
+
+	private final Stripe[] stripes = new Stripe[NO_OF_STRIPES];
+	private final int chunkBits;
+	private final int chunkMask;
+
 	private volatile int capacity;
-	private int maxCapacity = MAX_CAPACITY;
-	
+	private final int maxCapacity;
+
 	public  QCMGAtomicLongArray(final int initialCapacity) {
 		this(initialCapacity, MAX_CAPACITY);
 	}
-	
+
 	public  QCMGAtomicLongArray(final int initialCapacity, final int maxCapacity) {
 		this.maxCapacity = maxCapacity;
-		// double capacity 
+		// double capacity
 		capacity = Math.min(initialCapacity * 2, maxCapacity);
-		array = new AtomicLongArray(capacity);
+
+		/*
+		 * size the chunks so that the initial capacity fits in a single chunk, within limits
+		 */
+		int bits = 32 - Integer.numberOfLeadingZeros(Math.max(capacity - 1, 1));
+		chunkBits = Math.max(MIN_CHUNK_BITS, Math.min(MAX_CHUNK_BITS, bits));
+		chunkMask = (1 << chunkBits) - 1;
+		for (int i = 0 ; i < NO_OF_STRIPES ; i++) {
+			stripes[i] = new Stripe();
+		}
 	}
-	
-	public void increment(final int arrayPosition) {		
-		increment(arrayPosition, 1);		
+
+	/*
+	 * next power of 2 up from twice the number of processors, capped at 64
+	 */
+	private static int getNoOfStripes() {
+		int target = Math.min(64, Math.max(1, Runtime.getRuntime().availableProcessors() * 2));
+		return Integer.highestOneBit(target - 1) << 1;
+	}
+
+	public void increment(final int arrayPosition) {
+		increment(arrayPosition, 1);
 	}
 
 	public void increment(final int arrayPosition, final long value) {
-		
-		if (arrayPosition >= capacity) {
+
+		if (arrayPosition >= capacity || arrayPosition < 0) {
 			resize(arrayPosition);
 		}
-		
-		if (resizingInProgress.get()) {
-			// cas until resizing is complete
-			while  ( ! resizingInProgress.compareAndSet(false, false) ) {}
+
+		Stripe stripe = stripes[(int) Thread.currentThread().threadId() & STRIPE_MASK];
+		int chunkIndex = arrayPosition >>> chunkBits;
+		AtomicLongArray[] chunks = stripe.chunks;
+		AtomicLongArray chunk = chunkIndex < chunks.length ? chunks[chunkIndex] : null;
+		if (null == chunk) {
+			chunk = stripe.getOrCreateChunk(chunkIndex, 1 << chunkBits);
+		}
+		chunk.getAndAdd(arrayPosition & chunkMask, value);
+	}
+
+	public long get(int arrayPosition) {
+		if (arrayPosition < 0 || arrayPosition >= capacity) {
+			throw new IndexOutOfBoundsException("index " + arrayPosition + ", length: " + capacity);
+		}
+		int chunkIndex = arrayPosition >>> chunkBits;
+		int indexInChunk = arrayPosition & chunkMask;
+		long sum = 0;
+		for (Stripe stripe : stripes) {
+			AtomicLongArray[] chunks = stripe.chunks;
+			if (chunkIndex < chunks.length && null != chunks[chunkIndex]) {
+				sum += chunks[chunkIndex].get(indexInChunk);
+			}
 		}
-		array.addAndGet(arrayPosition, value);
+		return sum;
 	}
-	
-	public long get(int arrayPosition) { 	return array.get(arrayPosition); }
-	public int length() { 	return array.length(); }
-	
-	private void resize(final int arrayPosition) {
-		// lock
-		while ( ! resizingInProgress.compareAndSet(false, true)) {}
-		
-		try {
-			// check capacity as may have already  been resized to fit our arrayPosition
-			if (arrayPosition >= capacity) {
-							
-				// sleep to allow any threads in CAS loop in increment method to complete
-				// resizing should not occur often so will not be too great a performance penalty
-				// and it SHOULD mean we keep the array in a consistent state 
-				Thread.sleep(100);
-				
-				System.out.println("resizing...");
-			
-				// double the required capacity
-				capacity = Math.min(arrayPosition * 2, maxCapacity);
-				
-				AtomicLongArray newArray = new AtomicLongArray(capacity);
-				for (int i = 0, length = array.length() ; i < length ; i++) {
-					newArray.set(i, array.get(i));
+
+	public int length() { 	return capacity; }
+
+	/*
+	 * Growth just involves bumping the capacity - chunks are allocated by the stripes as they are needed
+	 */
+	private synchronized void resize(final int arrayPosition) {
+		if (arrayPosition < 0 || arrayPosition >= maxCapacity) {
+			throw new IndexOutOfBoundsException("index " + arrayPosition + ", max capacity: " + maxCapacity);
+		}
+		// check capacity as may have already  been resized to fit our arrayPosition
+		if (arrayPosition >= capacity) {
+			// double the required capacity
+			capacity = Math.min(Math.max(arrayPosition * 2, arrayPosition + 1), maxCapacity);
+		}
+	}
+
+	/**
+	 * Returns the counts summed across all stripes
+	 */
+	public long[] toArray() {
+		int length = capacity;
+		long[] result = new long[length];
+		for (Stripe stripe : stripes) {
+			AtomicLongArray[] chunks = stripe.chunks;
+			for (int c = 0 ; c < chunks.length ; c++) {
+				AtomicLongArray chunk = chunks[c];
+				if (null != chunk) {
+					int offset = c << chunkBits;
+					for (int i = 0, len = Math.min(chunk.length(), length - offset) ; i < len ; i++) {
+						result[offset + i] += chunk.get(i);
+					}
 				}
-				array = newArray;
-				System.out.println("resizing...DONE - new capacity: " + capacity);
 			}
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		} finally {
-			//unlock
-			while ( ! resizingInProgress.compareAndSet(true, false)) {}
 		}
+		return result;
 	}
-	
- 
+
 	/**
-	 * 
-	 * @return a map of positive value, in which the key is array position. 
+	 *
+	 * @return a map of positive value, in which the key is array position.
 	 */
 	public TreeMap<Integer, AtomicLong> toMap() {
-		TreeMap<Integer, AtomicLong> map = new TreeMap<>();		 
-		for(int i = 0; i < array.length(); i ++)
-			if(array.get(i) > 0)
-				map.put(i, new AtomicLong(array.get(i)));
-		
+		TreeMap<Integer, AtomicLong> map = new TreeMap<>();
+		long[] array = toArray();
+		for(int i = 0; i < array.length; i ++)
+			if(array[i] > 0)
+				map.put(i, new AtomicLong(array[i]));
+
 		return map;
 	}
-	
+
 	public boolean isEmpty() {
-		for(int i = 0; i < array.length(); i ++) {
-			if(array.get(i) > 0) {
+		for (long l : toArray()) {
+			if(l > 0) {
 				return false;
 			}
 		}
-		return true; 
+		return true;
 	}
-	
+
 	public long getSum() {
 		long sum = 0;
-		for(int i = 0; i < array.length(); i ++) {			 
-			sum += array.get(i);			 
+		for (long l : toArray()) {
+			sum += l;
 		}
-		return sum; 
+		return sum;
 	}
-		
+
+	/**
+	 * The chunks for a stripe. The chunks array is copied on write (under the stripe's lock) and published via a volatile write,
+	 * so that incrementing threads can read it without locking. The chunks themselves are never replaced, so no counts are lost.
+	 */
+	private static final class Stripe {
+		private volatile AtomicLongArray[] chunks = new AtomicLongArray[0];
+
+		synchronized AtomicLongArray getOrCreateChunk(int chunkIndex, int chunkSize) {
+			AtomicLongArray[] current = chunks;
+			if (chunkIndex < current.length && null != current[chunkIndex]) {
+				return current[chunkIndex];
+			}
+			AtomicLongArray[] updated = Arrays.copyOf(current, Math.max(current.length, chunkIndex + 1));
+			AtomicLongArray chunk = new AtomicLongArray(chunkSize);
+			updated[chunkIndex] = chunk;
+			chunks = updated;
+			return chunk;
+		}
+	}
+
 }
@@ -0,0 +1,160 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ * <p>
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+
+package org.qcmg.common.sw;
+
+/**
+ * Result of a {@link SmithWatermanGotohAligner} alignment of sequence A (the reference) against sequence B.
+ * <p>
+ * The alignment is held as a run length encoded array of operations (length &lt;&lt; 2 | operation), in the style of a BAM cigar.
+ * Start positions are 0-based and end positions are exclusive.
+ */
+public final class SmithWatermanAlignment {
+
+	/**
+	 * A and B have the same base
+	 */
+	public static final int MATCH = 0;
+	/**
+	 * A and B have different bases
+	 */
+	public static final int MISMATCH = 1;
+	/**
+	 * base in B that is not in A
+	 */
+	public static final int INSERTION = 2;
+	/**
+	 * base in A that is not in B
+	 */
+	public static final int DELETION = 3;
+
+	private static final char[] CIGAR_CHARS = {'=', 'X', 'I', 'D'};
+
+	private final float score;
+	private final int startA;
+	private final int endA;
+	private final int startB;
+	private final int endB;
+	private final int[] cigar;
+
+	SmithWatermanAlignment(float score, int startA, int endA, int startB, int endB, int[] cigar) {
+		this.score = score;
+		this.startA = startA;
+		this.endA = endA;
+		this.startB = startB;
+		this.endB = endB;
+		this.cigar = cigar;
+	}
+
+	public float getScore() {
+		return score;
+	}
+
+	public int getStartA() {
+		return startA;
+	}
+
+	public int getEndA() {
+		return endA;
+	}
+
+	public int getStartB() {
+		return startB;
+	}
+
+	public int getEndB() {
+		return endB;
+	}
+
+	public int getOperationCount() {
+		return cigar.length;
+	}
+
+	/**
+	 * @return one of {@link #MATCH}, {@link #MISMATCH}, {@link #INSERTION} or {@link #DELETION}
+	 */
+	public int getOperation(int i) {
+		return cigar[i] & 3;
+	}
+
+	public int getOperationLength(int i) {
+		return cigar[i] >>> 2;
+	}
+
+	/**
+	 * @return the total length of the operations of the supplied type
+	 */
+	public int getCount(int operation) {
+		int count = 0;
+		for (int c : cigar) {
+			if ((c & 3) == operation) {
+				count += c >>> 2;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the alignment as an extended cigar string (eg. 10=1X5=2I3=)
+	 */
+	public String getCigarString() {
+		StringBuilder sb = new StringBuilder(cigar.length * 4);
+		for (int c : cigar) {
+			sb.append(c >>> 2).append(CIGAR_CHARS[c & 3]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the aligned portions of A and B, and a string between them describing each position
+	 * ('|' for a match, '.' for a mismatch, and ' ' for a gap), with '-' used for gaps in A or B.
+	 * This is the format returned by {@link SmithWatermanGotoh#traceback()}.
+	 *
+	 * @param a sequence A, as passed to the aligner
+	 * @param b sequence B, as passed to the aligner
+	 * @return array of aligned A, diff string, aligned B
+	 */
+	public String[] toDiffStrings(String a, String b) {
+		int length = 0;
+		for (int c : cigar) {
+			length += c >>> 2;
+		}
+		char[] alignedA = new char[length];
+		char[] diffs = new char[length];
+		char[] alignedB = new char[length];
+		int ia = startA;
+		int ib = startB;
+		int p = 0;
+		for (int c : cigar) {
+			int op = c & 3;
+			for (int n = c >>> 2; n > 0; n--, p++) {
+				switch (op) {
+					case MATCH, MISMATCH -> {
+						alignedA[p] = a.charAt(ia++);
+						alignedB[p] = b.charAt(ib++);
+						diffs[p] = op == MATCH ? '|' : '.';
+					}
+					case INSERTION -> {
+						alignedA[p] = '-';
+						alignedB[p] = b.charAt(ib++);
+						diffs[p] = ' ';
+					}
+					default -> {
+						alignedA[p] = a.charAt(ia++);
+						alignedB[p] = '-';
+						diffs[p] = ' ';
+					}
+				}
+			}
+		}
+		return new String[] {new String(alignedA), new String(diffs), new String(alignedB)};
+	}
+
+	@Override
+	public String toString() {
+		return "SmithWatermanAlignment [score=" + score + ", A=" + startA + "-" + endA + ", B=" + startB + "-" + endB + ", cigar=" + getCigarString() + "]";
+	}
+}
@@ -0,0 +1,314 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ * <p>
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+
+package org.qcmg.common.sw;
+
+import java.util.Arrays;
+
+/**
+ * Smith-Waterman local alignment with Gotoh affine gap penalties.
+ * <p>
+ * Gives the same alignments as {@link SmithWatermanGotoh} (which now uses this class), but the score, traceback and gap length buffers
+ * are held in a per-thread workspace that is reused from one alignment to the next, and alignments are returned as a compact
+ * {@link SmithWatermanAlignment} rather than as strings. Millions of short alignments can therefore be run without generating much garbage.
+ * <p>
+ * Alignments can optionally be restricted to a band of diagonals, where the diagonal of a cell is its position in B minus its position in A,
+ * in which case only the cells in the band are computed and stored. {@link #score(String, String)} computes the best local score only,
+ * without any traceback storage.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ */
+public final class SmithWatermanGotohAligner {
+
+	static final byte STOP = 0;
+	static final byte LEFT = 1;
+	static final byte DIAGONAL = 2;
+	static final byte UP = 3;
+
+	/*
+	 * workspaces larger than this (in cells, 5 bytes each) are not kept for reuse, so that a single large alignment doesn't pin a lot of memory to a thread.
+	 * This caps the memory retained per thread at about 2.5MB, which covers the read and contig sized alignments that the callers make.
+	 */
+	private static final int MAX_RETAINED_CELLS = 1 << 19;
+
+	private static final ThreadLocal<Workspace> WORKSPACES = ThreadLocal.withInitial(Workspace::new);
+
+	private final int matchScore;
+	private final int mismatchScore;
+	private final float gapOpen;
+	private final float gapExtend;
+
+	public SmithWatermanGotohAligner(int matchScore, int mismatchScore, float gapOpen, float gapExtend) {
+		this.matchScore = matchScore;
+		this.mismatchScore = mismatchScore;
+		this.gapOpen = gapOpen;
+		this.gapExtend = gapExtend;
+	}
+
+	/*
+	 * per-thread buffers
+	 */
+	private static final class Workspace {
+		char[] a = new char[256];
+		char[] b = new char[256];
+		float[] bestScores = new float[256];
+		float[] queryGapScores = new float[256];
+		byte[] pointers = new byte[0];
+		short[] verticalGaps = new short[0];
+		short[] horizontalGaps = new short[0];
+		byte[] ops = new byte[512];
+
+		void prepareSequences(String sa, String sb) {
+			if (a.length < sa.length()) {
+				a = new char[sa.length()];
+			}
+			if (b.length < sb.length()) {
+				b = new char[sb.length()];
+			}
+			sa.getChars(0, sa.length(), a, 0);
+			sb.getChars(0, sb.length(), b, 0);
+			int columns = sb.length() + 1;
+			if (bestScores.length < columns) {
+				bestScores = new float[columns];
+				queryGapScores = new float[columns];
+			}
+			Arrays.fill(bestScores, 0, columns, 0f);
+			Arrays.fill(queryGapScores, 0, columns, Float.NEGATIVE_INFINITY);
+		}
+
+		void prepareTraceback(int cells, int steps) {
+			if (pointers.length < cells) {
+				pointers = new byte[cells];
+				verticalGaps = new short[cells];
+				horizontalGaps = new short[cells];
+			}
+			if (ops.length < steps) {
+				ops = new byte[steps];
+			}
+		}
+	}
+
+	/**
+	 * Aligns A against B, considering all diagonals
+	 */
+	public SmithWatermanAlignment align(String a, String b) {
+		return align(a, b, -a.length(), b.length());
+	}
+
+	/**
+	 * Aligns A against B, only considering cells whose diagonal (position in B minus position in A) lies between the supplied values (inclusive)
+	 */
+	public SmithWatermanAlignment align(String a, String b, int minDiagonal, int maxDiagonal) {
+		int rows = a.length() + 1;
+		int columns = b.length() + 1;
+		minDiagonal = Math.max(minDiagonal, -(rows - 1));
+		maxDiagonal = Math.min(maxDiagonal, columns - 1);
+		if (minDiagonal > maxDiagonal) {
+			throw new IllegalArgumentException("Invalid band: " + minDiagonal + " to " + maxDiagonal + " for sequences of length " + a.length() + " and " + b.length());
+		}
+		int width = Math.min(columns, maxDiagonal - minDiagonal + 1);
+		long cells = (long) rows * width;
+		if (cells > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Alignment is too large: " + a.length() + " x " + b.length());
+		}
+
+		Workspace ws = cells > MAX_RETAINED_CELLS ? new Workspace() : WORKSPACES.get();
+		ws.prepareSequences(a, b);
+		ws.prepareTraceback((int) cells, rows + columns);
+
+		final char[] ca = ws.a;
+		final char[] cb = ws.b;
+		final float[] bestScores = ws.bestScores;
+		final float[] queryGapScores = ws.queryGapScores;
+		final byte[] pointers = ws.pointers;
+		final short[] verticalGaps = ws.verticalGaps;
+		final short[] horizontalGaps = ws.horizontalGaps;
+
+		int bestRow = 0;
+		int bestColumn = 0;
+		float bestScore = Float.NEGATIVE_INFINITY;
+		int previousRowBase = 0;
+
+		for (int row = 1; row < rows; row++) {
+			int first = Math.max(1, row + minDiagonal);
+			int last = Math.min(columns - 1, row + maxDiagonal);
+			/*
+			 * index of cell (row, column) is rowBase + column
+			 */
+			int rowBase = row * width - Math.min(Math.max(0, row + minDiagonal), columns - width);
+			if (first <= last) {
+				float currentAnchorGapScore = Float.NEGATIVE_INFINITY;
+				float bestScoreDiagonal = bestScores[first - 1];
+				/*
+				 * the cell to the left of the band is not part of the alignment
+				 */
+				bestScores[first - 1] = 0;
+				char ac = ca[row - 1];
+
+				for (int column = first; column <= last; column++) {
+					int index = rowBase + column;
+					float totalSimilarityScore = bestScoreDiagonal + (ac == cb[column - 1] ? matchScore : mismatchScore);
+
+					//vertical/sequenceA gaps
+					float queryGapExtendScore = queryGapScores[column] - gapExtend;
+					float queryGapOpenScore = bestScores[column] - gapOpen;
+					float queryGapScore;
+					if (queryGapExtendScore > queryGapOpenScore) {
+						queryGapScore = queryGapExtendScore;
+						verticalGaps[index] = (short) (verticalGaps[previousRowBase + column] + 1);
+					} else {
+						queryGapScore = queryGapOpenScore;
+						verticalGaps[index] = 1;
+					}
+					queryGapScores[column] = queryGapScore;
+
+					//horizontal gaps
+					float referenceGapExtendScore = currentAnchorGapScore - gapExtend;
+					float referenceGapOpenScore = bestScores[column - 1] - gapOpen;
+					if (referenceGapExtendScore > referenceGapOpenScore) {
+						currentAnchorGapScore = referenceGapExtendScore;
+						horizontalGaps[index] = (short) (horizontalGaps[index - 1] + 1);
+					} else {
+						currentAnchorGapScore = referenceGapOpenScore;
+						horizontalGaps[index] = 1;
+					}
+
+					bestScoreDiagonal = bestScores[column];
+					float score = max(totalSimilarityScore, queryGapScore, currentAnchorGapScore);
+					bestScores[column] = score;
+
+					if (score == 0) {
+						pointers[index] = STOP;
+					} else if (score == totalSimilarityScore) {
+						pointers[index] = DIAGONAL;
+					} else if (score == queryGapScore) {
+						pointers[index] = UP;
+					} else {
+						pointers[index] = LEFT;
+					}
+
+					if (score > bestScore) {
+						bestRow = row;
+						bestColumn = column;
+						bestScore = score;
+					}
+				}
+			}
+			previousRowBase = rowBase;
+		}
+
+		return traceback(ws, width, minDiagonal, columns, bestRow, bestColumn, Math.max(bestScore, 0));
+	}
+
+	private static SmithWatermanAlignment traceback(Workspace ws, int width, int minDiagonal, int columns, int bestRow, int bestColumn, float bestScore) {
+		final byte[] ops = ws.ops;
+		int opCount = 0;
+		int rs = bestRow;
+		int cs = bestColumn;
+
+		while (rs > 0 && cs > 0) {
+			int index = rs * width - Math.min(Math.max(0, rs + minDiagonal), columns - width) + cs;
+			byte pointer = ws.pointers[index];
+			if (pointer == LEFT) {
+				for (int i = ws.horizontalGaps[index]; i > 0; i--) {
+					ops[opCount++] = SmithWatermanAlignment.INSERTION;
+					cs--;
+				}
+			} else if (pointer == DIAGONAL) {
+				rs--;
+				cs--;
+				ops[opCount++] = (byte) (ws.a[rs] == ws.b[cs] ? SmithWatermanAlignment.MATCH : SmithWatermanAlignment.MISMATCH);
+			} else if (pointer == UP) {
+				for (int i = ws.verticalGaps[index]; i > 0; i--) {
+					ops[opCount++] = SmithWatermanAlignment.DELETION;
+					rs--;
+				}
+			} else {
+				break;
+			}
+		}
+
+		/*
+		 * ops were collected from the end of the alignment - run length encode them in forward order
+		 */
+		int runs = 0;
+		for (int i = opCount - 1; i >= 0; i--) {
+			if (i == opCount - 1 || ops[i] != ops[i + 1]) {
+				runs++;
+			}
+		}
+		int[] cigar = new int[runs];
+		int r = -1;
+		for (int i = opCount - 1; i >= 0; i--) {
+			if (i == opCount - 1 || ops[i] != ops[i + 1]) {
+				cigar[++r] = ops[i];
+			}
+			cigar[r] += 4;
+		}
+		return new SmithWatermanAlignment(bestScore, rs, bestRow, cs, bestColumn, cigar);
+	}
+
+	/**
+	 * @return the best local alignment score of A against B, considering all diagonals
+	 */
+	public float score(String a, String b) {
+		return score(a, b, -a.length(), b.length());
+	}
+
+	/**
+	 * @return the best local alignment score of A against B, only considering cells whose diagonal lies between the supplied values (inclusive)
+	 */
+	public float score(String a, String b, int minDiagonal, int maxDiagonal) {
+		int rows = a.length() + 1;
+		int columns = b.length() + 1;
+		minDiagonal = Math.max(minDiagonal, -(rows - 1));
+		maxDiagonal = Math.min(maxDiagonal, columns - 1);
+		if (minDiagonal > maxDiagonal) {
+			throw new IllegalArgumentException("Invalid band: " + minDiagonal + " to " + maxDiagonal + " for sequences of length " + a.length() + " and " + b.length());
+		}
+
+		Workspace ws = WORKSPACES.get();
+		ws.prepareSequences(a, b);
+		final char[] ca = ws.a;
+		final char[] cb = ws.b;
+		final float[] bestScores = ws.bestScores;
+		final float[] queryGapScores = ws.queryGapScores;
+
+		float bestScore = 0;
+		for (int row = 1; row < rows; row++) {
+			int first = Math.max(1, row + minDiagonal);
+			int last = Math.min(columns - 1, row + maxDiagonal);
+			if (first > last) {
+				continue;
+			}
+			float currentAnchorGapScore = Float.NEGATIVE_INFINITY;
+			float bestScoreDiagonal = bestScores[first - 1];
+			bestScores[first - 1] = 0;
+			char ac = ca[row - 1];
+
+			for (int column = first; column <= last; column++) {
+				float totalSimilarityScore = bestScoreDiagonal + (ac == cb[column - 1] ? matchScore : mismatchScore);
+				float queryGapScore = Math.max(queryGapScores[column] - gapExtend, bestScores[column] - gapOpen);
+				queryGapScores[column] = queryGapScore;
+				currentAnchorGapScore = Math.max(currentAnchorGapScore - gapExtend, bestScores[column - 1] - gapOpen);
+				bestScoreDiagonal = bestScores[column];
+				float score = max(totalSimilarityScore, queryGapScore, currentAnchorGapScore);
+				bestScores[column] = score;
+				if (score > bestScore) {
+					bestScore = score;
+				}
+			}
+		}
+		return bestScore;
+	}
+
+	private static float max(float valueA, float valueB, float valueC) {
+		if (valueA <= 0 && valueB <= 0 && valueC <= 0) {
+			return 0;
+		}
+		return Math.max(valueA, Math.max(valueB, valueC));
+	}
+}
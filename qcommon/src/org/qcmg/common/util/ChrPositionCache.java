@@ -19,6 +19,7 @@ public class ChrPositionCache {
 	private static final ConcurrentMap<String, ChrPointPosition> cache = new ConcurrentHashMap<>();
 	private static final ConcurrentMap<ChrPosition, Integer> cacheWithIndex = new ConcurrentHashMap<>();
 	private static final ConcurrentMap<String, Integer> stringCacheWithIndex = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<Integer, String> indexWithStringCache = new ConcurrentHashMap<>();
 	private static final AtomicInteger index = new AtomicInteger();
 	
 	
@@ -51,10 +52,19 @@ public class ChrPositionCache {
 			Integer prevI = stringCacheWithIndex.putIfAbsent(chrAndPosition, i);
 			if (null != prevI && ! prevI.equals(i)) {
 				i = prevI;
+			} else {
+				indexWithStringCache.put(i, chrAndPosition);
 			}
 		}
 		return i;
 	}
+	
+	/**
+	 * Returns the string that was assigned the supplied index by {@link #getStringIndex(String)}, or null if there isn't one
+	 */
+	public static String getStringFromIndex(int index) {
+		return indexWithStringCache.get(index);
+	}
 
 }
 	
@@ -78,4 +78,57 @@ public class QCMGAtomicLongArrayTest {
 
     }
 
+    @Test
+    public void concurrentIncrementsWithGrowth() throws InterruptedException {
+        final int noOfThreads = 8;
+        final int noOfLoops = 200000;
+        final QCMGAtomicLongArray array = new QCMGAtomicLongArray(4);
+
+        // each thread increments positions that force the array to grow while the others are incrementing
+        ExecutorService executor = Executors.newFixedThreadPool(noOfThreads);
+        for (int j = 0; j < noOfThreads; j++) {
+            executor.execute(() -> {
+                for (int i = 0; i < noOfLoops; i++) {
+                    array.increment(i % 5000);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        long[] counts = array.toArray();
+        assertEquals(array.length(), counts.length);
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(noOfThreads * (noOfLoops / 5000), array.get(i));
+            assertEquals(noOfThreads * (noOfLoops / 5000), counts[i]);
+        }
+        assertEquals((long) noOfThreads * noOfLoops, array.getSum());
+        assertEquals(5000, array.toMap().size());
+    }
+
+    @Test
+    public void lengthAndMaxCapacity() {
+        final QCMGAtomicLongArray array = new QCMGAtomicLongArray(10, 100);
+        assertEquals(20, array.length());
+        array.increment(20);
+        assertEquals(40, array.length());
+        array.increment(60, 5);
+        assertEquals(100, array.length());
+        array.increment(99);
+        assertEquals(5, array.get(60));
+        assertEquals(0, array.get(61));
+
+        try {
+            array.increment(100);
+            fail("Should have thrown an IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {}
+        try {
+            array.get(100);
+            fail("Should have thrown an IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {}
+        try {
+            array.increment(-1);
+            fail("Should have thrown an IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {}
+    }
 }
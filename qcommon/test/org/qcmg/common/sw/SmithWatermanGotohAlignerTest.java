@@ -0,0 +1,218 @@
+package org.qcmg.common.sw;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SmithWatermanGotohAlignerTest {
+
+	private static final SmithWatermanGotohAligner LENIENT = new SmithWatermanGotohAligner(5, -4, 16, 4);
+	private static final SmithWatermanGotohAligner STRICT = new SmithWatermanGotohAligner(4, -14, 14, 1);
+
+	@Test
+	public void deletion() {
+		String a = "ACGTACGTTTGACCA";
+		String b = "ACGTACTTTGACCA";
+		SmithWatermanAlignment sw = LENIENT.align(a, b);
+		assertEquals(54f, sw.getScore(), 0.0001);
+		assertEquals("6=1D8=", sw.getCigarString());
+		assertEquals(0, sw.getStartA());
+		assertEquals(15, sw.getEndA());
+		assertEquals(0, sw.getStartB());
+		assertEquals(14, sw.getEndB());
+		assertEquals(1, sw.getCount(SmithWatermanAlignment.DELETION));
+		assertEquals(14, sw.getCount(SmithWatermanAlignment.MATCH));
+		assertArrayEquals(new String[] {"ACGTACGTTTGACCA", "|||||| ||||||||", "ACGTAC-TTTGACCA"}, sw.toDiffStrings(a, b));
+		assertArrayEquals(sw.toDiffStrings(a, b), new ReferenceSmithWatermanGotoh(a, b, 5, -4, 16, 4).traceback());
+	}
+
+	@Test
+	public void scoringAffectsGaps() {
+		String a = "ATTACAGGCGTGAGCCAGTATGCCTGGCCACAAGTCATACTTTAAATCACAT";
+		String b = "ATTACAGGCGGGAGCCACTACTCCTGGCCACAAGTCATACTTTAAATCACAT";
+		SmithWatermanAlignment lenient = LENIENT.align(a, b);
+		assertEquals(224f, lenient.getScore(), 0.0001);
+		assertEquals("10=1X6=1X2=2X30=", lenient.getCigarString());
+		assertEquals(4, lenient.getCount(SmithWatermanAlignment.MISMATCH));
+
+		SmithWatermanAlignment strict = STRICT.align(a, b);
+		assertEquals(140f, strict.getScore(), 0.0001);
+		assertEquals("10=1X6=1X2=1I1=1D30=", strict.getCigarString());
+		assertArrayEquals(new String[] {"ATTACAGGCGTGAGCCAGTA-TGCCTGGCCACAAGTCATACTTTAAATCACAT",
+				"||||||||||.||||||.|| | ||||||||||||||||||||||||||||||",
+				"ATTACAGGCGGGAGCCACTACT-CCTGGCCACAAGTCATACTTTAAATCACAT"}, strict.toDiffStrings(a, b));
+	}
+
+	@Test
+	public void localAlignmentWithInsertion() {
+		String a = "GGGGAAAACCCCTTTT";
+		String b = "AAAACCGGCCTTTT";
+		SmithWatermanAlignment sw = LENIENT.align(a, b);
+		assertEquals("6=2I6=", sw.getCigarString());
+		assertEquals(4, sw.getStartA());
+		assertEquals(16, sw.getEndA());
+		assertEquals(3, sw.getOperationCount());
+		assertEquals(SmithWatermanAlignment.INSERTION, sw.getOperation(1));
+		assertEquals(2, sw.getOperationLength(1));
+		assertArrayEquals(new String[] {"AAAACC--CCTTTT", "||||||  ||||||", "AAAACCGGCCTTTT"}, sw.toDiffStrings(a, b));
+	}
+
+	@Test
+	public void emptySequences() {
+		SmithWatermanAlignment sw = LENIENT.align("", "ACGT");
+		assertEquals(0, sw.getOperationCount());
+		assertEquals(0f, sw.getScore(), 0.0001);
+		assertArrayEquals(new String[] {"", "", ""}, sw.toDiffStrings("", "ACGT"));
+		assertEquals(0f, LENIENT.align("ACGT", "").getScore(), 0.0001);
+	}
+
+	@Test
+	public void matchesReferenceImplementation() {
+		Random random = new Random(7);
+		for (int i = 0 ; i < 500 ; i++) {
+			String a = randomSequence(random, 1 + random.nextInt(120));
+			String b = mutate(random, a.substring(random.nextInt(a.length())));
+			assertArrayEquals(new ReferenceSmithWatermanGotoh(a, b, 5, -4, 16, 4).traceback(), LENIENT.align(a, b).toDiffStrings(a, b));
+			assertArrayEquals(new ReferenceSmithWatermanGotoh(b, a, 4, -14, 14, 1).traceback(), STRICT.align(b, a).toDiffStrings(b, a));
+		}
+	}
+
+	@Test
+	public void largeAlignmentMatchesReferenceImplementation() {
+		/*
+		 * larger than the retained workspace, followed by a small alignment on the same thread
+		 */
+		Random random = new Random(13);
+		String a = randomSequence(random, 1500);
+		String b = mutate(random, a.substring(200, 1300));
+		assertArrayEquals(new ReferenceSmithWatermanGotoh(a, b, 5, -4, 16, 4).traceback(), LENIENT.align(a, b).toDiffStrings(a, b));
+		String c = mutate(random, a.substring(10, 90));
+		assertArrayEquals(new ReferenceSmithWatermanGotoh(a, c, 4, -14, 14, 1).traceback(), STRICT.align(a, c).toDiffStrings(a, c));
+	}
+
+	@Test
+	public void scoreMatchesAlignment() {
+		Random random = new Random(3);
+		for (int i = 0 ; i < 200 ; i++) {
+			String a = randomSequence(random, 1 + random.nextInt(120));
+			String b = mutate(random, a.substring(random.nextInt(a.length())));
+			assertEquals(LENIENT.align(a, b).getScore(), LENIENT.score(a, b), 0.0001);
+			assertEquals(STRICT.align(b, a).getScore(), STRICT.score(b, a), 0.0001);
+		}
+	}
+
+	@Test
+	public void bandCoveringAllDiagonalsMatchesUnbanded() {
+		Random random = new Random(5);
+		for (int i = 0 ; i < 100 ; i++) {
+			String a = randomSequence(random, 1 + random.nextInt(120));
+			String b = mutate(random, a.substring(random.nextInt(a.length())));
+			assertArrayEquals(LENIENT.align(a, b).toDiffStrings(a, b), LENIENT.align(a, b, -1000, 1000).toDiffStrings(a, b));
+			assertArrayEquals(STRICT.align(a, b).toDiffStrings(a, b), STRICT.align(a, b, -a.length(), b.length()).toDiffStrings(a, b));
+		}
+	}
+
+	@Test
+	public void bandedAlignmentStaysInBand() {
+		Random random = new Random(11);
+		for (int i = 0 ; i < 300 ; i++) {
+			String a = randomSequence(random, 1 + random.nextInt(150));
+			String b = mutate(random, a.substring(random.nextInt(a.length())));
+			int minDiagonal = -random.nextInt(a.length() + 1);
+			int maxDiagonal = Math.min(b.length(), minDiagonal + random.nextInt(40));
+			for (SmithWatermanGotohAligner aligner : new SmithWatermanGotohAligner[] {LENIENT, STRICT}) {
+				float expected = bandedScore(a, b, minDiagonal, maxDiagonal, aligner == LENIENT ? new float[] {5, -4, 16, 4} : new float[] {4, -14, 14, 1});
+				assertEquals(expected, aligner.score(a, b, minDiagonal, maxDiagonal), 0.0001);
+
+				SmithWatermanAlignment sw = aligner.align(a, b, minDiagonal, maxDiagonal);
+				assertEquals(expected, sw.getScore(), 0.0001);
+				int positionA = sw.getStartA();
+				int positionB = sw.getStartB();
+				for (int op = 0 ; op < sw.getOperationCount() ; op++) {
+					for (int j = 0 ; j < sw.getOperationLength(op) ; j++) {
+						int operation = sw.getOperation(op);
+						if (operation != SmithWatermanAlignment.INSERTION) {
+							positionA++;
+						}
+						if (operation != SmithWatermanAlignment.DELETION) {
+							positionB++;
+						}
+						assertTrue(positionB - positionA >= minDiagonal && positionB - positionA <= maxDiagonal);
+					}
+				}
+				assertEquals(sw.getEndA(), positionA);
+				assertEquals(sw.getEndB(), positionB);
+			}
+		}
+	}
+
+	@Test
+	public void invalidBand() {
+		try {
+			LENIENT.align("ACGT", "ACGT", 5, 10);
+			fail("Should have thrown an IllegalArgumentException");
+		} catch (IllegalArgumentException iae) {}
+		try {
+			LENIENT.score("ACGT", "ACGT", 2, 1);
+			fail("Should have thrown an IllegalArgumentException");
+		} catch (IllegalArgumentException iae) {}
+	}
+
+	/*
+	 * best local score using full matrices, where cells outside the band can't be part of an alignment
+	 */
+	private static float bandedScore(String a, String b, int minDiagonal, int maxDiagonal, float[] scoring) {
+		float[][] best = new float[a.length() + 1][b.length() + 1];
+		float[][] vertical = new float[a.length() + 1][b.length() + 1];
+		float[][] horizontal = new float[a.length() + 1][b.length() + 1];
+		for (float[] row : vertical) {
+			Arrays.fill(row, Float.NEGATIVE_INFINITY);
+		}
+		for (float[] row : horizontal) {
+			Arrays.fill(row, Float.NEGATIVE_INFINITY);
+		}
+		float bestScore = 0;
+		for (int i = 1 ; i <= a.length() ; i++) {
+			for (int j = 1 ; j <= b.length() ; j++) {
+				if (j - i < minDiagonal || j - i > maxDiagonal) {
+					continue;
+				}
+				float diagonal = best[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? scoring[0] : scoring[1]);
+				vertical[i][j] = Math.max(vertical[i - 1][j] - scoring[3], best[i - 1][j] - scoring[2]);
+				horizontal[i][j] = Math.max(horizontal[i][j - 1] - scoring[3], best[i][j - 1] - scoring[2]);
+				best[i][j] = Math.max(0, Math.max(diagonal, Math.max(vertical[i][j], horizontal[i][j])));
+				bestScore = Math.max(bestScore, best[i][j]);
+			}
+		}
+		return bestScore;
+	}
+
+	private static String randomSequence(Random random, int length) {
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0 ; i < length ; i++) {
+			sb.append("ACGT".charAt(random.nextInt(4)));
+		}
+		return sb.toString();
+	}
+
+	private static String mutate(Random random, String s) {
+		StringBuilder sb = new StringBuilder(s.length() + 4);
+		for (int i = 0 ; i < s.length() ; i++) {
+			int r = random.nextInt(30);
+			if (r == 0) {
+				sb.append("ACGT".charAt(random.nextInt(4)));
+			} else if (r == 1) {
+				sb.append(s.charAt(i)).append('A');
+			} else if (r != 2) {
+				sb.append(s.charAt(i));
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -13,4 +13,10 @@ interface Algorithm {
 	CoverageType getCoverageType();
 	void applyTo(final SAMRecord read, Object coverageCounter);
 	void applyTo(final SAMRecord read, Object coverageCounter, boolean fullyPopulated);
+
+	/**
+	 * As {@link #applyTo(SAMRecord, Object, boolean)}, but for a coverage counter that covers a shard of the reference,
+	 * starting <code>offset</code> bases in. Only those positions that fall within the shard are updated.
+	 */
+	void applyTo(final SAMRecord read, Object coverageCounter, int offset, boolean fullyPopulated);
 }
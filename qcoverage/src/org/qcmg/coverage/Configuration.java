@@ -13,8 +13,11 @@ import org.qcmg.common.util.Pair;
 import org.qcmg.qbamfilter.query.QueryExecutor;
 
 public final class Configuration {
+	public static final int DEFAULT_SHARD_SIZE = 10_000_000;
+
 	private boolean perFeatureFlag;
 	private final int numberThreads;
+	private final int shardSize;
 	private final String type;
 	private final String outputFileName;
 	private final String inputGFF3FileName;
@@ -80,6 +83,7 @@ public final class Configuration {
 		} else {
 			numberThreads = 1;
 		}
+		shardSize = options.hasShardSizeOption() ? options.getShardSize() : DEFAULT_SHARD_SIZE;
 
 		if (options.hasQueryOption()) {
 			filter = new QueryExecutor(options.getQuery());
@@ -122,6 +126,10 @@ public final class Configuration {
 		return numberThreads;
 	}
 
+	public int getShardSize() {
+		return shardSize;
+	}
+
 	public String getType() {
 		return type;
 	}
@@ -21,18 +21,30 @@ import org.qcmg.picard.SAMFileReaderFactory;
 import org.qcmg.qbamfilter.query.QueryExecutor;
 import org.qcmg.qio.gff3.Gff3Record;
 
+/**
+ * Performs coverage for a shard of a reference sequence (which may be the whole sequence).
+ * <p>
+ * Only the reads overlapping the shard are retrieved, and coverage is recorded in an array the size of the shard,
+ * so memory usage depends on the shard size rather than on the length of the sequence.
+ * Reads that span the shard boundaries contribute coverage to each of the shards that they overlap,
+ * but are only counted (in counterIn and counterOut) by the shard in which they start, or by the first shard they overlap if the shard they start in was not queued.
+ * No job is run for shards without features, so reads that only overlap such shards are not counted at all.
+ */
 class CoverageJob implements Job {
-	private final int refLength;
 	private final String refName;
+	private final int shardStart; // 1-based, inclusive
+	private final int shardEnd; // 1-based, inclusive
+	private final boolean countReadsStartingBeforeShard;
 	private final HashSet<Gff3Record> features;
-	private int[] perBaseCoverages; // Uses 0-based coordinate indexing
+	private int[] perBaseCoverages; // Uses 0-based coordinate indexing, relative to shardStart
 	private final HashMap<String, HashMap<Integer, AtomicLong>> idToCoverageToBaseCountMap = new HashMap<>();
 	private final HashMap<String, List<LowReadDepthRegion>> lowReadDepthMap = new HashMap<>();
 	private final QLogger logger;
 	private final QueryExecutor filter;
 	private final boolean perFeatureFlag;
 
-	private final HashSet<SamReader> fileReaders = new HashSet<>();
+	private final HashSet<Pair<File, File>> filePairs;
+	private final String validation;
 	private final Algorithm alg;
 	private final ReadsNumberCounter counterIn;
 	private final ReadsNumberCounter counterOut;
@@ -49,8 +61,22 @@ class CoverageJob implements Job {
 	CoverageJob(final String refName, final int refLength, final HashMap<String, HashSet<Gff3Record>> refToFeaturesMap,
 			final HashSet<Pair<File, File>> filePairs, final QueryExecutor filter,
 			final boolean perFeatureFlag, final Algorithm algorithm, final ReadsNumberCounter counterIn,final ReadsNumberCounter counterOut, final String validation) throws Exception {
-		assert (refLength > -1);
-		this.refLength = refLength;
+		this(refName, 1, refLength, refToFeaturesMap.get(refName), true, filePairs, filter, perFeatureFlag, algorithm, counterIn, counterOut, validation);
+	}
+
+	/**
+	 * @param shardStart 1-based start of the shard
+	 * @param shardEnd 1-based (inclusive) end of the shard
+	 * @param features the features that overlap the shard - these may extend beyond the shard
+	 * @param countReadsStartingBeforeShard if true, reads overlapping the shard that start before it are counted - set when there is no preceding shard that would count them
+	 */
+	CoverageJob(final String refName, final int shardStart, final int shardEnd, final HashSet<Gff3Record> features, final boolean countReadsStartingBeforeShard,
+			final HashSet<Pair<File, File>> filePairs, final QueryExecutor filter,
+			final boolean perFeatureFlag, final Algorithm algorithm, final ReadsNumberCounter counterIn,final ReadsNumberCounter counterOut, final String validation) throws Exception {
+		assert (shardStart > 0 && shardEnd >= shardStart - 1);
+		this.shardStart = shardStart;
+		this.shardEnd = shardEnd;
+		this.countReadsStartingBeforeShard = countReadsStartingBeforeShard;
 		this.alg = algorithm;
 		this.perFeatureFlag = perFeatureFlag;
 		this.counterIn = counterIn;
@@ -58,15 +84,11 @@ class CoverageJob implements Job {
 		this.filter = filter;
 		this.logger = QLoggerFactory.getLogger(CoverageJob.class);
 		this.refName = refName;
-		// value
-		features = refToFeaturesMap.get(refName);
+		this.features = features;
 		assert (null != features);
-		for (final Pair<File, File> pair : filePairs) {
-			File bamFile = pair.left();
-			SamReader reader = SAMFileReaderFactory.createSAMFileReader(bamFile, validation);
-			fileReaders.add(reader);
-		}
-		logger.debug("length of sequence to be processed by job '" + this + "':" + refLength);
+		this.filePairs = filePairs;
+		this.validation = validation;
+		logger.debug("length of sequence to be processed by job '" + this + "':" + getShardLength());
 		logger.debug("number of features to be processed by job '" + this + "':" + features.size());
 	}
 
@@ -82,21 +104,25 @@ class CoverageJob implements Job {
 
 	@Override
 	public String toString() {
-		return refName + " coverage";
+		return refName + ":" + shardStart + "-" + shardEnd + " coverage";
+	}
+
+	int getShardLength() {
+		return shardEnd - shardStart + 1;
 	}
 
 	@Override
 	synchronized public void run() throws Exception{
 		try {
-			logger.info("starting job for: " + refName);
-			logger.debug("constructing storage for coverage: " + refName);
+			logger.info("starting job for: " + this);
+			logger.debug("constructing storage for coverage: " + this);
 			constructCoverageMap();
-			logger.info("performing coverage for: " + refName);
+			logger.info("performing coverage for: " + this);
 			performCoverage();
-			logger.info("assembling results for: " + refName);
+			logger.info("assembling results for: " + this);
 			assembleResultsByAlgorithm();
-			logger.debug("assembled results for: " + refName + " are: " + getResults());
-			logger.info("ending job for: " + refName);
+			logger.debug("assembled results for: " + this + " are: " + getResults());
+			logger.info("ending job for: " + this);
 		} catch (Exception ex) {
 			logger.error("Exception caught in run method of CoverageJob", ex);
 			throw ex;
@@ -104,22 +130,26 @@ class CoverageJob implements Job {
 	}
 
 	void constructCoverageMap() {
-		perBaseCoverages = new int[refLength]; // All elements default to zero
+		perBaseCoverages = new int[getShardLength()]; // All elements default to zero
 
 		boolean isArrayFull = true;
 		// Initially set all values to -1 for no coverage at that coordinate
 		Arrays.fill(perBaseCoverages, -1);
 		
 		logger.debug("in constructCoverageMap with array length: " + perBaseCoverages.length);
-		// For all coordinates where a feature exists, set to zero coverage
+		// For all coordinates within the shard where a feature exists, set to zero coverage
 		for (Gff3Record feature : features) {
 			int start = feature.getStart();
 			
 			if (start == 0)
 				throw new IllegalArgumentException("Feature has start value of zero");
  
-			Arrays.fill(perBaseCoverages, start-1, feature.getEnd(), 0);
-			logger.debug("filled in from : " + (start-1) + " to " + feature.getEnd());
+			int from = Math.max(start, shardStart) - shardStart;
+			int to = Math.min(feature.getEnd(), shardEnd) - shardStart + 1;
+			if (from < to) {
+				Arrays.fill(perBaseCoverages, from, to, 0);
+				logger.debug("filled in from : " + (from + shardStart - 1) + " to " + (to + shardStart - 1));
+			}
 		}
         for (int perBaseCoverage : perBaseCoverages) {
             if (perBaseCoverage < 0) {
@@ -140,9 +170,12 @@ class CoverageJob implements Job {
 	}
 
 	private void performCoverage() throws Exception {
- 		for (final SamReader fileReader : fileReaders) {
+		final int offset = shardStart - 1;
+ 		for (final Pair<File, File> pair : filePairs) {
+ 			SamReader fileReader = SAMFileReaderFactory.createSAMFileReader(pair.left(), validation);
  			
-			Iterator<SAMRecord> iter = fileReader.query(refName, 0, 0, false);
+			// retrieve all reads that overlap the shard
+			Iterator<SAMRecord> iter = fileReader.query(refName, shardStart, shardEnd, false);
 			long recordCounterIn = 0;
 			long recordCounterOut = 0; 
 			long totalBaseCount = 0;
@@ -150,26 +183,35 @@ class CoverageJob implements Job {
 			while (iter.hasNext()) {
 				SAMRecord read = iter.next();
 				
+				// reads that start before the shard are counted by the preceding shard
+				final boolean countRead = countReadsStartingBeforeShard || read.getAlignmentStart() >= shardStart;
+				
 				// only proceed if read is mapped, not a dup, valid, and primary
-				counterIn.increment();   //count input read number
+				if (countRead) {
+					counterIn.increment();   //count input read number
+				}
 				
 				// get number of bases in read
 				int readLength = read.getReadLength();
 				totalBaseCount += readLength;
 				
 				if (++recordCounterIn % 10000000 == 0) {
-					logger.debug("hit " + (recordCounterIn / 1000000) + "M records for " + refName);
+					logger.debug("hit " + (recordCounterIn / 1000000) + "M records for " + this);
 				}
 
 				if (read.getReferenceName().equals(refName)) {
 					if (null == filter) {
 						recordCounterOut ++;
-						counterOut.increment();    //count output read number
-						alg.applyTo(read, perBaseCoverages, fullyPopulated);
+						if (countRead) {
+							counterOut.increment();    //count output read number
+						}
+						alg.applyTo(read, perBaseCoverages, offset, fullyPopulated);
 					} else if (filter.Execute(read)) {
 						recordCounterOut ++;
-						counterOut.increment(); //count output read number
-						alg.applyTo(read, perBaseCoverages, fullyPopulated);
+						if (countRead) {
+							counterOut.increment(); //count output read number
+						}
+						alg.applyTo(read, perBaseCoverages, offset, fullyPopulated);
 						
 						filteredBaseCount += readLength;
 					}
@@ -178,20 +220,20 @@ class CoverageJob implements Job {
 				}
 			}
 			fileReader.close();
-			logger.info("read " + recordCounterIn + " records from input for " + refName);
-			logger.info("add " + recordCounterOut + " records (satisfied by query if query is provided) to coverage for " + refName);
+			logger.info("read " + recordCounterIn + " records from input for " + this);
+			logger.info("add " + recordCounterOut + " records (satisfied by query if query is provided) to coverage for " + this);
 			logger.info("number in counterIn instance is " + counterIn.getNumber());
 			logger.info("number in counterOut instance is " + counterOut.getNumber());
 			
-			logger.info("number of bases for " + refName + " is : " + totalBaseCount);
-			logger.info("number of filtered bases for " + refName + " is : " + filteredBaseCount);
+			logger.info("number of bases for " + this + " is : " + totalBaseCount);
+			logger.info("number of filtered bases for " + this + " is : " + filteredBaseCount);
 			long totalCountFromArray = 0;
 			for (int i : perBaseCoverages) {
 				if (i > -1) {
 					totalCountFromArray += i;
 				}
 			}
-			logger.info("totalCountFromArray for " + refName + " is : " + totalCountFromArray);
+			logger.info("totalCountFromArray for " + this + " is : " + totalCountFromArray);
 		}
 	}
 
@@ -204,12 +246,14 @@ class CoverageJob implements Job {
 				id = feature.getType();
 			}
             HashMap<Integer, AtomicLong> covToBaseCountMap = idToCoverageToBaseCountMap.computeIfAbsent(id, k -> new HashMap<>());
-            for (int pos = feature.getStart(); pos <= feature.getEnd(); pos++) {
+            // only the part of the feature that falls within the shard
+            final int end = Math.min(feature.getEnd(), shardEnd);
+            for (int pos = Math.max(feature.getStart(), shardStart); pos <= end; pos++) {
 				// GFF3 format uses 1-based feature coordinates; avoid problem
 				// of GFF3 accidentally containing 0 coordinate
-				if (pos > 0 && (pos - 1) < perBaseCoverages.length) {
+				if (pos > 0 && (pos - shardStart) < perBaseCoverages.length) {
 					// Adjust from 1-based to 0-based indexing
-					int cov = perBaseCoverages[pos - 1];
+					int cov = perBaseCoverages[pos - shardStart];
 					if (-1 >= cov) {
 						throw new IllegalStateException(
 								"Malformed internal state. -1 coverage values are invalid. Report this bug.");
@@ -247,12 +291,14 @@ class CoverageJob implements Job {
 
 			int lowReadDepthStart = -1;
 
-			for (int pos = feature.getStart(); pos <= feature.getEnd(); pos++) {
+			// shards are laid out so as not to split features when running low read depth, but just in case...
+			final int end = Math.min(feature.getEnd(), shardEnd);
+			for (int pos = Math.max(feature.getStart(), shardStart); pos <= end; pos++) {
 				// GFF3 format uses 1-based feature coordinates; avoid problem
 				// of GFF3 accidentally containing 0 coordinate
-				if (pos > 0 && (pos - 1) < perBaseCoverages.length) {
+				if (pos > 0 && (pos - shardStart) < perBaseCoverages.length) {
 					// Adjust from 1-based to 0-based indexing
-					int cov = perBaseCoverages[pos - 1];
+					int cov = perBaseCoverages[pos - shardStart];
 					if (-1 >= cov) {
 						throw new IllegalStateException(
 								"Malformed internal state. -1 coverage values are invalid. Report this bug.");
@@ -261,7 +307,7 @@ class CoverageJob implements Job {
 					lowReadDepthStart = addLowReadDepthRegionIfNeeded(cov,pos, lowRdepthAlg.getReaddepthCutoff(), lowReadDepthStart, lowReadDepthMap);
 
 					//add final low read depth region if we are at the end of the feature
-					if (pos == feature.getEnd()) {
+					if (pos == end) {
 						if (lowReadDepthStart != -1) {
 							lowReadDepthMap.get(refName).add(new LowReadDepthRegion(refName, lowReadDepthStart, pos, lowRdepthAlg.getReaddepthCutoff()));
 						}
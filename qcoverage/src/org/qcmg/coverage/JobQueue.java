@@ -33,6 +33,7 @@ public final class JobQueue {
 	private final HashMap<String, List<LowReadDepthRegion>> lowReadDepthResultsFinalMap = new HashMap<>();
 	private final boolean perFeatureFlag;
 	private final int numberThreads;
+	private final int shardSize;
 	private int numberFeatures = 0;
 	private final File gff3File;
 	private final HashSet<String> refNames = new HashSet<>();
@@ -43,8 +44,8 @@ public final class JobQueue {
 	private final HashSet<Pair<File, File>> filePairs;
 	private final HashMap<String, HashSet<Pair<File, File>>> refnameFilePairs = new HashMap<>();
 	private final Vector<String> refnameExecutionOrder = new Vector<>();
-	private final HashSet<HashMap<String, TreeMap<Integer, AtomicLong>>> perRefnameResults = new HashSet<>();
-	private final HashSet<HashMap<String, List<LowReadDepthRegion>>> lowReadDepthResultsSet = new HashSet<>();
+	private final List<HashMap<String, TreeMap<Integer, AtomicLong>>> perRefnameResults = new ArrayList<>();
+	private final List<HashMap<String, List<LowReadDepthRegion>>> lowReadDepthResultsSet = new ArrayList<>();
 	private final BlockingQueue<Job> jobQueue = new LinkedBlockingQueue<>();
 	private final LoggerInfo loggerInfo;
 	private final QLogger logger;
@@ -63,6 +64,7 @@ public final class JobQueue {
 		coverageType = invariants.getCoverageType();
 		algorithm = invariants.getAlgorithm();
 		numberThreads = invariants.getNumberThreads();
+		shardSize = invariants.getShardSize();
 		filePairs = invariants.getFilePairs();
 		loggerInfo = invariants.getLoggerInfo();
 		validation = invariants.getValidation();
@@ -83,8 +85,11 @@ public final class JobQueue {
 		processJobs();
 		logger.info("All jobs completed");
 		
-		logger.info("total number from input is " + countIn.getNumber());
-		logger.info("total number of reads (satisfied by the query if query provided) count to coverage is " + countOut.getNumber());
+		/*
+		 * shards without features are skipped, so their reads are not read, and not counted
+		 */
+		logger.info("total number from input (reads overlapping shards that contain features) is " + countIn.getNumber());
+		logger.info("total number of reads (satisfied by the query if query provided) count to coverage (reads overlapping shards that contain features) is " + countOut.getNumber());
 		
 		logger.info("Performing final reduce step on results");
 		reduceResults();
@@ -107,19 +112,94 @@ public final class JobQueue {
 		logger.debug("Termination jobs queued");
 	}
 
+	/*
+	 * Each reference sequence is split into shards, and a job is queued for each shard that contains features.
+	 * Physical coverage extends reads by their insert size, so a read can contribute to positions well beyond its alignment,
+	 * and so for physical coverage, a shard is the whole reference sequence.
+	 * For low read depth, shards are laid out so as not to split features, so that low read depth regions are not split either.
+	 */
 	private void queueCoverageJobs() throws Exception {
 		identifyRefNameExecutionOrder();
+		int noOfShardsWithoutFeatures = 0;
 		for (String refname : refnameExecutionOrder) {
 			int refLength = perRefnameLengths.get(refname);
 			HashSet<Pair<File, File>> filePairs = refnameFilePairs.get(refname);
+			HashSet<Gff3Record> features = perRefnameFeatures.get(refname);
+			
+			List<int[]> shards = coverageType.equals(CoverageType.PHYSICAL)
+					? Collections.singletonList(new int[] {1, refLength})
+					: getShards(refLength, shardSize, features, ! coverageType.equals(CoverageType.LOW_READDEPTH));
+			List<HashSet<Gff3Record>> perShardFeatures = assignFeaturesToShards(shards, features);
 			
-			CoverageJob job = new CoverageJob(refname,
-					refLength, perRefnameFeatures, filePairs, filter,
-					perFeatureFlag, algorithm, countIn, countOut, validation);
-			jobQueue.add(job);
+			boolean previousShardQueued = false;
+			for (int i = 0 ; i < shards.size() ; i++) {
+				HashSet<Gff3Record> shardFeatures = perShardFeatures.get(i);
+				if (shardFeatures.isEmpty()) {
+					noOfShardsWithoutFeatures++;
+					previousShardQueued = false;
+					continue;
+				}
+				int[] shard = shards.get(i);
+				CoverageJob job = new CoverageJob(refname, shard[0], shard[1], shardFeatures, ! previousShardQueued,
+						filePairs, filter, perFeatureFlag, algorithm, countIn, countOut, validation);
+				jobQueue.add(job);
+				previousShardQueued = true;
+			}
+		}
+		logger.info("Number of queued coverage jobs: " + jobQueue.size() + ", number of shards skipped as they contain no features: " + noOfShardsWithoutFeatures);
+		logger.debug("Queued jobs are: " + jobQueue);
+	}
+
+	/**
+	 * Splits a reference sequence of the supplied length into shards of (approximately) <code>shardSize</code> bases.
+	 * Shards are returned as 1-based, inclusive, start and end positions.
+	 * <p>
+	 * If <code>splitFeatures</code> is false, shards are extended so that they end in a position not covered by a feature,
+	 * meaning that each feature falls entirely within a single shard.
+	 */
+	static List<int[]> getShards(int refLength, int shardSize, Collection<Gff3Record> features, boolean splitFeatures) {
+		List<int[]> shards = new ArrayList<>();
+		int[][] sortedFeatures = splitFeatures ? new int[0][] : features.stream()
+				.map(f -> new int[] {f.getStart(), f.getEnd()})
+				.sorted(Comparator.comparingInt(f -> f[0]))
+				.toArray(int[][]::new);
+		int featureIndex = 0;
+		int maxFeatureEnd = 0;
+		int start = 1;
+		while (start <= refLength) {
+			int end = (int) Math.min(refLength, (long) start + shardSize - 1);
+			while (true) {
+				while (featureIndex < sortedFeatures.length && sortedFeatures[featureIndex][0] <= end) {
+					maxFeatureEnd = Math.max(maxFeatureEnd, sortedFeatures[featureIndex++][1]);
+				}
+				if (maxFeatureEnd <= end || end == refLength) {
+					break;
+				}
+				end = Math.min(maxFeatureEnd, refLength);
+			}
+			shards.add(new int[] {start, end});
+			start = end + 1;
+		}
+		return shards;
+	}
+
+	/**
+	 * Returns the features that overlap each of the supplied shards
+	 */
+	static List<HashSet<Gff3Record>> assignFeaturesToShards(List<int[]> shards, Collection<Gff3Record> features) {
+		int[] shardStarts = new int[shards.size()];
+		List<HashSet<Gff3Record>> perShardFeatures = new ArrayList<>(shards.size());
+		for (int i = 0 ; i < shardStarts.length ; i++) {
+			shardStarts[i] = shards.get(i)[0];
+			perShardFeatures.add(new HashSet<>());
+		}
+		for (Gff3Record feature : features) {
+			int i = Arrays.binarySearch(shardStarts, feature.getStart());
+			for (i = i >= 0 ? i : Math.max(0, -i - 2) ; i < shardStarts.length && shardStarts[i] <= feature.getEnd() ; i++) {
+				perShardFeatures.get(i).add(feature);
+			}
 		}
-		logger.info("Number of queued coverage jobs: " + jobQueue.size());
-		logger.info("Queued jobs are: " + jobQueue);
+		return perShardFeatures;
 	}
 
 	private void reduceResults() {
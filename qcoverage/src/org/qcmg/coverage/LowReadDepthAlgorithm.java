@@ -30,16 +30,21 @@ public class LowReadDepthAlgorithm implements Algorithm {
 //	public void applyTo(final SAMRecord read, final int[] perBaseCoverages) {
 	@Override
 	public void applyTo(final SAMRecord read, Object perBaseCoveragesObj) {
+		applyTo(read, perBaseCoveragesObj, 0, false);
+	}
+
+	@Override
+	public void applyTo(final SAMRecord read, Object perBaseCoveragesObj, int offset, boolean fullyPopulated) {
 		
 		int[] perBaseCoverages = (int[]) perBaseCoveragesObj;
 		final int readStart = read.getAlignmentStart();
 		if (readStart > 0) {
-			// check that read end is not greater than array length.
-			// if it is, limit loop iteration to end of array
-			final int loopEnd =  Math.min(read.getAlignmentEnd(), perBaseCoverages.length);
-			for (int pos = readStart - 1 ; pos < loopEnd ; pos++) {
-				if (-1 < perBaseCoverages[pos]) {
-					perBaseCoverages[pos] ++;
+			// limit loop iteration to the part of the read that falls within the array
+			final int loopStart = Math.max(readStart - 1, offset);
+			final int loopEnd =  Math.min(read.getAlignmentEnd(), offset + perBaseCoverages.length);
+			for (int pos = loopStart ; pos < loopEnd ; pos++) {
+				if (-1 < perBaseCoverages[pos - offset]) {
+					perBaseCoverages[pos - offset] ++;
 				}
 			}
 		}
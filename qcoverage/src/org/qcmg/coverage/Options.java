@@ -28,6 +28,7 @@ public final class Options {
 	private static final String LOG_LEVEL_OPTION_DESCRIPTION = Messages.getMessage("LOG_LEVEL_OPTION_DESCRIPTION");
 	private static final String VALIDATION_STRINGENCY_OPTION_DESCRIPTION = Messages.getMessage("VALIDATION_STRINGENCY_DESCRIPTION");
 	private static final String LOW_READ_DEPTH_OPTION_DESCRIPTION = Messages.getMessage("LOW_READ_DEPTH_OPTION_DESCRIPTION");
+	private static final String SHARD_SIZE_OPTION_DESCRIPTION = Messages.getMessage("SHARD_SIZE_OPTION_DESCRIPTION");
 
 	private final OptionParser parser = new OptionParser();
 	private final OptionSet options;
@@ -43,6 +44,7 @@ public final class Options {
 	private String query;
 	private String validation;
 	private Integer lowReadDepthCutoff;
+	private Integer shardSize;
 
 	
 	@Deprecated
@@ -76,6 +78,7 @@ public final class Options {
 		parser.accepts("per-feature", PER_FEATURE_OPTION_DESCRIPTION);
 		parser.accepts("validation", VALIDATION_STRINGENCY_OPTION_DESCRIPTION).withRequiredArg().ofType(String.class);
 		parser.accepts("readdepth-cutoff", LOW_READ_DEPTH_OPTION_DESCRIPTION).withOptionalArg().ofType(Integer.class);
+		parser.accepts("shard-size", SHARD_SIZE_OPTION_DESCRIPTION).withRequiredArg().ofType(Integer.class);
 
 
 
@@ -121,6 +124,7 @@ public final class Options {
 			validation = (String) options.valueOf("validation");
 
 			lowReadDepthCutoff = (Integer) options.valueOf("readdepth-cutoff");
+			shardSize = (Integer) options.valueOf("shard-size");
 		}
 	}
 
@@ -234,6 +238,14 @@ public final class Options {
 		return lowReadDepthCutoff;
 	}
 
+	public boolean hasShardSizeOption() {
+		return options.has("shard-size");
+	}
+
+	public Integer getShardSize() {
+		return shardSize;
+	}
+
 	public void displayHelp() throws Exception {
 		parser.formatHelpWith(new BuiltinHelpFormatter(135, 2));
 		parser.printHelpOn(System.err);
@@ -317,6 +329,9 @@ public final class Options {
 		if (hasNumberThreadsOption() && 1 < getNumberThreads().length) {
 			throw new Exception("Thread count can be specified once");
 		}
+		if (hasShardSizeOption() && (null == getShardSize() || getShardSize() < 1)) {
+			throw new Exception("Shard size must be a positive number");
+		}
 		//vcf output is only allowed under per-feature mode
 		if( hasVcfFlag() && ! hasPerFeatureOption())  {
 			throw new Exception("Only per-feature mode can produce VCF format output");
@@ -30,74 +30,39 @@ public class PhysicalCoverageAlgorithm implements Algorithm {
 	
 	@Override
 	public void applyTo(final SAMRecord read, Object perBaseCoveragesObj, boolean fullyPopulated) {
-//		@Override
-//		public void applyTo(final SAMRecord read, final int[] perBaseCoverages, boolean fullyPopulated) {	
+		applyTo(read, perBaseCoveragesObj, 0, fullyPopulated);
+	}
+
+	@Override
+	public void applyTo(final SAMRecord read, Object perBaseCoveragesObj, int offset, boolean fullyPopulated) {
 		
 		//cast to int array
 		int[] perBaseCoverages = (int[]) perBaseCoveragesObj;
 		final int readStart = read.getAlignmentStart();
 		if (readStart > 0) {
-			// Adjust from 1-based to 0-based indexing
-			final int length = perBaseCoverages.length;
+			final long end;
 			if (read.getReadPairedFlag()) {
 				final int insertSize = read.getInferredInsertSize();
-				
-				if (0 <= insertSize) {
-					final int end = readStart + insertSize;
-					
-					// Avoid bad isizes beyond end-of-reference
-					// check once - if OK no need to do further checks
-					// if fail, check for each base
-					if (end < length) {
-						if (fullyPopulated) {
-							for (int pos = readStart; pos <= end; pos++) {
-								perBaseCoverages[pos - 1] ++;
-							}
-						} else {
-							for (int pos = readStart; pos <= end; pos++) {
-								if (-1 < perBaseCoverages[pos - 1])
-									perBaseCoverages[pos - 1] ++;
-							}
-							
-						}
-					} else {
-						// Avoid bad isizes beyond end-of-reference
-						if (fullyPopulated) {
-							for (int pos = readStart; pos <= end && (pos - 1) < length; pos++) {
-								perBaseCoverages[pos - 1] ++;
-							}
-						} else {
-							for (int pos = readStart; pos <= end && (pos - 1) < length; pos++) {
-								if (-1 < perBaseCoverages[pos - 1])
-									perBaseCoverages[pos - 1] ++;
-							}
-							
-						}
-					}
+				if (0 > insertSize) {
+					return;
+				}
+				end = (long) readStart + insertSize;
+			} else {
+				end = read.getAlignmentEnd();
+			}
+			
+			// Adjust from 1-based to 0-based indexing, and restrict to the positions covered by the array
+			// This also takes care of bad isizes beyond end-of-reference
+			final int from = Math.max(readStart - 1, offset) - offset;
+			final int to = (int) Math.min(end, (long) offset + perBaseCoverages.length) - offset;
+			if (fullyPopulated) {
+				for (int i = from ; i < to ; i++) {
+					perBaseCoverages[i] ++;
 				}
 			} else {
-				final int readEnd = read.getAlignmentEnd();
-				if (readEnd < length) {
-					if (fullyPopulated) {
-						for (int pos = readStart ; pos <= readEnd ; pos++)
-							perBaseCoverages[pos - 1] ++;
-					} else {
-						for (int pos = readStart ; pos <= readEnd ; pos++)
-							if (-1 < perBaseCoverages[pos - 1])
-								perBaseCoverages[pos - 1] ++;
-					}
-				} else {
-					if (fullyPopulated) {
-						for (int pos = readStart ; pos <= readEnd && (pos -1) < length; pos++) {
-							perBaseCoverages[pos - 1] ++;
-						}
-					} else {
-						for (int pos = readStart ; pos <= readEnd && (pos -1) < length; pos++) {
-							if (-1 < perBaseCoverages[pos - 1])
-								perBaseCoverages[pos - 1] ++;
-						}
-						
-					}
+				for (int i = from ; i < to ; i++) {
+					if (-1 < perBaseCoverages[i])
+						perBaseCoverages[i] ++;
 				}
 			}
 		}
@@ -15,9 +15,6 @@ class WorkerThread extends Thread {
 	private final HashMap<String, TreeMap<Integer, AtomicLong>> reducedResults = new HashMap<>();
 	private final HashMap<String, List<LowReadDepthRegion>> reducedLowReadDepthResults = new HashMap<>();
 
-	private final HashSet<HashMap<String, HashMap<Integer, AtomicLong>>> perJobResults = new HashSet<>();
-	private final HashSet<HashMap<String, List<LowReadDepthRegion>>> perJobLowReadDepthResults = new HashSet<>();
-
 	private final QLogger logger;
 	private final Thread mainThread;
 
@@ -51,11 +48,14 @@ class WorkerThread extends Thread {
 				logger.info(getName() + " running job [" + job + "]");
 				job.run();
 				logger.info(getName() + " completed job [" + job + "]");
-				perJobResults.add(job.getResults());
-				perJobLowReadDepthResults.add(job.getLowReadDepthResults());
-				logger.debug(getName() + " added job results. Results size: "
+				/*
+				 * reduce the results as each job completes, rather than holding on to them until the queue is empty,
+				 * as there will typically be many (shard) jobs
+				 */
+				reduceResults(job.getResults(), job.getLowReadDepthResults());
+				logger.debug(getName() + " reduced job results. Results size: "
 						+ job.getResults().size());
-				logger.debug(getName() + " added job low read depth results. Results size: "
+				logger.debug(getName() + " reduced job low read depth results. Results size: "
 						+ job.getLowReadDepthResults().size());
 			} catch (InterruptedException e) {
 				throw new RuntimeException(e.getMessage());
@@ -63,30 +63,23 @@ class WorkerThread extends Thread {
 				mainThread.interrupt();
 			}
 		}
-		logger.info(getName() + " reducing results from handled jobs");
-		reduceResults();
-		logger.debug(getName() + " reducing results: " + reducedResults);
+		logger.debug(getName() + " reduced results: " + reducedResults);
 	}
 
-	private void reduceResults() {
-		for (HashMap<String, HashMap<Integer, AtomicLong>> mappedResult : perJobResults) {
-			for (String id : mappedResult.keySet()) {
-                TreeMap<Integer, AtomicLong> covToBaseCountMap = reducedResults.computeIfAbsent(id, k -> new TreeMap<>());
-                for (Integer cov : mappedResult.get(id).keySet()) {
-                    AtomicLong reducedBaseCount = covToBaseCountMap.computeIfAbsent(cov, k -> new AtomicLong());
-                    AtomicLong mappedBaseCount = mappedResult.get(id).get(cov);
-					assert (null != mappedBaseCount); // Implicit to above logic
-					reducedBaseCount.addAndGet(mappedBaseCount.get());
-				}
+	private void reduceResults(HashMap<String, HashMap<Integer, AtomicLong>> mappedResult, HashMap<String, List<LowReadDepthRegion>> mappedLowReadDepthResult) {
+		for (String id : mappedResult.keySet()) {
+            TreeMap<Integer, AtomicLong> covToBaseCountMap = reducedResults.computeIfAbsent(id, k -> new TreeMap<>());
+            for (Integer cov : mappedResult.get(id).keySet()) {
+                AtomicLong reducedBaseCount = covToBaseCountMap.computeIfAbsent(cov, k -> new AtomicLong());
+                AtomicLong mappedBaseCount = mappedResult.get(id).get(cov);
+				assert (null != mappedBaseCount); // Implicit to above logic
+				reducedBaseCount.addAndGet(mappedBaseCount.get());
 			}
 		}
 		//Reduce results for low read depth if run
-		for (HashMap<String, List<LowReadDepthRegion>> mappedLowReadDepthResult : perJobLowReadDepthResults) {
-			for (String key : mappedLowReadDepthResult.keySet()) {
-
-                List<LowReadDepthRegion> lowReadDepthRegions = reducedLowReadDepthResults.computeIfAbsent(key, k -> new ArrayList<>());
-                lowReadDepthRegions.addAll(mappedLowReadDepthResult.get(key));
-			}
+		for (String key : mappedLowReadDepthResult.keySet()) {
+            List<LowReadDepthRegion> lowReadDepthRegions = reducedLowReadDepthResults.computeIfAbsent(key, k -> new ArrayList<>());
+            lowReadDepthRegions.addAll(mappedLowReadDepthResult.get(key));
 		}
 	}
 }
@@ -1,5 +1,10 @@
 package org.qcmg.coverage;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
 import org.junit.Test;
 import org.qcmg.qio.gff3.Gff3Record;
 
@@ -18,4 +23,60 @@ public class JobQueueTest {
 		rec.setEnd(1);
         assertTrue(JobQueue.isGff3RecordValid(rec));
 	}
+
+	@Test
+	public void getShards() {
+		List<int[]> shards = JobQueue.getShards(25, 10, Collections.emptyList(), true);
+		assertEquals(3, shards.size());
+		assertArrayEquals(new int[] {1, 10}, shards.get(0));
+		assertArrayEquals(new int[] {11, 20}, shards.get(1));
+		assertArrayEquals(new int[] {21, 25}, shards.get(2));
+
+		assertEquals(1, JobQueue.getShards(10, 10, Collections.emptyList(), true).size());
+		assertEquals(0, JobQueue.getShards(0, 10, Collections.emptyList(), true).size());
+		assertArrayEquals(new int[] {1, 5}, JobQueue.getShards(5, Integer.MAX_VALUE, Collections.emptyList(), true).get(0));
+	}
+
+	@Test
+	public void getShardsWithoutSplittingFeatures() {
+		List<Gff3Record> features = Arrays.asList(getFeature(5, 12), getFeature(8, 15), getFeature(21, 30), getFeature(31, 32), getFeature(45, 70));
+
+		// features are split
+		assertEquals(8, JobQueue.getShards(75, 10, features, true).size());
+
+		List<int[]> shards = JobQueue.getShards(75, 10, features, false);
+		assertEquals(5, shards.size());
+		assertArrayEquals(new int[] {1, 15}, shards.get(0));
+		assertArrayEquals(new int[] {16, 30}, shards.get(1));
+		assertArrayEquals(new int[] {31, 40}, shards.get(2));
+		assertArrayEquals(new int[] {41, 70}, shards.get(3));
+		assertArrayEquals(new int[] {71, 75}, shards.get(4));
+
+		// feature running to the end of the sequence
+		shards = JobQueue.getShards(75, 10, Collections.singletonList(getFeature(5, 75)), false);
+		assertEquals(1, shards.size());
+		assertArrayEquals(new int[] {1, 75}, shards.get(0));
+	}
+
+	@Test
+	public void assignFeaturesToShards() {
+		Gff3Record f1 = getFeature(5, 12);
+		Gff3Record f2 = getFeature(21, 21);
+		Gff3Record f3 = getFeature(35, 36);
+		List<int[]> shards = JobQueue.getShards(40, 10, Collections.emptyList(), true);
+		List<HashSet<Gff3Record>> perShardFeatures = JobQueue.assignFeaturesToShards(shards, Arrays.asList(f1, f2, f3));
+		assertEquals(4, perShardFeatures.size());
+		assertEquals(new HashSet<>(Collections.singletonList(f1)), perShardFeatures.get(0));
+		assertEquals(new HashSet<>(Collections.singletonList(f1)), perShardFeatures.get(1));
+		assertEquals(new HashSet<>(Collections.singletonList(f2)), perShardFeatures.get(2));
+		assertEquals(new HashSet<>(Collections.singletonList(f3)), perShardFeatures.get(3));
+	}
+
+	private static Gff3Record getFeature(int start, int end) {
+		Gff3Record rec = new Gff3Record();
+		rec.setSeqId("chr1");
+		rec.setStart(start);
+		rec.setEnd(end);
+		return rec;
+	}
 }
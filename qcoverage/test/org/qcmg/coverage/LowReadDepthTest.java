@@ -114,6 +114,32 @@ public class LowReadDepthTest {
 
     }
 
+    @Test
+    public void lowReadDepthSharded() throws Exception {
+        String fname = testFolder.getRoot().getAbsolutePath() + "/output.bed";
+        File fOutput = new File(fname);
+        // shards should be extended so that the feature is not split
+        String cmd = "--log ./logfile --type low_readdepth --shard-size 10 --thread 2 --input-gff3 " + gff1000To1065 + " --input-bam " + bam + " --input-bai " + bai + " --output " + fname + " --readdepth-cutoff 8";
+
+        Executor exec = execute(cmd);
+
+        assertEquals(0, exec.getErrCode());
+
+        assertTrue(fOutput.exists());
+
+        List<String> fileContents;
+        try (BufferedReader r = new BufferedReader(new FileReader(fOutput))) {
+            fileContents = r.lines().toList();
+
+        }
+        assertEquals(2, fileContents.size());
+        assertEquals("chr1\t999\t1006", fileContents.get(0));
+        assertEquals("chr1\t1055\t1065", fileContents.get(1));
+
+        fOutput.delete();
+
+    }
+
     public static void createCoverageBam(String outputFileName, List<SAMRecord> recs, SAMFileHeader h) {
 
         File outputFile = new File(outputFileName);
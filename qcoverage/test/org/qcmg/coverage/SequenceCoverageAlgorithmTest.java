@@ -107,6 +107,32 @@ public class SequenceCoverageAlgorithmTest {
 		Assert.assertArrayEquals(arrayOld, arrayNew);
 	}
 	
+	@Test
+	public void testApplyToShard() {
+		SequenceCoverageAlgorithm algorithm = new SequenceCoverageAlgorithm();
+		int [] whole = new int[1024];
+		SAMRecord rec = new SAMRecord(null);
+		rec.setReadString("AAAAAAAAAACCCCCCCCCCGGGGGGGGGGTTTTTTTTTT");
+		rec.setCigarString("40M");
+		
+		int [][] shards = new int[][] {new int[100], new int[100], new int[824]};
+		for (int start : new int[] {1, 80, 95, 150, 990}) {
+			rec.setAlignmentStart(start);
+			algorithm.applyTo(rec, whole);
+			algorithm.applyTo(rec, shards[0], 0, false);
+			algorithm.applyTo(rec, shards[1], 100, false);
+			algorithm.applyTo(rec, shards[2], 200, false);
+		}
+		
+		// shards combined should match the whole
+		int [] combined = new int[1024];
+		System.arraycopy(shards[0], 0, combined, 0, 100);
+		System.arraycopy(shards[1], 0, combined, 100, 100);
+		System.arraycopy(shards[2], 0, combined, 200, 824);
+		Assert.assertArrayEquals(whole, combined);
+		Assert.assertEquals(2, shards[1][0]);
+	}
+	
 	@Ignore
 	public void testApplyToPerformance() {
 		SequenceCoverageAlgorithm algorithm = new SequenceCoverageAlgorithm();
@@ -266,6 +266,31 @@ public class SequenceCoverageTest {
         fOutput.delete();
     }
 
+    @Test
+    public final void readSpanningShards() throws Exception {
+        File gff = testFolder.newFile("gff8");
+        createGFF3File(54000, 54120, gff);
+        String fname = testFolder.getRoot().getAbsolutePath() + "/output";
+        File fOutput = new File(fname + ".txt");
+
+        // read covers 54026-54070, and so spans several 20 base shards
+        Executor exec = execute("--log ./logfile --type seq --shard-size 20 --thread 2 --input-gff3 " + gff.getAbsolutePath() + " --input-bam " + bam + " --input-bai " + bai + " --output " + fname);
+
+        assertEquals(0, exec.getErrCode());
+        assertTrue(fOutput.exists());
+
+        List<String> fileContents;
+        try (BufferedReader r = new BufferedReader(new FileReader(fOutput))) {
+            fileContents = r.lines().toList();
+        }
+
+        assertEquals(3, fileContents.size());
+        assertEquals("sequence	exon	76	0x", fileContents.get(1));
+        assertEquals("sequence	exon	45	1x", fileContents.get(2));
+
+        fOutput.delete();
+    }
+
     public static void createCoverageBam(String outputFileName, List<SAMRecord> recs, SAMFileHeader h) {
         File outputFile = new File(outputFileName);
         SAMFileWriterFactory.setDefaultCreateIndexWhileWriting(true);
@@ -9,7 +9,6 @@ package org.qcmg.motif;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -21,38 +20,61 @@ import org.qcmg.motif.util.MotifConstants;
 import org.qcmg.motif.util.MotifMode;
 import org.qcmg.motif.util.MotifUtils;
 import org.qcmg.motif.util.MotifsAndRegexes;
+import org.qcmg.motif.util.MultiMotifMatcher;
+import org.qcmg.motif.util.RegexAutomaton;
 import org.qcmg.motif.util.RegionCounter;
 
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.util.StringUtil;
 
+/**
+ * Searches the bases of each read for the stage one motifs/regex, and if found, the stage two motifs/regex.
+ * <p>
+ * String motifs are searched for using a {@link MultiMotifMatcher} (Aho-Corasick automaton) directly over the read's bases.
+ * Regexes that can be compiled into a {@link RegexAutomaton} are searched for in the same way, 
+ * with <code>java.util.regex</code> only being used to extract the stage two matches from reads that the automaton has found to contain a match.
+ * Regexes that can't be compiled fall back to <code>java.util.regex</code>.
+ */
 public class MotifCoverageAlgorithm implements Algorithm {
 	
 	final MotifMode mode;
 	
-	 Set<String> stageOneMotifs;
-	 Set<String> stageTwoMotifs;
+	final MultiMotifMatcher stageOneMotifs;
+	final MultiMotifMatcher stageTwoMotifs;
+	/*
+	 * indices into the stage two motifs, in the order in which matches are reported
+	 */
+	final int[] stageTwoMotifOrder;
 
 	final int windowSize;
 	
 	final Pattern stageOneRegex;
 	final Pattern stageTwoRegex;
+	final RegexAutomaton stageOneAutomaton;
+	final RegexAutomaton stageTwoAutomaton;
 	
 	public MotifCoverageAlgorithm(MotifsAndRegexes motifs) {
 		this.mode = motifs.getMotifMode();
 		
-		if (mode.stageOneString()) {
-			this.stageOneMotifs = new HashSet<>(motifs.getStageOneMotifs().getMotifs());
-		}
-		if (mode.stageTwoString()) {
-			this.stageTwoMotifs = new HashSet<>(motifs.getStageTwoMotifs().getMotifs());
-		}
+		this.stageOneMotifs = mode.stageOneString() ? motifs.getStageOneMotifMatcher() : null;
+		this.stageTwoMotifs = mode.stageTwoString() ? motifs.getStageTwoMotifMatcher() : null;
+		this.stageTwoMotifOrder = null != stageTwoMotifs ? getReportingOrder(stageTwoMotifs.getMotifs()) : null;
 		
 		this.stageOneRegex = motifs.getStageOneRegexPattern();
 		this.stageTwoRegex = motifs.getStageTwoRegexPattern();
+		this.stageOneAutomaton = motifs.getStageOneRegexAutomaton();
+		this.stageTwoAutomaton = motifs.getStageTwoRegexAutomaton();
 		
 		this.windowSize = motifs.getWindowSize();
 	}
 
+	/*
+	 * stage two motifs have always been reported in the iteration order of a HashSet of the motifs (which also removes any duplicates) - keep it that way
+	 */
+	private static int[] getReportingOrder(List<String> motifs) {
+		return new HashSet<>(motifs).stream().mapToInt(motifs::indexOf).toArray();
+	}
+
 	@Override
 	public String getName() {
 		return "motif coverage";
@@ -64,9 +86,9 @@ public class MotifCoverageAlgorithm implements Algorithm {
 			throw new IllegalArgumentException("Null SAMRecord passed to applyTo");
 		}
 		
-		String readString = read.getReadString();
+		byte[] bases = read.getReadBases();
 		
-		if (stageOneSearch(readString)) {
+		if (stageOneSearchBases(bases)) {
 			int readStart = read.getAlignmentStart();
 			String readChr = read.getReferenceName();
 			if (read.getReadUnmappedFlag()) {
@@ -94,7 +116,7 @@ public class MotifCoverageAlgorithm implements Algorithm {
 			rc.updateStage1Coverage();
 			
 			// get motifs
-			String stm = getStageTwoMotifs(readString);
+			String stm = getStageTwoMotifsFromBases(bases);
 			if ( ! StringUtils.isNullOrEmpty(stm)) {
 				
 				rc.addMotif(stm, ! read.getReadNegativeStrandFlag(), ! read.getReadUnmappedFlag());
@@ -115,24 +137,44 @@ public class MotifCoverageAlgorithm implements Algorithm {
 	 * @return a concatenated string of stage two motifs found, or null if no motifs are found
 	 */
 	String getStageTwoMotifs(String readString) {
-		if ( ! StringUtils.isNullOrEmpty(readString)) {
+		return null == readString ? null : getStageTwoMotifsFromBases(StringUtil.stringToBytes(readString));
+	}
+	
+	/**
+	 * As per {@link #getStageTwoMotifs(String)}, but searches the read's bases directly
+	 */
+	String getStageTwoMotifsFromBases(byte[] bases) {
+		if (null != bases && bases.length > 0) {
 			
 			StringBuilder motifs = new StringBuilder();
 			boolean firstAppend = true;
 			if (mode.stageTwoString()) {
-				for (String motif : stageTwoMotifs) {
-					if (readString.contains(motif)) {
+				int[] found = stageTwoMotifs.findAll(bases);
+				if (found.length == 0) {
+					return null;
+				}
+				boolean[] present = new boolean[stageTwoMotifs.getMotifs().size()];
+				for (int i : found) {
+					present[i] = true;
+				}
+				List<String> motifList = stageTwoMotifs.getMotifs();
+				for (int i : stageTwoMotifOrder) {
+					if (present[i]) {
 						if (!firstAppend) {
 							motifs.append(MotifUtils.M_D);
 						} else {
 							firstAppend = false;
 						}
-						motifs.append(motif);
+						motifs.append(motifList.get(i));
 					}
 				}
 			} else {
 				
-				Matcher matcher = stageTwoRegex.matcher(readString);
+				if (null != stageTwoAutomaton && ! stageTwoAutomaton.find(bases)) {
+					// no match - no need to run the regex
+					return null;
+				}
+				Matcher matcher = stageTwoRegex.matcher(StringUtil.bytesToString(bases));
 				while (matcher.find()) {
 					if (!firstAppend) {
 						motifs.append(MotifUtils.M_D);
@@ -170,20 +212,24 @@ public class MotifCoverageAlgorithm implements Algorithm {
  * @return true if a match is found according to the current processing mode, false otherwise
  */
 	boolean stageOneSearch(String readString) {
-		if (readString == null || readString.isEmpty()) {
+		return null != readString && stageOneSearchBases(StringUtil.stringToBytes(readString));
+	}
+	
+	/**
+	 * As per {@link #stageOneSearch(String)}, but searches the read's bases directly
+	 */
+	boolean stageOneSearchBases(byte[] bases) {
+		if (bases == null || bases.length == 0) {
 			return false;
 		}
 		
 		if (mode.stageOneString()) {
-			for (String motif : stageOneMotifs) {
-				if (readString.contains(motif)) {
-					return true;
-				}
-			}
+			return stageOneMotifs.find(bases);
+		} else if (null != stageOneAutomaton) {
+			return stageOneAutomaton.find(bases);
 		} else {		// regex
-			Matcher matcher = stageOneRegex.matcher(readString);
+			Matcher matcher = stageOneRegex.matcher(StringUtil.bytesToString(bases));
             return matcher.find();
 		}
-		return false;
 	}
 }
@@ -5,14 +5,22 @@ package org.qcmg.motif.util;
 
 import java.util.regex.Pattern;
 
+import org.qcmg.common.log.QLogger;
+import org.qcmg.common.log.QLoggerFactory;
 import org.qcmg.motif.Motifs;
 
 public class MotifsAndRegexes {
+	
+	private final static QLogger logger = QLoggerFactory.getLogger(MotifsAndRegexes.class);
 
 	private final Motifs stageOneMotifs;
 	private final Motifs stageTwoMotifs;
 	private final Pattern stageOneRegexPattern;
 	private final Pattern stageTwoRegexPattern;
+	private final MultiMotifMatcher stageOneMotifMatcher;
+	private final MultiMotifMatcher stageTwoMotifMatcher;
+	private final RegexAutomaton stageOneRegexAutomaton;
+	private final RegexAutomaton stageTwoRegexAutomaton;
 	private final int windowSize;
 	private final MotifMode mode;
 	
@@ -25,6 +33,14 @@ public class MotifsAndRegexes {
 		stageOneRegexPattern = null != stageOneRegex ? Pattern.compile(stageOneRegex) : null;
 		stageTwoRegexPattern = null != stageTwoRegex ? Pattern.compile(stageTwoRegex) : null;
 		
+		/*
+		 * compile the motifs and regexes into automata that can be run over a read's bases
+		 */
+		stageOneMotifMatcher = null != stageOneMotifs ? new MultiMotifMatcher(stageOneMotifs.getMotifs()) : null;
+		stageTwoMotifMatcher = null != stageTwoMotifs ? new MultiMotifMatcher(stageTwoMotifs.getMotifs()) : null;
+		stageOneRegexAutomaton = compileRegex(stageOneRegex);
+		stageTwoRegexAutomaton = compileRegex(stageTwoRegex);
+		
 		if (null != this.stageOneMotifs) {
 			if (null != this.stageTwoMotifs) {
 				mode = MotifMode.STRING_STRING;
@@ -49,6 +65,17 @@ public class MotifsAndRegexes {
 		}
 	}
 	
+	private static RegexAutomaton compileRegex(String regex) {
+		if (null == regex) {
+			return null;
+		}
+		RegexAutomaton automaton = RegexAutomaton.compile(regex);
+		if (null == automaton) {
+			logger.info("regex: " + regex + " can't be compiled into an automaton - will use java.util.regex");
+		}
+		return automaton;
+	}
+	
 	public MotifMode getMotifMode() {
 		return mode;
 	}
@@ -69,6 +96,28 @@ public class MotifsAndRegexes {
 		return stageTwoRegexPattern;
 	}
 
+	public MultiMotifMatcher getStageOneMotifMatcher() {
+		return stageOneMotifMatcher;
+	}
+	
+	public MultiMotifMatcher getStageTwoMotifMatcher() {
+		return stageTwoMotifMatcher;
+	}
+	
+	/**
+	 * Returns the automaton compiled from the stage one regex, or null if there is no stage one regex, or it could not be compiled
+	 */
+	public RegexAutomaton getStageOneRegexAutomaton() {
+		return stageOneRegexAutomaton;
+	}
+	
+	/**
+	 * Returns the automaton compiled from the stage two regex, or null if there is no stage two regex, or it could not be compiled
+	 */
+	public RegexAutomaton getStageTwoRegexAutomaton() {
+		return stageTwoRegexAutomaton;
+	}
+
 	public int getWindowSize() {
 		return windowSize;
 	}
@@ -0,0 +1,169 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+package org.qcmg.motif.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Aho-Corasick automaton that searches for a number of motifs in a single pass over a read's bases.
+ * <p>
+ * The goto and failure functions are collapsed into a dense transition table (one row of 256 entries per trie node),
+ * so each base costs a single array lookup, regardless of how many motifs there are.
+ * Instances are immutable and can be shared between threads.
+ */
+public class MultiMotifMatcher {
+
+	private static final int ALPHABET_SIZE = 256;
+
+	private final List<String> motifs;
+	private final int[] transitions;
+	/*
+	 * indices of the motifs that end at each node, including those inherited via failure links
+	 */
+	private final int[][] outputs;
+
+	public MultiMotifMatcher(List<String> motifs) {
+		if (null == motifs) {
+			throw new IllegalArgumentException("Null list of motifs passed to MultiMotifMatcher");
+		}
+		this.motifs = new ArrayList<>(motifs);
+
+		/*
+		 * build the trie
+		 */
+		List<int[]> gotos = new ArrayList<>();
+		List<TIntArrayList> nodeOutputs = new ArrayList<>();
+		gotos.add(newRow());
+		nodeOutputs.add(new TIntArrayList());
+		for (int m = 0 ; m < this.motifs.size() ; m++) {
+			byte[] motif = this.motifs.get(m).getBytes(StandardCharsets.ISO_8859_1);
+			if (motif.length == 0) {
+				throw new IllegalArgumentException("Empty motif passed to MultiMotifMatcher");
+			}
+			int node = 0;
+			for (byte b : motif) {
+				int next = gotos.get(node)[b & 0xff];
+				if (next == -1) {
+					next = gotos.size();
+					gotos.get(node)[b & 0xff] = next;
+					gotos.add(newRow());
+					nodeOutputs.add(new TIntArrayList());
+				}
+				node = next;
+			}
+			nodeOutputs.get(node).add(m);
+		}
+
+		/*
+		 * breadth first traversal to set the failure links, and fill in the missing transitions
+		 */
+		int noOfNodes = gotos.size();
+		int[] failure = new int[noOfNodes];
+		transitions = new int[noOfNodes * ALPHABET_SIZE];
+		Deque<Integer> queue = new ArrayDeque<>();
+		int[] root = gotos.get(0);
+		for (int c = 0 ; c < ALPHABET_SIZE ; c++) {
+			int child = root[c];
+			if (child == -1) {
+				transitions[c] = 0;
+			} else {
+				transitions[c] = child;
+				failure[child] = 0;
+				queue.add(child);
+			}
+		}
+		while ( ! queue.isEmpty()) {
+			int node = queue.poll();
+			nodeOutputs.get(node).addAll(nodeOutputs.get(failure[node]));
+			int[] row = gotos.get(node);
+			for (int c = 0 ; c < ALPHABET_SIZE ; c++) {
+				int child = row[c];
+				int failureTransition = transitions[failure[node] * ALPHABET_SIZE + c];
+				if (child == -1) {
+					transitions[node * ALPHABET_SIZE + c] = failureTransition;
+				} else {
+					transitions[node * ALPHABET_SIZE + c] = child;
+					failure[child] = failureTransition;
+					queue.add(child);
+				}
+			}
+		}
+
+		outputs = new int[noOfNodes][];
+		for (int i = 0 ; i < noOfNodes ; i++) {
+			outputs[i] = nodeOutputs.get(i).toArray();
+		}
+	}
+
+	private static int[] newRow() {
+		int[] row = new int[ALPHABET_SIZE];
+		Arrays.fill(row, -1);
+		return row;
+	}
+
+	public List<String> getMotifs() {
+		return motifs;
+	}
+
+	/**
+	 * Returns true if any of the motifs are present in the supplied bases
+	 */
+	public boolean find(byte[] bases) {
+		if (null == bases) {
+			return false;
+		}
+		int node = 0;
+		for (byte b : bases) {
+			node = transitions[node * ALPHABET_SIZE + (b & 0xff)];
+			if (outputs[node].length > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the indices (into {@link #getMotifs()}) of the motifs that are present in the supplied bases, in ascending order.
+	 * An empty array is returned if there are none.
+	 */
+	public int[] findAll(byte[] bases) {
+		if (null == bases) {
+			return new int[0];
+		}
+		boolean[] found = null;
+		int noFound = 0;
+		int node = 0;
+		for (byte b : bases) {
+			node = transitions[node * ALPHABET_SIZE + (b & 0xff)];
+			int[] nodeOutput = outputs[node];
+			if (nodeOutput.length > 0) {
+				if (null == found) {
+					found = new boolean[motifs.size()];
+				}
+				for (int m : nodeOutput) {
+					if ( ! found[m]) {
+						found[m] = true;
+						noFound++;
+					}
+				}
+			}
+		}
+		int[] result = new int[noFound];
+		for (int m = 0, i = 0 ; i < noFound ; m++) {
+			if (found[m]) {
+				result[i++] = m;
+			}
+		}
+		return result;
+	}
+}
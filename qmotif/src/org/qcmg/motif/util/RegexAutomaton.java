@@ -0,0 +1,536 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+package org.qcmg.motif.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Deterministic finite automaton, compiled from a regular expression, that answers the question "does this regex find a match anywhere in these bases"
+ * (ie. <code>Pattern.compile(regex).matcher(bases).find()</code>) in a single pass over a read's bases with one table lookup per base, and no backtracking.
+ * <p>
+ * Only the regular subset of the <code>java.util.regex</code> syntax is supported - literals, <code>.</code>, character classes, groups, alternation,
+ * and the <code>* + ? {n} {n,} {n,m}</code> quantifiers (greedy or reluctant, which makes no difference as to whether a match exists).
+ * Anchors, back references, look-arounds, flags, predefined character classes, possessive quantifiers and non-ASCII characters are not,
+ * and {@link #compile(String)} returns null for such patterns, in which case the caller should fall back to <code>java.util.regex</code>.
+ * <p>
+ * The automaton does not report what the match was - if this is required, it can be used as a filter ahead of the regex.
+ * Instances are immutable and can be shared between threads.
+ */
+public class RegexAutomaton {
+
+	/*
+	 * the DFA is built eagerly - patterns that need more states than this fall back to java.util.regex
+	 */
+	static final int MAX_STATES = 4096;
+	static final int MAX_REPEAT = 100;
+
+	/*
+	 * ASCII characters plus a single symbol for everything else
+	 */
+	private static final int NO_OF_SYMBOLS = 129;
+	private static final int NON_ASCII = 128;
+
+	private final String regex;
+	private final int[] symbolClasses;
+	private final int noOfClasses;
+	private final int[] transitions;
+	private final boolean[] accepting;
+
+	private RegexAutomaton(String regex, int[] symbolClasses, int noOfClasses, int[] transitions, boolean[] accepting) {
+		this.regex = regex;
+		this.symbolClasses = symbolClasses;
+		this.noOfClasses = noOfClasses;
+		this.transitions = transitions;
+		this.accepting = accepting;
+	}
+
+	/**
+	 * Compiles the regex into an automaton
+	 *
+	 * @return the automaton, or null if the regex uses syntax that is not supported, or results in too many states
+	 */
+	public static RegexAutomaton compile(String regex) {
+		if (null == regex) {
+			return null;
+		}
+		try {
+			Nfa nfa = new Nfa();
+			Parser parser = new Parser(regex, nfa);
+			int[] fragment = parser.parse();
+			int match = nfa.newState(null);
+			nfa.connect(fragment[1], match);
+			return build(regex, nfa, fragment[0], match);
+		} catch (UnsupportedRegexException e) {
+			return null;
+		}
+	}
+
+	public String getRegex() {
+		return regex;
+	}
+
+	/**
+	 * Returns true if the regex matches anywhere in the supplied bases
+	 */
+	public boolean find(byte[] bases) {
+		int state = 0;
+		if (accepting[state]) {
+			return true;
+		}
+		for (byte b : bases) {
+			state = transitions[state * noOfClasses + symbolClasses[b & 0xff]];
+			if (accepting[state]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * subset construction. The start state's closure is added to every DFA state so that a match can start at any position.
+	 */
+	private static RegexAutomaton build(String regex, Nfa nfa, int start, int match) throws UnsupportedRegexException {
+		/*
+		 * symbols that are treated identically by every character set in the NFA can share a column in the DFA
+		 */
+		Map<String, Integer> classBySignature = new HashMap<>();
+		int[] symbolToClass = new int[NO_OF_SYMBOLS];
+		List<Integer> classRepresentatives = new ArrayList<>();
+		for (int s = 0 ; s < NO_OF_SYMBOLS ; s++) {
+			StringBuilder signature = new StringBuilder();
+			for (boolean[] set : nfa.sets) {
+				signature.append(null != set && set[s] ? '1' : '0');
+			}
+			Integer existing = classBySignature.get(signature.toString());
+			if (null == existing) {
+				existing = classRepresentatives.size();
+				classBySignature.put(signature.toString(), existing);
+				classRepresentatives.add(s);
+			}
+			symbolToClass[s] = existing;
+		}
+		int noOfClasses = classRepresentatives.size();
+		int[] symbolClasses = new int[256];
+		for (int b = 0 ; b < 256 ; b++) {
+			symbolClasses[b] = symbolToClass[b < 128 ? b : NON_ASCII];
+		}
+
+		BitSet startClosure = nfa.closure(start);
+		Map<BitSet, Integer> dfaStates = new HashMap<>();
+		List<BitSet> pending = new ArrayList<>();
+		dfaStates.put(startClosure, 0);
+		pending.add(startClosure);
+		TIntArrayList transitions = new TIntArrayList();
+		List<Boolean> accepting = new ArrayList<>();
+
+		for (int i = 0 ; i < pending.size() ; i++) {
+			BitSet current = pending.get(i);
+			accepting.add(current.get(match));
+			for (int c = 0 ; c < noOfClasses ; c++) {
+				int symbol = classRepresentatives.get(c);
+				BitSet next = (BitSet) startClosure.clone();
+				for (int s = current.nextSetBit(0) ; s >= 0 ; s = current.nextSetBit(s + 1)) {
+					boolean[] set = nfa.sets.get(s);
+					if (null != set && set[symbol]) {
+						next.or(nfa.closure(nfa.out1.get(s)));
+					}
+				}
+				Integer nextState = dfaStates.get(next);
+				if (null == nextState) {
+					nextState = pending.size();
+					if (nextState >= MAX_STATES) {
+						throw new UnsupportedRegexException("Too many states required for regex: " + regex);
+					}
+					dfaStates.put(next, nextState);
+					pending.add(next);
+				}
+				transitions.add(nextState);
+			}
+		}
+		boolean[] acceptingArray = new boolean[accepting.size()];
+		for (int i = 0 ; i < acceptingArray.length ; i++) {
+			acceptingArray[i] = accepting.get(i);
+		}
+		return new RegexAutomaton(regex, symbolClasses, noOfClasses, transitions.toArray(), acceptingArray);
+	}
+
+	/**
+	 * Thompson NFA. A state either consumes a symbol in its set and moves to out1, or (if its set is null) has epsilon transitions to out1 and/or out2.
+	 * Fragments are represented as int[] {start, end}, where end is an epsilon state with no outgoing transitions.
+	 */
+	private static class Nfa {
+		private final List<boolean[]> sets = new ArrayList<>();
+		private final TIntArrayList out1 = new TIntArrayList();
+		private final TIntArrayList out2 = new TIntArrayList();
+		private final Map<Integer, BitSet> closures = new HashMap<>();
+
+		int newState(boolean[] set) {
+			sets.add(set);
+			out1.add(-1);
+			out2.add(-1);
+			return sets.size() - 1;
+		}
+
+		void connect(int from, int to) {
+			if (out1.get(from) == -1) {
+				out1.set(from, to);
+			} else if (out2.get(from) == -1) {
+				out2.set(from, to);
+			} else {
+				throw new IllegalStateException("State " + from + " already has 2 transitions");
+			}
+		}
+
+		int[] symbol(boolean[] set) {
+			int s = newState(set);
+			int e = newState(null);
+			out1.set(s, e);
+			return new int[] {s, e};
+		}
+
+		int[] empty() {
+			int s = newState(null);
+			return new int[] {s, s};
+		}
+
+		int[] concat(int[] a, int[] b) {
+			connect(a[1], b[0]);
+			return new int[] {a[0], b[1]};
+		}
+
+		int[] alternate(int[] a, int[] b) {
+			int s = newState(null);
+			int e = newState(null);
+			connect(s, a[0]);
+			connect(s, b[0]);
+			connect(a[1], e);
+			connect(b[1], e);
+			return new int[] {s, e};
+		}
+
+		int[] optional(int[] a) {
+			int s = newState(null);
+			int e = newState(null);
+			connect(s, a[0]);
+			connect(s, e);
+			connect(a[1], e);
+			return new int[] {s, e};
+		}
+
+		int[] star(int[] a) {
+			int s = newState(null);
+			int e = newState(null);
+			connect(s, a[0]);
+			connect(s, e);
+			connect(a[1], a[0]);
+			connect(a[1], e);
+			return new int[] {s, e};
+		}
+
+		BitSet closure(int state) {
+			BitSet closure = closures.get(state);
+			if (null == closure) {
+				closure = new BitSet();
+				TIntArrayList stack = new TIntArrayList();
+				stack.add(state);
+				while ( ! stack.isEmpty()) {
+					int s = stack.removeAt(stack.size() - 1);
+					if (closure.get(s)) {
+						continue;
+					}
+					closure.set(s);
+					if (null == sets.get(s)) {
+						if (out1.get(s) != -1) {
+							stack.add(out1.get(s));
+						}
+						if (out2.get(s) != -1) {
+							stack.add(out2.get(s));
+						}
+					}
+				}
+				closures.put(state, closure);
+			}
+			return closure;
+		}
+	}
+
+	/*
+	 * thrown when the regex uses syntax that the automaton does not support, or needs too many states - compile returns null and the caller falls back to java.util.regex
+	 */
+	private static class UnsupportedRegexException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		UnsupportedRegexException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Recursive descent parser that builds the NFA as it goes.
+	 * As a fragment may need to be repeated, each atom is parsed into a "recipe" (its start and end index in the regex) and re-parsed for each copy.
+	 */
+	private static class Parser {
+		private final String regex;
+		private final Nfa nfa;
+		private int pos;
+
+		Parser(String regex, Nfa nfa) {
+			this.regex = regex;
+			this.nfa = nfa;
+		}
+
+		int[] parse() throws UnsupportedRegexException {
+			int[] fragment = parseAlternation();
+			if (pos != regex.length()) {
+				throw new UnsupportedRegexException("Unexpected character at position " + pos + " in regex: " + regex);
+			}
+			return fragment;
+		}
+
+		private boolean more() {
+			return pos < regex.length();
+		}
+
+		private char peek() {
+			return regex.charAt(pos);
+		}
+
+		private int[] parseAlternation() throws UnsupportedRegexException {
+			int[] fragment = parseConcatenation();
+			while (more() && peek() == '|') {
+				pos++;
+				fragment = nfa.alternate(fragment, parseConcatenation());
+			}
+			return fragment;
+		}
+
+		private int[] parseConcatenation() throws UnsupportedRegexException {
+			int[] fragment = nfa.empty();
+			while (more() && peek() != '|' && peek() != ')') {
+				fragment = nfa.concat(fragment, parseRepetition());
+			}
+			return fragment;
+		}
+
+		private int[] parseRepetition() throws UnsupportedRegexException {
+			int atomStart = pos;
+			int[] fragment = parseAtom();
+			int atomEnd = pos;
+			while (more()) {
+				char c = peek();
+				int min;
+				int max;
+				if (c == '*') {
+					min = 0;
+					max = -1;
+					pos++;
+				} else if (c == '+') {
+					min = 1;
+					max = -1;
+					pos++;
+				} else if (c == '?') {
+					min = 0;
+					max = 1;
+					pos++;
+				} else if (c == '{' && isBoundedRepeat()) {
+					pos++;
+					min = parseNumber();
+					max = min;
+					if (peek() == ',') {
+						pos++;
+						max = peek() == '}' ? -1 : parseNumber();
+					}
+					pos++;		// closing brace
+					if ((max != -1 && max < min) || min > MAX_REPEAT || max > MAX_REPEAT) {
+						throw new UnsupportedRegexException("Unsupported repetition in regex: " + regex);
+					}
+				} else {
+					break;
+				}
+				if (more() && peek() == '?') {
+					// reluctant - no difference as to whether a match exists
+					pos++;
+				} else if (more() && peek() == '+') {
+					throw new UnsupportedRegexException("Possessive quantifiers are not supported: " + regex);
+				}
+				int quantifierEnd = pos;
+				fragment = repeat(fragment, atomStart, atomEnd, min, max);
+				/*
+				 * stacked quantifiers (eg. (a{2}){3}) apply to the repetition, so treat everything so far as the atom
+				 */
+				atomEnd = quantifierEnd;
+			}
+			return fragment;
+		}
+
+		private boolean isBoundedRepeat() {
+			int close = regex.indexOf('}', pos);
+			return close > pos + 1 && regex.substring(pos + 1, close).matches("\\d+(,\\d*)?");
+		}
+
+		private int parseNumber() {
+			int start = pos;
+			while (more() && Character.isDigit(peek())) {
+				pos++;
+			}
+			return Integer.parseInt(regex.substring(start, pos));
+		}
+
+		/*
+		 * first copy has already been built - any others are built by re-parsing the regex between start and end
+		 */
+		private int[] repeat(int[] first, int start, int end, int min, int max) throws UnsupportedRegexException {
+			int[] result;
+			if (max == 0) {
+				return nfa.empty();
+			}
+			if (min == 0) {
+				result = max == -1 ? nfa.star(first) : nfa.optional(first);
+				for (int i = 1 ; i < max ; i++) {
+					result = nfa.concat(result, nfa.optional(reparse(start, end)));
+				}
+				return result;
+			}
+			result = first;
+			for (int i = 1 ; i < min ; i++) {
+				result = nfa.concat(result, reparse(start, end));
+			}
+			if (max == -1) {
+				result = nfa.concat(result, nfa.star(reparse(start, end)));
+			} else {
+				for (int i = min ; i < max ; i++) {
+					result = nfa.concat(result, nfa.optional(reparse(start, end)));
+				}
+			}
+			return result;
+		}
+
+		private int[] reparse(int start, int end) throws UnsupportedRegexException {
+			Parser parser = new Parser(regex.substring(0, end), nfa);
+			parser.pos = start;
+			int[] fragment = parser.nfa.empty();
+			while (parser.pos < end) {
+				fragment = nfa.concat(fragment, parser.parseRepetition());
+			}
+			return fragment;
+		}
+
+		private int[] parseAtom() throws UnsupportedRegexException {
+			char c = peek();
+			switch (c) {
+			case '(':
+				pos++;
+				if (more() && peek() == '?') {
+					if (pos + 1 < regex.length() && regex.charAt(pos + 1) == ':') {
+						pos += 2;
+					} else {
+						throw new UnsupportedRegexException("Unsupported group construct in regex: " + regex);
+					}
+				}
+				int[] fragment = parseAlternation();
+				if ( ! more() || peek() != ')') {
+					throw new UnsupportedRegexException("Unclosed group in regex: " + regex);
+				}
+				pos++;
+				return fragment;
+			case '[':
+				return nfa.symbol(parseCharacterClass());
+			case '.':
+				pos++;
+				boolean[] any = new boolean[NO_OF_SYMBOLS];
+				Arrays.fill(any, true);
+				any['\n'] = false;
+				any['\r'] = false;
+				return nfa.symbol(any);
+			case '\\':
+				pos++;
+				return nfa.symbol(single(parseEscape()));
+			case '^': case '$': case '*': case '+': case '?': case '{': case ')':
+				throw new UnsupportedRegexException("Unsupported character: " + c + " in regex: " + regex);
+			default:
+				pos++;
+				return nfa.symbol(single(c));
+			}
+		}
+
+		/*
+		 * only escaped punctuation is supported - \d, \w, \1 etc. are not
+		 */
+		private char parseEscape() throws UnsupportedRegexException {
+			if ( ! more()) {
+				throw new UnsupportedRegexException("Trailing escape in regex: " + regex);
+			}
+			char c = regex.charAt(pos++);
+			if (Character.isLetterOrDigit(c)) {
+				throw new UnsupportedRegexException("Unsupported escape: \\" + c + " in regex: " + regex);
+			}
+			return c;
+		}
+
+		private boolean[] single(char c) throws UnsupportedRegexException {
+			if (c >= NON_ASCII) {
+				throw new UnsupportedRegexException("Non-ASCII character in regex: " + regex);
+			}
+			boolean[] set = new boolean[NO_OF_SYMBOLS];
+			set[c] = true;
+			return set;
+		}
+
+		private boolean[] parseCharacterClass() throws UnsupportedRegexException {
+			pos++;		// opening bracket
+			boolean negate = false;
+			if (more() && peek() == '^') {
+				negate = true;
+				pos++;
+			}
+			boolean[] set = new boolean[NO_OF_SYMBOLS];
+			boolean first = true;
+			while (true) {
+				if ( ! more()) {
+					throw new UnsupportedRegexException("Unclosed character class in regex: " + regex);
+				}
+				char c = regex.charAt(pos++);
+				if (c == ']' && ! first) {
+					break;
+				}
+				if (c == '[' || c == '&') {
+					throw new UnsupportedRegexException("Unsupported character class in regex: " + regex);
+				}
+				if (c == '\\') {
+					c = parseEscape();
+				}
+				char to = c;
+				if (more() && peek() == '-' && pos + 1 < regex.length() && regex.charAt(pos + 1) != ']') {
+					pos++;
+					to = regex.charAt(pos++);
+					if (to == '\\') {
+						to = parseEscape();
+					}
+				}
+				if (c >= NON_ASCII || to >= NON_ASCII || to < c) {
+					throw new UnsupportedRegexException("Unsupported character class in regex: " + regex);
+				}
+				for (char ch = c ; ch <= to ; ch++) {
+					set[ch] = true;
+				}
+				first = false;
+			}
+			if (negate) {
+				for (int i = 0 ; i < NO_OF_SYMBOLS ; i++) {
+					set[i] = ! set[i];
+				}
+			}
+			return set;
+		}
+	}
+}
@@ -1,7 +1,9 @@
 package org.qcmg.motif;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.StringJoiner;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -89,6 +91,21 @@ public class MotifCoverageAlgorithmTest {
 		assertEquals("TTAGGGTTAGGG:CCCTGACCCTGA", mca.getStageTwoMotifs("ACGTTTAGGGTTAGGGCCCTGACCCTGAACGT"));
 	}
 	
+	@Test
+	public void stageTwoStringMotifsReportedInSetOrder() {
+		Motifs stageTwo = new Motifs(true, "TTAGGG", "TCAGGG", "TGAGGG", "TTAGGG", "ACGTAC");
+		MotifCoverageAlgorithm alg = new MotifCoverageAlgorithm(new MotifsAndRegexes(stageOneMotifs, null, stageTwo, null, 10000));
+		String read = "ACGTACCCCTGATTAGGGCCCTAATGAGGGCCCTGATCAGGG";
+		
+		StringJoiner expected = new StringJoiner(":");
+		for (String motif : new HashSet<>(stageTwo.getMotifs())) {
+			if (read.contains(motif)) {
+				expected.add(motif);
+			}
+		}
+		assertEquals(expected.toString(), alg.getStageTwoMotifs(read));
+	}
+	
 	@Test
 	public void noValidCountersInMap() {
 		Map<ChrPosition, RegionCounter> map = new HashMap<>();
@@ -208,7 +225,23 @@ public class MotifCoverageAlgorithmTest {
 				, rc.getMotifsForwardStrand().keySet().iterator().next());
 
 	}
-
-
-
+	
+	@Test
+	public void regexFallback() {
+		/*
+		 * back reference can't be compiled into an automaton - java.util.regex is used instead
+		 */
+		MotifsAndRegexes mAndRBackReference = new MotifsAndRegexes(null, "(TTAGGG)\\1", null, "(...GGG)\\1", 10000);
+		assertNull(mAndRBackReference.getStageOneRegexAutomaton());
+		assertNull(mAndRBackReference.getStageTwoRegexAutomaton());
+		MotifCoverageAlgorithm mcaBackReference = new MotifCoverageAlgorithm(mAndRBackReference);
+		assertTrue(mcaBackReference.stageOneSearch("ACGTTTAGGGTTAGGGACGT"));
+		assertFalse(mcaBackReference.stageOneSearch("ACGTTTAGGGTTCGGGACGT"));
+		assertEquals("TTAGGGTTAGGG", mcaBackReference.getStageTwoMotifs("ACGTTTAGGGTTAGGGACGT"));
+		assertNull(mcaBackReference.getStageTwoMotifs("ACGTTTAGGGTTCGGGACGT"));
+		
+		assertNotNull(mAndRStage1RegexStage2String.getStageOneRegexAutomaton());
+		assertTrue(mcaStage1RegexStage2String.stageOneSearch("ACGTTTAGGGGACGT"));
+		assertEquals("TTAGGGTTAGGG:CCCTAACCCTAA", mcaStage1RegexStage2String.getStageTwoMotifs("CCCTAACCCTAATTAGGGTTAGGG"));
+	}
 }
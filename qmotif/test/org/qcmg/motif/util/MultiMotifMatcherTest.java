@@ -0,0 +1,73 @@
+package org.qcmg.motif.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.qcmg.motif.Motifs;
+
+public class MultiMotifMatcherTest {
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void nullMotifs() {
+		new MultiMotifMatcher(null);
+	}
+	
+	@Test
+	public void noMotifs() {
+		MultiMotifMatcher matcher = new MultiMotifMatcher(Collections.emptyList());
+		assertFalse(matcher.find("ACGT".getBytes()));
+		assertEquals(0, matcher.findAll("ACGT".getBytes()).length);
+	}
+	
+	@Test
+	public void find() {
+		MultiMotifMatcher matcher = new MultiMotifMatcher(new Motifs(true, "TTAGGGTTAGGG").getMotifs());
+		assertFalse(matcher.find(null));
+		assertFalse(matcher.find(new byte[0]));
+		assertFalse(matcher.find("TTAGGGTTAGGTTAGGGTTAGG".getBytes()));
+		assertTrue(matcher.find("TTAGGGTTAGGGTTAGGTTAGG".getBytes()));
+		// reverse complement
+		assertTrue(matcher.find("ACGTCCCTAACCCTAAACGT".getBytes()));
+	}
+	
+	@Test
+	public void findAllOverlappingMotifs() {
+		List<String> motifs = Arrays.asList("he", "she", "his", "hers");
+		MultiMotifMatcher matcher = new MultiMotifMatcher(motifs);
+		assertArrayEquals(new int[] {0, 1, 3}, matcher.findAll("ushers".getBytes()));
+		assertArrayEquals(new int[] {2}, matcher.findAll("ahisa".getBytes()));
+		assertArrayEquals(new int[] {}, matcher.findAll("hi".getBytes()));
+	}
+	
+	@Test
+	public void matchesStringContains() {
+		List<String> motifs = Arrays.asList("TTAGGG", "CCCTAA", "TAGGGTTAGG", "AAAA", "GGGTTA");
+		MultiMotifMatcher matcher = new MultiMotifMatcher(motifs);
+		Random r = new Random(1);
+		char[] bases = new char[] {'A', 'C', 'G', 'T', 'N'};
+		for (int i = 0 ; i < 10000 ; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int j = 0, len = r.nextInt(60) ; j < len ; j++) {
+				sb.append(r.nextInt(3) == 0 ? "TTAGGG" : bases[r.nextInt(bases.length)]);
+			}
+			String read = sb.toString();
+			int[] expected = new int[motifs.size()];
+			int count = 0;
+			for (int m = 0 ; m < motifs.size() ; m++) {
+				if (read.contains(motifs.get(m))) {
+					expected[count++] = m;
+				}
+			}
+			assertArrayEquals(read, Arrays.copyOf(expected, count), matcher.findAll(read.getBytes()));
+			assertEquals(read, count > 0, matcher.find(read.getBytes()));
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package org.qcmg.motif.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class RegexAutomatonTest {
+	
+	@Test
+	public void unsupported() {
+		assertNull(RegexAutomaton.compile(null));
+		assertNull(RegexAutomaton.compile("^TTAGGG"));
+		assertNull(RegexAutomaton.compile("TTAGGG$"));
+		assertNull(RegexAutomaton.compile("(TTA)GGG\\1"));
+		assertNull(RegexAutomaton.compile("\\w+GGG"));
+		assertNull(RegexAutomaton.compile("(?=TTA)GGG"));
+		assertNull(RegexAutomaton.compile("(?i)ttaggg"));
+		assertNull(RegexAutomaton.compile("(TTAGGG)++"));
+		assertNull(RegexAutomaton.compile("[A-Z&&[^N]]"));
+		assertNull(RegexAutomaton.compile("(TTAGGG){1000}"));
+	}
+	
+	@Test
+	public void supported() {
+		assertNotNull(RegexAutomaton.compile(""));
+		assertNotNull(RegexAutomaton.compile("(...GGG){2,}|(CCC...){2,}"));
+		assertNotNull(RegexAutomaton.compile("((TTA|TCA|TTC|GTA|TGA|TTG|TAA|ATA|CTA|TTT|TTAA)GGG){2,}|(CCC(TAA|TGA|GAA|TAC|TCA|CAA|TTA|TAT|TAG|AAA|TTAA)){2,}"));
+		assertNotNull(RegexAutomaton.compile("(?:[^N]{3}GGG){2,5}?"));
+		assertNotNull(RegexAutomaton.compile("T\\.A*"));
+	}
+	
+	@Test
+	public void find() {
+		RegexAutomaton ra = RegexAutomaton.compile("(...GGG){2,}|(CCC...){2,}");
+		assertFalse(ra.find(new byte[0]));
+		assertFalse(ra.find("ACGTACGTACGT".getBytes()));
+		assertFalse(ra.find("TTAGGGACGT".getBytes()));
+		assertTrue(ra.find("ACTTAGGGTTAGGGACGT".getBytes()));
+		assertTrue(ra.find("CCCTAACCCTAA".getBytes()));
+		
+		// matches the empty string
+		assertTrue(RegexAutomaton.compile("A*").find(new byte[0]));
+	}
+	
+	@Test
+	public void matchesJavaRegex() {
+		String[] regexes = new String[] {
+				"(...GGG){2,}|(CCC...){2,}",
+				"...GGG{2,}|CCC...{2,}",
+				"((TTA|TCA|TTC|GTA|TGA|TTG|TAA|ATA|CTA|TTT|TTAA)GGG){2,}|(CCC(TAA|TGA|GAA|TAC|TCA|CAA|TTA|TAT|TAG|AAA|TTAA)){2,}",
+				"(?:[^N]{3}GGG){2,3}",
+				"[AC]+T?G{3}",
+				"(TTAGGG){0}C{1,2}A",
+				"A(C|)G|T(CG)*A",
+		};
+		Random r = new Random(1);
+		char[] bases = new char[] {'A', 'C', 'G', 'T', 'N'};
+		String[] repeats = new String[] {"TTAGGG", "CCCTAA", "GGG", "CCC"};
+		for (String regex : regexes) {
+			RegexAutomaton ra = RegexAutomaton.compile(regex);
+			assertNotNull(regex, ra);
+			Pattern p = Pattern.compile(regex);
+			for (int i = 0 ; i < 5000 ; i++) {
+				StringBuilder sb = new StringBuilder();
+				for (int j = 0, len = r.nextInt(40) ; j < len ; j++) {
+					if (r.nextInt(4) == 0) {
+						sb.append(repeats[r.nextInt(repeats.length)]);
+					} else {
+						sb.append(bases[r.nextInt(bases.length)]);
+					}
+				}
+				String read = sb.toString();
+				assertEquals(regex + " : " + read, p.matcher(read).find(), ra.find(read.getBytes()));
+			}
+		}
+	}
+}
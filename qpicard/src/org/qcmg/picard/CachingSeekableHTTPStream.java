@@ -0,0 +1,355 @@
+package org.qcmg.picard;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.util.HttpUtils;
+
+/**
+ * A seekable stream over http(s) (and, with our URL handler registered, s3) URLs that reads whole blocks of the file with ranged GETs,
+ * and keeps the most recently used blocks in memory.
+ * <p>
+ * {@link htsjdk.samtools.seekablestream.SeekableHTTPStream} makes a request for every read, which for indexed queries against
+ * object storage means a round trip for each small read of a bam or its index. Here, a read that misses the cache fetches the
+ * block it needs, and the next few blocks are fetched in the background on other connections, so that reading on through a
+ * bam chunk (or on to a nearby one) finds its blocks already there. Consecutive blocks that are fetched ahead together are
+ * requested with a single ranged GET.
+ * <p>
+ * At most <code>connections</code> read aheads are outstanding at a time - when they are all busy, further read ahead is dropped rather than queued.
+ * A block that is evicted from the cache before it has been fetched is not fetched.
+ */
+public class CachingSeekableHTTPStream extends SeekableStream {
+
+	static final Logger logger = LoggerFactory.getLogger(CachingSeekableHTTPStream.class);
+
+	private final URL url;
+	private final Proxy proxy;
+	private final long contentLength;
+	private final int blockSize;
+	private final int readAheadBlocks;
+	private final int connections;
+	private final ExecutorService fetchThreads;
+	private final Semaphore readAheadPermits;
+	private final Map<Long, CompletableFuture<byte[]>> cache;
+	private final AtomicLong requestCount = new AtomicLong();
+	private long position = 0;
+
+	/**
+	 * @param url  the file to read
+	 * @param proxy  proxy to connect through (null is allowed)
+	 * @param blockSize  number of bytes in each block that is fetched and cached
+	 * @param cacheBlocks  maximum number of blocks to keep in memory, including those being fetched ahead
+	 * @param readAheadBlocks  number of blocks after the one being read to fetch in the background
+	 * @param connections  maximum number of background requests at a time, queued or running
+	 */
+	public CachingSeekableHTTPStream(URL url, Proxy proxy, int blockSize, final int cacheBlocks, int readAheadBlocks, int connections) {
+		if (blockSize <= 0 || cacheBlocks <= readAheadBlocks || readAheadBlocks < 0 || connections <= 0) {
+			throw new IllegalArgumentException("Invalid stream cache settings: blockSize " + blockSize + ", cacheBlocks " + cacheBlocks
+					+ ", readAheadBlocks " + readAheadBlocks + ", connections " + connections);
+		}
+		this.url = url;
+		this.proxy = proxy;
+		this.blockSize = blockSize;
+		this.readAheadBlocks = readAheadBlocks;
+		this.connections = connections;
+
+		String contentLengthString = HttpUtils.getHeaderField(url, "Content-Length");
+		if (null == contentLengthString) {
+			logger.warn("Could not get the content length of {}", url);
+		}
+		this.contentLength = null == contentLengthString ? -1 : Long.parseLong(contentLengthString);
+
+		this.cache = new LinkedHashMap<>(cacheBlocks * 2, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, CompletableFuture<byte[]>> eldest) {
+				if (size() > cacheBlocks) {
+					/*
+					 * no need to fetch a block that is no longer cached
+					 */
+					eldest.getValue().cancel(false);
+					return true;
+				}
+				return false;
+			}
+		};
+		this.fetchThreads = readAheadBlocks == 0 ? null : Executors.newFixedThreadPool(connections, r -> {
+			Thread thread = new Thread(r, "stream-read-ahead");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.readAheadPermits = new Semaphore(connections);
+	}
+
+	@Override
+	public long length() {
+		return contentLength;
+	}
+
+	@Override
+	public long position() throws IOException {
+		return position;
+	}
+
+	@Override
+	public void seek(long position) throws IOException {
+		if (position < 0) {
+			throw new IOException("Invalid seek position: " + position);
+		}
+		this.position = position;
+	}
+
+	@Override
+	public boolean eof() throws IOException {
+		return contentLength >= 0 && position >= contentLength;
+	}
+
+	@Override
+	public String getSource() {
+		return url.toString();
+	}
+
+	/**
+	 * @return the number of ranged GETs made so far
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int len) throws IOException {
+		if (offset < 0 || len < 0 || offset + len > buffer.length) {
+			throw new IndexOutOfBoundsException("Offset=" + offset + ",len=" + len + ",buflen=" + buffer.length);
+		}
+		if (len == 0) {
+			return 0;
+		}
+		int total = 0;
+		while (total < len && ! eof()) {
+			long blockNo = position / blockSize;
+			byte[] block = getBlock(blockNo);
+			int blockOffset = (int) (position - blockNo * blockSize);
+			if (blockOffset >= block.length) {
+				/*
+				 * short block, so this is the end of the file
+				 */
+				break;
+			}
+			int n = Math.min(len - total, block.length - blockOffset);
+			System.arraycopy(block, blockOffset, buffer, offset + total, n);
+			total += n;
+			position += n;
+		}
+		return total == 0 ? -1 : total;
+	}
+
+	/**
+	 * @return the block, fetching it if it is not in the cache (or on its way), and starts fetching the blocks after it
+	 */
+	private byte[] getBlock(long blockNo) throws IOException {
+		for (int attempt = 0; ; attempt++) {
+			CompletableFuture<byte[]> future;
+			boolean fetch = false;
+			synchronized (cache) {
+				future = cache.get(blockNo);
+				if (null == future) {
+					future = new CompletableFuture<>();
+					cache.put(blockNo, future);
+					fetch = true;
+				}
+			}
+			if (attempt == 0) {
+				readAhead(blockNo + 1);
+			}
+			try {
+				if (fetch) {
+					fetch(blockNo, List.of(future));
+				}
+				return future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while reading " + url, e);
+			} catch (CancellationException e) {
+				/*
+				 * evicted from the cache before it was fetched - try again
+				 */
+				if (attempt > 0) {
+					throw new IOException("Block " + blockNo + " of " + url + " was evicted from the cache before it could be read", e);
+				}
+			} catch (IOException | ExecutionException e) {
+				synchronized (cache) {
+					cache.remove(blockNo, future);
+				}
+				/*
+				 * a failed read ahead is tried again here
+				 */
+				if (fetch || attempt > 0) {
+					Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+					throw cause instanceof IOException io ? io : new IOException(cause);
+				}
+			}
+		}
+	}
+
+	/*
+	 * queues the blocks from the supplied one that are not cached, splitting them into runs of consecutive blocks that
+	 * are each fetched with one request, with no more runs than connections. Blocks that can't get a connection are not read ahead.
+	 */
+	private void readAhead(long firstBlockNo) {
+		if (null == fetchThreads) {
+			return;
+		}
+		long lastBlockNo = firstBlockNo + readAheadBlocks - 1;
+		if (contentLength >= 0) {
+			lastBlockNo = Math.min(lastBlockNo, (contentLength - 1) / blockSize);
+		}
+		int runLength = Math.max(1, (readAheadBlocks + connections - 1) / connections);
+
+		long runStart = -1;
+		List<CompletableFuture<byte[]>> run = new ArrayList<>();
+		synchronized (cache) {
+			for (long blockNo = firstBlockNo; blockNo <= lastBlockNo; blockNo++) {
+				if (cache.containsKey(blockNo)) {
+					submit(runStart, run);
+					run = new ArrayList<>();
+					continue;
+				}
+				if (run.isEmpty()) {
+					if ( ! readAheadPermits.tryAcquire()) {
+						break;
+					}
+					runStart = blockNo;
+				}
+				CompletableFuture<byte[]> future = new CompletableFuture<>();
+				cache.put(blockNo, future);
+				run.add(future);
+				if (run.size() == runLength) {
+					submit(runStart, run);
+					run = new ArrayList<>();
+				}
+			}
+		}
+		submit(runStart, run);
+	}
+
+	/*
+	 * the caller has acquired a read ahead permit for a non-empty run, which is released when the run has been fetched
+	 */
+	private void submit(long firstBlockNo, List<CompletableFuture<byte[]>> futures) {
+		if (futures.isEmpty()) {
+			return;
+		}
+		try {
+			fetchThreads.execute(() -> {
+				try {
+					if (futures.stream().allMatch(CompletableFuture::isCancelled)) {
+						return;
+					}
+					fetch(firstBlockNo, futures);
+				} catch (IOException e) {
+					logger.debug("read ahead of {} failed: {}", url, e.getMessage());
+				} finally {
+					readAheadPermits.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			/*
+			 * closed
+			 */
+			readAheadPermits.release();
+			futures.forEach(future -> future.cancel(false));
+		}
+	}
+
+	/*
+	 * fetches consecutive blocks with one request, completing their futures
+	 */
+	private void fetch(long firstBlockNo, List<CompletableFuture<byte[]>> futures) throws IOException {
+		long start = firstBlockNo * blockSize;
+		long end = start + (long) futures.size() * blockSize - 1;
+		if (contentLength >= 0) {
+			end = Math.min(end, contentLength - 1);
+		}
+		try {
+			byte[] bytes = start > end ? new byte[0] : getRange(start, end);
+			for (int i = 0; i < futures.size(); i++) {
+				int from = Math.min(bytes.length, i * blockSize);
+				int to = Math.min(bytes.length, from + blockSize);
+				byte[] block = new byte[to - from];
+				System.arraycopy(bytes, from, block, 0, block.length);
+				futures.get(i).complete(block);
+			}
+		} catch (IOException | RuntimeException e) {
+			for (CompletableFuture<byte[]> future : futures) {
+				future.completeExceptionally(e);
+			}
+			throw e;
+		}
+	}
+
+	private byte[] getRange(long start, long end) throws IOException {
+		requestCount.incrementAndGet();
+		HttpURLConnection connection = (HttpURLConnection) (null == proxy ? url.openConnection() : url.openConnection(proxy));
+		connection.setRequestProperty("Range", "bytes=" + start + "-" + end);
+		try (InputStream is = connection.getInputStream()) {
+			/*
+			 * a server that ignores the range sends the whole file
+			 */
+			if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL && start > 0) {
+				is.skipNBytes(start);
+			}
+			byte[] bytes = is.readNBytes((int) (end - start + 1));
+			if (bytes.length == 0 && contentLength >= 0 && start < contentLength) {
+				throw new EOFException("No data returned for range " + start + "-" + end + " of " + url);
+			}
+			return bytes;
+		} catch (IOException e) {
+			if (connection.getResponseCode() == 416) {
+				/*
+				 * requested range not satisfiable, ie. past the end of the file
+				 */
+				return new byte[0];
+			}
+			throw e;
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (null != fetchThreads) {
+			fetchThreads.shutdownNow();
+		}
+		synchronized (cache) {
+			cache.values().forEach(future -> future.cancel(false));
+			cache.clear();
+		}
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+package org.qcmg.picard;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+
+import org.qcmg.picard.util.ParallelBlockCompressedOutputStream;
+
+import gnu.trove.list.array.TLongArrayList;
+import htsjdk.samtools.BAMFileSpan;
+import htsjdk.samtools.BAMFileWriter;
+import htsjdk.samtools.BAMIndexer;
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.Chunk;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileSource;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSortOrderChecker;
+import htsjdk.samtools.util.FileExtensions;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.ProgressLoggerInterface;
+
+/**
+ * BAM writer that compresses its output on multiple threads, using {@link ParallelBlockCompressedOutputStream}.
+ * <p>
+ * Records must be supplied in the sort order of the header (no sorting is done), and are checked as they are added.
+ * If an index is requested, it is written alongside the bam as htsjdk would (ie. aln.bai for aln.bam),
+ * so that {@link SAMWriterFactory#renameIndex()} can be used as normal.
+ * As record file pointers can't be resolved until the blocks that contain them have been compressed, records are held
+ * until then before being passed to the indexer.
+ */
+public class ParallelBAMWriter implements SAMFileWriter {
+
+	private final SAMFileHeader header;
+	private final ParallelBlockCompressedOutputStream out;
+	private final BAMRecordCodec codec;
+	private final SAMSortOrderChecker sortOrderChecker;
+	private final BAMIndexer indexer;
+
+	/*
+	 * records waiting for the address of their end block to be known, and the file offsets of blocks that have been written
+	 */
+	private final ArrayDeque<PendingRecord> pending = new ArrayDeque<>();
+	private final TLongArrayList blockAddresses = new TLongArrayList();
+	private long firstBlockAddressNumber;
+
+	private ProgressLoggerInterface progressLogger;
+	private boolean checkSortOrder = true;
+
+	private record PendingRecord(SAMRecord record, long startBlock, int startOffset, long endBlock, int endOffset) {}
+
+	public ParallelBAMWriter(SAMFileHeader header, File output, int threads, int compressionLevel, boolean createIndex) throws IOException {
+		this.header = header;
+		OutputStream os = IOUtil.maybeBufferOutputStream(Files.newOutputStream(output.toPath()));
+
+		/*
+		 * header is written using htsjdk, and is compressed into its own block(s)
+		 */
+		ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+		BAMFileWriter.writeHeader(headerBytes, header);
+		headerBytes.writeTo(os);
+
+		out = new ParallelBlockCompressedOutputStream(os, headerBytes.size(), threads, compressionLevel);
+		codec = new BAMRecordCodec(header);
+		codec.setOutputStream(out, output.getAbsolutePath());
+		sortOrderChecker = new SAMSortOrderChecker(header.getSortOrder());
+
+		if (createIndex && header.getSortOrder() == SAMFileHeader.SortOrder.coordinate) {
+			String path = output.getAbsolutePath();
+			Path indexPath = IOUtil.addExtension(Path.of(path.endsWith(FileExtensions.BAM) ? path.substring(0, path.length() - FileExtensions.BAM.length()) : path), FileExtensions.BAI_INDEX);
+			indexer = new BAMIndexer(indexPath, header);
+			out.setBlockAddressListener(this::blockAddress);
+		} else {
+			indexer = null;
+		}
+	}
+
+	@Override
+	public void addAlignment(SAMRecord record) {
+		record.setHeaderStrict(header);
+		if (checkSortOrder && ! sortOrderChecker.isSorted(record)) {
+			SAMRecord previous = sortOrderChecker.getPreviousRecord();
+			throw new IllegalArgumentException("Alignments added out of order in ParallelBAMWriter.addAlignment. Sort order is " + header.getSortOrder()
+					+ ". Offending records are at [" + sortOrderChecker.getSortKey(previous) + "] and [" + sortOrderChecker.getSortKey(record) + "]");
+		}
+		if (null == indexer) {
+			codec.encode(record);
+		} else {
+			long startBlock = out.getBlockNumber();
+			int startOffset = out.getBlockOffset();
+			codec.encode(record);
+			pending.add(new PendingRecord(record, startBlock, startOffset, out.getBlockNumber(), out.getBlockOffset()));
+			indexResolvedRecords();
+		}
+		if (null != progressLogger) {
+			progressLogger.record(record);
+		}
+	}
+
+	private void blockAddress(long blockNumber, long address) {
+		if (blockAddresses.isEmpty()) {
+			firstBlockAddressNumber = blockNumber;
+		}
+		blockAddresses.add(address);
+	}
+
+	/*
+	 * passes records whose start and end addresses are known to the indexer, in the order in which they were added
+	 */
+	private void indexResolvedRecords() {
+		long lastKnownBlock = firstBlockAddressNumber + blockAddresses.size() - 1;
+		while ( ! pending.isEmpty() && pending.peek().endBlock() <= lastKnownBlock) {
+			PendingRecord pr = pending.poll();
+			long start = (blockAddresses.get((int) (pr.startBlock() - firstBlockAddressNumber)) << 16) | pr.startOffset();
+			long end = (blockAddresses.get((int) (pr.endBlock() - firstBlockAddressNumber)) << 16) | pr.endOffset();
+			pr.record().setFileSource(new SAMFileSource(null, new BAMFileSpan(new Chunk(start, end))));
+			indexer.processAlignment(pr.record());
+		}
+		/*
+		 * forget about blocks that no pending record refers to
+		 */
+		long firstNeeded = pending.isEmpty() ? lastKnownBlock : pending.peek().startBlock();
+		if (firstNeeded > firstBlockAddressNumber) {
+			int n = (int) Math.min(firstNeeded - firstBlockAddressNumber, blockAddresses.size());
+			blockAddresses.remove(0, n);
+			firstBlockAddressNumber += n;
+		}
+	}
+
+	@Override
+	public SAMFileHeader getFileHeader() {
+		return header;
+	}
+
+	@Override
+	public void setProgressLogger(ProgressLoggerInterface progressLogger) {
+		this.progressLogger = progressLogger;
+	}
+
+	@Override
+	public void setSortOrderChecking(boolean check) {
+		this.checkSortOrder = check;
+	}
+
+	@Override
+	public void close() {
+		try {
+			out.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (null != indexer) {
+			indexResolvedRecords();
+			if ( ! pending.isEmpty()) {
+				throw new IllegalStateException("Unable to resolve file pointers of " + pending.size() + " records for the index");
+			}
+			indexer.finish();
+		}
+	}
+}
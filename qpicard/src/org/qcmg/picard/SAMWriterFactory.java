@@ -10,6 +10,7 @@ import java.io.File;
 import java.io.IOException;
 
 import htsjdk.samtools.*;
+import htsjdk.samtools.util.RuntimeIOException;
 import org.qcmg.common.log.QLogger;
 import org.qcmg.common.log.QLoggerFactory;
 import org.qcmg.picard.util.BAMFileUtils;
@@ -52,6 +53,14 @@ public class SAMWriterFactory {
 		this(header, preSort, output,tmpDir, ramReads, true);
 	}
 
+	/**
+	 * When compressionThreads is greater than 1, and a bam file that does not need sorting is being written, the output is compressed on
+	 * that many threads using a {@link ParallelBAMWriter}. Otherwise the htsjdk writer is used.
+	 */
+	public SAMWriterFactory(SAMFileHeader header,  boolean preSort, File output, File tmpDir, boolean createIndex, int compressionThreads){
+		this(header, preSort, output, tmpDir, 0, createIndex, false, -1, null, compressionThreads);
+	}
+
 	public SAMWriterFactory(SAMFileHeader header,  boolean preSort, File output, File tmpDir, int ramReads, boolean createIndex){
 		this(header, preSort, output,tmpDir, ramReads, createIndex, false);
 	}
@@ -70,6 +79,11 @@ public class SAMWriterFactory {
 
 	public SAMWriterFactory(SAMFileHeader header,  boolean preSort, File output, File tmpDir, int ramReads,
 							boolean createIndex, boolean useAsyncIO, int asyncOutputBufferSize, File reference ) {
+		this(header, preSort, output, tmpDir, ramReads, createIndex, useAsyncIO, asyncOutputBufferSize, reference, 0);
+	}
+
+	public SAMWriterFactory(SAMFileHeader header,  boolean preSort, File output, File tmpDir, int ramReads,
+							boolean createIndex, boolean useAsyncIO, int asyncOutputBufferSize, File reference, int compressionThreads) {
 		SAMFileWriterFactory factory = new SAMFileWriterFactory();
 		if (ramReads > 0) {
 			htsjdk.samtools.SAMFileWriterImpl.setDefaultMaxRecordsInRam( ramReads );
@@ -95,7 +109,14 @@ public class SAMWriterFactory {
 
 		final String filename = output.getName();
         
-        if (BAM_TYPE.hasValidFileExtension(filename)) {
+        if (BAM_TYPE.hasValidFileExtension(filename) && compressionThreads > 1
+				&& (preSort || header.getSortOrder() == SAMFileHeader.SortOrder.unsorted)) {
+			try {
+				writer = new ParallelBAMWriter(header, output, compressionThreads, Defaults.COMPRESSION_LEVEL, index);
+			} catch (IOException e) {
+				throw new RuntimeIOException("Unable to create bam writer for " + output.getAbsolutePath(), e);
+			}
+        } else if (BAM_TYPE.hasValidFileExtension(filename)) {
 			writer = factory.makeBAMWriter(header, preSort, output);
         } else if (CRAM_TYPE.hasValidFileExtension(filename)) {
 			File ref = (reference == null)? Defaults.REFERENCE_FASTA: reference;
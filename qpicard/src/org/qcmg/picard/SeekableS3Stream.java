@@ -3,23 +3,26 @@ package org.qcmg.picard;
 import java.net.Proxy;
 import java.net.URL;
 
-import htsjdk.samtools.seekablestream.SeekableHTTPStream;
+import org.qcmg.common.aws.Settings;
 
 /*
- * We can entirely re-use SeekableHTTPStream for s3:// URLS because that class uses
- * URL.openConnection() everywhere to do its thing — explicitly in SeekableHTTPStream.read(...)
+ * We can read s3:// URLS over http because CachingSeekableHTTPStream uses
+ * URL.openConnection() everywhere to do its thing — explicitly in its ranged reads
  * and indirectly in HttpUtils.getHeaderField(...) — so if we've registered our own s3-aware
  * URLStreamHandlerFactory then all will be well.
+ * 
+ * The block size, cache size and read ahead come from the aws.s3Stream settings.
  */
 
-public class SeekableS3Stream extends SeekableHTTPStream {
+public class SeekableS3Stream extends CachingSeekableHTTPStream {
 
     public SeekableS3Stream(URL url) {
         this(url, null);
     }    
     
     public SeekableS3Stream(URL url, Proxy proxy) {
-        super(url, proxy);
+        super(url, proxy, Settings.getInstance().s3StreamBlockSize, Settings.getInstance().s3StreamCacheBlocks,
+        		Settings.getInstance().s3StreamReadAheadBlocks, Settings.getInstance().s3StreamConnections);
     }
 
 }
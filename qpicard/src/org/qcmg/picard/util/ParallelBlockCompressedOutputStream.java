@@ -0,0 +1,251 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+package org.qcmg.picard.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+
+/**
+ * BGZF output stream that deflates its blocks on a pool of threads.
+ * <p>
+ * Data is buffered into blocks of {@link BlockCompressedStreamConstants#DEFAULT_UNCOMPRESSED_BLOCK_SIZE} bytes, as is done by htsjdk's
+ * BlockCompressedOutputStream, and each full block is handed to the pool to be compressed. Compressed blocks are written to the
+ * underlying stream in the order in which they were filled, so the output is a valid BGZF file.
+ * The number of blocks in flight is bounded, and a writer that gets ahead of the compressors will wait for them to catch up.
+ * <p>
+ * As the compressed size of a block (and so the file offset of the blocks that follow it) is not known until it has been deflated,
+ * positions within the stream are described by a block number and an offset within that block.
+ * A {@link BlockAddressListener} is told the file offset of each block as soon as it is known, which allows virtual file pointers to be resolved.
+ * <p>
+ * This class is not thread safe - it should be written to by a single thread.
+ */
+public class ParallelBlockCompressedOutputStream extends OutputStream {
+
+	/**
+	 * Called (on the writing thread) with the file offset of each block, once all preceding blocks have been written
+	 */
+	public interface BlockAddressListener {
+		void blockAddress(long blockNumber, long address);
+	}
+
+	private static final int MAX_DEFLATED_SIZE = BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE - BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH;
+
+	private final OutputStream out;
+	private final int compressionLevel;
+	private final ExecutorService pool;
+	private final int maxBlocksInFlight;
+	private final ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<>();
+	private final ThreadLocal<Deflater> deflaters;
+	private final ThreadLocal<Deflater> noCompressionDeflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.NO_COMPRESSION, true));
+	private final ThreadLocal<CRC32> crcs = ThreadLocal.withInitial(CRC32::new);
+	private final ThreadLocal<byte[]> deflateBuffers = ThreadLocal.withInitial(() -> new byte[MAX_DEFLATED_SIZE]);
+
+	private BlockAddressListener listener;
+	private byte[] buffer = new byte[BlockCompressedStreamConstants.DEFAULT_UNCOMPRESSED_BLOCK_SIZE];
+	private int bufferPosition;
+	private long blockNumber;
+	private long writtenBlocks;
+	private long address;
+	private boolean closed;
+
+	/**
+	 * @param out underlying stream, which is closed when this stream is closed
+	 * @param startAddress file offset at which the first block will be written (eg. if a header has already been written to out)
+	 * @param threads number of compression threads
+	 * @param compressionLevel deflate compression level
+	 */
+	public ParallelBlockCompressedOutputStream(OutputStream out, long startAddress, int threads, int compressionLevel) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("ParallelBlockCompressedOutputStream requires at least 1 thread: " + threads);
+		}
+		this.out = out;
+		this.address = startAddress;
+		this.compressionLevel = compressionLevel;
+		this.maxBlocksInFlight = threads * 4;
+		this.deflaters = ThreadLocal.withInitial(() -> new Deflater(this.compressionLevel, true));
+		this.pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "bgzf-deflate");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	public void setBlockAddressListener(BlockAddressListener listener) {
+		this.listener = listener;
+		if (null != listener) {
+			listener.blockAddress(writtenBlocks, address);
+		}
+	}
+
+	/**
+	 * @return the number of the block that the next byte will be written to
+	 */
+	public long getBlockNumber() {
+		return blockNumber;
+	}
+
+	/**
+	 * @return the offset within the current block that the next byte will be written to
+	 */
+	public int getBlockOffset() {
+		return bufferPosition;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		buffer[bufferPosition++] = (byte) b;
+		if (bufferPosition == buffer.length) {
+			submitBlock();
+		}
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		while (length > 0) {
+			int n = Math.min(length, buffer.length - bufferPosition);
+			System.arraycopy(bytes, offset, buffer, bufferPosition, n);
+			bufferPosition += n;
+			offset += n;
+			length -= n;
+			if (bufferPosition == buffer.length) {
+				submitBlock();
+			}
+		}
+	}
+
+	/**
+	 * Compresses any buffered data into a (short) block, and writes all blocks to the underlying stream
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (bufferPosition > 0) {
+			submitBlock();
+		}
+		writeBlocks(0);
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			flush();
+			out.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK);
+		} finally {
+			pool.shutdownNow();
+			out.close();
+		}
+	}
+
+	private void submitBlock() throws IOException {
+		final byte[] block = buffer;
+		final int length = bufferPosition;
+		inFlight.add(pool.submit(() -> deflate(block, length)));
+		blockNumber++;
+		buffer = new byte[BlockCompressedStreamConstants.DEFAULT_UNCOMPRESSED_BLOCK_SIZE];
+		bufferPosition = 0;
+		writeBlocks(maxBlocksInFlight);
+	}
+
+	/*
+	 * writes completed blocks to the underlying stream in order, waiting for blocks to be compressed until no more than maxInFlight remain
+	 */
+	private void writeBlocks(int maxInFlight) throws IOException {
+		while ( ! inFlight.isEmpty() && (inFlight.size() > maxInFlight || inFlight.peek().isDone())) {
+			byte[] compressed;
+			try {
+				compressed = inFlight.poll().get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted whilst waiting for block compression");
+			} catch (ExecutionException e) {
+				throw new IOException("Block compression failed", e.getCause());
+			}
+			out.write(compressed);
+			address += compressed.length;
+			writtenBlocks++;
+			if (null != listener) {
+				listener.blockAddress(writtenBlocks, address);
+			}
+		}
+	}
+
+	/*
+	 * produces a complete BGZF block (header, deflated data and footer) from the supplied uncompressed data
+	 */
+	private byte[] deflate(byte[] data, int length) {
+		byte[] deflated = deflateBuffers.get();
+		int deflatedLength = deflate(deflaters.get(), data, length, deflated);
+		if (deflatedLength < 0) {
+			/*
+			 * data doesn't compress - store it instead
+			 */
+			deflatedLength = deflate(noCompressionDeflaters.get(), data, length, deflated);
+			if (deflatedLength < 0) {
+				throw new IllegalStateException("Unable to fit uncompressed data into a BGZF block");
+			}
+		}
+		CRC32 crc = crcs.get();
+		crc.reset();
+		crc.update(data, 0, length);
+
+		int blockLength = BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH + deflatedLength + BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH;
+		byte[] block = new byte[blockLength];
+		block[0] = BlockCompressedStreamConstants.GZIP_ID1;
+		block[1] = (byte) BlockCompressedStreamConstants.GZIP_ID2;
+		block[2] = BlockCompressedStreamConstants.GZIP_CM_DEFLATE;
+		block[3] = (byte) BlockCompressedStreamConstants.GZIP_FLG;
+		// bytes 4-7 (modification time) are left as zero
+		block[8] = (byte) BlockCompressedStreamConstants.GZIP_XFL;
+		block[9] = (byte) BlockCompressedStreamConstants.GZIP_OS_UNKNOWN;
+		putShort(block, 10, BlockCompressedStreamConstants.GZIP_XLEN);
+		block[12] = BlockCompressedStreamConstants.BGZF_ID1;
+		block[13] = BlockCompressedStreamConstants.BGZF_ID2;
+		putShort(block, 14, BlockCompressedStreamConstants.BGZF_LEN);
+		putShort(block, 16, blockLength - 1);
+		System.arraycopy(deflated, 0, block, BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH, deflatedLength);
+		int footer = BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH + deflatedLength;
+		putInt(block, footer, (int) crc.getValue());
+		putInt(block, footer + 4, length);
+		return block;
+	}
+
+	/*
+	 * returns the number of deflated bytes, or -1 if the deflated data does not fit into the output buffer
+	 */
+	private static int deflate(Deflater deflater, byte[] data, int length, byte[] output) {
+		deflater.reset();
+		deflater.setInput(data, 0, length);
+		deflater.finish();
+		int deflatedLength = deflater.deflate(output, 0, output.length);
+		return deflater.finished() ? deflatedLength : -1;
+	}
+
+	private static void putShort(byte[] b, int offset, int value) {
+		b[offset] = (byte) value;
+		b[offset + 1] = (byte) (value >>> 8);
+	}
+
+	private static void putInt(byte[] b, int offset, int value) {
+		b[offset] = (byte) value;
+		b[offset + 1] = (byte) (value >>> 8);
+		b[offset + 2] = (byte) (value >>> 16);
+		b[offset + 3] = (byte) (value >>> 24);
+	}
+}
@@ -0,0 +1,299 @@
+package org.qcmg.picard;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamInputResource;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+
+public class CachingSeekableHTTPStreamTest {
+
+	@Rule
+	public final TemporaryFolder testFolder = new TemporaryFolder();
+
+	private HttpServer server;
+	private final AtomicInteger getCount = new AtomicInteger();
+	private volatile boolean ignoreRange;
+	private final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+	/*
+	 * when set, requests for more than this many bytes wait for the latch, which holds up read ahead but not a reader's own fetch
+	 */
+	private volatile int holdLongerThan = Integer.MAX_VALUE;
+	private final CountDownLatch release = new CountDownLatch(1);
+	private ExecutorService serverThreads;
+
+	/*
+	 * a local stand-in for object storage, serving the files of the test folder with ranged GETs
+	 */
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", this::handle);
+		serverThreads = Executors.newCachedThreadPool();
+		server.setExecutor(serverThreads);
+		server.start();
+	}
+
+	@After
+	public void stopServer() {
+		release.countDown();
+		server.stop(0);
+		serverThreads.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		File file = new File(testFolder.getRoot(), exchange.getRequestURI().getPath().substring(1));
+		if ( ! file.exists()) {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+			return;
+		}
+		byte[] data = Files.readAllBytes(file.toPath());
+		if ("HEAD".equals(exchange.getRequestMethod())) {
+			exchange.getResponseHeaders().add("Content-Length", String.valueOf(data.length));
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+			return;
+		}
+		getCount.incrementAndGet();
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		byte[] body = data;
+		int status = 200;
+		if (null != range && ! ignoreRange) {
+			ranges.add(range);
+			String[] startEnd = range.substring("bytes=".length()).split("-");
+			int start = Integer.parseInt(startEnd[0]);
+			if (Integer.parseInt(startEnd[1]) - start + 1 > holdLongerThan) {
+				try {
+					release.await(30, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			int end = Math.min(Integer.parseInt(startEnd[1]), data.length - 1);
+			if (start >= data.length) {
+				exchange.sendResponseHeaders(416, -1);
+				exchange.close();
+				return;
+			}
+			body = Arrays.copyOfRange(data, start, end + 1);
+			status = 206;
+		}
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(body);
+		}
+	}
+
+	private URL getUrl(String name) throws IOException {
+		return new URL("http://localhost:" + server.getAddress().getPort() + "/" + name);
+	}
+
+	private byte[] createFile(String name, int length) throws IOException {
+		byte[] data = new byte[length];
+		new Random(1).nextBytes(data);
+		Files.write(new File(testFolder.getRoot(), name).toPath(), data);
+		return data;
+	}
+
+	@Test
+	public void readsMatchFile() throws IOException {
+		byte[] data = createFile("data", 10_000);
+		try (CachingSeekableHTTPStream stream = new CachingSeekableHTTPStream(getUrl("data"), null, 1000, 4, 2, 2)) {
+			assertEquals(data.length, stream.length());
+			Random random = new Random(2);
+			for (int i = 0; i < 200; i++) {
+				int position = random.nextInt(data.length);
+				int length = random.nextInt(2500);
+				byte[] buffer = new byte[length];
+				stream.seek(position);
+				int read = stream.read(buffer, 0, length);
+				int expectedLength = Math.min(length, data.length - position);
+				assertEquals(length == 0 ? 0 : expectedLength, read);
+				assertArrayEquals(Arrays.copyOfRange(data, position, position + expectedLength), Arrays.copyOf(buffer, Math.max(0, read)));
+				assertEquals(position + Math.max(0, read), stream.position());
+			}
+
+			stream.seek(data.length - 1);
+			assertEquals(data[data.length - 1] & 0xff, stream.read());
+			assertTrue(stream.eof());
+			assertEquals(-1, stream.read());
+			assertEquals(-1, stream.read(new byte[10], 0, 10));
+		}
+	}
+
+	@Test
+	public void cachedBlocksAreNotFetchedAgain() throws IOException {
+		byte[] data = createFile("data", 8_000);
+		try (CachingSeekableHTTPStream stream = new CachingSeekableHTTPStream(getUrl("data"), null, 1000, 16, 0, 1)) {
+			byte[] buffer = new byte[data.length];
+			assertEquals(data.length, stream.read(buffer, 0, buffer.length));
+			assertArrayEquals(data, buffer);
+			assertEquals(8, stream.getRequestCount());
+
+			stream.seek(1500);
+			assertEquals(3000, stream.read(buffer, 0, 3000));
+			assertEquals(8, stream.getRequestCount());
+			assertEquals(8, getCount.get());
+		}
+	}
+
+	@Test
+	public void readAheadCoalescesBlocks() throws IOException {
+		byte[] data = createFile("data", 40_000);
+		try (CachingSeekableHTTPStream stream = new CachingSeekableHTTPStream(getUrl("data"), null, 1000, 64, 8, 2)) {
+			byte[] buffer = new byte[100];
+			List<byte[]> reads = new ArrayList<>();
+			for (int position = 0; position < data.length; position += buffer.length) {
+				stream.seek(position);
+				assertEquals(buffer.length, stream.read(buffer, 0, buffer.length));
+				reads.add(buffer.clone());
+			}
+			for (int i = 0; i < reads.size(); i++) {
+				assertArrayEquals(Arrays.copyOfRange(data, i * buffer.length, (i + 1) * buffer.length), reads.get(i));
+			}
+			/*
+			 * blocks fetched ahead are requested 4 at a time
+			 */
+			assertTrue(stream.getRequestCount() < 40);
+		}
+	}
+
+	@Test
+	public void readAheadIsDroppedWhenConnectionsAreBusy() throws IOException {
+		byte[] data = createFile("data", 30_000);
+		holdLongerThan = 1000;
+		try (CachingSeekableHTTPStream stream = new CachingSeekableHTTPStream(getUrl("data"), null, 1000, 16, 2, 1)) {
+			byte[] buffer = new byte[100];
+			/*
+			 * the read ahead of blocks 1 and 2 takes the only connection, and is held up
+			 */
+			assertEquals(buffer.length, stream.read(buffer, 0, buffer.length));
+			stream.seek(10_000);
+			assertEquals(buffer.length, stream.read(buffer, 0, buffer.length));
+			assertArrayEquals(Arrays.copyOfRange(data, 10_000, 10_100), buffer);
+			stream.seek(20_000);
+			assertEquals(buffer.length, stream.read(buffer, 0, buffer.length));
+			assertArrayEquals(Arrays.copyOfRange(data, 20_000, 20_100), buffer);
+			assertFalse(ranges.contains("bytes=11000-12999"));
+			assertFalse(ranges.contains("bytes=21000-22999"));
+
+			release.countDown();
+			/*
+			 * block 11 wasn't read ahead, so is fetched by the reader
+			 */
+			stream.seek(11_000);
+			assertEquals(buffer.length, stream.read(buffer, 0, buffer.length));
+			assertArrayEquals(Arrays.copyOfRange(data, 11_000, 11_100), buffer);
+			assertTrue(ranges.contains("bytes=11000-11999"));
+		}
+	}
+
+	@Test
+	public void blocksEvictedBeforeTheyAreReadAheadAreFetchedAgain() throws IOException {
+		byte[] data = createFile("data", 30_000);
+		holdLongerThan = 1000;
+		try (CachingSeekableHTTPStream stream = new CachingSeekableHTTPStream(getUrl("data"), null, 1000, 3, 2, 1)) {
+			byte[] buffer = new byte[100];
+			assertEquals(buffer.length, stream.read(buffer, 0, buffer.length));
+			/*
+			 * evicts blocks 0, 1 and 2, the last two while they are being read ahead
+			 */
+			for (int position : new int[] {10_000, 20_000, 25_000}) {
+				stream.seek(position);
+				assertEquals(buffer.length, stream.read(buffer, 0, buffer.length));
+				assertArrayEquals(Arrays.copyOfRange(data, position, position + buffer.length), buffer);
+			}
+			release.countDown();
+
+			stream.seek(1500);
+			assertEquals(buffer.length, stream.read(buffer, 0, buffer.length));
+			assertArrayEquals(Arrays.copyOfRange(data, 1500, 1600), buffer);
+			assertTrue(ranges.contains("bytes=1000-1999"));
+		}
+	}
+
+	@Test
+	public void serverIgnoringRange() throws IOException {
+		byte[] data = createFile("data", 5_000);
+		ignoreRange = true;
+		try (CachingSeekableHTTPStream stream = new CachingSeekableHTTPStream(getUrl("data"), null, 1000, 8, 2, 2)) {
+			byte[] buffer = new byte[1500];
+			stream.seek(2700);
+			assertEquals(1500, stream.read(buffer, 0, buffer.length));
+			assertArrayEquals(Arrays.copyOfRange(data, 2700, 4200), buffer);
+		}
+	}
+
+	@Test
+	public void indexedBamQuery() throws IOException {
+		SAMFileHeader header = new SAMFileHeader();
+		header.addSequence(new SAMSequenceRecord("chr1", 1_000_000));
+		header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+		File bam = new File(testFolder.getRoot(), "input.bam");
+		Random random = new Random(3);
+		try (SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(header, false, bam)) {
+			for (int i = 0; i < 20_000; i++) {
+				SAMRecord record = new SAMRecord(header);
+				record.setReadName("read" + i);
+				record.setReferenceName("chr1");
+				record.setAlignmentStart(1 + random.nextInt(999_900));
+				record.setCigarString("50M");
+				record.setMappingQuality(60);
+				record.setReadBases("ACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTAC".getBytes());
+				record.setBaseQualities(SAMRecord.NULL_QUALS);
+				writer.addAlignment(record);
+			}
+		}
+
+		List<String> expected = new ArrayList<>();
+		try (SamReader reader = SamReaderFactory.makeDefault().open(bam);
+				SAMRecordIterator ite = reader.queryOverlapping("chr1", 400_000, 420_000)) {
+			ite.forEachRemaining(r -> expected.add(r.getSAMString()));
+		}
+		assertTrue(expected.size() > 300);
+
+		List<String> actual = new ArrayList<>();
+		try (SamReader reader = SamReaderFactory.makeDefault().open(SamInputResource.of(new CachingSeekableHTTPStream(getUrl("input.bam"), null, 16 * 1024, 16, 2, 2))
+				.index(new CachingSeekableHTTPStream(getUrl("input.bai"), null, 16 * 1024, 16, 2, 2)));
+				SAMRecordIterator ite = reader.queryOverlapping("chr1", 400_000, 420_000)) {
+			ite.forEachRemaining(r -> actual.add(r.getSAMString()));
+		}
+		assertEquals(expected, actual);
+	}
+}
@@ -0,0 +1,143 @@
+package org.qcmg.picard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.util.FileExtensions;
+
+public class ParallelBAMWriterTest {
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void sameRecordsAndIndexAsHtsjdk() throws IOException {
+		SAMFileHeader header = SAMWriterFactoryTest.createHeader();
+		header.getSequenceDictionary().getSequence("chrA").setSequenceLength(1_000_000);
+		header.getSequenceDictionary().getSequence("chrB").setSequenceLength(1_000_000);
+		List<SAMRecord> records = getRecords(header, 30_000);
+
+		File parallel = testFolder.newFile("parallel.bam");
+		File htsjdk = testFolder.newFile("htsjdk.bam");
+		SAMWriterFactory factory = new SAMWriterFactory(header, true, parallel, null, true, 4);
+		assertTrue(factory.getWriter() instanceof ParallelBAMWriter);
+		write(factory, records);
+		write(new SAMWriterFactory(header, true, htsjdk, null, true), records);
+
+		assertTrue(new File(parallel.getAbsolutePath() + FileExtensions.BAI_INDEX).exists());
+
+		try (SamReader pReader = SAMFileReaderFactory.createSAMFileReader(parallel);
+				SamReader hReader = SAMFileReaderFactory.createSAMFileReader(htsjdk)) {
+			assertEquals(header.getSortOrder(), pReader.getFileHeader().getSortOrder());
+			assertEquals(header.getSequenceDictionary(), pReader.getFileHeader().getSequenceDictionary());
+			try (SAMRecordIterator pIter = pReader.iterator();
+					SAMRecordIterator hIter = hReader.iterator()) {
+				assertEquals(records.size(), compare(pIter, hIter));
+			}
+
+			/*
+			 * indexed queries return the same records
+			 */
+			for (int start = 1 ; start < 1_000_000 ; start += 97_531) {
+				for (String contig : new String[] {"chrA", "chrB"}) {
+					try (SAMRecordIterator pIter = pReader.queryOverlapping(contig, start, start + 5000);
+							SAMRecordIterator hIter = hReader.queryOverlapping(contig, start, start + 5000)) {
+						compare(pIter, hIter);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void outOfOrder() throws IOException {
+		SAMFileHeader header = SAMWriterFactoryTest.createHeader();
+		List<SAMRecord> records = SAMWriterFactoryTest.getRecords(header);
+		SAMWriterFactory factory = new SAMWriterFactory(header, true, testFolder.newFile("unsorted.bam"), null, true, 2);
+		try (SAMFileWriter writer = factory.getWriter()) {
+			writer.addAlignment(records.get(1));
+			writer.addAlignment(records.get(0));
+			fail("Should have thrown an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().startsWith("Alignments added out of order"));
+		}
+	}
+
+	@Test
+	public void notUsedWhenSortingRequired() throws IOException {
+		SAMFileHeader header = SAMWriterFactoryTest.createHeader();
+		SAMWriterFactory factory = new SAMWriterFactory(header, false, testFolder.newFile("sort.bam"), null, true, 2);
+		try (SAMFileWriter writer = factory.getWriter()) {
+			assertTrue( ! (writer instanceof ParallelBAMWriter));
+		}
+		header.setSortOrder(SAMFileHeader.SortOrder.unsorted);
+		factory = new SAMWriterFactory(header, false, testFolder.newFile("unsorted.bam"), null, true, 2);
+		try (SAMFileWriter writer = factory.getWriter()) {
+			assertTrue(writer instanceof ParallelBAMWriter);
+		}
+	}
+
+	private static int compare(SAMRecordIterator pIter, SAMRecordIterator hIter) {
+		int count = 0;
+		while (hIter.hasNext()) {
+			assertTrue(pIter.hasNext());
+			assertEquals(hIter.next().getSAMString(), pIter.next().getSAMString());
+			count++;
+		}
+		assertTrue( ! pIter.hasNext());
+		return count;
+	}
+
+	private static void write(SAMWriterFactory factory, List<SAMRecord> records) {
+		try (SAMFileWriter writer = factory.getWriter()) {
+			for (SAMRecord record : records) {
+				writer.addAlignment(record);
+			}
+		}
+		factory.renameIndex();
+	}
+
+	private static List<SAMRecord> getRecords(SAMFileHeader header, int number) {
+		Random r = new Random(5);
+		List<SAMRecord> records = new ArrayList<>(number);
+		for (String contig : new String[] {"chrA", "chrB"}) {
+			int position = 1;
+			for (int i = 0 ; i < number / 2 ; i++) {
+				position += r.nextInt(60);
+				SAMRecord record = new SAMRecord(header);
+				record.setReadName("read_" + contig + "_" + i);
+				record.setReferenceName(contig);
+				record.setAlignmentStart(position);
+				record.setMappingQuality(r.nextInt(61));
+				record.setCigarString("100M");
+				StringBuilder bases = new StringBuilder();
+				byte[] quals = new byte[100];
+				for (int j = 0 ; j < 100 ; j++) {
+					bases.append("ACGT".charAt(r.nextInt(4)));
+					quals[j] = (byte) r.nextInt(41);
+				}
+				record.setReadString(bases.toString());
+				record.setBaseQualities(quals);
+				record.setAttribute("RG", "ID");
+				records.add(record);
+			}
+		}
+		return records;
+	}
+}
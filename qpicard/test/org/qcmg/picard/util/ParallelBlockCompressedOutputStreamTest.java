@@ -0,0 +1,80 @@
+package org.qcmg.picard.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import gnu.trove.list.array.TLongArrayList;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+
+public class ParallelBlockCompressedOutputStreamTest {
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void roundTripAndVirtualPointers() throws IOException {
+		/*
+		 * a mix of compressible and random data, spanning many blocks
+		 */
+		Random r = new Random(3);
+		byte[] data = new byte[1_000_000];
+		for (int i = 0 ; i < data.length ; i++) {
+			data[i] = (i / 100_000) % 2 == 0 ? (byte) "ACGT".charAt(r.nextInt(4)) : (byte) r.nextInt();
+		}
+
+		File f = testFolder.newFile("test.gz");
+		TLongArrayList addresses = new TLongArrayList();
+		long[] pointers = new long[10];
+		int[] offsets = new int[pointers.length];
+		try (ParallelBlockCompressedOutputStream out = new ParallelBlockCompressedOutputStream(new FileOutputStream(f), 0, 3, 5)) {
+			out.setBlockAddressListener((blockNumber, address) -> {
+				assertEquals(addresses.size(), blockNumber);
+				addresses.add(address);
+			});
+			int offset = 0;
+			for (int i = 0 ; i < pointers.length ; i++) {
+				pointers[i] = (out.getBlockNumber() << 16) | out.getBlockOffset();
+				offsets[i] = offset;
+				/*
+				 * uneven writes, including single bytes
+				 */
+				int length = i == pointers.length - 1 ? data.length - offset : 1 + r.nextInt(150_000);
+				if (length == 1) {
+					out.write(data[offset]);
+				} else {
+					out.write(data, offset, length);
+				}
+				offset += length;
+			}
+		}
+		assertTrue(addresses.size() > 10);
+		assertTrue(BlockCompressedInputStream.checkTermination(f) == BlockCompressedInputStream.FileTermination.HAS_TERMINATOR_BLOCK);
+
+		try (BlockCompressedInputStream in = new BlockCompressedInputStream(f)) {
+			byte[] read = in.readAllBytes();
+			assertArrayEquals(data, read);
+		}
+
+		/*
+		 * the block numbers can be converted to virtual file pointers using the addresses supplied to the listener
+		 */
+		try (BlockCompressedInputStream in = new BlockCompressedInputStream(f)) {
+			for (int i = pointers.length - 1 ; i >= 0 ; i--) {
+				long vfp = BlockCompressedFilePointerUtil.makeFilePointer(addresses.get((int) (pointers[i] >>> 16)), (int) (pointers[i] & 0xffff));
+				in.seek(vfp);
+				assertEquals(data[offsets[i]] & 0xff, in.read());
+			}
+		}
+	}
+}
@@ -10,6 +10,7 @@ import java.io.IOException;
 import java.util.AbstractQueue;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -17,12 +18,14 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.apache.commons.math3.util.Pair;
 import org.qcmg.common.log.QLevel;
@@ -32,8 +35,10 @@ import org.qcmg.common.model.PositionRange;
 import org.qcmg.common.util.Constants;
 import org.qcmg.common.util.FileUtils;
 import org.qcmg.sig.model.Comparison;
+import org.qcmg.sig.model.PackedGenotypes;
 import org.qcmg.sig.model.SigMeta;
 import org.qcmg.sig.util.ComparisonUtil;
+import org.qcmg.sig.util.GenotypeCache;
 import org.qcmg.sig.util.SignatureUtil;
 
 import gnu.trove.map.TMap;
@@ -51,6 +56,10 @@ import gnu.trove.set.hash.THashSet;
  * This is to get around the issue where we have some data sets sporting the 
  * new "bespoke" vcf format, and others with the "traditional" vcf format.
  * 
+ * The genotypes for each file are held in bit-packed form ({@link PackedGenotypes}), and can be persisted to an on-disk {@link GenotypeCache}
+ * so that the vcf files don't need to be re-parsed on subsequent runs.
+ * The all-vs-all comparison is split into blocks of files, which are compared in a fork-join pool.
+ * 
  * An xml output file is produced.
  *  
  * @author o.holmes
@@ -79,10 +88,18 @@ public class Compare {
 
     private int maxCacheSize = -1;
 	
+	/*
+	 * number of files in each block of the all-vs-all comparison
+	 */
+	static final int COMPARISON_BLOCK_SIZE = 16;
+	
 	private final Map<String, int[]> fileIdsAndCounts = new THashMap<>();
-	private final List<Comparison> allComparisons = new CopyOnWriteArrayList<>();
+	private final List<Comparison> allComparisons = Collections.synchronizedList(new ArrayList<>());
+	
+	private final ConcurrentMap<File, Pair<SigMeta, PackedGenotypes>> cache = new ConcurrentHashMap<>();
 	
-	private final ConcurrentMap<File, Pair<SigMeta,TIntByteHashMap>> cache = new ConcurrentHashMap<>();
+	private String genotypeCacheDir;
+	private GenotypeCache genotypeCache;
 
     private final Map<String, List<PositionRange>> blockPositions = new THashMap<>();
     private String blocklist;
@@ -90,6 +107,13 @@ public class Compare {
 	private boolean debugEnabled;
 
 	private int engage() throws Exception {
+		
+		/*
+		 * open the genotype cache before loading anything else, so that its positions line up with those in the ChrPositionCache
+		 */
+		if (null != genotypeCacheDir) {
+			genotypeCache = new GenotypeCache(new File(genotypeCacheDir), getGenotypeCacheSettings());
+		}
 
         if (null != blocklist) {
             SignatureUtil.loadBlockListIntoMap(blocklist, blockPositions);
@@ -186,14 +210,14 @@ public class Compare {
 			 * loop through remaining files
 			 */
 			for (int i = cacheCounterUpper ; i < files.size() ; i++) {
-				Pair<SigMeta, TIntByteHashMap> sigData = getSignatureData(files.get(i));
+				Pair<SigMeta, PackedGenotypes> sigData = getSignatureData(files.get(i));
 				fileIdsAndCounts.get(files.get(i).getAbsolutePath())[1] = sigData.getValue().size();
 				/*
 				 * compare against entries in cache
 				 */
-				for (Entry<File, Pair<SigMeta, TIntByteHashMap>> entry : cache.entrySet()) {
+				for (Entry<File, Pair<SigMeta, PackedGenotypes>> entry : cache.entrySet()) {
 					if ( ! entry.getValue().getKey().isValid() || ! sigData.getKey().isValid() || SigMeta.suitableForComparison(entry.getValue().getKey(), sigData.getKey())) {
-						Comparison comp = ComparisonUtil.compareRatiosUsingSnpsFloat(entry.getValue().getValue(), sigData.getValue(), entry.getKey(), files.get(i));
+						Comparison comp = ComparisonUtil.compareGenotypes(entry.getValue().getValue(), sigData.getValue(), entry.getKey(), files.get(i));
 						allComparisons.add(comp);
 						logger.info("adding comparison between " + entry.getKey().getAbsolutePath() + " and " + files.get(i).getAbsolutePath());
 					} else {
@@ -211,53 +235,98 @@ public class Compare {
 		}
 	}
 	
-	Pair<SigMeta, TIntByteHashMap> getSignatureData(File f) throws IOException {
+	/**
+	 * Describes the settings that affect the genotypes loaded from a qsignature vcf file - entries in the genotype cache are only used if they match
+	 */
+	String getGenotypeCacheSettings() {
+		File blocklistFile = null != blocklist ? new File(blocklist) : null;
+		return "minCoverage=" + minimumCoverage + ";minRGCoverage=" + minimumRGCoverage
+				+ ";homCutoff=" + homCutoff + ";upperHetCutoff=" + upperHetCutoff + ";lowerHetCutoff=" + lowerHetCutoff
+				+ ";blocklist=" + (null != blocklistFile ? blocklistFile.getAbsolutePath() + ":" + blocklistFile.lastModified() : "");
+	}
+	
+	Pair<SigMeta, PackedGenotypes> getSignatureData(File f) throws IOException {
 		// check map to see if this data has already been loaded
-		// if not - load
-		Pair<SigMeta, TIntByteHashMap> result = cache.get(f);
+		// if not - check the genotype cache, and failing that, load
+		Pair<SigMeta, PackedGenotypes> result = cache.get(f);
+		if (result != null) {
+			return result;
+		}
+		List<Comparison> rgComparisons = new ArrayList<>();
+		if (null != genotypeCache) {
+			result = genotypeCache.get(f, rgComparisons);
+			if (null != result) {
+				logger.info("retrieved genotypes for " + f.getAbsolutePath() + " from genotype cache");
+			}
+		}
 		if (result == null) {
-//			Pair<SigMeta, TMap<String, TIntByteHashMap>> rgResults = SignatureUtil.loadSignatureGenotype(f, minimumCoverage, minimumRGCoverage, homCutoff, upperHetCutoff, lowerHetCutoff);
-			Pair<SigMeta, TMap<String, TIntByteHashMap>> rgResults = SignatureUtil.loadSignatureGenotype(f, minimumCoverage, minimumRGCoverage, homCutoff, upperHetCutoff, lowerHetCutoff, blockPositions);
-
-			
-			/*
-			 * deal with empty file scenario first
-			 * In this instance, the second entry in the pair should be a map with size zero
-			 */
-			if (rgResults.getSecond().isEmpty()) {
-				logger.warn("zero coverage for file " + f.getAbsolutePath());
-				return  new Pair<>(rgResults.getKey(), new TIntByteHashMap());
+			Pair<SigMeta, TIntByteHashMap> loaded = loadSignatureData(f, rgComparisons);
+			result = new Pair<>(loaded.getKey(), loaded.getValue().isEmpty() ? PackedGenotypes.EMPTY : new PackedGenotypes(loaded.getValue()));
+			if (null != genotypeCache) {
+				genotypeCache.put(f, result.getKey(), result.getValue(), rgComparisons);
+			}
+		}
+		checkSignatureData(f, result.getValue(), rgComparisons);
+		return result;
+	}
+	
+	/*
+	 * warns of empty or low coverage files, and of files whose read groups don't match.
+	 * The coverage is the number of positions with a valid genotype - see PackedGenotypes.size()
+	 */
+	private void checkSignatureData(File f, PackedGenotypes genotypes, List<Comparison> rgComparisons) {
+		if (genotypes.isEmpty()) {
+			logger.warn("zero coverage for file " + f.getAbsolutePath());
+			return;
+		}
+		for (Comparison c : rgComparisons) {
+			if (c.getScore() < cutoff) {
+				logger.warn("rgs don't match!: " + c);
 			}
+		}
+		if (genotypes.size() < 1000) {
+			logger.warn("low coverage (" + genotypes.size() + ") for file " + f.getAbsolutePath());
+		}
+	}
+	
+	/*
+	 * loads the genotypes of the file, adding the comparisons between its read groups (if it has more than one) to the supplied list
+	 */
+	private Pair<SigMeta, TIntByteHashMap> loadSignatureData(File f, List<Comparison> rgComparisons) throws IOException {
+		Pair<SigMeta, TIntByteHashMap> result;
+//		Pair<SigMeta, TMap<String, TIntByteHashMap>> rgResults = SignatureUtil.loadSignatureGenotype(f, minimumCoverage, minimumRGCoverage, homCutoff, upperHetCutoff, lowerHetCutoff);
+		Pair<SigMeta, TMap<String, TIntByteHashMap>> rgResults = SignatureUtil.loadSignatureGenotype(f, minimumCoverage, minimumRGCoverage, homCutoff, upperHetCutoff, lowerHetCutoff, blockPositions);
+
+		
+		/*
+		 * deal with empty file scenario first
+		 * In this instance, the second entry in the pair should be a map with size zero
+		 */
+		if (rgResults.getSecond().isEmpty()) {
+			return  new Pair<>(rgResults.getKey(), new TIntByteHashMap());
+		}
+		/*
+		 * if we have multiple rgs (more than 2 entries in map) - perform comparison on them before adding overall ratios to cache
+		 * 
+		 */
+		if ( rgResults.getSecond().size() == 2) {
+			result = new Pair<>(rgResults.getKey(), rgResults.getSecond().get("all"));
+		} else {
 			/*
-			 * if we have multiple rgs (more than 2 entries in map) - perform comparison on them before adding overall ratios to cache
-			 * 
+			 * remove all from map
 			 */
-			if ( rgResults.getSecond().size() == 2) {
-				result = new Pair<>(rgResults.getKey(), rgResults.getSecond().get("all"));
-			} else {
-				/*
-				 * remove all from map
-				 */
-				result = new Pair<>(rgResults.getKey(), rgResults.getSecond().remove("all"));
-				
-				List<String> rgs = new ArrayList<>(rgResults.getSecond().keySet());
-				for (int i = 0 ; i < rgs.size() ; i++) {
-					String rg1 = rgs.get(i);
-					TIntByteHashMap r1 = rgResults.getSecond().get(rg1);
-					for (int j = i + 1 ; j < rgs.size() ; j++) {
-						String rg2 = rgs.get(j);
-						TIntByteHashMap r2 = rgResults.getSecond().get(rg2);
-						
-						Comparison c = ComparisonUtil.compareRatiosUsingSnpsFloat(r1, r2, new File(rg1), new File(rg2));
-						if (c.getScore() < cutoff) {
-							logger.warn("rgs don't match!: " + c);
-						}
-					}
-				}
-			}
+			result = new Pair<>(rgResults.getKey(), rgResults.getSecond().remove("all"));
 			
-			if (result.getValue().size() < 1000) {
-				logger.warn("low coverage (" + result.getValue().size() + ") for file " + f.getAbsolutePath());
+			List<String> rgs = new ArrayList<>(rgResults.getSecond().keySet());
+			for (int i = 0 ; i < rgs.size() ; i++) {
+				String rg1 = rgs.get(i);
+				TIntByteHashMap r1 = rgResults.getSecond().get(rg1);
+				for (int j = i + 1 ; j < rgs.size() ; j++) {
+					String rg2 = rgs.get(j);
+					TIntByteHashMap r2 = rgResults.getSecond().get(rg2);
+					
+					rgComparisons.add(ComparisonUtil.compareRatiosUsingSnpsFloat(r1, r2, new File(rg1), new File(rg2)));
+				}
 			}
 		}
 		return result;
@@ -272,58 +341,65 @@ public class Compare {
 	
 	private void performComparisons(List<File> files) {
 		int size = files.size();
-		AbstractQueue<Integer> queue =  new ConcurrentLinkedQueue<>();
-		for (int i = 0 ; i < size - 1 ; i++) {
-			queue.add(i);
+		List<Pair<SigMeta, PackedGenotypes>> genotypes = new ArrayList<>(size);
+		for (File f : files) {
+			genotypes.add(cache.get(f));
 		}
 		
-		ExecutorService service = Executors.newFixedThreadPool(nThreads);		
-		for (int i = 0 ; i < nThreads; i++) {
-			service.execute(() -> {
-					List<Comparison> myComps = new ArrayList<>();
-					Integer in;
-					while ((in = queue.poll()) != null) {
+		/*
+		 * split the upper triangle of the all-vs-all matrix into blocks, so that the genotypes of a block's files are re-used while they are hot in the cpu caches,
+		 * and have the fork-join pool work through the blocks
+		 */
+		int noOfBlocks = (size + COMPARISON_BLOCK_SIZE - 1) / COMPARISON_BLOCK_SIZE;
+		int[][] blockPairs = IntStream.range(0, noOfBlocks).boxed()
+				.flatMap(i -> IntStream.range(i, noOfBlocks).mapToObj(j -> new int[] {i, j}))
+				.toArray(int[][]::new);
+		logger.info("performing comparisons in " + blockPairs.length + " blocks");
+		
+		ForkJoinPool pool = new ForkJoinPool(nThreads);
+		try {
+			List<Comparison> comps = pool.submit(() -> Arrays.stream(blockPairs).parallel()
+					.flatMap(pair -> compareBlocks(files, genotypes, pair[0], pair[1]).stream())
+					.toList()).get();
+			allComparisons.addAll(comps);
+		} catch (InterruptedException | ExecutionException e) {
+			exitStatus = 1;
+			logger.error("Exception caught whilst performing comparisons", e);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/*
+	 * compares each file in block1 against each file in block2 that comes after it in the list
+	 */
+	private List<Comparison> compareBlocks(List<File> files, List<Pair<SigMeta, PackedGenotypes>> genotypes, int block1, int block2) {
+		List<Comparison> comps = new ArrayList<>();
+		int start1 = block1 * COMPARISON_BLOCK_SIZE;
+		int end1 = Math.min(start1 + COMPARISON_BLOCK_SIZE, files.size());
+		int start2 = block2 * COMPARISON_BLOCK_SIZE;
+		int end2 = Math.min(start2 + COMPARISON_BLOCK_SIZE, files.size());
+		for (int j = start2 ; j < end2 ; j++) {
+			File f2 = files.get(j);
+			Pair<SigMeta, PackedGenotypes> r2 = genotypes.get(j);
+			for (int i = start1 ; i < Math.min(end1, j) ; i++) {
+				File f1 = files.get(i);
+				Pair<SigMeta, PackedGenotypes> r1 = genotypes.get(i);
 				
-						logger.info("performing comparison for : " + in);
-						
-						File f1 = files.get(in);
-						Pair<SigMeta, TIntByteHashMap> r1 = cache.get(f1);
-						
-						for (int j = in + 1; j < size ; j ++ ) {
-							File f2 = files.get(j);
-							Pair<SigMeta, TIntByteHashMap> r2 =  cache.get(f2);
-							
-							
-							/*
-							 * If both sig metas are valid, check to see if they are suitable for comparison (same snp positions file and have had the same filters applied).
-							 * If one is invalid, perform comparison anyway, as we will be dealing with the traditional format here
-							 */
-							if ( ! r1.getKey().isValid() || ! r2.getKey().isValid() || SigMeta.suitableForComparison(r1.getKey(), r2.getKey())) {
-//								logger.info("SigMeta matches: " + ratios1.getKey() + " and " + ratios2.getKey());
-								Comparison comp = ComparisonUtil.compareRatiosUsingSnpsFloat(r1.getValue(), r2.getValue(), f1, f2);
-								myComps.add(comp);
-							} else {
-								if (debugEnabled) {
-									logger.debug("Could not compare " + f1.getAbsolutePath() + " and " + f2.getAbsolutePath() + " as their SigMeta information was not equal or not valid: " + r1.getKey() + " and " + r2.getKey());
-								}
-							}
-						}
+				/*
+				 * If both sig metas are valid, check to see if they are suitable for comparison (same snp positions file and have had the same filters applied).
+				 * If one is invalid, perform comparison anyway, as we will be dealing with the traditional format here
+				 */
+				if ( ! r1.getKey().isValid() || ! r2.getKey().isValid() || SigMeta.suitableForComparison(r1.getKey(), r2.getKey())) {
+					comps.add(ComparisonUtil.compareGenotypes(r1.getValue(), r2.getValue(), f1, f2));
+				} else {
+					if (debugEnabled) {
+						logger.debug("Could not compare " + f1.getAbsolutePath() + " and " + f2.getAbsolutePath() + " as their SigMeta information was not equal or not valid: " + r1.getKey() + " and " + r2.getKey());
 					}
-					/*
-					 * add myComps to allComps
-					 */
-					allComparisons.addAll(myComps);
-				});
-		}
-		service.shutdown();
-		try {
-			if ( ! service.awaitTermination(Constants.EXECUTOR_SERVICE_AWAIT_TERMINATION, TimeUnit.HOURS)) {
-				logger.info("Timed out getting data from threads");
+				}
 			}
-		} catch (InterruptedException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
 		}
+		return comps;
 	}
 	
 	private void populateCache(List<File> files) {
@@ -336,7 +412,7 @@ public class Compare {
 				
 						logger.info("loading data from: " + f.getAbsolutePath());
 						
-						Pair<SigMeta, TIntByteHashMap> genotypes = null;
+						Pair<SigMeta, PackedGenotypes> genotypes = null;
 						try {
 							genotypes = getSignatureData(f);
 						} catch (Exception e) {
@@ -351,7 +427,7 @@ public class Compare {
 								e1.printStackTrace();
 							}
 						}
-						Pair<SigMeta, TIntByteHashMap> prevGenotypes = cache.putIfAbsent(f, genotypes);
+						Pair<SigMeta, PackedGenotypes> prevGenotypes = cache.putIfAbsent(f, genotypes);
 						if (null != prevGenotypes) {
 							logger.warn("already genotypes associated with file: " + f.getAbsolutePath());
 						}
@@ -433,6 +509,7 @@ public class Compare {
 			options.getNoOfThreads().ifPresent(i -> nThreads = i);
 			options.getMinRGCoverage().ifPresent(i -> minimumRGCoverage = i);
 			options.getMaxCacheSize().ifPresent(i -> maxCacheSize = i);
+			options.getGenotypeCache().ifPresent(s -> genotypeCacheDir = s);
 			options.getHomCutoff().ifPresent(s -> homCutoff = s);
 			options.getHetUpperCutoff().ifPresent(s -> upperHetCutoff = s);
 			options.getHetLowerCutoff().ifPresent(s -> lowerHetCutoff = s);
@@ -440,6 +517,7 @@ public class Compare {
 			logger.tool("Setting minimum coverage to: " + minimumCoverage);
 			logger.tool("Setting minimum RG coverage to: " + minimumRGCoverage);
 			logger.tool("Setting max cache size to: " + maxCacheSize);
+			logger.tool("Setting genotype cache directory to: " + genotypeCacheDir);
 			logger.tool("Setting homCutoff to: " + homCutoff);
 			logger.tool("Setting upperHetCutoff to: " + upperHetCutoff);
 			logger.tool("Setting lowerHetCutoff to: " + lowerHetCutoff);
@@ -8,9 +8,11 @@ package org.qcmg.sig;
 
 import gnu.trove.map.TObjectIntMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
+import htsjdk.samtools.QueryInterval;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMReadGroupRecord;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
 import htsjdk.samtools.SamReader;
 import jakarta.xml.bind.DatatypeConverter;
 import org.qcmg.common.log.QLogger;
@@ -56,6 +58,11 @@ import java.util.zip.GZIPOutputStream;
  * 
  * Read group coverage is displayed allowing the user to run the CompareRG class to determine if the read groups that make up the BAM match each other.
  * 
+ * If the bam file is indexed (and the sequential option has not been set), only the reads that overlap the positions of interest are retrieved from the bam.
+ * The positions are split into regions that are examined by a number of threads (noOfThreads option), each region tallying its base counts into a primitive array,
+ * and the regions are written out in order as they complete, with only a bounded number of regions in flight at any one time.
+ * Otherwise the whole bam file is streamed through, and matched against the positions.
+ * 
  * @author oliverh
  * @param
  *
@@ -83,6 +90,8 @@ public class Generate {
 	
 	private int minMappingQuality = 10;
 	private int minBaseQuality = 10;
+	private int noOfThreads = 4;
+	private boolean sequential;
 	private static final float minGCScore = 0.70000f ;
 	private String validationStringency;
 	
@@ -101,6 +110,12 @@ public class Generate {
 	
 	private final List<ChrPosition> nextCPs = new java.util.LinkedList<>();
 	
+	/*
+	 * number of positions examined by each region reader task in indexed mode, and the number of tasks that can be in flight (per thread)
+	 */
+	static final int POSITIONS_PER_REGION = 5000;
+	private static final int REGIONS_IN_FLIGHT_PER_THREAD = 4;
+	
 	public int engage() throws Exception {
 		
 		bamFiles = FileUtils.findFilesEndingWithFilter(cmdLineInputFiles[0], ".bam");
@@ -181,11 +196,23 @@ public class Generate {
 			cp = null;
 			
 			SAMFileHeader header;
+			boolean hasIndex;
 			try (SamReader reader = SAMFileReaderFactory.createSAMFileReaderSig(bamFile)) {
 				header = reader.getFileHeader();
+				hasIndex = reader.hasIndex();
 			}
 			
 			List<String> bamContigs = BAMFileUtils.getContigsFromHeader(header);
+			/*
+			 * the positions file may have had 'chr' added to numerical contigs - map back to the contig names used in the bam for querying
+			 */
+			Map<String, String> positionsContigToBamContig = new HashMap<>();
+			for (String contig : bamContigs) {
+				positionsContigToBamContig.put(contig, contig);
+				if (Character.isDigit(contig.charAt(0))) {
+					positionsContigToBamContig.putIfAbsent("chr" + contig, contig);
+				}
+			}
 			if (SignatureUtil.doContigsStartWithDigit(bamContigs)) {
 				/*
 				 * add 'chr' to numerical contigs in bamContigs to see if that gives us a match
@@ -211,7 +238,13 @@ public class Generate {
 			rgIds = getReadGroupsAsMap(header);
 			
 			try {
-				runSequentially(bamFile);
+				if (hasIndex && ! sequential) {
+					logger.info("bam file is indexed - will retrieve reads overlapping positions using " + noOfThreads + " threads");
+					runIndexed(bamFile, positionsContigToBamContig);
+				} else {
+					logger.info("bam file is " + (hasIndex ? "" : "not ") + "indexed, sequential option " + (sequential ? "" : "not ") + "set - will stream through bam file");
+					runSequentially(bamFile);
+				}
 			} catch (Exception e1) {
 				// TODO Auto-generated catch block
 				e1.printStackTrace();
@@ -557,26 +590,7 @@ public class Generate {
 		consumerEx.shutdown();
 		
 		// setup writer
-		/*
-		 * If outputFile is defined, and is not a directory, use that
-		 * If outputFile is defined and is a directory, use directory and input filename
-		 * If outputFile is not defined, look at outputDirectory
-		 * If outputDirectory is defined, use directory and input filename
-		 * If outputDirectory is not defined, use input directory and input filename.
-		 * 
-		 */
-		File outputVCFFile = null;
-		if (null != outputFile) {
-			if (new File(outputFile).isDirectory()) {
-				outputVCFFile = new File(outputFile + FileUtils.FILE_SEPARATOR + bamFile.getName() + SignatureUtil.QSIG_VCF_GZ);
-			} else {
-				outputVCFFile = new File(outputFile);
-			}
-		} else if (null != outputDirectory) {
-			outputVCFFile = new File(outputDirectory + FileUtils.FILE_SEPARATOR + bamFile.getName() + SignatureUtil.QSIG_VCF_GZ);
-		} else {
-			outputVCFFile = new File(bamFile.getAbsoluteFile() + SignatureUtil.QSIG_VCF_GZ);
-		}
+		File outputVCFFile = getOutputVcfFile(bamFile);
 		logger.info("will write output vcf to file: " + outputVCFFile.getAbsolutePath());
 		writerEx.execute(new Writer(wLatch, cLatch, outputVCFFile, Thread.currentThread(), bamFile, true));
 		writerEx.shutdown();
@@ -608,30 +622,266 @@ public class Generate {
 	
 	private void updateResults(ChrPosition vcf, SAMRecord sam) {
 		if (null != sam && null != vcf) {
-			// get read index
-			final int indexInRead = sam.getReadPositionAtReferencePosition(vcf.getStartPosition()) - 1;		// picard's method is 1-based
-			if (indexInRead > -1) {
-				final byte[] readBases = sam.getReadBases();
-				if (indexInRead < readBases.length) {
-				
-					if (sam.getBaseQualities()[indexInRead] < minBaseQuality) {
-						return;
+			int innerArrayPosition = getBaseIndex(sam, vcf.getStartPosition(), minBaseQuality);
+			if (innerArrayPosition > -1) {
+				results.computeIfAbsent(vcf, f -> new int[rgIds.size()][4])[getReadGroupIndex(sam)][innerArrayPosition]++;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the index (0-3 for A,C,G,T) of the base that the read has at the supplied reference position, 
+	 * or -1 if the read does not have a base at that position, the base quality is below the minimum, or the base is not one of ACGT
+	 */
+	static int getBaseIndex(SAMRecord sam, int position, int minBaseQuality) {
+		// get read index
+		final int indexInRead = sam.getReadPositionAtReferencePosition(position) - 1;		// picard's method is 1-based
+		if (indexInRead > -1) {
+			final byte[] readBases = sam.getReadBases();
+			if (indexInRead < readBases.length) {
+				if (sam.getBaseQualities()[indexInRead] < minBaseQuality) {
+					return -1;
+				}
+				final char c = (char) readBases[indexInRead];
+				return c == 'A' ? 0 : (c == 'C' ? 1 : (c == 'G' ? 2 : (c == 'T' ? 3 : -1)));
+			}
+		}
+		return -1;
+	}
+	
+	private int getReadGroupIndex(SAMRecord sam) {
+		SAMReadGroupRecord srgr = sam.getReadGroup();
+		return rgIds.get(null != srgr ? srgr.getId() : null);
+	}
+	
+	/*
+	 * If outputFile is defined, and is not a directory, use that
+	 * If outputFile is defined and is a directory, use directory and input filename
+	 * If outputFile is not defined, look at outputDirectory
+	 * If outputDirectory is defined, use directory and input filename
+	 * If outputDirectory is not defined, use input directory and input filename.
+	 */
+	private File getOutputVcfFile(File bamFile) {
+		if (null != outputFile) {
+			if (new File(outputFile).isDirectory()) {
+				return new File(outputFile + FileUtils.FILE_SEPARATOR + bamFile.getName() + SignatureUtil.QSIG_VCF_GZ);
+			}
+			return new File(outputFile);
+		} else if (null != outputDirectory) {
+			return new File(outputDirectory + FileUtils.FILE_SEPARATOR + bamFile.getName() + SignatureUtil.QSIG_VCF_GZ);
+		}
+		return new File(bamFile.getAbsoluteFile() + SignatureUtil.QSIG_VCF_GZ);
+	}
+	
+	private void writeVcfHeader(OutputStream os, File inputFile, boolean isBam) throws IOException {
+		final StringBuilder sbRgIds = new StringBuilder();
+		
+		/*
+		 * convert TObjectIntMap to HashMap to use streaming etc
+		 */
+		Map<String, Integer> convertedMap = new HashMap<>();
+		if (null != rgIds) {
+			rgIds.forEachEntry((String k, int v) -> {
+				convertedMap.putIfAbsent(k, v);
+				return true;
+			} );
+		}
+			
+		convertedMap.entrySet().stream()
+			.sorted(Entry.comparingByValue())
+			.forEach(e -> sbRgIds.append("##rg").append(e.getValue()).append(Constants.EQ).append(e.getKey()).append(Constants.NL));
+		
+		os.write(getHeader(isBam).toString().getBytes());
+		os.write(("##input=" + inputFile.getAbsolutePath() + Constants.NL).getBytes());
+		if (null != rgIds) {
+			os.write((sbRgIds.toString()).getBytes());
+		}
+		os.write(VcfHeaderUtils.STANDARD_FINAL_HEADER_LINE.getBytes());
+		os.write(Constants.NL);
+	}
+	
+	/**
+	 * Returns the vcf record (without a trailing new line) for the supplied position and read group base counts
+	 */
+	static StringBuilder getVcfRecord(ChrPosition cp, int[][] bsps) {
+		final StringBuilder sb = new StringBuilder(cp.getChromosome());
+		int tabIndex = cp.getName().indexOf("\t");
+		String id = cp.getName().substring(0, tabIndex);
+		String ref = cp.getName().substring(tabIndex + 1);
+		sb.append(Constants.TAB);
+		sb.append(cp.getStartPosition());
+		sb.append(Constants.TAB);
+		sb.append(id).append(Constants.TAB);	// id
+		sb.append(ref).append(Constants.TAB);						// ref allele
+		sb.append(Constants.MISSING_DATA).append(Constants.TAB);	// alt allele
+		sb.append(Constants.MISSING_DATA).append(Constants.TAB);	// qual
+		sb.append(Constants.MISSING_DATA).append(Constants.TAB);	// filter
+		sb.append("QAF=t:");										// info
+		sb.append(getTotalDist(bsps));
+		
+		/*
+		 * now again for the readgroups that we have
+		 */
+		for (int i = 0 ; i < bsps.length ; i++) {
+			String readGroupSpecificDist = getDist(bsps, i);
+			if ( ! readGroupSpecificDist.isEmpty()) { 
+				sb.append(Constants.COMMA).append("rg").append(i).append(Constants.COLON).append(readGroupSpecificDist);
+			}
+		}
+		return sb;
+	}
+	
+	/**
+	 * Retrieves only those reads that overlap the positions of interest using the bam index.
+	 * <p>
+	 * Positions (in the order supplied by the positions iterator) are split into regions of up to {@link #POSITIONS_PER_REGION} positions on the same contig.
+	 * Each region is handed to a thread pool, and its base counts are tallied into a primitive array, indexed by the position's ordinal within the region, 
+	 * the read group, and the base. 
+	 * Regions are written out in order, and no more than noOfThreads * {@link #REGIONS_IN_FLIGHT_PER_THREAD} regions are held in memory at any one time.
+	 */
+	private void runIndexed(File bamFile, Map<String, String> positionsContigToBamContig) throws Exception {
+		File outputVCFFile = getOutputVcfFile(bamFile);
+		logger.info("will write output vcf to file: " + outputVCFFile.getAbsolutePath());
+		
+		final int maxRegionsInFlight = noOfThreads * REGIONS_IN_FLIGHT_PER_THREAD;
+		final ExecutorService executor = Executors.newFixedThreadPool(noOfThreads);
+		final Queue<SamReader> readers = new ConcurrentLinkedQueue<>();
+		final ThreadLocal<SamReader> threadReader = ThreadLocal.withInitial(() -> {
+			SamReader reader = SAMFileReaderFactory.createSAMFileReaderSig(bamFile, validationStringency);
+			readers.add(reader);
+			return reader;
+		});
+		final Deque<Region> inFlight = new ArrayDeque<>();
+		long positionCount = 0;
+		long regionCount = 0;
+		long recordsWritten = 0;
+		
+		try (OutputStream os = new GZIPOutputStream(new FileOutputStream(outputVCFFile), 1024 * 1024)) {
+			writeVcfHeader(os, bamFile, true);
+			
+			List<ChrPosition> regionPositions = new ArrayList<>(POSITIONS_PER_REGION);
+			ChrPosition nextCP = positionsIterator.next();
+			while (null != nextCP || ! regionPositions.isEmpty()) {
+				boolean regionComplete = null == nextCP || regionPositions.size() >= POSITIONS_PER_REGION 
+						|| ( ! regionPositions.isEmpty() && ! regionPositions.getFirst().getChromosome().equals(nextCP.getChromosome()));
+				if (regionComplete) {
+					if (inFlight.size() >= maxRegionsInFlight) {
+						recordsWritten += writeRegion(inFlight.removeFirst(), os);
 					}
-					
-					final char c = (char) readBases[indexInRead];
-					SAMReadGroupRecord srgr = sam.getReadGroup();
-					String rgId = null != srgr ? srgr.getId() : null;
-					
-					int rgPosition = rgIds.get(rgId);
-					int innerArrayPosition = c == 'A' ? 0 : (c == 'C' ? 1 : (c == 'G' ? 2 : (c == 'T' ? 3 : -1)));
-					if (innerArrayPosition > -1) {
-						results.computeIfAbsent(vcf, f -> new int[rgIds.size()][4])[rgPosition][innerArrayPosition]++;
+					final ChrPosition[] positions = regionPositions.toArray(new ChrPosition[0]);
+					final String bamContig = positionsContigToBamContig.get(positions[0].getChromosome());
+					inFlight.addLast(new Region(positions, executor.submit(() -> countBases(threadReader.get(), bamContig, positions))));
+					regionCount++;
+					regionPositions = new ArrayList<>(POSITIONS_PER_REGION);
+				}
+				if (null != nextCP) {
+					regionPositions.add(nextCP);
+					positionCount++;
+					nextCP = positionsIterator.next();
+				}
+			}
+			while ( ! inFlight.isEmpty()) {
+				recordsWritten += writeRegion(inFlight.removeFirst(), os);
+			}
+		} finally {
+			executor.shutdownNow();
+			executor.awaitTermination(Constants.EXECUTOR_SERVICE_AWAIT_TERMINATION, TimeUnit.HOURS);
+			for (SamReader reader : readers) {
+				reader.close();
+			}
+		}
+		logger.info("examined " + positionCount + " positions in " + regionCount + " regions, wrote " + recordsWritten + " records with coverage");
+	}
+	
+	/*
+	 * Tallies the base counts for the supplied positions, which must all be on the same contig, from the reads that overlap them.
+	 * Counts are held in a flat array: [position ordinal][read group][base]
+	 */
+	int[] countBases(SamReader reader, String bamContig, ChrPosition[] positions) throws IOException {
+		final int rgCount = rgIds.size();
+		final int[] counts = new int[positions.length * rgCount * 4];
+		if (null == bamContig) {
+			/*
+			 * contig is not in the bam - no coverage
+			 */
+			return counts;
+		}
+		final int contigIndex = reader.getFileHeader().getSequenceIndex(bamContig);
+		
+		/*
+		 * ordinals sorted by position, so that the positions covered by a read can be found with a binary search
+		 */
+		final int[] ordinals = java.util.stream.IntStream.range(0, positions.length).boxed()
+				.sorted(Comparator.comparingInt(i -> positions[i].getStartPosition()))
+				.mapToInt(Integer::intValue).toArray();
+		final int[] sortedStarts = new int[positions.length];
+		final QueryInterval[] intervals = new QueryInterval[positions.length];
+		for (int i = 0 ; i < ordinals.length ; i++) {
+			sortedStarts[i] = positions[ordinals[i]].getStartPosition();
+			intervals[i] = new QueryInterval(contigIndex, sortedStarts[i], sortedStarts[i]);
+		}
+		
+		try (SAMRecordIterator iter = reader.queryOverlapping(QueryInterval.optimizeIntervals(intervals))) {
+			while (iter.hasNext()) {
+				final SAMRecord rec = iter.next();
+				if ( ! SAMUtils.isSAMRecordValidForVariantCalling(rec) || rec.getMappingQuality() < minMappingQuality) {
+					continue;
+				}
+				final int alignmentEnd = rec.getAlignmentEnd();
+				int i = Arrays.binarySearch(sortedStarts, rec.getAlignmentStart());
+				if (i < 0) {
+					i = -i - 1;
+				} else {
+					// move back to the first of any duplicate positions
+					while (i > 0 && sortedStarts[i - 1] == sortedStarts[i]) {
+						i--;
 					}
 				}
+				int rgIndex = -1;
+				for ( ; i < sortedStarts.length && sortedStarts[i] <= alignmentEnd ; i++) {
+					int baseIndex = getBaseIndex(rec, sortedStarts[i], minBaseQuality);
+					if (baseIndex > -1) {
+						if (rgIndex == -1) {
+							rgIndex = getReadGroupIndex(rec);
+						}
+						counts[(ordinals[i] * rgCount + rgIndex) * 4 + baseIndex]++;
+					}
+				}
+			}
+		}
+		return counts;
+	}
+	
+	/*
+	 * waits for the region to complete and writes out the positions that have coverage, returning the number written
+	 */
+	private int writeRegion(Region region, OutputStream os) throws Exception {
+		final int[] counts = region.counts().get();
+		final int rgCount = rgIds.size();
+		int written = 0;
+		for (int p = 0 ; p < region.positions().length ; p++) {
+			int offset = p * rgCount * 4;
+			boolean hasCoverage = false;
+			for (int i = offset, end = offset + rgCount * 4 ; i < end ; i++) {
+				if (counts[i] > 0) {
+					hasCoverage = true;
+					break;
+				}
+			}
+			if (hasCoverage) {
+				int[][] bsps = new int[rgCount][];
+				for (int rg = 0 ; rg < rgCount ; rg++) {
+					bsps[rg] = Arrays.copyOfRange(counts, offset + rg * 4, offset + rg * 4 + 4);
+				}
+				os.write(getVcfRecord(region.positions()[p], bsps).append(Constants.NL).toString().getBytes());
+				written++;
 			}
 		}
+		return written;
 	}
 	
+	private record Region(ChrPosition[] positions, Future<int[]> counts) {}
+	
 	/**
 	 * Examines the positions file to see if it is a vcf file.
 	 * Does this in 2 ways - checks the name, and if it contains vcf, all good.
@@ -798,6 +1048,8 @@ public class Generate {
 			options.getGenePositions().ifPresent(g -> genePositions = g);
 			options.getReference().ifPresent(r -> reference = r);
 			options.getStream().ifPresent(s -> stream = s);
+			options.getNoOfThreads().ifPresent(i -> noOfThreads = Math.max(1, i));
+			sequential = options.runInSequentialMode();
 			
 			if (stream) {
 				logger.warn("Please ensure that the input file is in the same chromosome order as the positions file! IF this order is different, then any output generated will be incomplete.");
@@ -910,31 +1162,8 @@ public class Generate {
 		public void run() {
 			try {
 				
-				final StringBuilder sbRgIds = new StringBuilder();
-				
-				/*
-				 * convert TObjectIntMap to HashMap to use streaming etc
-				 */
-				Map<String, Integer> convertedMap = new HashMap<>();
-				if (null != rgIds) {
-					rgIds.forEachEntry((String k, int v) -> {
-						convertedMap.putIfAbsent(k, v);
-						return true;
-					} );
-				}
-					
-				convertedMap.entrySet().stream()
-					.sorted(Entry.comparingByValue())
-					.forEach(e -> sbRgIds.append("##rg").append(e.getValue()).append(Constants.EQ).append(e.getKey()).append(Constants.NL));
-				
 				os = new GZIPOutputStream(new FileOutputStream(outputVCFFile), 1024 * 1024);
-				os.write(getHeader(isBam).toString().getBytes());
-				os.write(("##input=" + inputFile.getAbsolutePath() + Constants.NL).getBytes());
-				if (null != rgIds) {
-					os.write((sbRgIds.toString()).getBytes());
-				}
-				os.write(VcfHeaderUtils.STANDARD_FINAL_HEADER_LINE.getBytes());
-				os.write(Constants.NL);
+				writeVcfHeader(os, inputFile, isBam);
 				
 				
 				/*
@@ -968,32 +1197,7 @@ public class Generate {
 						final int [][] bsps = results.remove(cp);
 						
 						if (null != bsps && bsps.length > 0) {
-							final StringBuilder sb = new StringBuilder(cp.getChromosome());
-							int tabIndex = cp.getName().indexOf("\t");
-							String id = cp.getName().substring(0, tabIndex);
-							String ref = cp.getName().substring(tabIndex + 1);
-							sb.append(Constants.TAB);
-							sb.append(cp.getStartPosition());
-							sb.append(Constants.TAB);
-							sb.append(id).append(Constants.TAB);	// id
-							sb.append(ref).append(Constants.TAB);						// ref allele
-							sb.append(Constants.MISSING_DATA).append(Constants.TAB);	// alt allele
-							sb.append(Constants.MISSING_DATA).append(Constants.TAB);	// qual
-							sb.append(Constants.MISSING_DATA).append(Constants.TAB);	// filter
-							sb.append("QAF=t:");										// info
-			 				sb.append(getTotalDist(bsps));
-							
-							/*
-							 * now again for the readgroups that we have
-							 */
-							
-							for (int i = 0 ; i < bsps.length ; i++) {
-								String readGroupSpecificDist = getDist(bsps, i);
-								if ( ! readGroupSpecificDist.isEmpty()) { 
-									sb.append(Constants.COMMA).append("rg").append(i).append(Constants.COLON).append(readGroupSpecificDist);
-								}
-							}
-						
+							final StringBuilder sb = getVcfRecord(cp, bsps);
 							sb.append(Constants.NL);
 							os.write(sb.toString().getBytes());
 						}
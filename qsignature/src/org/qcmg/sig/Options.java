@@ -43,6 +43,8 @@ final class Options {
 			.getMessage("NO_OF_THREADS_OPTION_DESCRIPTION");
 	private static final String MAX_CACHE_SIZE_OPTION_DESCRIPTION = Messages
 			.getMessage("MAX_CACHE_SIZE_OPTION_DESCRIPTION");
+	private static final String GENOTYPE_CACHE_OPTION_DESCRIPTION = Messages
+			.getMessage("GENOTYPE_CACHE_OPTION_DESCRIPTION");
 	private static final String SEQUENTIAL_OPTION_DESCRIPTION = Messages
 			.getMessage("SEQUENTIAL_OPTION_DESCRIPTION");
 	private static final String VALIDATION_STRINGENCY_OPTION_DESCRIPTION = Messages.getMessage("VALIDATION_STRINGENCY_DESCRIPTION");
@@ -98,6 +100,8 @@ final class Options {
 			.describedAs("noOfThreads");
 		parser.acceptsAll(asList("maxCacheSize", "max-cache-size"), MAX_CACHE_SIZE_OPTION_DESCRIPTION).withRequiredArg().ofType(Integer.class)
 		.describedAs("maxCacheSize");
+		parser.acceptsAll(asList("genotypeCache", "genotype-cache"), GENOTYPE_CACHE_OPTION_DESCRIPTION).withRequiredArg().ofType(String.class)
+		.describedAs("genotypeCache");
 		parser.accepts("snpPositions", SNP_POSITION_DESCRIPTION).withRequiredArg().ofType(String.class)
 			.describedAs("snpPositions");
 		parser.accepts("genePositions", "Gff3 file containing list of gene positions").withRequiredArg().ofType(String.class)
@@ -323,6 +327,9 @@ final class Options {
 	public Optional<Integer> getMaxCacheSize() {
 		return Optional.ofNullable(maxCacheSize);
   }
+	public Optional<String> getGenotypeCache() {
+		return Optional.ofNullable((String) options.valueOf("genotypeCache"));
+	}
 	public Optional<Boolean> getStream() {
 		return Optional.of(options.has("stream"));
 	}
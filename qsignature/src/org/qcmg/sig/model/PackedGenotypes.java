@@ -0,0 +1,204 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+package org.qcmg.sig.model;
+
+import java.util.Arrays;
+
+import org.qcmg.sig.util.SignatureUtil;
+
+import gnu.trove.iterator.TIntByteIterator;
+import gnu.trove.map.hash.TIntByteHashMap;
+import gnu.trove.procedure.TIntByteProcedure;
+
+/**
+ * Bit-packed genotypes for a single sample.
+ * <p>
+ * Columns are the position indices handed out by {@link org.qcmg.common.util.ChrPositionCache}, and so the genotypes for different samples are aligned by position.
+ * Each of the 10 coded genotypes (see {@link SignatureUtil#isCodedGenotypeValid(byte)}) is mapped to a 4 bit code, which is stored across 4 bit planes,
+ * with an additional plane recording which columns have a genotype. Each plane holds 64 columns per long.
+ * <p>
+ * Comparing 2 samples then just involves ANDing and XORing the planes, and counting bits, 64 positions at a time.
+ * Instances are immutable and can be shared between threads.
+ */
+public class PackedGenotypes {
+
+	public static final int NO_OF_CODE_PLANES = 4;
+
+	private static final byte[] GENOTYPES = new byte[] {0, SignatureUtil.HOM_A, SignatureUtil.HOM_C, SignatureUtil.HOM_G, SignatureUtil.HOM_T,
+			SignatureUtil.HET_AC, SignatureUtil.HET_AG, SignatureUtil.HET_AT, SignatureUtil.HET_CG, SignatureUtil.HET_CT, SignatureUtil.HET_GT};
+	private static final int[] CODES = new int[256];
+	static {
+		for (int i = 1 ; i < GENOTYPES.length ; i++) {
+			CODES[GENOTYPES[i] & 0xff] = i;
+		}
+	}
+
+	public static final PackedGenotypes EMPTY = new PackedGenotypes(new long[0], 0, 0);
+
+	/*
+	 * plane 0 is the called plane, planes 1 to 4 hold the bits of the genotype codes
+	 * plane p occupies bits[p * words] to bits[(p + 1) * words - 1]
+	 */
+	private final long[] bits;
+	private final int words;
+	private final int size;
+
+	/**
+	 * Packs the supplied map of position index to coded genotype. Entries that do not hold a valid coded genotype are ignored.
+	 */
+	public PackedGenotypes(TIntByteHashMap genotypes) {
+		if (null == genotypes) {
+			throw new IllegalArgumentException("Null map passed to PackedGenotypes");
+		}
+		int maxColumn = -1;
+		for (int column : genotypes.keys()) {
+			if (column < 0) {
+				throw new IllegalArgumentException("Negative position index passed to PackedGenotypes: " + column);
+			}
+			maxColumn = Math.max(maxColumn, column);
+		}
+		words = (maxColumn >> 6) + 1;
+		bits = new long[words * (NO_OF_CODE_PLANES + 1)];
+		int count = 0;
+		for (TIntByteIterator it = genotypes.iterator() ; it.hasNext() ; ) {
+			it.advance();
+			int code = CODES[it.value() & 0xff];
+			if (code > 0) {
+				set(it.key(), code);
+				count++;
+			}
+		}
+		size = count;
+	}
+
+	/**
+	 * Wraps previously packed planes (as returned by {@link #getBits()})
+	 */
+	public PackedGenotypes(long[] bits, int words, int size) {
+		if (null == bits || bits.length != words * (NO_OF_CODE_PLANES + 1)) {
+			throw new IllegalArgumentException("Array of packed genotypes does not contain " + (NO_OF_CODE_PLANES + 1) + " planes of " + words + " words");
+		}
+		this.bits = bits;
+		this.words = words;
+		this.size = size;
+	}
+
+	private void set(int column, int code) {
+		int word = column >> 6;
+		long mask = 1L << column;
+		bits[word] |= mask;
+		for (int p = 0 ; p < NO_OF_CODE_PLANES ; p++) {
+			if ((code & (1 << p)) != 0) {
+				bits[(p + 1) * words + word] |= mask;
+			}
+		}
+	}
+
+	/**
+	 * Returns the coded genotype at the supplied position index, or 0 if there isn't one
+	 */
+	public byte get(int column) {
+		int word = column >> 6;
+		if (column < 0 || word >= words) {
+			return 0;
+		}
+		long mask = 1L << column;
+		if ((bits[word] & mask) == 0) {
+			return 0;
+		}
+		int code = 0;
+		for (int p = 0 ; p < NO_OF_CODE_PLANES ; p++) {
+			if ((bits[(p + 1) * words + word] & mask) != 0) {
+				code |= 1 << p;
+			}
+		}
+		return GENOTYPES[code];
+	}
+
+	/**
+	 * Number of positions that have a genotype.
+	 * Unlike the size of the map the genotypes were packed from, entries that did not hold a valid coded genotype are not counted.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int getWords() {
+		return words;
+	}
+
+	/**
+	 * The underlying planes - must not be modified
+	 */
+	public long[] getBits() {
+		return bits;
+	}
+
+	/**
+	 * Executes the procedure for each position index and coded genotype, in ascending position order.
+	 * Stops (and returns false) if the procedure returns false.
+	 */
+	public boolean forEachEntry(TIntByteProcedure procedure) {
+		for (int w = 0 ; w < words ; w++) {
+			long called = bits[w];
+			while (called != 0) {
+				int column = (w << 6) + Long.numberOfTrailingZeros(called);
+				if ( ! procedure.execute(column, get(column))) {
+					return false;
+				}
+				called &= called - 1;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of positions that have a genotype in both samples (the overlap) in the first element of the array,
+	 * and the number of those positions at which the genotypes match in the second.
+	 */
+	public int[] compare(PackedGenotypes other) {
+		long[] a = bits;
+		long[] b = other.bits;
+		int aWords = words;
+		int bWords = other.words;
+		int n = Math.min(aWords, bWords);
+
+		/*
+		 * no branches in this loop
+		 */
+		long overlap = 0;
+		long mismatches = 0;
+		for (int w = 0 ; w < n ; w++) {
+			long both = a[w] & b[w];
+			long diff = (a[aWords + w] ^ b[bWords + w])
+					| (a[2 * aWords + w] ^ b[2 * bWords + w])
+					| (a[3 * aWords + w] ^ b[3 * bWords + w])
+					| (a[4 * aWords + w] ^ b[4 * bWords + w]);
+			overlap += Long.bitCount(both);
+			mismatches += Long.bitCount(both & diff);
+		}
+		return new int[] {(int) overlap, (int) (overlap - mismatches)};
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * size + Arrays.hashCode(bits);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null || getClass() != obj.getClass())
+			return false;
+		PackedGenotypes other = (PackedGenotypes) obj;
+		return size == other.size && words == other.words && Arrays.equals(bits, other.bits);
+	}
+}
@@ -13,6 +13,19 @@ public class SigMeta {
 		this.mappingQ = mq;
 		this.gcScore = gc;
 	}
+	
+	public String getMd5sum() {
+		return md5sum;
+	}
+	public int getBaseQ() {
+		return baseQ;
+	}
+	public int getMappingQ() {
+		return mappingQ;
+	}
+	public float getGcScore() {
+		return gcScore;
+	}
 
 	@Override
 	public int hashCode() {
@@ -13,6 +13,7 @@ import java.util.Map.Entry;
 
 import org.qcmg.common.model.ChrPosition;
 import org.qcmg.sig.model.Comparison;
+import org.qcmg.sig.model.PackedGenotypes;
 
 import gnu.trove.iterator.TIntByteIterator;
 import gnu.trove.iterator.TIntShortIterator;
@@ -214,4 +215,28 @@ public class ComparisonUtil {
 
 		return new Comparison(file1, file1Ratios.size(), file2, file2Ratios.size(), match, totalCompared);
 	}
+	
+	public static Comparison compareGenotypes(PackedGenotypes file1Genotypes, PackedGenotypes file2Genotypes, File file1, File file2) {
+		return compareGenotypes(file1Genotypes, file2Genotypes, file1.getAbsolutePath(), file2.getAbsolutePath());
+	}
+	/**
+	 * Equivalent to {@link #compareRatiosUsingSnpsFloat(TIntByteHashMap, TIntByteHashMap, String, String)}, but operating on bit-packed genotypes
+	 */
+	public static Comparison compareGenotypes(PackedGenotypes file1Genotypes, PackedGenotypes file2Genotypes, String file1, String file2) {
+		if (null == file1Genotypes || null == file2Genotypes) {
+			throw new IllegalArgumentException("null genotypes passed to compareGenotypes");
+		}
+		if (null == file1 || null == file2) {
+			throw new IllegalArgumentException("null files passed to compareGenotypes");
+		}
+		if (file1Genotypes.isEmpty() || file2Genotypes.isEmpty()) {
+			return  new Comparison(file1, file1Genotypes.size(), file2, file2Genotypes.size(), 0, 0);
+		}
+		
+		if (file1.equals(file2)) {
+			return  new Comparison(file1, file1Genotypes.size(), file2, file2Genotypes.size(), 0, file1Genotypes.size());
+		}
+		int[] overlapAndMatches = file1Genotypes.compare(file2Genotypes);
+		return new Comparison(file1, file1Genotypes.size(), file2, file2Genotypes.size(), overlapAndMatches[1], overlapAndMatches[0]);
+	}
 }
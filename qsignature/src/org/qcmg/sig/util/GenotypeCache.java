@@ -0,0 +1,308 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+package org.qcmg.sig.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.math3.util.Pair;
+import org.qcmg.common.log.QLogger;
+import org.qcmg.common.log.QLoggerFactory;
+import org.qcmg.common.util.ChrPositionCache;
+import org.qcmg.sig.model.Comparison;
+import org.qcmg.sig.model.PackedGenotypes;
+import org.qcmg.sig.model.SigMeta;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntByteHashMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * Persistent, on-disk cache of the bit-packed genotypes (and {@link SigMeta}) of qsignature vcf files, so that they don't need to be re-parsed on subsequent runs.
+ * Each entry also holds the comparisons between the read groups of the file, so that they can be checked without the per read group genotypes.
+ * <p>
+ * The cache directory contains a positions file, which lists the positions (one per line) that make up the cache's columns,
+ * and an entry per qsignature vcf file, holding its packed genotypes in column space.
+ * An entry is only used if the vcf file has the same length and last modified time as when the entry was written,
+ * and if the settings used to derive the genotypes (coverage, cutoffs etc) are the same.
+ * <p>
+ * When the cache is opened before any other positions have been loaded, the cache columns line up with the {@link ChrPositionCache} indices,
+ * and the packed genotypes can be used as they are read from disk.
+ * Otherwise they are mapped between the two index spaces.
+ * <p>
+ * A cache directory should not be used by more than one process at a time.
+ */
+public class GenotypeCache {
+
+	private static final QLogger logger = QLoggerFactory.getLogger(GenotypeCache.class);
+
+	public static final String POSITIONS_FILE = "positions.txt";
+	public static final String ENTRY_SUFFIX = ".genotypes.bin";
+
+	private static final int MAGIC = 0x51534743;		// QSGC
+	private static final int VERSION = 2;
+
+	private final File dir;
+	private final File positionsFile;
+	private final String settings;
+
+	/*
+	 * columns are 1-based, to match the ChrPositionCache indices
+	 * a column that doesn't map to a position has an index of 0
+	 */
+	private final TIntArrayList columnToIndex = new TIntArrayList();
+	private final TIntIntHashMap indexToColumn = new TIntIntHashMap();
+	private boolean identity = true;
+
+	/**
+	 *
+	 * @param dir cache directory - will be created if it does not exist
+	 * @param settings describes the settings used to derive the genotypes. Entries written with different settings will not be used.
+	 * @throws IOException
+	 */
+	public GenotypeCache(File dir, String settings) throws IOException {
+		if (null == dir) {
+			throw new IllegalArgumentException("Null directory passed to GenotypeCache");
+		}
+		this.dir = dir;
+		this.settings = null == settings ? "" : settings;
+		Files.createDirectories(dir.toPath());
+		positionsFile = new File(dir, POSITIONS_FILE);
+
+		columnToIndex.add(0);
+		if (positionsFile.exists()) {
+			try (BufferedReader reader = Files.newBufferedReader(positionsFile.toPath(), StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					addColumn(line.isEmpty() ? 0 : ChrPositionCache.getStringIndex(line));
+				}
+			}
+		}
+		logger.info("Loaded " + (columnToIndex.size() - 1) + " positions from genotype cache: " + positionsFile.getAbsolutePath() + ", positions aligned: " + identity);
+	}
+
+	private void addColumn(int index) {
+		int column = columnToIndex.size();
+		columnToIndex.add(index);
+		if (index > 0) {
+			indexToColumn.put(index, column);
+		}
+		identity &= index == column;
+	}
+
+	public int getNumberOfPositions() {
+		return columnToIndex.size() - 1;
+	}
+
+	File getEntryFile(File f) {
+		return new File(dir, f.getName() + "." + Integer.toHexString(f.getAbsolutePath().hashCode()) + ENTRY_SUFFIX);
+	}
+
+	/**
+	 * Returns the cached genotypes for the supplied file, or null if there is no (current) entry for it
+	 */
+	public Pair<SigMeta, PackedGenotypes> get(File f) throws IOException {
+		return get(f, new ArrayList<>());
+	}
+
+	/**
+	 * As per {@link #get(File)}, and adds the read group comparisons of the entry to the supplied list
+	 */
+	public Pair<SigMeta, PackedGenotypes> get(File f, List<Comparison> readGroupComparisons) throws IOException {
+		File entry = getEntryFile(f);
+		if ( ! entry.exists()) {
+			return null;
+		}
+		SigMeta sm;
+		List<Comparison> comparisons;
+		PackedGenotypes genotypes;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry.toPath()), 64 * 1024))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION
+					|| ! in.readUTF().equals(f.getAbsolutePath())
+					|| in.readLong() != f.length()
+					|| in.readLong() != f.lastModified()
+					|| ! in.readUTF().equals(settings)) {
+				logger.debug("stale genotype cache entry for " + f.getAbsolutePath());
+				return null;
+			}
+			sm = readSigMeta(in);
+			comparisons = readComparisons(in);
+			int size = in.readInt();
+			int words = in.readInt();
+			byte[] bytes = new byte[words * (PackedGenotypes.NO_OF_CODE_PLANES + 1) * Long.BYTES];
+			in.readFully(bytes);
+			long[] bits = new long[words * (PackedGenotypes.NO_OF_CODE_PLANES + 1)];
+			ByteBuffer.wrap(bytes).asLongBuffer().get(bits);
+			genotypes = new PackedGenotypes(bits, words, size);
+		} catch (EOFException e) {
+			logger.warn("truncated genotype cache entry for " + f.getAbsolutePath());
+			return null;
+		}
+
+		synchronized (this) {
+			if (genotypes.getWords() > ((columnToIndex.size() - 1) >> 6) + 1) {
+				logger.warn("genotype cache entry for " + f.getAbsolutePath() + " refers to positions that are not in " + positionsFile.getAbsolutePath());
+				return null;
+			}
+			if ( ! identity) {
+				TIntByteHashMap map = new TIntByteHashMap(genotypes.size() * 2);
+				genotypes.forEachEntry((column, g) -> {
+					int index = column < columnToIndex.size() ? columnToIndex.get(column) : 0;
+					if (index > 0) {
+						map.put(index, g);
+					}
+					return true;
+				});
+				genotypes = new PackedGenotypes(map);
+			}
+		}
+		readGroupComparisons.addAll(comparisons);
+		return new Pair<>(sm, genotypes);
+	}
+
+	/**
+	 * Writes the genotypes for the supplied file to the cache, replacing any existing entry
+	 */
+	public void put(File f, SigMeta sm, PackedGenotypes genotypes) throws IOException {
+		put(f, sm, genotypes, Collections.emptyList());
+	}
+
+	/**
+	 * As per {@link #put(File, SigMeta, PackedGenotypes)}, along with the comparisons between the read groups of the file
+	 */
+	public void put(File f, SigMeta sm, PackedGenotypes genotypes, List<Comparison> readGroupComparisons) throws IOException {
+		PackedGenotypes columnGenotypes = toColumnSpace(genotypes);
+
+		File entry = getEntryFile(f);
+		File tmp = new File(dir, entry.getName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp.toPath()), 64 * 1024))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(f.getAbsolutePath());
+			out.writeLong(f.length());
+			out.writeLong(f.lastModified());
+			out.writeUTF(settings);
+			writeSigMeta(out, sm);
+			writeComparisons(out, readGroupComparisons);
+			out.writeInt(columnGenotypes.size());
+			out.writeInt(columnGenotypes.getWords());
+			long[] bits = columnGenotypes.getBits();
+			ByteBuffer bb = ByteBuffer.allocate(bits.length * Long.BYTES);
+			bb.asLongBuffer().put(bits);
+			out.write(bb.array());
+		}
+		Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/*
+	 * adds any positions that are not yet in the cache to the positions file, and converts the genotypes to column space if required
+	 */
+	private synchronized PackedGenotypes toColumnSpace(PackedGenotypes genotypes) throws IOException {
+		StringBuilder newPositions = new StringBuilder();
+		genotypes.forEachEntry((index, g) -> {
+			if ( ! indexToColumn.containsKey(index)) {
+				/*
+				 * if the columns and indices are aligned, keep them that way by adding any intervening indices
+				 */
+				int from = identity && index > columnToIndex.size() ? columnToIndex.size() : index;
+				for (int i = from ; i <= index ; i++) {
+					String position = ChrPositionCache.getStringFromIndex(i);
+					if (null == position) {
+						if (i == index) {
+							throw new IllegalArgumentException("No position found in ChrPositionCache for index: " + index);
+						}
+						addColumn(0);
+						newPositions.append('\n');
+					} else if ( ! indexToColumn.containsKey(i)) {
+						addColumn(i);
+						newPositions.append(position).append('\n');
+					}
+				}
+			}
+			return true;
+		});
+		if ( ! newPositions.isEmpty()) {
+			try (BufferedWriter writer = Files.newBufferedWriter(positionsFile.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+				writer.write(newPositions.toString());
+			}
+		}
+
+		if (identity) {
+			return genotypes;
+		}
+		TIntByteHashMap map = new TIntByteHashMap(genotypes.size() * 2);
+		genotypes.forEachEntry((index, g) -> {
+			map.put(indexToColumn.get(index), g);
+			return true;
+		});
+		return new PackedGenotypes(map);
+	}
+
+	private static void writeSigMeta(DataOutputStream out, SigMeta sm) throws IOException {
+		out.writeBoolean(null != sm);
+		if (null != sm) {
+			out.writeBoolean(null != sm.getMd5sum());
+			if (null != sm.getMd5sum()) {
+				out.writeUTF(sm.getMd5sum());
+			}
+			out.writeInt(sm.getBaseQ());
+			out.writeInt(sm.getMappingQ());
+			out.writeFloat(sm.getGcScore());
+		}
+	}
+
+	/*
+	 * the score of a read group comparison is the number of matching genotypes over the overlap, so the number of matches is stored
+	 */
+	private static void writeComparisons(DataOutputStream out, List<Comparison> comparisons) throws IOException {
+		out.writeInt(comparisons.size());
+		for (Comparison c : comparisons) {
+			out.writeUTF(c.getMain());
+			out.writeInt(c.getMainCoverage());
+			out.writeUTF(c.getTest());
+			out.writeInt(c.getTestCoverage());
+			out.writeInt(c.getOverlapCoverage());
+			out.writeInt(c.getOverlapCoverage() == 0 ? 0 : (int) Math.round(c.getScore() * c.getOverlapCoverage()));
+		}
+	}
+
+	private static List<Comparison> readComparisons(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		List<Comparison> comparisons = new ArrayList<>(count);
+		for (int i = 0 ; i < count ; i++) {
+			String main = in.readUTF();
+			int mainCoverage = in.readInt();
+			String test = in.readUTF();
+			int testCoverage = in.readInt();
+			int overlap = in.readInt();
+			comparisons.add(new Comparison(main, mainCoverage, test, testCoverage, in.readInt(), overlap));
+		}
+		return comparisons;
+	}
+
+	private static SigMeta readSigMeta(DataInputStream in) throws IOException {
+		if ( ! in.readBoolean()) {
+			return null;
+		}
+		String md5 = in.readBoolean() ? in.readUTF() : null;
+		return new SigMeta(md5, in.readInt(), in.readInt(), in.readFloat());
+	}
+}
@@ -16,6 +16,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.qcmg.common.commandline.Executor;
+import org.qcmg.sig.util.GenotypeCache;
 import org.qcmg.sig.util.SignatureUtilTest;
 
 
@@ -49,6 +50,35 @@ public class CompareTest {
 		assertEquals(11, Files.readAllLines(Paths.get(o.getAbsolutePath())).size());		// 11 lines means 1 comparison
 	}
 	
+	@Test
+	public void genotypeCache() throws Exception {
+		File dir = testFolder.newFolder("vcfs");
+		File cacheDir = testFolder.newFolder("cache");
+		/*
+		 * enough files to span more than one block of comparisons
+		 */
+		int noOfFiles = Compare.COMPARISON_BLOCK_SIZE + 4;
+		for (int i = 0 ; i < noOfFiles ; i++) {
+			writeVcfFile(new File(dir, "blah" + i + ".qsig.vcf"));
+		}
+		int noOfComparisons = (noOfFiles * (noOfFiles - 1)) / 2;
+		
+		File o1 = testFolder.newFile();
+		Executor exec = execute("--log " + testFolder.newFile().getAbsolutePath() + " -d " + dir.getAbsolutePath() + " -o " + o1.getAbsolutePath() + " -genotypeCache " + cacheDir.getAbsolutePath() + " -noOfThreads 3");
+		assertEquals(0, exec.getErrCode());
+		List<String> output1 = Files.readAllLines(Paths.get(o1.getAbsolutePath()));
+		assertEquals(8 + noOfFiles + noOfComparisons, output1.size());
+		assertEquals(noOfFiles, cacheDir.list((d, name) -> name.endsWith(GenotypeCache.ENTRY_SUFFIX)).length);
+		
+		/*
+		 * second run reads from the cache, and should give the same results
+		 */
+		File o2 = testFolder.newFile();
+		exec = execute("--log " + testFolder.newFile().getAbsolutePath() + " -d " + dir.getAbsolutePath() + " -o " + o2.getAbsolutePath() + " -genotypeCache " + cacheDir.getAbsolutePath());
+		assertEquals(0, exec.getErrCode());
+		assertEquals(output1, Files.readAllLines(Paths.get(o2.getAbsolutePath())));
+	}
+	
 	@Test
 	public void nonEmptyAndEmptyInputFiles() throws Exception {
 		File logF = testFolder.newFile();
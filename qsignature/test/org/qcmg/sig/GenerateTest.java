@@ -514,6 +514,70 @@ public class GenerateTest {
 		assertEquals("QAF=t:0-20-0-0,rg0:0-20-0-0", recs.get(6).getInfo());
 	}
 	
+	@Test
+	public void runProcessWithIndexedBamFile() throws Exception {
+		final File positionsOfInterestFile = testFolder.newFile("runProcessWithIndexedBamFile.snps.txt");
+		final File bamFile = testFolder.newFile("runProcessWithIndexedBamFile.bam");
+		final File logFile = testFolder.newFile("runProcessWithIndexedBamFile.log");
+		final File outputFile = new File(bamFile.getAbsolutePath() + ".qsig.vcf.gz");
+		
+		SignatureGeneratorTest.writeSnpPositionsFile(positionsOfInterestFile);
+		SignatureGeneratorTest.getIndexedBamFile(bamFile, true);
+		assertTrue(new File(bamFile.getAbsolutePath().replace(".bam", ".bai")).exists());
+		
+		final int exitStatus = qss.setup(new String[] {"--log" , logFile.getAbsolutePath(), "-snpPositions" , positionsOfInterestFile.getAbsolutePath(), "-i" , bamFile.getAbsolutePath(), "-noOfThreads", "2"} );
+		assertEquals(0, exitStatus);
+		assertTrue(outputFile.exists());
+		
+		final List<VcfRecord> recs = new ArrayList<>();
+		try (VcfFileReader reader = new VcfFileReader(outputFile)) {
+			for (final VcfRecord rec : reader) {
+				recs.add(rec);
+			}
+			VcfHeader header = reader.getVcfHeader();
+			assertTrue(header.getAllMetaRecords().contains(new VcfHeaderRecord("##rg0=null")));
+			assertTrue(header.getAllMetaRecords().contains(new VcfHeaderRecord("##rg1=20130325103517169")));
+		}
+		
+		assertEquals(7, recs.size());
+		assertEquals("QAF=t:0-0-0-10,rg1:0-0-0-10", recs.get(0).getInfo());
+		assertEquals("QAF=t:0-0-0-10,rg1:0-0-0-10", recs.get(1).getInfo());
+		assertEquals("QAF=t:20-0-0-0,rg2:20-0-0-0", recs.get(2).getInfo());
+		assertEquals("QAF=t:0-10-0-0,rg3:0-10-0-0", recs.get(3).getInfo());
+		assertEquals("QAF=t:0-0-0-20,rg2:0-0-0-20", recs.get(4).getInfo());
+		assertEquals("QAF=t:0-10-0-0,rg1:0-10-0-0", recs.get(5).getInfo());
+		assertEquals("QAF=t:0-20-0-0,rg0:0-20-0-0", recs.get(6).getInfo());
+	}
+	
+	@Test
+	public void indexedMatchesSequential() throws Exception {
+		final File positionsOfInterestFile = testFolder.newFile("indexedMatchesSequential.snps.txt");
+		final File bamFile = testFolder.newFile("indexedMatchesSequential.bam");
+		final File indexedOutput = new File(testFolder.getRoot(), "indexed.qsig.vcf.gz");
+		final File sequentialOutput = new File(testFolder.getRoot(), "sequential.qsig.vcf.gz");
+		
+		SignatureGeneratorTest.writeSnpPositionsFile(positionsOfInterestFile);
+		SignatureGeneratorTest.getIndexedBamFile(bamFile, true);
+		
+		assertEquals(0, new Generate().setup(new String[] {"--log" , testFolder.newFile("indexed.log").getAbsolutePath(), "-snpPositions" , positionsOfInterestFile.getAbsolutePath(), "-i" , bamFile.getAbsolutePath(), "-output", indexedOutput.getAbsolutePath()} ));
+		assertEquals(0, new Generate().setup(new String[] {"--log" , testFolder.newFile("sequential.log").getAbsolutePath(), "-snpPositions" , positionsOfInterestFile.getAbsolutePath(), "-i" , bamFile.getAbsolutePath(), "-output", sequentialOutput.getAbsolutePath(), "-sequential"} ));
+		
+		List<String> indexedRecs = new ArrayList<>();
+		try (VcfFileReader reader = new VcfFileReader(indexedOutput)) {
+			for (final VcfRecord rec : reader) {
+				indexedRecs.add(rec.toString());
+			}
+		}
+		List<String> sequentialRecs = new ArrayList<>();
+		try (VcfFileReader reader = new VcfFileReader(sequentialOutput)) {
+			for (final VcfRecord rec : reader) {
+				sequentialRecs.add(rec.toString());
+			}
+		}
+		assertFalse(indexedRecs.isEmpty());
+		assertEquals(sequentialRecs, indexedRecs);
+	}
+	
 	@Test
 	public void runProcessWithReadGroupsSetInHeader() throws Exception {
 		final File positionsOfInterestFile = testFolder.newFile("runProcessWithReadGroupsSetInHeader.snps.txt");
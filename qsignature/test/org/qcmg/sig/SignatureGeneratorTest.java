@@ -245,6 +245,21 @@ public class SignatureGeneratorTest {
     	}  
     }
     
+    /*
+     * coordinate sorted, and indexed
+     */
+    static void getIndexedBamFile(File bamFile, boolean addReadGroupToHeaderAndRecords) {
+    	final SAMFileHeader header = getHeader(true, true, addReadGroupToHeaderAndRecords);
+    	header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+    	// indexing needs a sequence length that covers the chr12 records
+    	header.getSequence("chr12").setSequenceLength(133851895);
+    	List<SAMRecord> data = getRecords(true, header, true, addReadGroupToHeaderAndRecords);
+    	final SAMWriterFactory factory = new SAMWriterFactory(header, false, bamFile, true);
+    	try (SAMFileWriter writer = factory.getWriter()) {
+    		for (final SAMRecord s : data) writer.addAlignment(s);
+    	}
+    }
+    
     public static SAMFileHeader getHeader(boolean valid, boolean useChrs) {
     	return getHeader(valid, useChrs, false);
     }
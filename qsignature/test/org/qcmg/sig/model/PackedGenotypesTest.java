@@ -0,0 +1,100 @@
+package org.qcmg.sig.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.qcmg.sig.util.SignatureUtil;
+
+import gnu.trove.map.hash.TIntByteHashMap;
+
+public class PackedGenotypesTest {
+
+	static final byte[] GENOTYPES = new byte[] {SignatureUtil.HOM_A, SignatureUtil.HOM_C, SignatureUtil.HOM_G, SignatureUtil.HOM_T,
+			SignatureUtil.HET_AC, SignatureUtil.HET_AG, SignatureUtil.HET_AT, SignatureUtil.HET_CG, SignatureUtil.HET_CT, SignatureUtil.HET_GT};
+
+	@Test
+	public void packAndGet() {
+		TIntByteHashMap map = new TIntByteHashMap();
+		for (int i = 0 ; i < GENOTYPES.length ; i++) {
+			map.put(i * 63 + 1, GENOTYPES[i]);
+		}
+		// invalid genotypes are ignored
+		map.put(1000, (byte) 7);
+
+		PackedGenotypes pg = new PackedGenotypes(map);
+		assertEquals(GENOTYPES.length, pg.size());
+		for (int i = 0 ; i < GENOTYPES.length ; i++) {
+			assertEquals(GENOTYPES[i], pg.get(i * 63 + 1));
+		}
+		assertEquals(0, pg.get(0));
+		assertEquals(0, pg.get(1000));
+		assertEquals(0, pg.get(100000));
+		assertEquals(0, pg.get(-1));
+
+		/*
+		 * entries are visited in position order
+		 */
+		TIntByteHashMap copy = new TIntByteHashMap();
+		int[] last = new int[] {-1};
+		pg.forEachEntry((column, g) -> {
+			assertTrue(column > last[0]);
+			last[0] = column;
+			copy.put(column, g);
+			return true;
+		});
+		map.remove(1000);
+		assertEquals(map, copy);
+
+		assertEquals(pg, new PackedGenotypes(pg.getBits(), pg.getWords(), pg.size()));
+	}
+
+	@Test
+	public void empty() {
+		PackedGenotypes pg = new PackedGenotypes(new TIntByteHashMap());
+		assertTrue(pg.isEmpty());
+		assertArrayEquals(new int[] {0, 0}, pg.compare(PackedGenotypes.EMPTY));
+	}
+
+	@Test
+	public void compareMatchesMaps() {
+		Random r = new Random(1);
+		for (int t = 0 ; t < 20 ; t++) {
+			TIntByteHashMap map1 = new TIntByteHashMap();
+			TIntByteHashMap map2 = new TIntByteHashMap();
+			int length1 = 1 + r.nextInt(5000);
+			int length2 = 1 + r.nextInt(5000);
+			for (int i = 0 ; i < length1 ; i++) {
+				if (r.nextInt(3) > 0) {
+					map1.put(i, GENOTYPES[r.nextInt(GENOTYPES.length)]);
+				}
+			}
+			for (int i = 0 ; i < length2 ; i++) {
+				if (r.nextInt(3) > 0) {
+					/*
+					 * mostly the same genotype
+					 */
+					byte g = map1.containsKey(i) && r.nextInt(10) > 0 ? map1.get(i) : GENOTYPES[r.nextInt(GENOTYPES.length)];
+					map2.put(i, g);
+				}
+			}
+			int overlap = 0;
+			int matches = 0;
+			for (int key : map1.keys()) {
+				if (map2.containsKey(key)) {
+					overlap++;
+					if (map1.get(key) == map2.get(key)) {
+						matches++;
+					}
+				}
+			}
+			PackedGenotypes pg1 = new PackedGenotypes(map1);
+			PackedGenotypes pg2 = new PackedGenotypes(map2);
+			assertArrayEquals(new int[] {overlap, matches}, pg1.compare(pg2));
+			assertArrayEquals(new int[] {overlap, matches}, pg2.compare(pg1));
+		}
+	}
+}
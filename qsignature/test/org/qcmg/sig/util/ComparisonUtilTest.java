@@ -11,6 +11,9 @@ import org.junit.Test;
 import org.qcmg.common.model.ChrPosition;
 import org.qcmg.common.util.ChrPositionUtils;
 import org.qcmg.sig.model.Comparison;
+import org.qcmg.sig.model.PackedGenotypes;
+
+import gnu.trove.map.hash.TIntByteHashMap;
 
 import static org.junit.Assert.*;
 
@@ -135,4 +138,31 @@ public class ComparisonUtilTest {
         assertFalse(ComparisonUtil.containsDodgyComparisons(comps, 1));
 	}
 
+	@Test
+	public void compareGenotypesMatchesMaps() {
+		TIntByteHashMap map1 = new TIntByteHashMap();
+		TIntByteHashMap map2 = new TIntByteHashMap();
+		for (int i = 1 ; i < 10000 ; i++) {
+			map1.put(i, i % 3 == 0 ? SignatureUtil.HOM_A : SignatureUtil.HET_AC);
+			if (i % 2 == 0) {
+				map2.put(i, i % 5 == 0 ? SignatureUtil.HOM_G : SignatureUtil.HET_AC);
+			}
+		}
+		map2.put(20000, SignatureUtil.HOM_T);
+		
+		Comparison expected = ComparisonUtil.compareRatiosUsingSnpsFloat(map1, map2, F1, F2);
+		Comparison actual = ComparisonUtil.compareGenotypes(new PackedGenotypes(map1), new PackedGenotypes(map2), F1, F2);
+		assertEquals(expected.getOverlapCoverage(), actual.getOverlapCoverage());
+		assertEquals(expected.getScore(), actual.getScore(), 0.0);
+		assertEquals(expected.getMainCoverage(), actual.getMainCoverage());
+		assertEquals(expected.getTestCoverage(), actual.getTestCoverage());
+		
+		/*
+		 * empty
+		 */
+		actual = ComparisonUtil.compareGenotypes(new PackedGenotypes(map1), PackedGenotypes.EMPTY, F1, F2);
+		assertEquals(0, actual.getOverlapCoverage());
+		assertTrue(Double.isNaN(actual.getScore()));
+	}
+
 }
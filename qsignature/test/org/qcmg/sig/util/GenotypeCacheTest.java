@@ -0,0 +1,139 @@
+package org.qcmg.sig.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.math3.util.Pair;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.qcmg.common.util.ChrPositionCache;
+import org.qcmg.sig.model.Comparison;
+import org.qcmg.sig.model.PackedGenotypes;
+import org.qcmg.sig.model.SigMeta;
+
+import gnu.trove.map.hash.TIntByteHashMap;
+
+public class GenotypeCacheTest {
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void putAndGet() throws IOException {
+		File vcf = newVcf("s1.qsig.vcf");
+		File dir = testFolder.newFolder("cache");
+
+		TIntByteHashMap map = new TIntByteHashMap();
+		map.put(ChrPositionCache.getStringIndex("chrGC1\t100"), SignatureUtil.HOM_A);
+		map.put(ChrPositionCache.getStringIndex("chrGC1\t200"), SignatureUtil.HET_CT);
+		map.put(ChrPositionCache.getStringIndex("chrGC2\t300"), SignatureUtil.HOM_G);
+		PackedGenotypes pg = new PackedGenotypes(map);
+		SigMeta sm = new SigMeta("md5", 10, 20, -1f);
+
+		GenotypeCache cache = new GenotypeCache(dir, "settings");
+		assertNull(cache.get(vcf));
+		cache.put(vcf, sm, pg);
+		/*
+		 * any positions loaded by other tests are also added, to keep the cache aligned with the ChrPositionCache
+		 */
+		assertTrue(cache.getNumberOfPositions() >= 3);
+		assertEquals(3, Files.readAllLines(new File(dir, GenotypeCache.POSITIONS_FILE).toPath()).stream().filter(s -> s.startsWith("chrGC1") || s.startsWith("chrGC2")).count());
+
+		Pair<SigMeta, PackedGenotypes> p = cache.get(vcf);
+		assertEquals(sm, p.getKey());
+		assertEquals(pg, p.getValue());
+
+		/*
+		 * re-open the cache - the positions are already in the ChrPositionCache, and so will need to be mapped
+		 */
+		p = new GenotypeCache(dir, "settings").get(vcf);
+		assertEquals(sm, p.getKey());
+		assertEquals(pg, p.getValue());
+
+		/*
+		 * different settings
+		 */
+		assertNull(new GenotypeCache(dir, "other settings").get(vcf));
+
+		/*
+		 * modified file
+		 */
+		try (FileWriter fw = new FileWriter(vcf, true)) {
+			fw.write("##another line\n");
+		}
+		assertNull(new GenotypeCache(dir, "settings").get(vcf));
+	}
+
+	@Test
+	public void nullSigMetaAndEmptyGenotypes() throws IOException {
+		File vcf = newVcf("s2.qsig.vcf");
+		GenotypeCache cache = new GenotypeCache(testFolder.newFolder("cache"), null);
+		cache.put(vcf, null, PackedGenotypes.EMPTY);
+		Pair<SigMeta, PackedGenotypes> p = cache.get(vcf);
+		assertNull(p.getKey());
+		assertEquals(PackedGenotypes.EMPTY, p.getValue());
+	}
+
+	@Test
+	public void readGroupComparisons() throws IOException {
+		File vcf = newVcf("s5.qsig.vcf");
+		GenotypeCache cache = new GenotypeCache(testFolder.newFolder("cache"), "");
+		List<Comparison> comparisons = List.of(new Comparison("rg1", 1200, "rg2", 1100, 950, 1000), new Comparison("rg1", 1200, "rg3", 0, 0, 0));
+		cache.put(vcf, null, PackedGenotypes.EMPTY, comparisons);
+
+		List<Comparison> cached = new ArrayList<>();
+		assertEquals(PackedGenotypes.EMPTY, cache.get(vcf, cached).getValue());
+		assertEquals(comparisons.size(), cached.size());
+		for (int i = 0 ; i < comparisons.size() ; i++) {
+			assertEquals(comparisons.get(i).toString(), cached.get(i).toString());
+		}
+		assertEquals(0.95, cached.get(0).getScore(), 0.0);
+
+		/*
+		 * entries without read group comparisons
+		 */
+		cache.put(vcf, null, PackedGenotypes.EMPTY);
+		cached.clear();
+		assertEquals(PackedGenotypes.EMPTY, cache.get(vcf, cached).getValue());
+		assertTrue(cached.isEmpty());
+	}
+
+	@Test
+	public void positionsAreAppended() throws IOException {
+		File vcf1 = newVcf("s3.qsig.vcf");
+		File vcf2 = newVcf("s4.qsig.vcf");
+		File dir = testFolder.newFolder("cache");
+		GenotypeCache cache = new GenotypeCache(dir, "");
+
+		TIntByteHashMap map1 = new TIntByteHashMap();
+		map1.put(ChrPositionCache.getStringIndex("chrGC3\t1"), SignatureUtil.HOM_A);
+		TIntByteHashMap map2 = new TIntByteHashMap();
+		map2.put(ChrPositionCache.getStringIndex("chrGC3\t1"), SignatureUtil.HOM_C);
+		map2.put(ChrPositionCache.getStringIndex("chrGC3\t2"), SignatureUtil.HOM_T);
+		cache.put(vcf1, null, new PackedGenotypes(map1));
+		cache.put(vcf2, null, new PackedGenotypes(map2));
+
+		assertEquals(2, Files.readAllLines(new File(dir, GenotypeCache.POSITIONS_FILE).toPath()).stream().filter(s -> s.startsWith("chrGC3")).count());
+
+		GenotypeCache reopened = new GenotypeCache(dir, "");
+		assertEquals(new PackedGenotypes(map1), reopened.get(vcf1).getValue());
+		assertEquals(new PackedGenotypes(map2), reopened.get(vcf2).getValue());
+	}
+
+	private File newVcf(String name) throws IOException {
+		File f = testFolder.newFile(name);
+		try (FileWriter fw = new FileWriter(f)) {
+			fw.write("##fileformat=VCFv4.2\n");
+		}
+		return f;
+	}
+}
@@ -0,0 +1,329 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+package org.qcmg.snp;
+
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.CigarOperator;
+import htsjdk.samtools.SAMRecord;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.qcmg.common.model.Accumulator;
+import org.qcmg.picard.SAMRecordFilterWrapper;
+
+/**
+ * Alternative to the chromosome length <code>Accumulator[]</code> used by {@link Pipeline}.
+ * <p>
+ * Each reference position is represented by a single byte in a column of fixed size chunks. The byte records which of A, C, G and T
+ * have been seen in a read that passed the filter with sufficient base quality, along with whether any read (passing or failing) spans the position.
+ * This is all the information required by <code>AccumulatorUtils.passesInitialCheck</code>,
+ * which means that the vast majority of positions (those that only contain the reference base) can be dismissed without ever creating an {@link Accumulator}.
+ * <p>
+ * The reads that have been added are retained (in start position order) until the positions they cover have been released,
+ * so that an {@link Accumulator} can be materialised (with the same contents as would have been produced by <code>Pipeline.Consumer</code>)
+ * for the small number of positions that pass the initial screen.
+ * <p>
+ * Chunks are allocated lazily as reads arrive, and are recycled once all positions in the chunk have been released,
+ * so memory usage is proportional to the span of positions that are currently in flight rather than to the length of the contig.
+ * <p>
+ * Designed to be written to by a single Consumer thread and read (and released) by a single Cleaner thread.
+ * The Consumer must only add reads in coordinate order, and the Cleaner must only examine/release positions that are lower than the start position of the last read added.
+ *
+ */
+public class ColumnarPileup {
+
+	public static final byte A_BIT = 1;
+	public static final byte C_BIT = 1 << 1;
+	public static final byte G_BIT = 1 << 2;
+	public static final byte T_BIT = 1 << 3;
+	public static final byte PRESENT_BIT = 1 << 4;
+
+	static final int CHUNK_BITS = 16;
+	static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final int NO_OF_CHUNKS = (Integer.MAX_VALUE >> CHUNK_BITS) + 1;
+
+	private final AtomicReferenceArray<byte[]> chunks = new AtomicReferenceArray<>(NO_OF_CHUNKS);
+	private final Queue<byte[]> freeChunks = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedDeque<SAMRecordFilterWrapper> reads = new ConcurrentLinkedDeque<>();
+	private final AtomicInteger readCount = new AtomicInteger();
+	private final int minBaseQual;
+
+	/*
+	 * only accessed by the releasing (Cleaner) thread
+	 */
+	private int firstUnreleasedChunk;
+
+	public ColumnarPileup(int minBaseQual) {
+		this.minBaseQual = minBaseQual;
+	}
+
+	/**
+	 * Updates the columns with the details of this record and retains the record so that it can be used to materialise {@link Accumulator}s.
+	 * Follows the same logic as <code>Pipeline.Consumer.processSAMRecord</code>
+	 *
+	 */
+	public void addRecord(SAMRecordFilterWrapper record) {
+		final SAMRecord sam = record.getRecord();
+		final int start = sam.getAlignmentStart();
+		final int end = sam.getAlignmentEnd();
+
+		/*
+		 * positions spanned by the read, as would have been setup by the Producer
+		 */
+		markPresent(Math.min(start, end), Math.max(start, end));
+
+		if (record.getPassesFilter()) {
+			final byte[] bases = sam.getReadBases();
+			final byte[] qualities = sam.getBaseQualities();
+			int referenceOffset = 0, offset = 0;
+			for (final CigarElement ce : sam.getCigar().getCigarElements()) {
+				final CigarOperator co = ce.getOperator();
+				final int length = ce.getLength();
+
+				if (co.consumesReferenceBases() && co.consumesReadBases()) {
+					for (int i = 0 ; i < length ; i++) {
+						int iPlusOffset = i + offset;
+						if (qualities[iPlusOffset] >= minBaseQual) {
+							byte bit = getBaseBit(bases[iPlusOffset]);
+							if (bit != 0) {
+								orFlag(start + referenceOffset + i, bit);
+							}
+						}
+					}
+					referenceOffset += length;
+					offset += length;
+				} else if (co.consumesReferenceBases()) {
+					referenceOffset += length;
+				} else if (co.consumesReadBases()) {
+					offset += length;
+				}
+			}
+		}
+
+		reads.add(record);
+		readCount.incrementAndGet();
+	}
+
+	private void markPresent(int from, int to) {
+		int i = from;
+		while (i <= to) {
+			byte[] chunk = getOrCreateChunk(i >>> CHUNK_BITS);
+			int chunkEnd = Math.min(to, (i | CHUNK_MASK));
+			for ( ; i <= chunkEnd ; i++) {
+				chunk[i & CHUNK_MASK] |= PRESENT_BIT;
+			}
+		}
+	}
+
+	private void orFlag(int position, byte bit) {
+		getOrCreateChunk(position >>> CHUNK_BITS)[position & CHUNK_MASK] |= bit;
+	}
+
+	private byte[] getOrCreateChunk(int chunkIndex) {
+		byte[] chunk = chunks.get(chunkIndex);
+		if (null == chunk) {
+			chunk = freeChunks.poll();
+			if (null == chunk) {
+				chunk = new byte[CHUNK_SIZE];
+			}
+			chunks.set(chunkIndex, chunk);
+		}
+		return chunk;
+	}
+
+	/**
+	 * Returns the flags byte for the supplied position, 0 if no reads span this position
+	 */
+	public byte getFlags(int position) {
+		byte[] chunk = chunks.get(position >>> CHUNK_BITS);
+		return null == chunk ? 0 : chunk[position & CHUNK_MASK];
+	}
+
+	/**
+	 * Creates an {@link Accumulator} for the supplied position from the retained reads.
+	 * Will return null if no retained reads span the position (ie. the Producer would not have created an Accumulator for this position).
+	 * <p>
+	 * Positions must be materialised in increasing order between calls to {@link #release(int)} as reads that finish before the position are discarded.
+	 */
+	public Accumulator materialise(int position) {
+		/*
+		 * drop reads from the head of the deque that finish before this position
+		 */
+		SAMRecordFilterWrapper head = reads.peekFirst();
+		while (null != head && getReadEnd(head.getRecord()) < position) {
+			reads.pollFirst();
+			readCount.decrementAndGet();
+			head = reads.peekFirst();
+		}
+
+		Accumulator acc = null;
+		Iterator<SAMRecordFilterWrapper> iter = reads.iterator();
+		while (iter.hasNext()) {
+			SAMRecordFilterWrapper rec = iter.next();
+			SAMRecord sam = rec.getRecord();
+			int start = sam.getAlignmentStart();
+			int end = sam.getAlignmentEnd();
+			if (Math.min(start, end) > position) {
+				break;
+			}
+			if (Math.max(start, end) < position) {
+				continue;
+			}
+			if (null == acc) {
+				acc = new Accumulator(position);
+			}
+			addToAccumulator(acc, rec, position);
+		}
+		return acc;
+	}
+
+	private void addToAccumulator(Accumulator acc, SAMRecordFilterWrapper rec, int position) {
+		final SAMRecord sam = rec.getRecord();
+		final int startPosition = sam.getAlignmentStart();
+		int referenceOffset = 0, offset = 0;
+
+		for (final CigarElement ce : sam.getCigar().getCigarElements()) {
+			final CigarOperator co = ce.getOperator();
+			final int length = ce.getLength();
+
+			if (co.consumesReferenceBases() && co.consumesReadBases()) {
+				int blockStart = startPosition + referenceOffset;
+				if (position >= blockStart && position < blockStart + length) {
+					int readOffset = offset + (position - blockStart);
+					byte base = sam.getReadBases()[readOffset];
+					if (rec.getPassesFilter() && sam.getBaseQualities()[readOffset] >= minBaseQual) {
+						acc.addBase(base, sam.getBaseQualities()[readOffset], ! sam.getReadNegativeStrandFlag(),
+								startPosition, position, sam.getAlignmentEnd(), rec.getPosition());
+					} else {
+						acc.addFailedFilterBase(base, rec.getPosition());
+					}
+					return;
+				}
+				referenceOffset += length;
+				offset += length;
+			} else if (co.consumesReferenceBases()) {
+				referenceOffset += length;
+			} else if (co.consumesReadBases()) {
+				offset += length;
+			}
+			if (startPosition + referenceOffset > position) {
+				// position falls within a deletion/skipped region
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Indicates that all positions lower than <code>position</code> have been examined.
+	 * Chunks that lie entirely below this position are recycled, and reads that finish before it are no longer retained.
+	 */
+	public void release(int position) {
+		int lastChunkToRelease = (position >>> CHUNK_BITS) - 1;
+		for (int i = firstUnreleasedChunk ; i <= lastChunkToRelease ; i++) {
+			recycleChunk(i);
+		}
+		firstUnreleasedChunk = Math.max(firstUnreleasedChunk, lastChunkToRelease + 1);
+
+		SAMRecordFilterWrapper head = reads.peekFirst();
+		while (null != head && getReadEnd(head.getRecord()) < position) {
+			reads.pollFirst();
+			readCount.decrementAndGet();
+			head = reads.peekFirst();
+		}
+	}
+
+	/**
+	 * Releases all chunks and retained reads - called when moving onto the next contig
+	 */
+	public void clear() {
+		for (int i = 0 ; i < NO_OF_CHUNKS ; i++) {
+			if (null != chunks.get(i)) {
+				recycleChunk(i);
+			}
+		}
+		firstUnreleasedChunk = 0;
+		reads.clear();
+		readCount.set(0);
+	}
+
+	private void recycleChunk(int chunkIndex) {
+		byte[] chunk = chunks.getAndSet(chunkIndex, null);
+		if (null != chunk) {
+			Arrays.fill(chunk, (byte) 0);
+			freeChunks.add(chunk);
+		}
+	}
+
+	/**
+	 * Returns the number of reads currently retained
+	 */
+	public int getRetainedReadCount() {
+		return readCount.get();
+	}
+
+	private static int getReadEnd(SAMRecord sam) {
+		return Math.max(sam.getAlignmentStart(), sam.getAlignmentEnd());
+	}
+
+	public static byte getBaseBit(byte base) {
+		return switch (base) {
+			case Accumulator.A_BYTE -> A_BIT;
+			case Accumulator.C_BYTE -> C_BIT;
+			case Accumulator.G_BYTE -> G_BIT;
+			case Accumulator.T_BYTE -> T_BIT;
+			default -> 0;
+		};
+	}
+
+	/**
+	 * Column equivalent of <code>AccumulatorUtils.passesInitialCheck</code>.
+	 * <p>
+	 * A flags value without the PRESENT_BIT set corresponds to a null Accumulator.
+	 * Returns false if neither sample has an Accumulator at this position.
+	 *
+	 * @param controlFlags
+	 * @param testFlags
+	 * @param ref
+	 */
+	public static boolean passesInitialCheck(byte controlFlags, byte testFlags, char ref) {
+		boolean controlPresent = (controlFlags & PRESENT_BIT) != 0;
+		boolean testPresent = (testFlags & PRESENT_BIT) != 0;
+
+		if (controlPresent && testPresent) {
+			int controlBases = controlFlags & 0xf;
+			int testBases = testFlags & 0xf;
+			if (Integer.bitCount(controlBases) > 1 || Integer.bitCount(testBases) > 1 || controlBases != testBases) {
+				return true;
+			}
+			return isRefAbsent(controlBases, ref);
+		} else if (controlPresent) {
+			return passesInitialCheck(controlFlags, ref);
+		} else if (testPresent) {
+			return passesInitialCheck(testFlags, ref);
+		}
+		return false;
+	}
+
+	static boolean passesInitialCheck(byte flags, char ref) {
+		int bases = flags & 0xf;
+		if (Integer.bitCount(bases) > 1) {
+			return true;
+		}
+		return isRefAbsent(bases, ref);
+	}
+
+	private static boolean isRefAbsent(int bases, char ref) {
+		byte refBit = getBaseBit((byte) Character.toUpperCase(ref));
+		return refBit != 0 && (bases & refBit) == 0;
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+package org.qcmg.snp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.qcmg.common.util.Pair;
+import org.qcmg.common.vcf.VcfRecord;
+
+/**
+ * Runs the Producer/Consumer/Cleaner threads of {@link Pipeline} over a single contig.
+ * <p>
+ * Configuration (rules, bams, filters etc) is copied from the parent {@link Pipeline},
+ * but each shard has its own reference bases, accumulation arrays (sized to the contig) and snp collections,
+ * and so a number of shards can be run concurrently.
+ *
+ */
+final class ContigShard extends Pipeline {
+
+	private final boolean includeDups;
+
+	ContigShard(Pipeline parent, String contig, byte[] bases, int basesLength, boolean includeDups) {
+		super(parent.qexec, parent.singleSampleMode);
+		this.includeDups = includeDups;
+
+		// config
+		controlRules = parent.controlRules;
+		testRules = parent.testRules;
+		controlBams = parent.controlBams;
+		testBams = parent.testBams;
+		query = parent.query;
+		validation = parent.validation;
+		runSBIASAnnotation = parent.runSBIASAnnotation;
+		noOfRecordsFailingFilter = parent.noOfRecordsFailingFilter;
+		minBaseQual = parent.minBaseQual;
+		columnarPileup = parent.columnarPileup;
+		queueCapacity = parent.queueCapacity;
+		maxPositionLag = parent.maxPositionLag;
+
+		// contig
+		currentChr = contig;
+		referenceBases = bases;
+		referenceBasesLength = basesLength;
+		previousContigReferenceBasesLength = Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Walks the bams for this contig
+	 *
+	 * @return the snps (left) and compound snps (right) found in this contig
+	 * @throws Exception
+	 */
+	Pair<List<VcfRecord>, List<VcfRecord>> call() throws Exception {
+		final String contig = currentChr;
+		logger.info("Processing contig: " + contig);
+		walkBams(includeDups);
+
+		/*
+		 * only need to hold on to the results
+		 */
+		adjacentAccumulators.clear();
+		logger.info("Processing contig: " + contig + " - DONE, snps: " + snps.size() + ", compound snps: " + compoundSnps.size());
+		return new Pair<>(new ArrayList<>(snps), new ArrayList<>(compoundSnps));
+	}
+
+	/**
+	 * There is only a single contig per shard, so when called at the barrier, this signals to the threads that we are done
+	 */
+	@Override
+	void loadNextReferenceSequence() {
+		previousContigReferenceBasesLength = referenceBasesLength;
+		referenceBases = null;
+		currentChr = null;
+		referenceBasesLength = 0;
+	}
+
+	@Override
+	int getAccumulatorArrayLength() {
+		return referenceBasesLength + 64 * ARRAY_BUFFER;
+	}
+}
@@ -18,9 +18,6 @@ import htsjdk.samtools.SAMRecordIterator;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.SamReader;
-import htsjdk.samtools.SamReaderFactory;
-import htsjdk.samtools.SamReaderFactory.Option;
-import htsjdk.samtools.ValidationStringency;
 import htsjdk.samtools.reference.FastaSequenceFile;
 import htsjdk.samtools.reference.ReferenceSequence;
 import net.jpountz.xxhash.XXHash64;
@@ -37,16 +34,19 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -106,6 +106,8 @@ public abstract class Pipeline {
 	 */
 	final static int ARRAY_BUFFER = 1000;
 	
+	final static int DEFAULT_QUEUE_CAPACITY = 10000;
+	
 	private int novelStartsFilterValue = 4;
 	private int mutantReadsFilterValue = 5;
 	int minBaseQual = 10;
@@ -173,14 +175,36 @@ public abstract class Pipeline {
 	protected String [] controlBams;
 	protected String [] testBams;
 	
-	protected SamReader controlSamReader;
-	protected SamReader testSamReader;
-	
 	protected  QLogger logger;
 	protected QExec qexec;
 
 	protected boolean includeDuplicates;
 	
+	/*
+	 * if true, use ColumnarPileup rather than the Accumulator arrays to collect pileup data
+	 */
+	protected boolean columnarPileup;
+	
+	/*
+	 * maximum number of records held in each of the Producer/Consumer queues
+	 */
+	protected int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+	
+	/*
+	 * maximum number of positions that a Consumer can get ahead of the Cleaner
+	 */
+	protected int maxPositionLag = PositionWatermark.DEFAULT_MAX_LAG;
+	
+	/*
+	 * used by the Producer, Consumer and Cleaner threads to signal progress to one another
+	 */
+	PositionWatermark watermark;
+	
+	/*
+	 * number of contigs to process concurrently. If greater than 1, each contig is processed by its own ContigShard
+	 */
+	protected int contigThreads = 1;
+	
 	/**
 	 * default constructor that sets up a logger for the subclass instance 
 	 */
@@ -219,6 +243,25 @@ public abstract class Pipeline {
 		// run mode
 		runMode =  IniFileUtil.getEntry(ini, "parameters", "runMode");
 		
+		// pileup store
+		columnarPileup = "columnar".equalsIgnoreCase(IniFileUtil.getEntry(ini, "parameters", "pileupStore"));
+		
+		// back pressure
+		final String queueCapacityString = IniFileUtil.getEntry(ini, "parameters", "queueCapacity");
+		if ( ! StringUtils.isNullOrEmpty(queueCapacityString)) {
+			queueCapacity = Integer.parseInt(queueCapacityString);
+		}
+		final String maxPositionLagString = IniFileUtil.getEntry(ini, "parameters", "maxPositionLag");
+		if ( ! StringUtils.isNullOrEmpty(maxPositionLagString)) {
+			maxPositionLag = Integer.parseInt(maxPositionLagString);
+		}
+		
+		// contig threads
+		final String contigThreadsString = IniFileUtil.getEntry(ini, "parameters", "contigThreads");
+		if ( ! StringUtils.isNullOrEmpty(contigThreadsString)) {
+			contigThreads = Integer.parseInt(contigThreadsString);
+		}
+		
 		// ADDITIONAL SETUP	
 		mutationIdPrefix = qexec.getUuid().getValue() + "_SNP_";
 		
@@ -308,6 +351,8 @@ public abstract class Pipeline {
 			logger.tool("runSBIASAnnotation: " + runSBIASAnnotation);
 		}
 		logger.tool("includeDuplicates: " + includeDuplicates);
+		logger.tool("columnarPileup: " + columnarPileup);
+		logger.tool("contigThreads: " + contigThreads);
 	}
 	
 	
@@ -626,7 +671,65 @@ public abstract class Pipeline {
 	}
 	
 	void walkBams() throws Exception {
-		walkBams(includeDuplicates);
+		if (contigThreads > 1) {
+			walkBamsByContig(includeDuplicates);
+		} else {
+			walkBams(includeDuplicates);
+		}
+	}
+	
+	/**
+	 * Length of the accumulation arrays used by the Producer/Consumer/Cleaner threads - needs to be able to hold the longest contig 
+	 */
+	int getAccumulatorArrayLength() {
+		return 1024 * 1024 * 256;
+	}
+	
+	/**
+	 * Processes <code>contigThreads</code> contigs at a time, each contig being processed by a {@link ContigShard}, which runs its own Producer/Consumer/Cleaner threads.
+	 * <p>
+	 * Contigs are read from the reference file in order, and a contig is only loaded once a shard has finished, so that the number of contigs held in memory is bounded.
+	 * The snps and compound snps from each shard are added to the <code>snps</code> and <code>compoundSnps</code> collections in reference file order.
+	 * 
+	 * @param includeDups indicates whether duplicate records should be discarded out right
+	 * @throws Exception
+	 */
+	void walkBamsByContig(boolean includeDups) throws Exception {
+		logger.info("About to hit bam files, processing " + contigThreads + " contigs at a time");
+		
+		final ExecutorService contigService = Executors.newFixedThreadPool(contigThreads);
+		final Semaphore permits = new Semaphore(contigThreads);
+		final List<Future<Pair<List<VcfRecord>, List<VcfRecord>>>> results = new ArrayList<>();
+		try {
+			/*
+			 * first contig has already been loaded
+			 */
+			while (null != currentChr) {
+				permits.acquire();
+				final ContigShard shard = new ContigShard(this, currentChr, referenceBases, referenceBasesLength, includeDups);
+				results.add(contigService.submit(() -> {
+					try {
+						return shard.call();
+					} finally {
+						permits.release();
+					}
+				}));
+				loadNextReferenceSequence();
+			}
+			
+			for (Future<Pair<List<VcfRecord>, List<VcfRecord>>> result : results) {
+				Pair<List<VcfRecord>, List<VcfRecord>> shardSnps = result.get();
+				snps.addAll(shardSnps.left());
+				compoundSnps.addAll(shardSnps.right());
+			}
+		} catch (final InterruptedException e) {
+			logger.error("Terminating due to failed contig shard threads", e);
+			contigService.shutdownNow();
+			throw e;
+		} finally {
+			contigService.shutdown();
+		}
+		logger.info("bam file access finished! no of snps: " + snps.size() + ", no of compound snps: " + compoundSnps.size());
 	}
 	
 	/**
@@ -643,17 +746,22 @@ public abstract class Pipeline {
 		
 		final AtomicInteger controlMinStart = new AtomicInteger();
 		final AtomicInteger testMinStart = new AtomicInteger();
-		final Queue<SAMRecordFilterWrapper> normalSAMQueue = new ConcurrentLinkedQueue<>();
-		final Queue<SAMRecordFilterWrapper> tumourSAMQueue = new ConcurrentLinkedQueue<>();
+		final BlockingQueue<SAMRecordFilterWrapper> normalSAMQueue = new ArrayBlockingQueue<>(queueCapacity);
+		final BlockingQueue<SAMRecordFilterWrapper> tumourSAMQueue = new ArrayBlockingQueue<>(queueCapacity);
+		watermark = new PositionWatermark(maxPositionLag, consumerLatchSize);
+		logger.info("queue capacity: " + queueCapacity + ", max position lag: " + maxPositionLag);
 		
 		// used by Cleaner3 threads
-		Accumulator [] controlAccs = new Accumulator[1024 * 1024 * 256];
-		Accumulator [] testAccs = new Accumulator[1024 * 1024 * 256];
+		Accumulator [] controlAccs = columnarPileup ? null : new Accumulator[getAccumulatorArrayLength()];
+		Accumulator [] testAccs = columnarPileup ? null : new Accumulator[getAccumulatorArrayLength()];
+		ColumnarPileup controlColumns = columnarPileup ? new ColumnarPileup(minBaseQual) : null;
+		ColumnarPileup testColumns = columnarPileup ? new ColumnarPileup(minBaseQual) : null;
 		
 		final CyclicBarrier barrier = new CyclicBarrier(noOfThreads, () -> {
             // reset the minStartPositions values to zero
             controlMinStart.set(0);
             testMinStart.set(0);
+            watermark.reset();
 
             // update the reference bases array
             loadNextReferenceSequence();
@@ -671,27 +779,22 @@ public abstract class Pipeline {
 		 * setup exception handler for threads, exit with code 1 if uncaught exception is encountered by worker threads
 		 */
 		Thread.setDefaultUncaughtExceptionHandler((t, e) -> {logger.error("( in uncaughtExceptionHandler) )exception " + e + ", from thread: " + t, e); System.exit(1);});
-		final SamReaderFactory factory = SamReaderFactory.makeDefault()
-			       .enable(Option.INCLUDE_SOURCE_IN_RECORDS, Option.VALIDATE_CRC_CHECKSUMS)
-			       .validationStringency(ValidationStringency.SILENT);
 		
 		// Control threads (if not single sample)
 		if ( ! singleSampleMode) {
-			controlSamReader = factory.open(new File(controlBams[0]));
 			service.execute(new Producer(controlBams, controlProducerLatch, true, normalSAMQueue, Thread.currentThread(), query, barrier, includeDups, controlAccs));
 			service.execute(new Consumer(consumerLatch, controlProducerLatch, testProducerLatch, true, 
-					Thread.currentThread(), barrier, controlAccs, normalSAMQueue, controlMinStart));
+					Thread.currentThread(), barrier, controlAccs, controlColumns, normalSAMQueue, controlMinStart));
 		}
 		
 		// test threads
-		testSamReader = factory.open(new File(testBams[0]));
 		service.execute(new Producer(testBams, testProducerLatch, false, tumourSAMQueue, Thread.currentThread(), query, barrier, includeDups, testAccs));
 		service.execute(new Consumer(consumerLatch, controlProducerLatch, testProducerLatch, false, 
-				Thread.currentThread(), barrier, testAccs, tumourSAMQueue, testMinStart));
+				Thread.currentThread(), barrier, testAccs, testColumns, tumourSAMQueue, testMinStart));
 		
 		// Cleaner
 		service.execute(new Cleaner(cleanerLatch, consumerLatch, Thread.currentThread(),
-				barrier, controlMinStart, testMinStart, controlAccs, testAccs));
+				barrier, controlMinStart, testMinStart, controlAccs, testAccs, controlColumns, testColumns));
 		
 		service.shutdown();
 		try {
@@ -721,7 +824,7 @@ public abstract class Pipeline {
 		private MultiSAMFileIterator iter;
 		private final boolean isControl;
 		private final CountDownLatch latch;
-		private final Queue<SAMRecordFilterWrapper> queue;
+		private final BlockingQueue<SAMRecordFilterWrapper> queue;
 		private QueryExecutor qbamFilter;
 		private final Thread mainThread;
 		private long passedFilterCount = 0;
@@ -740,7 +843,7 @@ public abstract class Pipeline {
 		private static final int MAX_FAILED_RECORDS_PER_POSITION = 1000;
 
 		public Producer(final String[] bamFiles, final CountDownLatch latch, final boolean isNormal, 
-				final Queue<SAMRecordFilterWrapper> samQueue, final Thread mainThread, final String query, 
+				final BlockingQueue<SAMRecordFilterWrapper> samQueue, final Thread mainThread, final String query, 
 				final CyclicBarrier barrier, boolean includeDups, Accumulator [] accum) throws Exception {
 			this.latch = latch;
 			final Set<File> bams = new HashSet<>();
@@ -780,7 +883,7 @@ public abstract class Pipeline {
 					/*
 					 * setup accumulator
 					 */
-					if (previousContigReferenceBasesLength < Integer.MAX_VALUE) {
+					if (null != accum && previousContigReferenceBasesLength < Integer.MAX_VALUE) {
 						int upperBound = Math.min(previousContigReferenceBasesLength + (2 * ARRAY_BUFFER), accum.length - 1);
 						logger.info("about to null array - upper limit: " + upperBound);
 						Arrays.fill(accum, 0, upperBound, null);
@@ -797,20 +900,10 @@ public abstract class Pipeline {
 						if (++ counter > ONE_MILLION) {
 							higherOrderCounter++;
 							counter = 0;
-							int qSize = queue.size();
-							logger.info("hit " + higherOrderCounter + "M sam records, passed filter: " + passedFilterCount + ", qsize: " + qSize);
+							logger.info("hit " + higherOrderCounter + "M sam records, passed filter: " + passedFilterCount + ", qsize: " + queue.size());
 							if (passedFilterCount == 0 && (counter + ((long) ONE_MILLION * higherOrderCounter)) >= noOfRecordsFailingFilter) {
 								throw new SnpException("INVALID_FILTER", ""+ (counter + (ONE_MILLION * higherOrderCounter)));
 							}
-							while (qSize > 10000) {
-								try {
-									Thread.sleep(200);
-								} catch (final InterruptedException e) {
-									logger.warn("InterruptedException caught whilst Producer thread was sleeping");
-									throw e;
-								}
-								qSize = queue.size();
-							}
 						}
 					
 						processRecord(record);
@@ -821,6 +914,7 @@ public abstract class Pipeline {
 					 * log and wait at barrier
 					 */
 					logger.info("Producer: Processed all records in " + currentChr + ", waiting at barrier");
+					watermark.setContigRead(isControl);
 					try {
 						barrier.await();
 					} catch (final InterruptedException e) {
@@ -831,24 +925,13 @@ public abstract class Pipeline {
 						throw e;
 					}
 					
+					/*
+					 * no need to wait for the queue to empty here - the Consumer only waits at the barrier once it has drained the queue
+					 */
 					if (null == currentChr) {
 						// no longer have reference details - exit
 						logger.warn("Exiting Producer - null reference chromosome");
 						keepRunning = false;
-					} else {
-						// wait until queues are empty
-						int qSize = queue.size();
-						if (qSize > 0)
-							logger.info("Waiting for empty queue before continuing with next chr. qsize: " + qSize);
-						while (qSize > 0) {
-							try {
-								Thread.sleep(10);
-							} catch (final InterruptedException e) {
-								e.printStackTrace();
-								throw e;
-							}
-							qSize = queue.size();
-						}
 					}
 				}
 				
@@ -857,6 +940,11 @@ public abstract class Pipeline {
 				e.printStackTrace();
 				mainThread.interrupt();
 			} finally {
+				try {
+					reader.close();
+				} catch (final IOException e) {
+					logger.warn("Producer: could not close bam files: " + e.getMessage());
+				}
 				latch.countDown();
 				logger.info("Producer: shutting down - processed " + ((higherOrderCounter * ONE_MILLION) + counter) + " records, passed filter: " 
 						+ passedFilterCount + ", invalidCount: " + invalidCount);
@@ -900,7 +988,7 @@ public abstract class Pipeline {
 			}
 		}
 		
-		private void addRecordToQueue(final SAMRecord record,  final boolean passesFilter) {
+		private void addRecordToQueue(final SAMRecord record,  final boolean passesFilter) throws InterruptedException {
 			
 			record.getReadBases();					// cache read bases in object
 			if (passesFilter) {
@@ -916,16 +1004,19 @@ public abstract class Pipeline {
 			/*
 			setup Accumulators for this read
 			 */
- 			int startPosition = Math.min(start, end);
- 			int endPosition = Math.max(start, end);
-			for (int i = startPosition; i <= endPosition; i++) {
-				Accumulator acc = accum[i];
-				if (null == acc) {
-					accum[i] = new Accumulator(i);
+			if (null != accum) {
+	 			int startPosition = Math.min(start, end);
+	 			int endPosition = Math.max(start, end);
+				for (int i = startPosition; i <= endPosition; i++) {
+					Accumulator acc = accum[i];
+					if (null == acc) {
+						accum[i] = new Accumulator(i);
+					}
 				}
 			}
 
-			queue.add(wrapper);
+			// blocks if the Consumer has fallen behind
+			queue.put(wrapper);
 		}
 	}
 	
@@ -937,16 +1028,22 @@ public abstract class Pipeline {
 		private final boolean isControl;
 		private final Thread mainThread;
 		private final  Accumulator[] array;
+		private final ColumnarPileup columns;
 		private final CyclicBarrier barrier;
-		private final Queue<SAMRecordFilterWrapper> queue;
+		private final BlockingQueue<SAMRecordFilterWrapper> queue;
 		private final AtomicInteger minStartPosition;
 		
-		private final int maxMapSize = 100000;
-		
 		public Consumer(final CountDownLatch consumerLatch, final CountDownLatch normalLatch, 
 				final CountDownLatch tumourLatch, final boolean isNormal, final Thread mainThread, 
 				final CyclicBarrier barrier, final  Accumulator[] array,
-				final Queue<SAMRecordFilterWrapper> queue, final AtomicInteger minStartPosition){
+				final BlockingQueue<SAMRecordFilterWrapper> queue, final AtomicInteger minStartPosition){
+			this(consumerLatch, normalLatch, tumourLatch, isNormal, mainThread, barrier, array, null, queue, minStartPosition);
+		}
+		
+		public Consumer(final CountDownLatch consumerLatch, final CountDownLatch normalLatch, 
+				final CountDownLatch tumourLatch, final boolean isNormal, final Thread mainThread, 
+				final CyclicBarrier barrier, final  Accumulator[] array, final ColumnarPileup columns,
+				final BlockingQueue<SAMRecordFilterWrapper> queue, final AtomicInteger minStartPosition){
 			
 			this.consumerLatch = consumerLatch;
 			this.controlLatch = normalLatch;
@@ -954,6 +1051,7 @@ public abstract class Pipeline {
 			this.isControl = isNormal;
 			this.mainThread = mainThread;
 			this.array =  array;
+			this.columns = columns;
 			this.barrier = barrier;
 			this.queue = queue;
 			this.minStartPosition = minStartPosition;
@@ -1033,72 +1131,44 @@ public abstract class Pipeline {
 		public void run() {
 			logger.info("In Consumer run method with isControl: " + isControl);
 			try {
-				int count = 0;
+				int lastSignalledPosition = 0;
 				
 				while (true) {
 					
-					final SAMRecordFilterWrapper rec = queue.poll();
+					final SAMRecordFilterWrapper rec = queue.poll(100, TimeUnit.MILLISECONDS);
 					if (null != rec) {
 						
-						processSAMRecord(rec);
-						minStartPosition.set(rec.getRecord().getAlignmentStart());
+						final int start = rec.getRecord().getAlignmentStart();
+						/*
+						 * all records starting before this one have been processed, so the Cleaner can move up to it while we wait.
+						 * Don't get too far ahead of the Cleaner - this bounds the number of positions held in memory
+						 */
+						minStartPosition.set(start);
+						watermark.awaitCleaner(start, isControl);
 						
-						if (++ count > maxMapSize) {
-							count = 0;
-							
-							/*
-							 * check to see how many non-null entries we have in the acc array
-							 * if more than our max amount - have a rest...
-							 */
-							int currentPos = minStartPosition.get();
-							int minPos = Math.max(0,currentPos - 10000000);
-							int nonNullPositions = 0;
-							for (int i = currentPos; i >= minPos ; i--) {
-								if (array[i] != null) {
-									nonNullPositions++;
-								}
-							}
-							
-							if (nonNullPositions > 1000000) {
-								try {
-									Thread.sleep(nonNullPositions / 1000);
-								} catch (final InterruptedException e) {
-									logger.error("InterruptedException caught in Consumer sleep",e);
-									throw e;
-								}
-							}
+						if (null != columns) {
+							columns.addRecord(rec);
+						} else {
+							processSAMRecord(rec);
+						}
+						
+						if (start - lastSignalledPosition >= PositionWatermark.SIGNAL_INTERVAL) {
+							watermark.signalCleaner();
+							lastSignalledPosition = start;
 						}
 					} else {
 						if ((singleSampleMode || controlLatch.getCount() == 0) && testLatch.getCount() == 0) {
 							break;
 						}
-						// check the barrier - could be zero
-						if (barrier.getNumberWaiting() >= (singleSampleMode ? 1 : 2)) {
-//							logger.info("null record, barrier count > 2 - what now??? q.size: " + queue.size());
-							// just me left
-							if (queue.isEmpty()) {
-								logger.info("Consumer: Processed all records in " + currentChr + ", waiting at barrier");
-								
-								try {
-									barrier.await();
-//									assert map.isEmpty() : "Consumer: map was not empty following barrier reset";
-									count = 0;
-								} catch (final InterruptedException e) {
-//									logger.error("Consumer: InterruptedException caught with map size: " + map.size(), e);
-									throw e;
-								} catch (final BrokenBarrierException e) {
-//									logger.error("Consumer: BrokenBarrierException caught with map size: " + map.size(), e);
-									throw e;
-								}
-							}
-						} else {
-							// sleep and try again
-							try {
-								Thread.sleep(50);
-							} catch (final InterruptedException e) {
-								logger.error("InterruptedException caught in Consumer sleep",e);
-								throw e;
-							}
+						/*
+						 * if our Producer has read all records for this contig, and the queue is empty, we are done with this contig
+						 */
+						if (watermark.isContigRead(isControl) && queue.isEmpty()) {
+							logger.info("Consumer: Processed all records in " + currentChr + ", waiting at barrier");
+							watermark.signalCleaner();
+							
+							barrier.await();
+							lastSignalledPosition = 0;
 						}
 					}
 				}
@@ -1123,6 +1193,8 @@ public abstract class Pipeline {
 		private final AtomicInteger testMinStart;
 		private final  Accumulator[] controlAccums;
 		private final  Accumulator[] testAccums;
+		private final ColumnarPileup controlColumns;
+		private final ColumnarPileup testColumns;
 		private long processMapsCounter = 0;
 		private final int buffer = 512;
 		private final boolean debugLoggingEnabled;
@@ -1130,6 +1202,13 @@ public abstract class Pipeline {
 		public Cleaner(CountDownLatch cleanerLatch, CountDownLatch consumerLatch, Thread mainThread, CyclicBarrier barrier,
 				final AtomicInteger normalMinStart, final AtomicInteger tumourMinStart,
 				final  Accumulator[] cnormalAccs, final  Accumulator[] ctumourAccs) {
+			this(cleanerLatch, consumerLatch, mainThread, barrier, normalMinStart, tumourMinStart, cnormalAccs, ctumourAccs, null, null);
+		}
+		
+		public Cleaner(CountDownLatch cleanerLatch, CountDownLatch consumerLatch, Thread mainThread, CyclicBarrier barrier,
+				final AtomicInteger normalMinStart, final AtomicInteger tumourMinStart,
+				final  Accumulator[] cnormalAccs, final  Accumulator[] ctumourAccs,
+				final ColumnarPileup controlColumns, final ColumnarPileup testColumns) {
 			this.consumerLatch = consumerLatch;
 			this.cleanerLatch = cleanerLatch;
 			this.mainThread = mainThread;
@@ -1138,6 +1217,8 @@ public abstract class Pipeline {
 			this.testMinStart = tumourMinStart;
 			this.controlAccums = cnormalAccs;
 			this.testAccums = ctumourAccs;
+			this.controlColumns = controlColumns;
+			this.testColumns = testColumns;
 			debugLoggingEnabled = logger.isLevelEnabled(QLevel.DEBUG);
 		}
 		
@@ -1147,6 +1228,14 @@ public abstract class Pipeline {
 				logger.debug("min start position: " + minStartPos + ", no of keepers so far: " + snps.size());
 			}
 			if (minStartPos <= 0) return;
+			
+			if (null != testColumns) {
+				if (minStartPos > previousPosition) {
+					processColumns(previousPosition, minStartPos);
+					previousPosition = minStartPos;
+				}
+				return;
+			}
 				
 			for (int i = previousPosition ; i < minStartPos ; i++) {
 				
@@ -1179,7 +1268,9 @@ public abstract class Pipeline {
 				int minStartPos = 0;
 				int limit = referenceBasesLength + ARRAY_BUFFER;
 				logger.info("minStartPos: " + minStartPos + ", limit: " + limit);
-				if ( ! singleSampleMode) {
+				if (null != testColumns) {
+					processColumns(previousPosition, limit);
+				} else if ( ! singleSampleMode) {
 					
 					for (int i = minStartPos ; i < limit ; i++) {
 						
@@ -1205,22 +1296,54 @@ public abstract class Pipeline {
 				}
 				logger.info("leaving processMapsAll");
 			}
+			if (null != testColumns) {
+				testColumns.clear();
+				if (null != controlColumns) {
+					controlColumns.clear();
+				}
+			}
+		}
+		
+		/**
+		 * Screens positions [from, to) using the column flags, and only materialises Accumulators for those positions that pass the initial check.
+		 * Once examined, the positions are released from the columns.
+		 */
+		private void processColumns(int from, int to) {
+			for (int i = Math.max(1, from) ; i < to ; i++) {
+				byte controlFlags = null != controlColumns ? controlColumns.getFlags(i) : 0;
+				byte testFlags = testColumns.getFlags(i);
+				if (controlFlags == 0 && testFlags == 0) {
+					continue;
+				}
+				if (i - 1 >= referenceBasesLength) {
+					break;
+				}
+				if (ColumnarPileup.passesInitialCheck(controlFlags, testFlags, (char) referenceBases[i - 1])) {
+					Accumulator controlAcc = controlFlags != 0 ? controlColumns.materialise(i) : null;
+					Accumulator testAcc = testFlags != 0 ? testColumns.materialise(i) : null;
+					interrogateAccumulations(controlAcc, testAcc);
+				}
+			}
+			testColumns.release(to);
+			if (null != controlColumns) {
+				controlColumns.release(to);
+			}
 		}
 		
 		@Override
 		public void run() {
 			logger.info("In Cleaner run method");
-			try {
-				Thread.sleep(500);	// sleep to allow initial population of both queues
-			} catch (final InterruptedException e1) {
-				e1.printStackTrace();
-			}
 			
 			try {
 				while (true) {
-//					logger.info("Cleaner - about to run processMaps");
+					
+					/*
+					 * wait for the Consumers to advance, or for the timeout to elapse so that the barrier and latch can be checked
+					 */
+					watermark.awaitConsumers(100, TimeUnit.MILLISECONDS);
 					
 					processMaps();
+					watermark.cleanerAdvanced(previousPosition);
 //					logger.info("Cleaner - about to run processMaps - DONE, controlMinStart: " + controlMinStart.get() + ", testMinStart: " + testMinStart.get());
 						
 					if (barrier.getNumberWaiting() == barrier.getParties() - 1) {
@@ -1232,7 +1355,6 @@ public abstract class Pipeline {
 							previousPosition = 0;
 							barrier.await();
 							logger.info("Cleaner: no of keepers so far: " + snps.size());
-							Thread.sleep(10);	// sleep to allow initial map population
 						} catch (final InterruptedException e) {
 							logger.error("InterruptedException caught in Cleaner thread: ", e);
 							throw e;
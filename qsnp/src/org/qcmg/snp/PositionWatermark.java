@@ -0,0 +1,214 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+package org.qcmg.snp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Allows the Producer, Consumer and Cleaner threads in {@link Pipeline} to signal progress through the current contig to one another,
+ * so that a thread that can't make progress parks until it can, rather than sleeping or spinning.
+ * <p>
+ * <ul>
+ * <li>Producers flag when they have read all records for the contig, which tells their Consumer that once its queue is empty it can wait at the barrier</li>
+ * <li>Consumers signal the Cleaner as their start position advances, and wait for the Cleaner if they get more than <code>maxLag</code> positions ahead of it.
+ * A Consumer publishes the start position of the record it is holding before it waits, so that the Cleaner can move up to it.</li>
+ * <li>The Cleaner publishes the position it has processed up to, and waits for the Consumers to advance</li>
+ * </ul>
+ * The number of positions (and hence accumulations) in flight is therefore bounded by <code>maxLag</code>, other than when a Producer has read the whole contig,
+ * at which point the other Consumer is no longer held back, as its counterpart will not be advancing any further.
+ * <p>
+ * The Cleaner can only move up to the lowest position published by the Consumers, and so if all Consumers are waiting, and the Cleaner reports that it has
+ * stopped advancing, the Consumer with the lowest position is let through. Without this, a gap in coverage wider than <code>maxLag</code> in all samples
+ * (a centromere, or a run of Ns) would leave the Consumers waiting on a Cleaner that is waiting on them.
+ * <p>
+ * {@link #reset()} should be called by the barrier action when moving onto the next contig.
+ *
+ */
+public class PositionWatermark {
+
+	public static final int DEFAULT_MAX_LAG = 100_000;
+	public static final int MIN_MAX_LAG = 10_000;
+
+	/*
+	 * number of positions a Consumer advances by before it signals the Cleaner
+	 */
+	static final int SIGNAL_INTERVAL = 1_000;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition consumersAdvanced = lock.newCondition();
+	private final Condition cleanerAdvanced = lock.newCondition();
+	private final int maxLag;
+	private final int consumers;
+
+	/*
+	 * positions that the control and test Consumers are waiting to process, or -1 if not waiting
+	 */
+	private final int[] waitingPositions = {-1, -1};
+	private int waitingCount;
+	private boolean cleanerStalled;
+
+	private boolean consumerSignalPending;
+	private volatile int cleanerPosition;
+	private volatile boolean controlContigRead;
+	private volatile boolean testContigRead;
+
+	public PositionWatermark(int maxLag) {
+		this(maxLag, 2);
+	}
+
+	/**
+	 * @param maxLag  maximum number of positions that a Consumer can get ahead of the Cleaner
+	 * @param consumers  number of Consumers - 1 in single sample mode, otherwise 2
+	 */
+	public PositionWatermark(int maxLag, int consumers) {
+		if (maxLag < MIN_MAX_LAG) {
+			throw new IllegalArgumentException("maxLag must be at least " + MIN_MAX_LAG + ", supplied value: " + maxLag);
+		}
+		if (consumers < 1 || consumers > 2) {
+			throw new IllegalArgumentException("consumers must be 1 or 2, supplied value: " + consumers);
+		}
+		this.maxLag = maxLag;
+		this.consumers = consumers;
+	}
+
+	/**
+	 * Called by a Producer once it has read all records for the current contig
+	 */
+	public void setContigRead(boolean isControl) {
+		lock.lock();
+		try {
+			if (isControl) {
+				controlContigRead = true;
+			} else {
+				testContigRead = true;
+			}
+			// Consumers waiting on the Cleaner may now proceed
+			cleanerAdvanced.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean isContigRead(boolean isControl) {
+		return isControl ? controlContigRead : testContigRead;
+	}
+
+	/**
+	 * Called by a Consumer to let the Cleaner know that there may be positions ready for processing
+	 */
+	public void signalCleaner() {
+		lock.lock();
+		try {
+			consumerSignalPending = true;
+			consumersAdvanced.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Called by a Consumer before it processes a record starting at <code>position</code>, once it has published <code>position</code> as its minimum start position.
+	 * Blocks while the position is more than <code>maxLag</code> positions ahead of the Cleaner,
+	 * unless either Producer has read all records for the contig, or all Consumers are waiting on a Cleaner that has stopped advancing
+	 * and this Consumer has the lowest position.
+	 */
+	public void awaitCleaner(int position, boolean isControl) throws InterruptedException {
+		if (position - cleanerPosition <= maxLag) {
+			return;
+		}
+		int index = isControl ? 0 : 1;
+		lock.lock();
+		try {
+			waitingPositions[index] = position;
+			waitingCount++;
+			try {
+				while (position - cleanerPosition > maxLag && ! controlContigRead && ! testContigRead && ! (cleanerStalled && isLowestWaiting(position))) {
+					/*
+					 * make sure the Cleaner knows where we are before waiting on it
+					 */
+					consumerSignalPending = true;
+					consumersAdvanced.signal();
+					cleanerAdvanced.await(100, TimeUnit.MILLISECONDS);
+				}
+			} finally {
+				waitingPositions[index] = -1;
+				waitingCount--;
+				cleanerStalled = false;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean isLowestWaiting(int position) {
+		for (int waitingPosition : waitingPositions) {
+			if (waitingPosition >= 0 && waitingPosition < position) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Called by the Cleaner once it has processed all positions below <code>position</code>
+	 */
+	public void cleanerAdvanced(int position) {
+		lock.lock();
+		try {
+			/*
+			 * the Cleaner is stalled if it hasn't moved since all the Consumers started waiting on it
+			 */
+			cleanerStalled = waitingCount == consumers && position <= cleanerPosition;
+			cleanerPosition = position;
+			cleanerAdvanced.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getCleanerPosition() {
+		return cleanerPosition;
+	}
+
+	/**
+	 * Called by the Cleaner to wait for a signal from a Consumer.
+	 * Returns immediately if a signal has been received since the last call, otherwise waits for at most <code>timeout</code>.
+	 *
+	 * @return true if a signal was received
+	 */
+	public boolean awaitConsumers(long timeout, TimeUnit unit) throws InterruptedException {
+		lock.lock();
+		try {
+			long nanos = unit.toNanos(timeout);
+			while ( ! consumerSignalPending && nanos > 0) {
+				nanos = consumersAdvanced.awaitNanos(nanos);
+			}
+			boolean signalled = consumerSignalPending;
+			consumerSignalPending = false;
+			return signalled;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Resets the watermarks - called when all threads have reached the barrier at the end of a contig
+	 */
+	public void reset() {
+		lock.lock();
+		try {
+			cleanerPosition = 0;
+			controlContigRead = false;
+			testContigRead = false;
+			consumerSignalPending = false;
+			cleanerStalled = false;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package org.qcmg.snp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.qcmg.common.model.Accumulator;
+import org.qcmg.common.util.AccumulatorUtils;
+
+public class ColumnarPileupTest {
+
+	private static final byte[] BASES = new byte[] {'A', 'C', 'G', 'T'};
+
+	@Test
+	public void getBaseBit() {
+		assertEquals(ColumnarPileup.A_BIT, ColumnarPileup.getBaseBit((byte) 'A'));
+		assertEquals(ColumnarPileup.C_BIT, ColumnarPileup.getBaseBit((byte) 'C'));
+		assertEquals(ColumnarPileup.G_BIT, ColumnarPileup.getBaseBit((byte) 'G'));
+		assertEquals(ColumnarPileup.T_BIT, ColumnarPileup.getBaseBit((byte) 'T'));
+		assertEquals(0, ColumnarPileup.getBaseBit((byte) 'N'));
+		assertEquals(0, ColumnarPileup.getBaseBit((byte) 'a'));
+	}
+
+	@Test
+	public void passesInitialCheckNoAccumulators() {
+		assertFalse(ColumnarPileup.passesInitialCheck((byte) 0, (byte) 0, 'A'));
+	}
+
+	@Test
+	public void passesInitialCheckMatchesAccumulatorUtils() {
+		/*
+		 * every combination of bases for control and test, against every ref
+		 */
+		for (int controlMask = -1 ; controlMask < 16 ; controlMask++) {
+			for (int testMask = -1 ; testMask < 16 ; testMask++) {
+				Accumulator control = getAccumulator(controlMask);
+				Accumulator test = getAccumulator(testMask);
+				byte controlFlags = getFlags(controlMask);
+				byte testFlags = getFlags(testMask);
+
+				for (char ref : new char[] {'A', 'C', 'G', 'T', 'a', 't', 'N'}) {
+					boolean expected;
+					if (null != control && null != test) {
+						expected = AccumulatorUtils.passesInitialCheck(control, test, ref);
+					} else if (null != control) {
+						expected = AccumulatorUtils.passesInitialCheck(control, ref);
+					} else if (null != test) {
+						expected = AccumulatorUtils.passesInitialCheck(test, ref);
+					} else {
+						expected = false;
+					}
+					assertEquals("control: " + controlMask + ", test: " + testMask + ", ref: " + ref,
+							expected, ColumnarPileup.passesInitialCheck(controlFlags, testFlags, ref));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void passesInitialCheckSingleSample() {
+		assertFalse(ColumnarPileup.passesInitialCheck((byte) 0, (byte) (ColumnarPileup.PRESENT_BIT | ColumnarPileup.A_BIT), 'A'));
+		assertTrue(ColumnarPileup.passesInitialCheck((byte) 0, (byte) (ColumnarPileup.PRESENT_BIT | ColumnarPileup.C_BIT), 'A'));
+		assertTrue(ColumnarPileup.passesInitialCheck((byte) 0, (byte) (ColumnarPileup.PRESENT_BIT | ColumnarPileup.A_BIT | ColumnarPileup.C_BIT), 'A'));
+		assertFalse(ColumnarPileup.passesInitialCheck((byte) 0, (byte) (ColumnarPileup.PRESENT_BIT | ColumnarPileup.C_BIT), 'N'));
+	}
+
+	/*
+	 * mask of -1 indicates no accumulator
+	 */
+	private static Accumulator getAccumulator(int mask) {
+		if (mask < 0) {
+			return null;
+		}
+		Accumulator acc = new Accumulator(100);
+		for (int i = 0 ; i < 4 ; i++) {
+			if ((mask & (1 << i)) != 0) {
+				acc.addBase(BASES[i], (byte) 30, true, 90, 100, 140, i);
+			}
+		}
+		return acc;
+	}
+
+	private static byte getFlags(int mask) {
+		return mask < 0 ? 0 : (byte) (ColumnarPileup.PRESENT_BIT | mask);
+	}
+}
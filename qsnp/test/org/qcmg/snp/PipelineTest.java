@@ -12,6 +12,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.qcmg.common.model.Accumulator;
+import org.qcmg.common.util.AccumulatorUtils;
 import org.qcmg.common.util.Constants;
 import org.qcmg.common.util.TabTokenizer;
 import org.qcmg.common.vcf.header.VcfHeader;
@@ -61,6 +62,48 @@ public class PipelineTest {
 		assertEquals("4511341:T9[24]18[36.44]", array[4511341].toString());
 	}
 	
+	@Test
+	public void getAccumulatorsFromReadsColumnar() {
+		final Pipeline pipeline = new TestPipeline();
+		
+		Accumulator[] array = new Accumulator[5000000];
+		Pipeline.Consumer c = pipeline.new Consumer(new CountDownLatch(1), new CountDownLatch(1), new CountDownLatch(1), true, null, null, array, null, new AtomicInteger(100));
+		ColumnarPileup columns = new ColumnarPileup(pipeline.minBaseQual);
+		int readId = 1;
+		int minStart = Integer.MAX_VALUE;
+		int maxEnd = 0;
+		for (SAMRecord rec : getRecords()) {
+			if (SAMUtils.isSAMRecordValidForVariantCalling(rec)) {
+				SAMRecordFilterWrapper srw = new SAMRecordFilterWrapper(rec, readId++);
+				srw.setPassesFilter(readId % 5 != 0);
+				c.processSAMRecord(srw);
+				columns.addRecord(srw);
+				minStart = Math.min(minStart, rec.getAlignmentStart());
+				maxEnd = Math.max(maxEnd, rec.getAlignmentEnd());
+			}
+		}
+		
+		for (int i = minStart - 10 ; i <= maxEnd + 10 ; i++) {
+			Accumulator fromColumns = columns.materialise(i);
+			if (null == array[i]) {
+				assertNull(fromColumns);
+			} else {
+				assertEquals(array[i].toString(), fromColumns.toString());
+				assertEquals(array[i].getData(), fromColumns.getData());
+				assertEquals(array[i].getFailedFilterPileup(), fromColumns.getFailedFilterPileup());
+				BitSet bs = AccumulatorUtils.getUniqueBases(array[i]);
+				assertEquals(bs.isEmpty() ? 0 : bs.toLongArray()[0], columns.getFlags(i) & 0xf);
+			}
+		}
+
+		columns.release(maxEnd + 1);
+		assertEquals(0, columns.getRetainedReadCount());
+		// chunk containing maxEnd has not been completely released
+		assertNotEquals(0, columns.getFlags(4511341));
+		columns.clear();
+		assertEquals(0, columns.getFlags(4511341));
+	}
+	
 	private List<SAMRecord> getRecords() {
 		SAMFileHeader header = new SAMFileHeader();
 		
@@ -0,0 +1,216 @@
+package org.qcmg.snp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class PositionWatermarkTest {
+
+	@Test
+	public void maxLagTooSmall() {
+		try {
+			new PositionWatermark(PositionWatermark.MIN_MAX_LAG - 1);
+			fail("Should have thrown an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {}
+		try {
+			new PositionWatermark(PositionWatermark.MIN_MAX_LAG, 0);
+			fail("Should have thrown an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {}
+		new PositionWatermark(PositionWatermark.MIN_MAX_LAG);
+		new PositionWatermark(PositionWatermark.MIN_MAX_LAG, 1);
+	}
+
+	@Test
+	public void contigRead() {
+		PositionWatermark wm = new PositionWatermark(PositionWatermark.DEFAULT_MAX_LAG);
+		assertFalse(wm.isContigRead(true));
+		assertFalse(wm.isContigRead(false));
+		wm.setContigRead(false);
+		assertFalse(wm.isContigRead(true));
+		assertTrue(wm.isContigRead(false));
+		wm.setContigRead(true);
+		assertTrue(wm.isContigRead(true));
+
+		wm.cleanerAdvanced(12345);
+		wm.reset();
+		assertFalse(wm.isContigRead(true));
+		assertFalse(wm.isContigRead(false));
+		assertEquals(0, wm.getCleanerPosition());
+	}
+
+	@Test
+	public void awaitConsumers() throws InterruptedException {
+		PositionWatermark wm = new PositionWatermark(PositionWatermark.DEFAULT_MAX_LAG);
+		assertFalse(wm.awaitConsumers(1, TimeUnit.MILLISECONDS));
+
+		/*
+		 * signal is not lost if the cleaner is not waiting at the time
+		 */
+		wm.signalCleaner();
+		assertTrue(wm.awaitConsumers(1, TimeUnit.MILLISECONDS));
+		assertFalse(wm.awaitConsumers(1, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void awaitCleanerWithinLag() throws InterruptedException {
+		PositionWatermark wm = new PositionWatermark(PositionWatermark.MIN_MAX_LAG);
+		// should return straight away
+		wm.awaitCleaner(PositionWatermark.MIN_MAX_LAG, false);
+		wm.cleanerAdvanced(1000);
+		wm.awaitCleaner(PositionWatermark.MIN_MAX_LAG + 1000, false);
+	}
+
+	@Test
+	public void awaitCleanerBlocksUntilCleanerAdvances() throws InterruptedException {
+		final PositionWatermark wm = new PositionWatermark(PositionWatermark.MIN_MAX_LAG);
+		final CountDownLatch done = new CountDownLatch(1);
+		Thread consumer = new Thread(() -> {
+			try {
+				wm.awaitCleaner(PositionWatermark.MIN_MAX_LAG + 5000, false);
+				done.countDown();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		consumer.start();
+
+		/*
+		 * consumer should signal the cleaner and then wait
+		 */
+		assertTrue(wm.awaitConsumers(5, TimeUnit.SECONDS));
+		assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+
+		wm.cleanerAdvanced(4000);
+		assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+
+		wm.cleanerAdvanced(5000);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		consumer.join();
+	}
+
+	@Test
+	public void awaitCleanerReleasedWhenContigRead() throws InterruptedException {
+		final PositionWatermark wm = new PositionWatermark(PositionWatermark.MIN_MAX_LAG);
+		final CountDownLatch done = new CountDownLatch(1);
+		Thread consumer = new Thread(() -> {
+			try {
+				wm.awaitCleaner(PositionWatermark.MIN_MAX_LAG * 10, false);
+				done.countDown();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		consumer.start();
+		assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+
+		/*
+		 * other producer has finished the contig - cleaner won't be advancing until the barrier is reached
+		 */
+		wm.setContigRead(true);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		consumer.join();
+	}
+
+	@Test
+	public void awaitCleanerReleasedWhenCleanerStalls() throws InterruptedException {
+		final PositionWatermark wm = new PositionWatermark(PositionWatermark.MIN_MAX_LAG);
+		final CountDownLatch controlDone = new CountDownLatch(1);
+		final CountDownLatch testDone = new CountDownLatch(1);
+
+		/*
+		 * both samples have a coverage gap wider than maxLag, so both Consumers wait, and the Cleaner can't move past the start of the gap
+		 */
+		Thread control = new Thread(() -> {
+			try {
+				wm.awaitCleaner(500_000, true);
+				controlDone.countDown();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		Thread test = new Thread(() -> {
+			try {
+				wm.awaitCleaner(600_000, false);
+				testDone.countDown();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		wm.cleanerAdvanced(1000);
+		control.start();
+		test.start();
+		assertTrue(wm.awaitConsumers(5, TimeUnit.SECONDS));
+		assertFalse(controlDone.await(200, TimeUnit.MILLISECONDS));
+
+		/*
+		 * Cleaner reports the same position - the Consumer with the lowest position is let through
+		 */
+		wm.cleanerAdvanced(1000);
+		assertTrue(controlDone.await(5, TimeUnit.SECONDS));
+		assertFalse(testDone.await(200, TimeUnit.MILLISECONDS));
+
+		/*
+		 * Cleaner moves up to the control position, and the test Consumer is still too far ahead
+		 */
+		wm.cleanerAdvanced(499_488);
+		assertFalse(testDone.await(200, TimeUnit.MILLISECONDS));
+		wm.cleanerAdvanced(590_000);
+		assertTrue(testDone.await(5, TimeUnit.SECONDS));
+		control.join();
+		test.join();
+	}
+
+	@Test
+	public void awaitCleanerNotReleasedWhileOtherConsumerRunning() throws InterruptedException {
+		final PositionWatermark wm = new PositionWatermark(PositionWatermark.MIN_MAX_LAG);
+		final CountDownLatch done = new CountDownLatch(1);
+		Thread consumer = new Thread(() -> {
+			try {
+				wm.awaitCleaner(500_000, false);
+				done.countDown();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		consumer.start();
+		assertTrue(wm.awaitConsumers(5, TimeUnit.SECONDS));
+
+		/*
+		 * other Consumer is still working, so a Cleaner that isn't moving isn't stalled
+		 */
+		wm.cleanerAdvanced(0);
+		wm.cleanerAdvanced(0);
+		assertFalse(done.await(300, TimeUnit.MILLISECONDS));
+
+		wm.setContigRead(true);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		consumer.join();
+	}
+
+	@Test
+	public void awaitCleanerSingleConsumer() throws InterruptedException {
+		final PositionWatermark wm = new PositionWatermark(PositionWatermark.MIN_MAX_LAG, 1);
+		final CountDownLatch done = new CountDownLatch(1);
+		Thread consumer = new Thread(() -> {
+			try {
+				wm.awaitCleaner(500_000, false);
+				done.countDown();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		consumer.start();
+		assertTrue(wm.awaitConsumers(5, TimeUnit.SECONDS));
+		wm.cleanerAdvanced(100);
+		assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+		wm.cleanerAdvanced(100);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		consumer.join();
+	}
+}
@@ -1,6 +1,8 @@
 package org.qcmg.snp;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -12,14 +14,21 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
+import org.ini4j.Ini;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.qcmg.common.commandline.Executor;
+import org.qcmg.common.meta.QExec;
 
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMFileHeader.SortOrder;
@@ -27,6 +36,7 @@ import htsjdk.samtools.SAMFileWriter;
 import htsjdk.samtools.SAMFileWriterFactory;
 import htsjdk.samtools.SAMLineParser;
 import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.SamReader;
@@ -74,6 +84,25 @@ public class StandardPipelineTest {
 	
 	@Test
 	public void testRunStandardMode() throws Exception{
+		runStandardMode("");
+	}
+	
+	@Test
+	public void testRunStandardModeColumnarPileup() throws Exception{
+		runStandardMode("\npileupStore = columnar");
+	}
+	
+	@Test
+	public void testRunStandardModeContigThreads() throws Exception{
+		runStandardMode("\ncontigThreads = 3");
+	}
+	
+	@Test
+	public void testRunStandardModeContigThreadsColumnarPileup() throws Exception{
+		runStandardMode("\ncontigThreads = 3\npileupStore = columnar");
+	}
+	
+	private void runStandardMode(String extraParameters) throws Exception{
 		final File logFile = testFolder.newFile("qsnp.log");
 		final File normalBam = createCoverageBam("normal.bam");
 		checkBam(normalBam);
@@ -86,7 +115,7 @@ public class StandardPipelineTest {
 		IniFileGenerator.addInputFiles(ini, false, "controlBam = " + normalBam.getAbsolutePath());
 		IniFileGenerator.addInputFiles(ini, false, "testBam = " + tumourBam.getAbsolutePath());
 		IniFileGenerator.addOutputFiles(ini, false, "vcf = " + vcf.getAbsolutePath());
-		IniFileGenerator.addStringToIniFile(ini, "[parameters]\nrunMode = standard\nfilter = and(Flag_DuplicateRead==false, Cigar_M > 34, MD_mismatch <= 3, MAPQ > 10)", true);
+		IniFileGenerator.addStringToIniFile(ini, "[parameters]\nrunMode = standard\nfilter = and(Flag_DuplicateRead==false, Cigar_M > 34, MD_mismatch <= 3, MAPQ > 10)" + extraParameters, true);
 		
 		final String command = "-log " + logFile.getAbsolutePath() + " -i " + ini.getAbsolutePath();
 		final Executor exec = new Executor(command, "org.qcmg.snp.Main");
@@ -124,6 +153,20 @@ public class StandardPipelineTest {
 	
 	@Test
 	public void testNumbers() throws IOException, InterruptedException {
+		runNumbers("");
+	}
+	
+	@Test
+	public void testNumbersColumnarPileup() throws IOException, InterruptedException {
+		runNumbers("\npileupStore = columnar");
+	}
+	
+	@Test
+	public void testNumbersContigThreads() throws IOException, InterruptedException {
+		runNumbers("\ncontigThreads = 2\npileupStore = columnar");
+	}
+	
+	private void runNumbers(String extraParameters) throws IOException, InterruptedException {
 		
 		final File logFile = testFolder.newFile("qsnp.log");
 		final File normalBam = createCoverageGL208("normal.bam", "gl208.sams");
@@ -137,7 +180,7 @@ public class StandardPipelineTest {
 		IniFileGenerator.addInputFiles(ini, false, "controlBam = " + normalBam.getAbsolutePath());
 		IniFileGenerator.addInputFiles(ini, false, "testBam = " + tumourBam.getAbsolutePath());
 		IniFileGenerator.addOutputFiles(ini, false, "vcf = " + vcf.getAbsolutePath());
-		IniFileGenerator.addStringToIniFile(ini, "[parameters]\nrunMode = standard\nfilter = and(Flag_DuplicateRead==false, Cigar_M > 34, MD_mismatch <= 3, MAPQ > 10)", true);
+		IniFileGenerator.addStringToIniFile(ini, "[parameters]\nrunMode = standard\nfilter = and(Flag_DuplicateRead==false, Cigar_M > 34, MD_mismatch <= 3, MAPQ > 10)" + extraParameters, true);
 		
 		final String command = "-log " + logFile.getAbsolutePath() + " -i " + ini.getAbsolutePath();
 		final Executor exec = new Executor(command, "org.qcmg.snp.Main");
@@ -154,6 +197,94 @@ public class StandardPipelineTest {
 //		assertEquals("GL000208.1	98	.	C	A	.	.	FLANK=ACTTTAATGCA	GT:AD:DP:EOR:FF:FT:INF:NNS:OABS	1/1:0,83:83:A0[]8[]:A188;G1:.:.:59:A8[37]75[38.63]	1/1:0,83:83:A0[]8[]:A188;G1:.:.:59:A8[37]75[38.63]", vcfs.get(3));
 	}
 	
+	@Test
+	public void testCoverageGapLargerThanMaxPositionLag() throws Exception {
+		runCoverageGap("");
+	}
+
+	@Test
+	public void testCoverageGapLargerThanMaxPositionLagColumnarPileup() throws Exception {
+		runCoverageGap("\npileupStore = columnar");
+	}
+
+	@Test
+	public void testCoverageGapLargerThanMaxPositionLagContigThreads() throws Exception {
+		runCoverageGap("\ncontigThreads = 2");
+	}
+
+	@Test
+	public void testCoverageGapLargerThanMaxPositionLagContigThreadsColumnarPileup() throws Exception {
+		runCoverageGap("\ncontigThreads = 2\npileupStore = columnar");
+	}
+
+	/*
+	 * both samples have a gap in coverage on chr1 that is much larger than the maximum position lag (as at a centromere),
+	 * and more reads after the gap than will fit in the queues, so neither Producer finishes the contig while the Consumers are held
+	 */
+	private void runCoverageGap(String extraParameters) throws Exception {
+		final File normalBam = createGapBam("normal.bam", false);
+		final File tumourBam = createGapBam("tumour.bam", true);
+		final File ini = testFolder.newFile("ini.ini");
+		final File vcf = testFolder.newFile("output.vcf");
+		IniFileGenerator.createRulesOnlyIni(ini);
+		IniFileGenerator.addInputFiles(ini, false, "ref = " + referenceFile.getAbsolutePath());
+		IniFileGenerator.addInputFiles(ini, false, "controlBam = " + normalBam.getAbsolutePath());
+		IniFileGenerator.addInputFiles(ini, false, "testBam = " + tumourBam.getAbsolutePath());
+		IniFileGenerator.addOutputFiles(ini, false, "vcf = " + vcf.getAbsolutePath());
+		IniFileGenerator.addStringToIniFile(ini, "[parameters]\nrunMode = standard\nqueueCapacity = 4\nmaxPositionLag = " + PositionWatermark.MIN_MAX_LAG + extraParameters, true);
+
+		ExecutorService service = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> pipeline = service.submit(() -> {
+				new StandardPipeline(new Ini(ini), new QExec("coverageGap", "test", null), false);
+				return null;
+			});
+			pipeline.get(2, TimeUnit.MINUTES);
+		} catch (TimeoutException e) {
+			fail("qsnp did not complete - Consumers are waiting on a Cleaner that can't advance");
+		} finally {
+			service.shutdownNow();
+		}
+
+		List<String> vcfs = Files.lines(Paths.get(vcf.getPath())).filter(s -> ! s.startsWith("#")).toList();
+		assertEquals(1, vcfs.size());
+		assertTrue(vcfs.getFirst().startsWith("chr1	700060	.	A	C	"));
+	}
+
+	private File createGapBam(final String fileName, boolean isTest) throws IOException {
+		final File file = testFolder.newFile(fileName);
+		SAMReadGroupRecord rg = new SAMReadGroupRecord("gap");
+		rg.setSample("ES");
+		header.setReadGroups(List.of(rg));
+		char[] bases = new char[50];
+		Arrays.fill(bases, 'A');
+		try (SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(header, true, file)) {
+			for (int i = 0; i < 60; i++) {
+				/*
+				 * 20 reads before the gap, the rest after it
+				 */
+				int start = i < 20 ? 10_001 + i * 10 : 700_001 + i;
+				SAMRecord record = new SAMRecord(header);
+				record.setReadName("gap_" + i);
+				record.setReferenceName("chr1");
+				record.setAlignmentStart(start);
+				record.setCigarString("50M");
+				record.setMappingQuality(60);
+				record.setAttribute("RG", "gap");
+				char[] readBases = bases.clone();
+				if (isTest && start <= 700_060 && start + 49 >= 700_060) {
+					readBases[700_060 - start] = 'C';
+				}
+				record.setReadString(new String(readBases));
+				byte[] quals = new byte[50];
+				Arrays.fill(quals, (byte) 40);
+				record.setBaseQualities(quals);
+				writer.addAlignment(record);
+			}
+		}
+		return file;
+	}
+
 	public void checkBam(File f) {
 		SamReader reader = SamReaderFactory.makeDefault().open(f);
 		assertEquals(SortOrder.coordinate, reader.getFileHeader().getSortOrder());
@@ -88,6 +88,7 @@ public class Options {
 	private boolean includeTranslocations;
 	private boolean allChromosomes = true;
 	private int repeatCountCutoff = 1000;
+	private int threadCount = Runtime.getRuntime().availableProcessors();
 
 
 	/**
@@ -172,6 +173,10 @@ public class Options {
 		if (generalSection.get("repeat_cutoff") != null) {
 			repeatCountCutoff = Integer.parseInt(generalSection.get("repeat_cutoff"));
 		}
+		
+		if (generalSection.get("threads") != null) {
+			threadCount = Math.max(1, Integer.parseInt(generalSection.get("threads")));
+		}
 
 		//ranges can be null, means all chromosome
 		ranges = generalSection.getAll("range");			
@@ -345,6 +350,13 @@ public class Options {
 		return repeatCountCutoff;
 	}
 
+	/**
+	 * @return number of threads used to cluster soft clips and to realign contigs
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
 	private void processRanges() throws QSVException {
 		includeTranslocations = false;
 		allChromosomes = true;
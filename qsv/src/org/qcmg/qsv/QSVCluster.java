@@ -7,7 +7,7 @@
 
 package org.qcmg.qsv;
 
-import gnu.trove.map.TIntObjectMap;
+import au.edu.qimr.tiledaligner.TileLookup;
 import org.qcmg.common.log.QLogger;
 import org.qcmg.common.log.QLoggerFactory;
 import org.qcmg.common.util.Constants;
@@ -743,7 +743,7 @@ public class QSVCluster {
 	/*
 	 * For one-sided clips, go back to bam to see if clips at the other breakpoint can be rescues
 	 */
-	private void rescueClipping(TIntObjectMap<int[]> cache, QSVParameters p, QSVParameters n, String softClipDir, int consensusLength, int minInsertSize) throws Exception {
+	private void rescueClipping(TileLookup cache, QSVParameters p, QSVParameters n, String softClipDir, int consensusLength, int minInsertSize) throws Exception {
 		if (clipRecords != null) {
 			for (SoftClipCluster r: clipRecords) {
 				if ( ! r.hasMatchingBreakpoints()) {
@@ -1149,7 +1149,7 @@ public class QSVCluster {
 	/**
 	 * Try to rescue clipping for any one side clip records
 	 */
-	public void rescueClippping(TIntObjectMap<int[]> cache, QSVParameters tumourParameters,	QSVParameters normalParameters, String softClipDir,
+	public void rescueClippping(TileLookup cache, QSVParameters tumourParameters,	QSVParameters normalParameters, String softClipDir,
 			Integer consensusLength, Integer minInsertSize) throws Exception {
 		if ( ! isGermline && ! rescued) {
 			
@@ -1165,14 +1165,14 @@ public class QSVCluster {
 	/**
 	 * Attempts to create a split read contig for the SV using clips, unmapped reads and discordant pairs
 	 */
-	public void createSplitReadContig(TIntObjectMap<int[]> cache,
+	public void createSplitReadContig(TileLookup cache,
 									  QSVParameters tumourParameters, QSVParameters normalParameters,
 									  String softClipDir,
 									  boolean isSplitRead,
 									  String reference, String blatFile) throws Exception {
 		createSplitReadContig(cache, tumourParameters,  normalParameters, softClipDir, isSplitRead, reference,  blatFile, false);
 	}
-		public void createSplitReadContig(TIntObjectMap<int[]> cache,
+		public void createSplitReadContig(TileLookup cache,
 										  QSVParameters tumourParameters, QSVParameters normalParameters,
 										  String softClipDir,
 										  boolean isSplitRead,
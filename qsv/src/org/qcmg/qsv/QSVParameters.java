@@ -6,6 +6,7 @@
  */
 package org.qcmg.qsv;
 
+import au.edu.qimr.tiledaligner.TileLookup;
 import au.edu.qimr.tiledaligner.PositionChrPositionMap.LongRange;
 import htsjdk.samtools.*;
 import org.ini4j.Ini;
@@ -16,6 +17,8 @@ import org.qcmg.common.model.ChrPosition;
 import org.qcmg.picard.SAMFileReaderFactory;
 import org.qcmg.qsv.annotate.Annotator;
 import org.qcmg.qsv.annotate.RunTypeRecord;
+import org.qcmg.qsv.blat.ContigAligner;
+import org.qcmg.qsv.blat.TiledContigAligner;
 import org.qcmg.qsv.util.QSVConstants;
 
 import java.io.File;
@@ -43,6 +46,7 @@ public class QSVParameters {
 	private final boolean runSoftClipAnalysis;
 	private Collection<String> readGroupIds;
 	private final int repeatCountCutoff;
+	private final int threadCount;
 
 	private final File inputBamFile;
 	private final String findType;
@@ -58,6 +62,7 @@ public class QSVParameters {
 	private File clippedBamFile;
 	
 	private final Map<ChrPosition, LongRange> refIndexPositionMap;
+	private ContigAligner contigAligner;
 
 
 	/**
@@ -114,6 +119,7 @@ public class QSVParameters {
 		getISizesFromIniFile(options);
 
 		this.repeatCountCutoff = options.getRepeatCountCutoff();
+		this.threadCount = options.getThreadCount();
 		logger.info("Max repeat count number: " + repeatCountCutoff);
 		this.annotator = new Annotator(lowerInsertSize, upperInsertSize, new File(resultsDir + "." + findType + ".pairing_stats.xml"), pairingType, sequencingRuns, pairingType, mapper);	
 	}
@@ -476,6 +482,21 @@ public class QSVParameters {
 		return refIndexPositionMap;
 	}
 
+	/**
+	 * Sets the aligner used to realign split read and clip contigs. If not set, the in-process tiled aligner is used.
+	 */
+	public void setContigAligner(ContigAligner contigAligner) {
+		this.contigAligner = contigAligner;
+	}
+
+	/**
+	 * @param cache tiled aligner cache, used if no aligner has been set
+	 * @return the aligner to use for split read and clip contig realignment
+	 */
+	public ContigAligner getContigAligner(TileLookup cache) {
+		return null != contigAligner ? contigAligner : new TiledContigAligner(reference, refIndexPositionMap, cache, threadCount);
+	}
+
 	/**
 	 * Sets the reference.
 	 *
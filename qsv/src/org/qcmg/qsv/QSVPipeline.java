@@ -51,10 +51,10 @@ import org.qcmg.qsv.util.CustomThreadPoolExecutor;
 import org.qcmg.qsv.util.QSVConstants;
 import org.qcmg.qsv.util.QSVUtil;
 
+import au.edu.qimr.tiledaligner.TileLookup;
 import au.edu.qimr.tiledaligner.PositionChrPositionMap.LongRange;
 import au.edu.qimr.tiledaligner.ReadTiledAligerFile;
 import au.edu.qimr.tiledaligner.util.TiledAlignerUtil;
-import gnu.trove.map.TIntObjectMap;
 
 /**
  * 
@@ -63,7 +63,7 @@ import gnu.trove.map.TIntObjectMap;
  */
 public class QSVPipeline {
 
-	public static TIntObjectMap<int[]> TILED_ALIGNER_CACHE;
+	public static TileLookup TILED_ALIGNER_CACHE;
 
 	private final QLogger logger = QLoggerFactory.getLogger(QSVPipeline.class);
 	private static final String FILE_SEPARATOR = FileSystems.getDefault().getSeparator();
@@ -87,7 +87,7 @@ public class QSVPipeline {
 	private final String analysisId;
 	private final String resultsDir;
 	private long clipCount = 0;
-	private final Future<TIntObjectMap<int[]>> future;
+	private final Future<TileLookup> future;
 
 	public QSVPipeline(Options options, String resultsDir, Date analysisDate, String analysisId, QExec exec) throws Exception {
 
@@ -105,7 +105,7 @@ public class QSVPipeline {
 		String tiledAlignerFile = options.getTiledAligner() == null ? "/reference/genomeinfo/q3clinvar/q3tiledaligner_5k.txt.gz" : options.getTiledAligner();
 		logger.info("loading tiled aligner cache: " + tiledAlignerFile);
 		
-		Callable<TIntObjectMap<int[]>> callable = () -> ReadTiledAligerFile.getCache(tiledAlignerFile, 64, 2);
+		Callable<TileLookup> callable = () -> ReadTiledAligerFile.getCache(tiledAlignerFile, 64, 2);
 		future = executor.submit(callable);
 		
 		//copy ini file to output directory
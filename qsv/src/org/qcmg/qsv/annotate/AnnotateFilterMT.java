@@ -6,9 +6,7 @@
  */
 package org.qcmg.qsv.annotate;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.util.AbstractQueue;
 import java.util.Collection;
 import java.util.List;
@@ -38,6 +36,7 @@ import org.qcmg.qsv.QSVException;
 import org.qcmg.qsv.QSVParameters;
 import org.qcmg.qsv.assemble.QSVAssemble;
 import org.qcmg.qsv.softclip.SoftClipStaticMethods;
+import org.qcmg.qsv.softclip.SoftClipStore;
 import org.qcmg.qsv.util.CustomThreadPoolExecutor;
 import org.qcmg.qsv.util.QSVConstants;
 import org.qcmg.qsv.util.QSVUtil;
@@ -272,11 +271,11 @@ public class AnnotateFilterMT implements Runnable {
                         for (final Chromosome chromosome : chromosomes) {
                             logger.info("Reading records from chromosome: " + chromosome.getName() + " in sample " + parameters.getFindType());
 
-                            BufferedWriter writer = null;
+                            SoftClipStore.Writer writer = null;
 
-                            //set up writer to write clips to txt file
+                            //set up writer to write clips to the clip store
                             if (runClip) {
-                                writer = new BufferedWriter(new FileWriter(SoftClipStaticMethods.getSoftClipFile(chromosome.getName(), parameters.getFindType(), softClipDir), true));
+                                writer = new SoftClipStore.Writer(new File(SoftClipStaticMethods.getSoftClipFile(chromosome.getName(), parameters.getFindType(), softClipDir)));
                             }
 
                             //write reads
@@ -306,7 +305,7 @@ public class AnnotateFilterMT implements Runnable {
             }
         }
 
-        private boolean readAndWriteData(SamReader reader, BufferedWriter writer, Chromosome chromosome, int startPos, int endPos) throws Exception {
+        private boolean readAndWriteData(SamReader reader, SoftClipStore.Writer writer, Chromosome chromosome, int startPos, int endPos) throws Exception {
 
             boolean result = true;
 
@@ -391,10 +390,10 @@ public class AnnotateFilterMT implements Runnable {
         /*
          * write soft clips and unmapped reads
          */
-        private boolean pileupSoftClips(BufferedWriter writer, SAMRecord record, String rgId, int start, int end, Chromosome chromosome, int count) throws Exception {
+        private boolean pileupSoftClips(SoftClipStore.Writer writer, SAMRecord record, String rgId, int start, int end, Chromosome chromosome, int count) throws Exception {
             if (record.getReadUnmappedFlag()) {
                 unmappedCount.incrementAndGet();
-                QSVUtil.writeUnmappedRecord(writer, record, rgId, start, end);
+                writer.addUnmapped(record, rgId, start, end);
                 return add2queue(record, queueOutClip, count);
             }
 
@@ -402,7 +401,7 @@ public class AnnotateFilterMT implements Runnable {
             //see if clips pass the filter
             if (clipQueryEx.Execute(record)) {
                 goodClipCount.incrementAndGet();
-                SoftClipStaticMethods.writeSoftClipRecord(writer, record, rgId, start, end);
+                writer.addClip(record, rgId, start, end);
                 return add2queue(record, queueOutClip, count);
             } else {
                 return true;
@@ -67,13 +67,18 @@ public class Alignment {
 	 */
 	private char getConsensusBase(int position)
 	{	
-		char[] bases = getBasesOJH(position);
 		int a = 0;
 		int t = 0;
 		int c = 0;
 		int g = 0;
-        for (char basis : bases) {
-            switch (basis) {
+		for (int i = 0 , len = matchedReads.size() ; i < len ; i++) {
+			ReadMatch nextMatch = matchedReads.get(i);
+			Read read = nextMatch.read();
+			int pos = nextMatch.matchedPos();
+			if ( ! read.positionWithin(position, pos)) {
+				continue;
+			}
+            switch (read.charAt(position, pos)) {
                 case 'A':
                     a++;
                     break;
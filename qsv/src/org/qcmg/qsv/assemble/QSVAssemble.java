@@ -7,7 +7,6 @@
 package org.qcmg.qsv.assemble;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -16,6 +15,8 @@ import org.qcmg.common.log.QLoggerFactory;
 import org.qcmg.qsv.splitread.UnmappedRead;
 import org.qcmg.qsv.util.QSVUtil;
 
+import gnu.trove.map.hash.TIntIntHashMap;
+
 public class QSVAssemble {
 	
 	private static final QLogger logger = QLoggerFactory.getLogger(QSVAssemble.class);
@@ -173,34 +174,38 @@ public class QSVAssemble {
 	private Read getSplitReadsContigs(List<Read> splitReads, int size) throws Exception {
 		this.currentContig = null;
 		
+		ReadIndex index = new ReadIndex(splitReads);
 		for (int i=0; i<size; i++) {
-			if (i<splitReads.size()) {
-				createSeed(i, splitReads.get(i), splitReads);
+			if (i < index.size()) {
+				createSeed(index.ordinalAt(i), index);
 			}
 		}
+		index.copyLiveReadsTo(splitReads);
 		return currentContig;
 	}
 
-	private void createSeed(int currentIndex, Read seed, List<Read> reads) throws Exception {
+	private void createSeed(int seedOrdinal, ReadIndex index) throws Exception {
+		Read seed = index.get(seedOrdinal);
 		seed.createHashtable();
 
 		ConcurrentHashMap<Integer, ReadMatch> matches = new ConcurrentHashMap<>();
 		
-		findMatches(currentIndex, seed, matches, reads);	
+		findMatches(seedOrdinal, seed, matches, index);	
 		Alignment alignment = new Alignment(matches, seed);
 		
 		if (alignmentSizeGreater(alignment.calculateLength())) {
 			Read contig = alignment.constructConsensusSequence();		
-			Iterator<ReadMatch> iter = alignment.getMatchingReads().iterator();	
 				
 			if (contig != null) {
 				if (contig.getSequence().contains(seed.getSequence())) {
 					
-					while (iter.hasNext()) {
-						Read read = iter.next().read();				
-						contig.setHeader(contig.getHeader() + "," + read.getHeader());
-						removeRead(reads, read);
+					StringBuilder header = new StringBuilder(contig.getHeader());
+					for (ReadMatch match : alignment.getMatchingReads()) {
+						Read read = match.read();				
+						header.append(',').append(read.getHeader());
+						index.removeHeader(read.getHeader());
 					}
+					contig.setHeader(header.toString());
 					if (currentContig == null) {
 						currentContig = contig;
 					} else {
@@ -237,29 +242,28 @@ public class QSVAssemble {
 		return index;
 	}
 
-	private void findMatches(int currentIndex, Read seed,
-			ConcurrentHashMap<Integer, ReadMatch> matches, List<Read> reads) {
+	/*
+	 * Only the reads whose first or last seed occurs in the seed read are examined, in list order
+	 */
+	private void findMatches(int seedOrdinal, Read seed,
+			ConcurrentHashMap<Integer, ReadMatch> matches, ReadIndex index) {
 		int position;
-		for (int j=0, size = reads.size() ; j < size ; j++) {
-			if (j != currentIndex){
+		TIntIntHashMap seeds = seed.getHashtable();
+		for (int ordinal : index.candidates(seeds, seedOrdinal)) {
 
-				Read read = reads.get(j);
+			Read read = index.get(ordinal);
+			
+			if (seeds.containsKey(read.getSeedCode())) { //Forward extending
+				//Calculate relative position of the read against the seed.
+				position = seeds.get(read.getSeedCode());
 				
-				String nextReadSeed = read.getSeed();
-				String nextReadReverseSeed = read.getReverseSeed();			
-
-				if (seed.getHashtable().containsKey(nextReadSeed)) { //Forward extending
-					//Calculate relative position of the read against the seed.
-					position = seed.getHashtable().get(nextReadSeed);
-					
-					matches.put(read.hashCode(), new ReadMatch(read, position));
-				} else if (seed.getHashtable().containsKey(nextReadReverseSeed)) { //Reverse extending
-					//Calculate relative position of the read against the seed.
-					position = seed.getHashtable().get(nextReadReverseSeed);
-					position -= read.length() - SEED_LENGTH;
-					matches.put(getIndex(reads, read), new ReadMatch(read, position));
-				}
-			}			
+				matches.put(read.hashCode(), new ReadMatch(read, position));
+			} else if (seeds.containsKey(read.getReverseSeedCode())) { //Reverse extending
+				//Calculate relative position of the read against the seed.
+				position = seeds.get(read.getReverseSeedCode());
+				position -= read.length() - SEED_LENGTH;
+				matches.put(index.indexOfHeader(read.getHeader()), new ReadMatch(read, position));
+			}
 		}		
 	}
 
@@ -292,7 +296,9 @@ public class QSVAssemble {
 	}
 	
 	private String assembleFinalContig() throws Exception {
-		createSeed(0, clipReads.getFirst(), clipReads);
+		ReadIndex index = new ReadIndex(clipReads);
+		createSeed(0, index);
+		index.copyLiveReadsTo(clipReads);
 		
 		if (currentContig != null) {
 			if (currentContig.getHeader().split(",").length == 2 && !QSVUtil.highNCount(currentContig.getSequence(), 0.1)) {
@@ -6,7 +6,7 @@
  */
 package org.qcmg.qsv.assemble;
 
-import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.map.hash.TIntIntHashMap;
 
 import java.util.Arrays;
 
@@ -17,9 +17,9 @@ public class Read {
 	private String header;
 	private char[] sequence;
 	private final int sequenceLength;
-	private final String forwordSeed;
-	private final String reverseSeed;
-	private TObjectIntHashMap<String> seeds;
+	private final int forwardSeedCode;
+	private final int reverseSeedCode;
+	private TIntIntHashMap seeds;
 	
 	public Read (String header, String tsequence) throws Exception {
 		if (header.startsWith(">") || header.startsWith("@")) {
@@ -35,8 +35,8 @@ public class Read {
 			throw new Exception("Read sequence length less than SEED_LENGTH: " + sequenceLength + " < " + QSVAssemble.SEED_LENGTH);
 		}
 		
-		forwordSeed = String.copyValueOf(sequence, 0, QSVAssemble.SEED_LENGTH);
-		reverseSeed = String.copyValueOf(sequence, sequenceLength - QSVAssemble.SEED_LENGTH, QSVAssemble.SEED_LENGTH);
+		forwardSeedCode = encodeSeed(sequence, 0);
+		reverseSeedCode = encodeSeed(sequence, sequenceLength - QSVAssemble.SEED_LENGTH);
 		
 		checkSequence();
 	}
@@ -56,8 +56,8 @@ public class Read {
 		this.sequence = sequence.toUpperCase().toCharArray();
 		sequenceLength = this.sequence.length;
 		
-		forwordSeed = String.copyValueOf(this.sequence, 0, QSVAssemble.SEED_LENGTH);
-		reverseSeed = String.copyValueOf(this.sequence, sequenceLength - QSVAssemble.SEED_LENGTH, QSVAssemble.SEED_LENGTH);
+		forwardSeedCode = encodeSeed(this.sequence, 0);
+		reverseSeedCode = encodeSeed(this.sequence, sequenceLength - QSVAssemble.SEED_LENGTH);
 		
 		checkSequence();
 	}	
@@ -74,12 +74,40 @@ public class Read {
 	}
 	
 	/*
-	 * Only creates it when needed for space and time reasons
+	 * 3 bits per base (A, C, G, T, N), so that a seed of SEED_LENGTH bases packs into an int
+	 */
+	private static int baseCode(char c) {
+		return switch (c) {
+			case 'A' -> 0;
+			case 'C' -> 1;
+			case 'G' -> 2;
+			case 'T' -> 3;
+			case 'N' -> 4;
+			default -> 7;
+		};
+	}
+
+	static int encodeSeed(char[] sequence, int start) {
+		int code = 0;
+		for (int i = start, end = start + QSVAssemble.SEED_LENGTH; i < end; i++) {
+			code = (code << 3) | baseCode(sequence[i]);
+		}
+		return code;
+	}
+
+	/*
+	 * Only creates it when needed for space and time reasons.
+	 * Maps each packed seed in the read to its position (the last position for seeds that occur more than once)
 	 */
 	public void createHashtable() {
-		seeds = new TObjectIntHashMap<>((sequenceLength - QSVAssemble.SEED_LENGTH) * 2);	// set initial size to avoid resizing
+		seeds = new TIntIntHashMap((sequenceLength - QSVAssemble.SEED_LENGTH) * 2);	// set initial size to avoid resizing
+		int mask = (1 << (3 * QSVAssemble.SEED_LENGTH)) - 1;
+		int code = sequenceLength >= QSVAssemble.SEED_LENGTH ? encodeSeed(sequence, 0) : 0;
 		for (int i = 0; i <= sequenceLength - QSVAssemble.SEED_LENGTH; i++) {
-			seeds.put(String.copyValueOf(sequence, i, QSVAssemble.SEED_LENGTH), i);
+			if (i > 0) {
+				code = ((code << 3) | baseCode(sequence[i + QSVAssemble.SEED_LENGTH - 1])) & mask;
+			}
+			seeds.put(code, i);
 		}
 	}
 	
@@ -87,16 +115,22 @@ public class Read {
 		return sequenceLength;
 	}
 	
-	public String getSeed() {
-		return forwordSeed;
+	/**
+	 * @return the packed first SEED_LENGTH bases of the read
+	 */
+	public int getSeedCode() {
+		return forwardSeedCode;
 	}
 	
-	public String getReverseSeed() {
-		return reverseSeed;
+	/**
+	 * @return the packed last SEED_LENGTH bases of the read
+	 */
+	public int getReverseSeedCode() {
+		return reverseSeedCode;
 	}
 	
 	
-	public TObjectIntHashMap<String> getHashtable() {
+	public TIntIntHashMap getHashtable() {
 		if (seeds == null) createHashtable(); // Create it if it hasn't been created yet.
 		return seeds;
 	}
@@ -0,0 +1,188 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+package org.qcmg.qsv.assemble;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import gnu.trove.iterator.TIntIntIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * Index over the reads being assembled by {@link QSVAssemble}, so that a seed read can find the reads whose first or last
+ * {@link QSVAssemble#SEED_LENGTH} bases occur in it without comparing against every read.
+ * <p>
+ * Reads are identified by their ordinal (their position in the list the index was built from). Removing a read does not
+ * renumber the others, but list positions are still available ({@link #indexOf(int)}, {@link #ordinalAt(int)}) as they would be
+ * had the reads been removed from the list. Reads are only removed by header, first read with that header first, as
+ * {@link QSVAssemble} does with its list.
+ */
+final class ReadIndex {
+
+	private final Read[] reads;
+	private final boolean[] removed;
+	/*
+	 * Fenwick tree of the reads that haven't been removed, for list positions
+	 */
+	private final int[] liveCounts;
+	private int size;
+
+	private final TIntObjectHashMap<TIntArrayList> byForwardSeed = new TIntObjectHashMap<>();
+	private final TIntObjectHashMap<TIntArrayList> byReverseSeed = new TIntObjectHashMap<>();
+	private final Map<String, HeaderGroup> byHeader = new HashMap<>();
+
+	/*
+	 * ordinals of the reads sharing a header, in list order. Reads are removed from the front.
+	 */
+	private static final class HeaderGroup {
+		private final TIntArrayList ordinals = new TIntArrayList(1);
+		private int head;
+	}
+
+	/*
+	 * used to collect each candidate only once per call to candidates
+	 */
+	private final int[] stamps;
+	private int stamp;
+
+	ReadIndex(List<Read> list) {
+		int n = list.size();
+		this.reads = list.toArray(new Read[0]);
+		this.removed = new boolean[n];
+		this.liveCounts = new int[n + 1];
+		this.stamps = new int[n];
+		this.size = n;
+		for (int i = 0; i < n; i++) {
+			Read read = reads[i];
+			addToFenwick(i, 1);
+			addTo(byForwardSeed, read.getSeedCode(), i);
+			addTo(byReverseSeed, read.getReverseSeedCode(), i);
+			byHeader.computeIfAbsent(read.getHeader(), k -> new HeaderGroup()).ordinals.add(i);
+		}
+	}
+
+	private static void addTo(TIntObjectHashMap<TIntArrayList> map, int code, int ordinal) {
+		TIntArrayList list = map.get(code);
+		if (null == list) {
+			list = new TIntArrayList(2);
+			map.put(code, list);
+		}
+		list.add(ordinal);
+	}
+
+	private void addToFenwick(int ordinal, int delta) {
+		for (int i = ordinal + 1; i < liveCounts.length; i += i & -i) {
+			liveCounts[i] += delta;
+		}
+	}
+
+	/**
+	 * @return the number of reads that haven't been removed
+	 */
+	int size() {
+		return size;
+	}
+
+	Read get(int ordinal) {
+		return reads[ordinal];
+	}
+
+	/**
+	 * @return the list position of the read with the supplied ordinal (which must not have been removed)
+	 */
+	int indexOf(int ordinal) {
+		int count = 0;
+		for (int i = ordinal; i > 0; i -= i & -i) {
+			count += liveCounts[i];
+		}
+		return count;
+	}
+
+	/**
+	 * @return the ordinal of the read at the supplied list position
+	 */
+	int ordinalAt(int index) {
+		int position = 0;
+		int remaining = index + 1;
+		for (int step = Integer.highestOneBit(Math.max(1, liveCounts.length - 1)); step > 0; step >>= 1) {
+			int next = position + step;
+			if (next < liveCounts.length && liveCounts[next] < remaining) {
+				position = next;
+				remaining -= liveCounts[next];
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * @return the list position of the first read with the supplied header, or -1 if there isn't one
+	 */
+	int indexOfHeader(String header) {
+		HeaderGroup group = byHeader.get(header);
+		if (null == group || group.head >= group.ordinals.size()) {
+			return -1;
+		}
+		return indexOf(group.ordinals.get(group.head));
+	}
+
+	/**
+	 * Removes the first read with the supplied header, if there is one
+	 */
+	void removeHeader(String header) {
+		HeaderGroup group = byHeader.get(header);
+		if (null != group && group.head < group.ordinals.size()) {
+			int ordinal = group.ordinals.get(group.head++);
+			removed[ordinal] = true;
+			addToFenwick(ordinal, -1);
+			size--;
+		}
+	}
+
+	/**
+	 * @return the ordinals, in list order, of the reads (other than the excluded one) whose first or last seed is a key in the supplied map of seeds
+	 */
+	int[] candidates(TIntIntMap seeds, int excludedOrdinal) {
+		stamp++;
+		TIntArrayList found = new TIntArrayList();
+		for (TIntIntIterator iter = seeds.iterator(); iter.hasNext(); ) {
+			iter.advance();
+			collect(byForwardSeed.get(iter.key()), excludedOrdinal, found);
+			collect(byReverseSeed.get(iter.key()), excludedOrdinal, found);
+		}
+		int[] result = found.toArray();
+		Arrays.sort(result);
+		return result;
+	}
+
+	private void collect(TIntArrayList ordinals, int excludedOrdinal, TIntArrayList found) {
+		if (null == ordinals) {
+			return;
+		}
+		for (int i = 0, n = ordinals.size(); i < n; i++) {
+			int ordinal = ordinals.getQuick(i);
+			if (ordinal != excludedOrdinal && ! removed[ordinal] && stamps[ordinal] != stamp) {
+				stamps[ordinal] = stamp;
+				found.add(ordinal);
+			}
+		}
+	}
+
+	/**
+	 * Replaces the contents of the list with the reads that haven't been removed, in their original order
+	 */
+	void copyLiveReadsTo(List<Read> list) {
+		list.clear();
+		for (int i = 0; i < reads.length; i++) {
+			if ( ! removed[i]) {
+				list.add(reads[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,31 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+package org.qcmg.qsv.blat;
+
+import java.util.List;
+import java.util.Map;
+
+import org.qcmg.common.model.BLATRecord;
+
+/**
+ * Aligns consensus and clip contig sequences to the reference.
+ * <p>
+ * Used by split read and clip contig realignment, so that the alignment backend can be swapped without touching the callers.
+ * Implementations must be safe to call from multiple threads.
+ */
+public interface ContigAligner {
+
+	/**
+	 * Aligns a batch of sequences.
+	 * 
+	 * @param sequenceNameMap key: sequence, value: name given to the records for that sequence (may be null)
+	 * @param originatingMethod name of the calling method, for logging
+	 * @param log whether to log details of the alignment
+	 * @param recordsMustComeFromChrInName if true, only records on the references named in the sequence name are returned
+	 * @return map of sequence to its alignments, sorted by score (best last)
+	 */
+	Map<String, List<BLATRecord>> align(Map<String, String> sequenceNameMap, String originatingMethod, boolean log, boolean recordsMustComeFromChrInName);
+}
@@ -0,0 +1,109 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+package org.qcmg.qsv.blat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+
+import org.qcmg.common.model.BLATRecord;
+import org.qcmg.common.model.ChrPosition;
+
+import au.edu.qimr.tiledaligner.TileLookup;
+import au.edu.qimr.tiledaligner.PositionChrPositionMap.LongRange;
+import au.edu.qimr.tiledaligner.util.TiledAlignerUtil;
+
+/**
+ * {@link ContigAligner} that uses the in-process tiled aligner (tiled aligner cache lookups followed by Smith-Waterman).
+ * <p>
+ * A batch containing more than one sequence is spread over a work-stealing pool, so that a batch with a few long (slow) sequences
+ * doesn't leave the other threads idle. When called from a fork/join worker (eg. the soft clip clustering in FindClipClustersMT), the
+ * sequences are aligned in the caller's pool, so that the number of threads doing the work doesn't go beyond the size of that pool.
+ * Otherwise a pool shared by all aligners with the same number of threads is used. Single sequences are aligned on the calling thread.
+ */
+public class TiledContigAligner implements ContigAligner {
+
+	private static final ConcurrentMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+	private final String refFile;
+	private final Map<ChrPosition, LongRange> refIndexMap;
+	private final TileLookup cache;
+	private final int tileLength;
+	private final ForkJoinPool pool;
+
+	/**
+	 * @param threads number of threads in the pool used to align batches of sequences, when not called from a fork/join worker
+	 */
+	public TiledContigAligner(String refFile, Map<ChrPosition, LongRange> refIndexMap, TileLookup cache, int threads) {
+		this(refFile, refIndexMap, cache, TiledAlignerUtil.TILE_LENGTH, POOLS.computeIfAbsent(Math.max(1, threads), TiledContigAligner::newPool));
+	}
+
+	public TiledContigAligner(String refFile, Map<ChrPosition, LongRange> refIndexMap, TileLookup cache, int tileLength, ForkJoinPool pool) {
+		this.refFile = refFile;
+		this.refIndexMap = refIndexMap;
+		this.cache = cache;
+		this.tileLength = tileLength;
+		this.pool = pool;
+	}
+
+	@Override
+	public Map<String, List<BLATRecord>> align(Map<String, String> sequenceNameMap, String originatingMethod, boolean log, boolean recordsMustComeFromChrInName) {
+		if (null == sequenceNameMap) {
+			throw new IllegalArgumentException("null sequenceNameMap passed to TiledContigAligner.align");
+		}
+		if (sequenceNameMap.size() < 2) {
+			return TiledAlignerUtil.runTiledAlignerCache(refFile, refIndexMap, cache, sequenceNameMap, tileLength, originatingMethod, log, recordsMustComeFromChrInName);
+		}
+
+		List<Callable<Map<String, List<BLATRecord>>>> tasks = new ArrayList<>(sequenceNameMap.size());
+		for (Entry<String, String> entry : sequenceNameMap.entrySet()) {
+			Map<String, String> single = Collections.singletonMap(entry.getKey(), entry.getValue());
+			tasks.add(() -> TiledAlignerUtil.runTiledAlignerCache(refFile, refIndexMap, cache, single, tileLength, originatingMethod, log, recordsMustComeFromChrInName));
+		}
+
+		Map<String, List<BLATRecord>> results = new HashMap<>(sequenceNameMap.size() * 2);
+		if (ForkJoinTask.inForkJoinPool()) {
+			List<ForkJoinTask<Map<String, List<BLATRecord>>>> forkJoinTasks = new ArrayList<>(tasks.size());
+			for (Callable<Map<String, List<BLATRecord>>> task : tasks) {
+				forkJoinTasks.add(ForkJoinTask.adapt(task));
+			}
+			for (ForkJoinTask<Map<String, List<BLATRecord>>> task : ForkJoinTask.invokeAll(forkJoinTasks)) {
+				results.putAll(task.join());
+			}
+			return results;
+		}
+		for (Future<Map<String, List<BLATRecord>>> future : pool.invokeAll(tasks)) {
+			try {
+				results.putAll(future.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted whilst aligning sequences for " + originatingMethod, e);
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof RuntimeException re ? re : new IllegalStateException("Failed to align sequences for " + originatingMethod, e.getCause());
+			}
+		}
+		return results;
+	}
+
+	private static ForkJoinPool newPool(int threads) {
+		return new ForkJoinPool(threads, pool -> {
+			var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName("tiled-aligner-" + thread.getPoolIndex());
+			thread.setDaemon(true);
+			return thread;
+		}, null, false);
+	}
+}
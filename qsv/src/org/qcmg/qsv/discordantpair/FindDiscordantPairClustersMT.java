@@ -9,6 +9,7 @@ package org.qcmg.qsv.discordantpair;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +24,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 import org.qcmg.common.log.QLogger;
 import org.qcmg.common.log.QLoggerFactory;
@@ -146,7 +148,8 @@ public class FindDiscordantPairClustersMT implements Callable <Map<String, List<
 				if (compareReader != null) {
 					if (findParameters.isTumor() && compareReader.getFilesToRead().containsKey(entry.getKey())) {
 						List<File> compareList = compareReader.getFilesToRead().get(entry.getKey());
-						compareMatePairsList = compareReader.getMatePairsListByFiles(compareList, false);                    
+						Predicate<MatePair> filter = null != compareParameters ? compareWindowFilter(tempClusters, compareParameters.getUpperInsertSize()) : null;
+						compareMatePairsList = compareReader.getMatePairsListByFiles(compareList, false, filter);
 					}
 				}
 
@@ -156,6 +159,59 @@ public class FindDiscordantPairClustersMT implements Callable <Map<String, List<
 
 	}
 
+	/**
+	 * Returns a filter that accepts only those comparison pairs whose left mate could fall within the comparison window of one of the clusters
+	 * (see {@link DiscordantPairCluster#setNormalRange(int)} and {@link #filterCluster(List, DiscordantPairCluster)}), so that pairs that can't
+	 * match aren't held in memory.
+	 * The windows are centred on the clusters' left ends, which lie between the smallest and largest left mate start/end of their pairs.
+	 */
+	static Predicate<MatePair> compareWindowFilter(List<DiscordantPairCluster> clusters, int maxISize) {
+		List<int[]> windows = new ArrayList<>(clusters.size());
+		for (DiscordantPairCluster cluster : clusters) {
+			int min = Integer.MAX_VALUE;
+			int max = Integer.MIN_VALUE;
+			for (MatePair pair : cluster.getClusterMatePairs()) {
+				Mate left = pair.getLeftMate();
+				min = Math.min(min, Math.min(left.getStart(), left.getEnd()));
+				max = Math.max(max, Math.max(left.getStart(), left.getEnd()));
+			}
+			if (min <= max) {
+				windows.add(new int[] {min - maxISize, max + maxISize});
+			}
+		}
+		windows.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+		/*
+		 * merge overlapping windows
+		 */
+		int size = 0;
+		int[] starts = new int[windows.size()];
+		int[] ends = new int[windows.size()];
+		for (int[] w : windows) {
+			if (size > 0 && w[0] <= ends[size - 1]) {
+				ends[size - 1] = Math.max(ends[size - 1], w[1]);
+			} else {
+				starts[size] = w[0];
+				ends[size] = w[1];
+				size++;
+			}
+		}
+		final int windowCount = size;
+
+		return pair -> {
+			int start = Math.min(pair.getLeftMate().getStart(), pair.getLeftMate().getEnd());
+			int end = Math.max(pair.getLeftMate().getStart(), pair.getLeftMate().getEnd());
+			/*
+			 * last window that starts at or before the end of the mate
+			 */
+			int i = Arrays.binarySearch(starts, 0, windowCount, end);
+			if (i < 0) {
+				i = -i - 2;
+			}
+			return i >= 0 && ends[i] >= start;
+		};
+	}
+
 	/**
 	 * Find clusters in the read (by chromosome)
 	 * 
@@ -75,6 +75,19 @@ public class MatePair implements Comparable<MatePair> {
 		checkSortOrder(); 
 	}
 
+	/**
+	 * Creates a pair from mates that have been read back from a {@link MatePairRunFile}
+	 */
+	MatePair(Mate leftMate, Mate rightMate, String pairOrder) {
+		this.readName = leftMate.getReadName();
+		this.leftMate = leftMate;
+		this.rightMate = rightMate;
+		String zpString = leftMate.getZp();
+		this.zp = PairClassification.valueOf(QSVConstants.C_STAR_STAR.equals(zpString) ? "Cxx" : zpString);
+		this.pairOrder = pairOrder;
+		checkSortOrder();
+	}
+
 	private String getPairClassificationFromSamRecord(SAMRecord samRecord) {
 		String zp = (String) samRecord.getAttribute(QSVConstants.ZP_SHORT);
 		if (QSVConstants.C_STAR_STAR.equals(zp)) {
@@ -0,0 +1,371 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+package org.qcmg.qsv.discordantpair;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Binary format used to spill mate pairs to disk during pair finding.
+ * <p>
+ * A file starts with {@link #MAGIC}, and is followed by one or more runs, one per call to {@link #appendRun(File, Collection)}.
+ * Each run holds its record count, its length in bytes, a table of the strings (reference names, ZP values and pair orders) used by its records,
+ * and then the records themselves, sorted by left mate start.
+ * Apart from the read name, which is length prefixed, record fields are fixed width, with strings stored as indexes into the run's table.
+ * <p>
+ * {@link MergeIterator} returns the pairs from a number of files in left mate start order by merging their runs, so that a file never needs to be sorted in memory.
+ * Files written in the old text format ({@link MatePair#toString()} per line) can also be read, and are sorted in memory as before.
+ */
+public final class MatePairRunFile {
+
+	/**
+	 * "QSVP"
+	 */
+	static final int MAGIC = 0x51535650;
+
+	/*
+	 * bytes used by the fixed width part of a record (ie. everything except the read name)
+	 */
+	private static final int MATE_BYTES = 2 + 4 + 4 + 2 + 2 + 1;
+	private static final int FIXED_RECORD_BYTES = 2 * MATE_BYTES + 2;
+
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	private static final Comparator<MatePair> LEFT_START_COMPARATOR = new MatePair.ReadMateLeftStartComparator();
+
+	private MatePairRunFile() {}
+
+	/**
+	 * Sorts the supplied pairs by left mate start and appends them to the file as a single run.
+	 * The file is created (with its magic number) if it does not exist.
+	 */
+	public static void appendRun(File file, Collection<MatePair> pairs) throws IOException {
+		if (pairs.isEmpty()) {
+			return;
+		}
+		byte[] run = encodeRun(pairs);
+		boolean newFile = ! file.exists() || file.length() == 0;
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), READ_BUFFER_SIZE))) {
+			if (newFile) {
+				out.writeInt(MAGIC);
+			}
+			out.write(run);
+		}
+	}
+
+	static byte[] encodeRun(Collection<MatePair> pairs) throws IOException {
+		List<MatePair> sorted = new ArrayList<>(pairs);
+		sorted.sort(LEFT_START_COMPARATOR);
+
+		Map<String, Integer> stringIndexes = new HashMap<>();
+		List<String> strings = new ArrayList<>();
+		ByteArrayOutputStream records = new ByteArrayOutputStream(sorted.size() * (FIXED_RECORD_BYTES + 48));
+		DataOutputStream recordsOut = new DataOutputStream(records);
+		for (MatePair pair : sorted) {
+			recordsOut.writeUTF(pair.getReadName());
+			writeMate(recordsOut, pair.getLeftMate(), stringIndexes, strings);
+			writeMate(recordsOut, pair.getRightMate(), stringIndexes, strings);
+			recordsOut.writeShort(indexOf(pair.getPairOrder(), stringIndexes, strings));
+		}
+		recordsOut.flush();
+
+		ByteArrayOutputStream table = new ByteArrayOutputStream();
+		DataOutputStream tableOut = new DataOutputStream(table);
+		tableOut.writeShort(strings.size());
+		for (String s : strings) {
+			tableOut.writeUTF(s);
+		}
+		tableOut.flush();
+
+		ByteArrayOutputStream run = new ByteArrayOutputStream(8 + table.size() + records.size());
+		DataOutputStream runOut = new DataOutputStream(run);
+		runOut.writeInt(sorted.size());
+		runOut.writeInt(table.size() + records.size());
+		table.writeTo(runOut);
+		records.writeTo(runOut);
+		runOut.flush();
+		return run.toByteArray();
+	}
+
+	private static void writeMate(DataOutputStream out, Mate mate, Map<String, Integer> stringIndexes, List<String> strings) throws IOException {
+		out.writeShort(indexOf(mate.getReferenceName(), stringIndexes, strings));
+		out.writeInt(mate.getStart());
+		out.writeInt(mate.getEnd());
+		out.writeShort(indexOf(mate.getZp(), stringIndexes, strings));
+		out.writeShort(mate.getFlags());
+		out.writeBoolean(mate.getNegOrientation());
+	}
+
+	private static int indexOf(String s, Map<String, Integer> stringIndexes, List<String> strings) {
+		return stringIndexes.computeIfAbsent(s, k -> {
+			if (strings.size() >= 0xFFFF) {
+				throw new IllegalStateException("Too many distinct strings in mate pair run");
+			}
+			strings.add(k);
+			return strings.size() - 1;
+		});
+	}
+
+	/**
+	 * @return true if the file starts with {@link #MAGIC}, false if it is empty or in the text format
+	 */
+	public static boolean isBinary(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+			return in.readInt() == MAGIC;
+		} catch (EOFException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Source of pairs in left mate start order
+	 */
+	private interface Cursor {
+		MatePair current();
+		/**
+		 * moves to the next pair, returning false if there are none left
+		 */
+		boolean advance() throws IOException;
+	}
+
+	/*
+	 * a single run in a binary file, read using positional reads so that all the runs in a file can share a channel
+	 */
+	private static final class RunCursor implements Cursor {
+		private final DataInputStream in;
+		private final String[] strings;
+		private int remaining;
+		private MatePair current;
+
+		RunCursor(FileChannel channel, long position, int count, int length) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(new ChannelRegionInputStream(channel, position, length), Math.min(READ_BUFFER_SIZE, Math.max(length, 1))));
+			this.remaining = count;
+			strings = new String[in.readUnsignedShort()];
+			for (int i = 0 ; i < strings.length ; i++) {
+				strings[i] = in.readUTF();
+			}
+		}
+
+		@Override
+		public MatePair current() {
+			return current;
+		}
+
+		@Override
+		public boolean advance() throws IOException {
+			if (remaining == 0) {
+				current = null;
+				return false;
+			}
+			remaining--;
+			String readName = in.readUTF();
+			Mate left = readMate(readName);
+			Mate right = readMate(readName);
+			current = new MatePair(left, right, strings[in.readUnsignedShort()]);
+			return true;
+		}
+
+		private Mate readMate(String readName) throws IOException {
+			String reference = strings[in.readUnsignedShort()];
+			int start = in.readInt();
+			int end = in.readInt();
+			String zp = strings[in.readUnsignedShort()];
+			int flags = in.readUnsignedShort();
+			boolean negOrientation = in.readBoolean();
+			return new Mate(readName, reference, start, end, zp, flags, negOrientation);
+		}
+	}
+
+	/*
+	 * pairs from a text file, sorted in memory
+	 */
+	private static final class ListCursor implements Cursor {
+		private final Iterator<MatePair> iter;
+		private MatePair current;
+
+		ListCursor(List<MatePair> pairs) {
+			pairs.sort(LEFT_START_COMPARATOR);
+			this.iter = pairs.iterator();
+		}
+
+		@Override
+		public MatePair current() {
+			return current;
+		}
+
+		@Override
+		public boolean advance() {
+			current = iter.hasNext() ? iter.next() : null;
+			return null != current;
+		}
+	}
+
+	private static final class ChannelRegionInputStream extends InputStream {
+		private final FileChannel channel;
+		private long position;
+		private long remaining;
+
+		ChannelRegionInputStream(FileChannel channel, long position, long length) {
+			this.channel = channel;
+			this.position = position;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == 1 ? b[0] & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+			if (n < 0) {
+				throw new EOFException("Unexpected end of mate pair file");
+			}
+			position += n;
+			remaining -= n;
+			return n;
+		}
+	}
+
+	/**
+	 * Returns the pairs from a number of files in left mate start order.
+	 * Pairs with the same left mate start are returned in the order in which they were written (files in the order supplied, runs in file order).
+	 */
+	public static final class MergeIterator implements Iterator<MatePair>, Closeable {
+
+		private final List<FileChannel> channels = new ArrayList<>();
+		private final PriorityQueue<IndexedCursor> queue;
+
+		private record IndexedCursor(Cursor cursor, int index) {}
+
+		public MergeIterator(List<File> files) throws IOException {
+			List<Cursor> cursors = new ArrayList<>();
+			try {
+				for (File file : files) {
+					if (isBinary(file)) {
+						addRuns(file, cursors);
+					} else {
+						cursors.add(new ListCursor(readTextFile(file)));
+					}
+				}
+				queue = new PriorityQueue<>(Math.max(1, cursors.size()),
+						Comparator.<IndexedCursor, MatePair>comparing(ic -> ic.cursor().current(), LEFT_START_COMPARATOR).thenComparingInt(IndexedCursor::index));
+				for (int i = 0 ; i < cursors.size() ; i++) {
+					Cursor c = cursors.get(i);
+					if (c.advance()) {
+						queue.add(new IndexedCursor(c, i));
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				close();
+				throw e;
+			}
+		}
+
+		private void addRuns(File file, List<Cursor> cursors) throws IOException {
+			FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			channels.add(channel);
+			long size = channel.size();
+			long position = 4;
+			ByteBuffer header = ByteBuffer.allocate(8);
+			while (position < size) {
+				header.clear();
+				while (header.hasRemaining()) {
+					if (channel.read(header, position + header.position()) < 0) {
+						throw new EOFException("Truncated mate pair run header in " + file.getAbsolutePath());
+					}
+				}
+				header.flip();
+				int count = header.getInt();
+				int length = header.getInt();
+				position += 8;
+				if (position + length > size) {
+					throw new EOFException("Truncated mate pair run in " + file.getAbsolutePath());
+				}
+				cursors.add(new RunCursor(channel, position, count, length));
+				position += length;
+			}
+		}
+
+		private static List<MatePair> readTextFile(File file) throws IOException {
+			List<MatePair> pairs = new ArrayList<>();
+			try (BufferedReader reader = Files.newBufferedReader(file.toPath())) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					pairs.add(new MatePair(line));
+				}
+			}
+			return pairs;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return ! queue.isEmpty();
+		}
+
+		@Override
+		public MatePair next() {
+			IndexedCursor ic = queue.poll();
+			if (null == ic) {
+				throw new NoSuchElementException();
+			}
+			MatePair pair = ic.cursor().current();
+			try {
+				if (ic.cursor().advance()) {
+					queue.add(ic);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return pair;
+		}
+
+		@Override
+		public void close() throws IOException {
+			IOException exception = null;
+			for (FileChannel channel : channels) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					exception = e;
+				}
+			}
+			channels.clear();
+			if (null != exception) {
+				throw exception;
+			}
+		}
+	}
+}
@@ -7,14 +7,13 @@
 
 package org.qcmg.qsv.discordantpair;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.nio.file.FileSystems;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 
 import org.qcmg.qsv.util.QSVUtil;
 
@@ -103,25 +102,33 @@ public class MatePairsReader {
 	}
 
 	public List<MatePair> getMatePairsListByFiles(List<File> files, boolean isFindMethod) throws Exception {
+		return getMatePairsListByFiles(files, isFindMethod, null);
+	}
+
+	/**
+	 * Returns the pairs in the supplied files, sorted by left mate start.
+	 * The files' sorted runs are merged as they are read, and only pairs that pass the (optional) filter are kept,
+	 * so a caller that only needs some of the pairs does not have to hold the whole of each file in memory.
+	 * 
+	 * @param files mate pair files to read
+	 * @param isFindMethod if true, the pairs read are added to the mate count
+	 * @param filter pairs to keep, or null to keep them all
+	 */
+	public List<MatePair> getMatePairsListByFiles(List<File> files, boolean isFindMethod, Predicate<MatePair> filter) throws Exception {
 
 		List<MatePair> readPairs = new ArrayList<>();
 
-		for (File file : files) {
-			try (FileReader fileReader = new FileReader(file);
-					BufferedReader reader = new BufferedReader(fileReader)) {
-				String line = reader.readLine();
-				while (line != null) {
-					if (isFindMethod) {
-						mateCount++;
-					}
-					MatePair readPair = new MatePair(line);
+		try (MatePairRunFile.MergeIterator iter = new MatePairRunFile.MergeIterator(files)) {
+			while (iter.hasNext()) {
+				MatePair readPair = iter.next();
+				if (isFindMethod) {
+					mateCount++;
+				}
+				if (null == filter || filter.test(readPair)) {
 					readPairs.add(readPair);
-					line = reader.readLine();
 				}
 			}
 		}
-
-		readPairs.sort(new MatePair.ReadMateLeftStartComparator());
 		return readPairs;
 	}
 }
@@ -4,9 +4,7 @@
 
 package org.qcmg.qsv.discordantpair;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.util.HashMap;
@@ -82,22 +80,14 @@ public class MatePairsWriter {
         return fileName;
     }
 
+    /**
+     * Appends the pairs collected since the last call to their files as a sorted binary run (see {@link MatePairRunFile}), and clears them
+     */
     public synchronized void writeMatePairsToFile() throws IOException {
-        // set to true to append rather than create
         Map<String, File> filesToWrite = createFilesToWrite();
 
         for (Map.Entry<String, Map<String, MatePair>> chrEntry : matePairs.entrySet()) {
-
-            File file = filesToWrite.get(chrEntry.getKey());
-            
-            FileWriter fileWriter = new FileWriter(file, true);
-            BufferedWriter writer = new BufferedWriter(fileWriter);
-            Map<String, MatePair> currentPairs = chrEntry.getValue();
-            for (Map.Entry<String, MatePair> entry : currentPairs.entrySet()) {
-                writer.write(entry.getValue().toString());
-            }
-            writer.flush();
-            writer.close();
+            MatePairRunFile.appendRun(filesToWrite.get(chrEntry.getKey()), chrEntry.getValue().values());
         }
         matePairs.clear();
     }
@@ -33,8 +33,7 @@ import org.qcmg.qsv.assemble.Read;
 import org.qcmg.qsv.splitread.UnmappedRead;
 import org.qcmg.qsv.util.QSVUtil;
 
-import au.edu.qimr.tiledaligner.util.TiledAlignerUtil;
-import gnu.trove.map.TIntObjectMap;
+import au.edu.qimr.tiledaligner.TileLookup;
 
 public class Breakpoint implements Comparable<Breakpoint>{
 	
@@ -538,14 +537,14 @@ public class Breakpoint implements Comparable<Breakpoint>{
 		return clips.stream().map(Clip::toString).collect(Collectors.joining(Constants.EMPTY_STRING));
 	}
 
-	public boolean findRescuedMateBreakpoint(TIntObjectMap<int[]> cache, QSVParameters p) {
+	public boolean findRescuedMateBreakpoint(TileLookup cache, QSVParameters p) {
 		String mateConsensus = getMateConsensus();
 		
 		if ( ! StringUtils.isNullOrEmpty(mateConsensus) ) {
 			System.out.println("looking for " + mateConsensus);
 			Map<String, String> seqNameMap = new HashMap<>(2);
 			seqNameMap.put(mateConsensus, getName());
-			Map<String, List<BLATRecord>> blatMap = TiledAlignerUtil.runTiledAlignerCache(p.getReference(), p.getRefIndexPositionMap(), cache, seqNameMap, 13, "Breakpoint.findRescuedMateBreakpoint", false, false);
+			Map<String, List<BLATRecord>> blatMap = p.getContigAligner(cache).align(seqNameMap, "Breakpoint.findRescuedMateBreakpoint", false, false);
 			if (! blatMap.isEmpty()) {
 				List<BLATRecord> recs = blatMap.get(mateConsensus);
 				if (null != recs && ! recs.isEmpty()) {
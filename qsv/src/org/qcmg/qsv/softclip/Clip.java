@@ -64,6 +64,18 @@ public class Clip implements Comparable<Clip>{
 		this.referenceSequence = values[7];
 	}
 
+	Clip(String readName, String reference, int bpPos, boolean isReverse, boolean isLeft, String readSequence, String clipSequence, String referenceSequence) {
+		this.readName = readName;
+		this.reference = reference;
+		this.bpPos = bpPos;
+		this.isReverse = isReverse;
+		this.isLeft = isLeft;
+		this.readSequence = readSequence;
+		this.clipSequence = clipSequence;
+		this.length = clipSequence.length();
+		this.referenceSequence = referenceSequence;
+	}
+
 	public String getReference() {
 		return reference;
 	}
@@ -0,0 +1,108 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ * <p>
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+package org.qcmg.qsv.softclip;
+
+/**
+ * Sizes the soft clip clustering work in {@link FindClipClustersMT} from the resources of the machine it is running on.
+ * <p>
+ * The number of worker threads follows the qsv threads option (by default the number of available processors). The number of chromosomes that are clustered
+ * at the same time is limited by a memory budget (a fraction of the maximum heap), with the footprint of a chromosome
+ * estimated from the size of its clip files. Chromosomes with a lot of clips therefore still get all the threads, as the
+ * work within a chromosome is split into batches that are shared out between the threads.
+ * The translocation tasks that are started while chromosomes are still being clustered are counted against the same budget.
+ */
+final class ClipThreadPlan {
+
+	/*
+	 * fraction of the maximum heap that clustering can use
+	 */
+	static final double HEAP_FRACTION = 0.6;
+
+	/*
+	 * approximate number of bytes of heap used for each byte of clip store once decoded into Clip and Breakpoint objects
+	 */
+	static final int CLIP_FILE_EXPANSION = 8;
+
+	/*
+	 * approximate number of bytes of heap used for each clip or discordant pair cluster of a reference key while its overlaps are found,
+	 * and the split read contigs of the resulting records are built and aligned
+	 */
+	static final int OVERLAP_BYTES_PER_CLUSTER = 64 * 1024;
+
+	/*
+	 * number of batches per thread that a list of work items is split into, so that threads that finish early can pick up more work
+	 */
+	static final int BATCHES_PER_THREAD = 4;
+
+	private final int parallelism;
+	private final long memoryBudget;
+	private long memoryInUse;
+
+	ClipThreadPlan(int processors, long maxMemory) {
+		this.parallelism = Math.max(1, processors);
+		this.memoryBudget = Math.max(1, (long) (maxMemory * HEAP_FRACTION));
+	}
+
+	static ClipThreadPlan forRuntime(int threads) {
+		return new ClipThreadPlan(threads, Runtime.getRuntime().maxMemory());
+	}
+
+	int getParallelism() {
+		return parallelism;
+	}
+
+	long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * @return estimated heap required to cluster a chromosome whose clip files have the supplied total size, capped at the memory budget
+	 */
+	long estimateFootprint(long clipFileBytes) {
+		return Math.min(memoryBudget, Math.max(1, clipFileBytes) * CLIP_FILE_EXPANSION);
+	}
+
+	/**
+	 * @return estimated heap required to find the overlaps of a reference key with the supplied number of clusters, capped at the memory budget
+	 */
+	long estimateOverlapFootprint(int clusters) {
+		return Math.min(memoryBudget, Math.max(1, clusters) * (long) OVERLAP_BYTES_PER_CLUSTER);
+	}
+
+	/**
+	 * @return the number of items to put in each batch when splitting the supplied number of items between the threads
+	 */
+	int getBatchSize(int items, int maxBatchSize) {
+		int batches = parallelism * BATCHES_PER_THREAD;
+		return Math.max(1, Math.min(maxBatchSize, (items + batches - 1) / batches));
+	}
+
+	/**
+	 * Reserves the supplied amount of the memory budget if it is available.
+	 * A reservation is always granted when nothing else is reserved, so that a single large chromosome can always run.
+	 */
+	synchronized boolean tryReserve(long footprint) {
+		if (memoryInUse > 0 && memoryInUse + footprint > memoryBudget) {
+			return false;
+		}
+		memoryInUse += footprint;
+		return true;
+	}
+
+	/**
+	 * As per {@link #tryReserve(long)}, but waits for other reservations to be released if the memory is not available
+	 */
+	synchronized void reserve(long footprint) throws InterruptedException {
+		while ( ! tryReserve(footprint)) {
+			wait();
+		}
+	}
+
+	synchronized void release(long footprint) {
+		memoryInUse = Math.max(0, memoryInUse - footprint);
+		notifyAll();
+	}
+}
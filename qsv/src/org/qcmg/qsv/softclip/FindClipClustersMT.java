@@ -7,13 +7,10 @@
 
 package org.qcmg.qsv.softclip;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.AbstractQueue;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -26,20 +23,17 @@ import java.util.NavigableMap;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
-import java.util.concurrent.Callable;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import org.qcmg.common.log.QLogger;
 import org.qcmg.common.log.QLoggerFactory;
 import org.qcmg.common.model.BLATRecord;
-import org.qcmg.common.util.Constants;
 import org.qcmg.qsv.Chromosome;
 import org.qcmg.qsv.Options;
 import org.qcmg.qsv.QSVCluster;
@@ -49,25 +43,24 @@ import org.qcmg.qsv.QSVParameters;
 import org.qcmg.qsv.discordantpair.DiscordantPairCluster;
 import org.qcmg.qsv.discordantpair.PairGroup;
 import org.qcmg.qsv.splitread.UnmappedRead;
-import org.qcmg.qsv.util.CustomThreadPoolExecutor;
 import org.qcmg.qsv.util.QSVUtil;
 
-import au.edu.qimr.tiledaligner.util.TiledAlignerUtil;
-import gnu.trove.map.TIntObjectMap;
+import au.edu.qimr.tiledaligner.TileLookup;
 
 public class FindClipClustersMT  {
 
 	private static final String LOW_CONF_FILE_HEADER = "reference\tposition\tmutation_type\tclip_type\tpos_clips\tneg_clips\tconsensus" + QSVUtil.NEW_LINE;
+	private static final int MAX_DEFINE_BATCH_SIZE = 500;
+	private static final int MAX_RESCUE_BATCH_SIZE = 50;
 
 	private final QLogger logger = QLoggerFactory.getLogger(getClass());
-	private final int sleepUnit = 10;
 	private final QSVParameters tumourParameters;
 	private final QSVParameters normalParameters;
 	private final AtomicInteger exitStatus = new AtomicInteger();
 	private final String softClipDir;
 	private final ConcurrentHashMap<String, List<SoftClipCluster>> clipRecordsMap = new ConcurrentHashMap<>();
 	private final ConcurrentHashMap<PairGroup, Map<String, List<DiscordantPairCluster>>> tumorClusterRecords;
-	private final TIntObjectMap<int[]> cache;
+	private final TileLookup cache;
 	private final boolean singleSided;
 	private final boolean isSplitRead;
 	private final int CONSENSUS_LENGTH;
@@ -75,28 +68,34 @@ public class FindClipClustersMT  {
 	private final String reference;
     private final boolean translocationOnly;
 	private final boolean allChromosomes;
-	private final int defineThreadNo;
-	private final int noOfThreads;
-	private final int noOfFinalThreads;
+	private final ClipThreadPlan plan;
+	/*
+	 * when false, translocation tasks are only started once all chromosomes have been clustered - used by tests to check that starting them early makes no difference
+	 */
+	boolean scheduleTranslocationsEarly = true;
 	private final boolean runClip;
 	private final boolean isQCMG;
 	private final String lowConfidenceFile;
 	private final QSVClusterWriter qsvRecordWriter;
 	private final int CLIP_SIZE;
 
-	public FindClipClustersMT(QSVParameters tumourParameters, QSVParameters normalParameters, String softclipDir, Map<PairGroup, Map<String, List<DiscordantPairCluster>>> tumorClusterRecords, Options options, String analysisId, long clipCount, TIntObjectMap<int[]> cache) throws Exception {
-		this.noOfThreads = clipCount > 5000000 ? 1 : 3;
-		this.noOfFinalThreads = clipCount > 5000000 ? 4 : 10;
-		this.defineThreadNo = clipCount > 5000000 ? 2 : 4;
+	public FindClipClustersMT(QSVParameters tumourParameters, QSVParameters normalParameters, String softclipDir, Map<PairGroup, Map<String, List<DiscordantPairCluster>>> tumorClusterRecords, Options options, String analysisId, long clipCount, TileLookup cache) throws Exception {
+		this.plan = ClipThreadPlan.forRuntime(options.getThreadCount());
 
-		logger.info("Total clips: " + clipCount + ", will use " + noOfThreads + " main threads, " + noOfFinalThreads + " final threads and " + defineThreadNo + " define threads");
+		logger.info("Total clips: " + clipCount + ", will use " + plan.getParallelism() + " threads and a clustering memory budget of " + (plan.getMemoryBudget() >> 20) + "MB");
 
 		this.softClipDir = softclipDir;
 		this.isSplitRead = options.isSplitRead();
 		this.tumourParameters = tumourParameters; 
 		this.normalParameters = normalParameters;
 		this.cache = cache;
-		this.tumorClusterRecords = new ConcurrentHashMap<>(tumorClusterRecords);
+		/*
+		 * the per reference key maps are updated by the clustering tasks while the translocation tasks are being scheduled
+		 */
+		this.tumorClusterRecords = new ConcurrentHashMap<>();
+		for (Entry<PairGroup, Map<String, List<DiscordantPairCluster>>> entry : tumorClusterRecords.entrySet()) {
+			this.tumorClusterRecords.put(entry.getKey(), new ConcurrentHashMap<>(entry.getValue()));
+		}
 		this.isQCMG = options.isQCMG();
 		this.singleSided = options.singleSided();
 		this.CONSENSUS_LENGTH = options.getConsensusLength();
@@ -142,53 +141,81 @@ public class FindClipClustersMT  {
 		return this.qsvRecordWriter;		
 	}
 
+	/**
+	 * Clusters the soft clips of each chromosome, and then finds the overlapping clusters for each reference key (translocations).
+	 * <p>
+	 * All work runs on a single work-stealing pool sized by the {@link ClipThreadPlan}. Chromosomes are started largest first for as
+	 * long as the memory budget allows, and the define and rescue steps within a chromosome are split into batches that idle threads
+	 * can pick up. A translocation reference key is processed as soon as the chromosomes that contribute to it have been clustered,
+	 * rather than once all chromosomes are done, if the memory budget allows.
+	 */
 	public void execute() {
 
-		// create queue to store the records from input
-		final AbstractQueue<List<Chromosome>> readQueue = new ConcurrentLinkedQueue<>();
-		final CountDownLatch filterLatch = new CountDownLatch(noOfThreads); // cluster thread
-
-		ExecutorService filterThreads = new CustomThreadPoolExecutor(noOfThreads, exitStatus, logger);
+		ForkJoinPool pool = new ForkJoinPool(plan.getParallelism());
+		List<ForkJoinTask<?>> overlapTasks = new ArrayList<>();
 		try {
 
-			for (Entry<String, List<Chromosome>> entry: tumourParameters.getChromosomes().entrySet()) {
-				readQueue.add(entry.getValue());
-			}
-
-			// kick-off cluster thread
-			for (int i = 0; i < noOfThreads; i++) {
-				filterThreads.execute(new Clustering(readQueue,
-						Thread.currentThread(), filterLatch));
-			}
-			filterThreads.shutdown();            
-
-			logger.info("waiting for  threads to finish (max wait will be 100 hours)");
-			if (!filterThreads.awaitTermination(Constants.EXECUTOR_SERVICE_AWAIT_TERMINATION, TimeUnit.HOURS)) {
-				logger.error("Filtering threads did not finish within the time limit");
-			}
-
-			if ( ! readQueue.isEmpty()) {
-				throw new Exception(
-						" threads have completed but queue isn't empty  (readQueue):  "
-								+ readQueue.size());
+			Map<String, List<Chromosome>> chromosomes = tumourParameters.getChromosomes();
+			Set<String> pendingChromosomes = ConcurrentHashMap.newKeySet();
+			pendingChromosomes.addAll(chromosomes.keySet());
+			Set<String> scheduledKeys = new HashSet<>();
+
+			/*
+			 * largest chromosomes (by size of clip files) first so that they don't hold up the end of the run
+			 */
+			Map<String, Long> footprints = new HashMap<>();
+			for (String name : chromosomes.keySet()) {
+				footprints.put(name, plan.estimateFootprint(getClipFileSize(name)));
+			}
+			List<String> names = new ArrayList<>(chromosomes.keySet());
+			names.sort((a, b) -> Long.compare(footprints.get(b), footprints.get(a)));
+
+			if (runClip) {
+				BlockingQueue<String> completed = new LinkedBlockingQueue<>();
+				int submitted = 0;
+				int finished = 0;
+				while (finished < submitted || (submitted < names.size() && exitStatus.intValue() == 0)) {
+					while (submitted < names.size() && exitStatus.intValue() == 0 && plan.tryReserve(footprints.get(names.get(submitted)))) {
+						String name = names.get(submitted++);
+						cluster(pool, chromosomes.get(name), name, footprints.get(name), completed);
+					}
+					if (finished < submitted) {
+						pendingChromosomes.remove(completed.take());
+						finished++;
+						if (exitStatus.intValue() == 0 && scheduleTranslocationsEarly) {
+							scheduleOverlapTasks(pool, overlapTasks, scheduledKeys, pendingChromosomes, true);
+						}
+					} else if (submitted < names.size() && exitStatus.intValue() == 0) {
+						/*
+						 * no chromosomes are being clustered, so the memory budget is held by translocation tasks - wait for them
+						 */
+						String name = names.get(submitted++);
+						plan.reserve(footprints.get(name));
+						cluster(pool, chromosomes.get(name), name, footprints.get(name), completed);
+					}
+				}
 			}
 			logger.info("All threads finished");
+			logger.info("Finished intra-chromosomal");
 
-
+			if (exitStatus.intValue() == 0) {
+				//find last ones (translocations)
+				logger.info("Finding clipping translocations");
+				pendingChromosomes.clear();
+				scheduleOverlapTasks(pool, overlapTasks, scheduledKeys, pendingChromosomes, false);
+				for (ForkJoinTask<?> task : overlapTasks) {
+					task.join();
+				}
+				logger.info("Finished finding clipping translocations");
+			}
 		} catch (Exception e) {
 			logger.error("Setting exit status as exception caught in execute: "
 					+ QSVUtil.getStrackTrace(e));
 			if (exitStatus.intValue() == 0) {
 				exitStatus.incrementAndGet();
 			}
-			filterThreads.shutdownNow();
 		} finally {
-			filterThreads.shutdownNow();
-			//find last ones (translocations)
-			logger.info("Finished intra-chromosomal");
-			if (exitStatus.intValue() == 0) {
-				findLastOverlappingClusters();
-			}            
+			pool.shutdownNow();
 		}
 	}	
 
@@ -196,40 +223,120 @@ public class FindClipClustersMT  {
 		return this.exitStatus;
 	}		
 
-	private void findLastOverlappingClusters() {
-
-		logger.info("Finding clipping translocations");
-
-		final AbstractQueue<String> finalQueue = new ConcurrentLinkedQueue<>();
-		ExecutorService overlapThreads =  new CustomThreadPoolExecutor(
-				noOfFinalThreads, exitStatus, logger);
+	/*
+	 * clusters the chromosome on the pool, releasing its reservation of the memory budget and adding it to the completed queue when done
+	 */
+	private void cluster(ForkJoinPool pool, List<Chromosome> chromosome, String name, long footprint, BlockingQueue<String> completed) {
+		pool.execute(() -> {
+			try {
+				new Clustering(chromosome).run();
+			} finally {
+				plan.release(footprint);
+				completed.add(name);
+			}
+		});
+	}
 
-		try {
-			Set<String> referenceKeys = getReferenceKeys();
+	/*
+	 * total size of the tumour and normal clip files for a chromosome
+	 */
+	private long getClipFileSize(String chromosome) {
+		long size = new File(SoftClipStaticMethods.getSoftClipFile(chromosome, tumourParameters.getFindType(), softClipDir)).length();
+		if (normalParameters != null) {
+			size += new File(SoftClipStaticMethods.getSoftClipFile(chromosome, normalParameters.getFindType(), softClipDir)).length();
+		}
+		return size;
+	}
 
-            finalQueue.addAll(referenceKeys);
+	/*
+	 * Submits a translocation task for each reference key that hasn't already been scheduled, and that doesn't involve a chromosome that is still being clustered.
+	 * Each task holds a reservation of the memory budget while it runs. If early is set, keys that don't fit in the budget are left for a later call,
+	 * otherwise this waits for the memory to become available.
+	 * Only called from the thread running execute.
+	 */
+	private void scheduleOverlapTasks(ForkJoinPool pool, List<ForkJoinTask<?>> overlapTasks, Set<String> scheduledKeys, Set<String> pendingChromosomes, boolean early) throws InterruptedException {
+		for (String referenceKey : getReferenceKeys()) {
+			if ( ! scheduledKeys.contains(referenceKey) && ! involvesChromosome(referenceKey, pendingChromosomes)) {
+				long footprint = plan.estimateOverlapFootprint(getNumberOfClusters(referenceKey));
+				if (early) {
+					if ( ! plan.tryReserve(footprint)) {
+						continue;
+					}
+				} else {
+					plan.reserve(footprint);
+				}
+				scheduledKeys.add(referenceKey);
+				overlapTasks.add(pool.submit(() -> {
+					try {
+						findLastOverlappingClusters(referenceKey);
+					} finally {
+						plan.release(footprint);
+					}
+				}));
+			}
+		}
+	}
 
-			final CountDownLatch overlapLatch = new CountDownLatch(noOfFinalThreads);	
-			for (int i = 0; i < noOfFinalThreads; i++) {
-				overlapThreads.execute(new FinalOverlap(finalQueue, Thread
-						.currentThread(), overlapLatch));
+	private int getNumberOfClusters(String referenceKey) {
+		List<SoftClipCluster> clips = clipRecordsMap.get(referenceKey);
+		int count = null == clips ? 0 : clips.size();
+		for (Map<String, List<DiscordantPairCluster>> records : tumorClusterRecords.values()) {
+			List<DiscordantPairCluster> clusters = records.get(referenceKey);
+			if (null != clusters) {
+				count += clusters.size();
 			}
-			overlapThreads.shutdown();
-			if (!overlapThreads.awaitTermination(Constants.EXECUTOR_SERVICE_AWAIT_TERMINATION, TimeUnit.HOURS)) {
-				logger.error("Overlap threads did not finish within the time limit");
+		}
+		return count;
+	}
+
+	/*
+	 * reference keys are of the form chr:mateChr, and chromosome names can contain ':' so check both ends of the key
+	 */
+	static boolean involvesChromosome(String referenceKey, Set<String> chromosomes) {
+		for (String chromosome : chromosomes) {
+			if (referenceKey.startsWith(chromosome + ":") || referenceKey.endsWith(":" + chromosome)) {
+				return true;
 			}
+		}
+		return false;
+	}
+
+	private void findLastOverlappingClusters(String referenceKey) {
+		try {
+			logger.info("Finalising overlapping clusters for: " + referenceKey);
+			List<SoftClipCluster> clips = clipRecordsMap.get(referenceKey);
+			List<DiscordantPairCluster> clusters = new ArrayList<>();
+
+			for (Entry<PairGroup, Map<String, List<DiscordantPairCluster>>> record : tumorClusterRecords.entrySet()) {
+				List<DiscordantPairCluster> value = record.getValue().get(referenceKey);
+				if (value != null) {
+					clusters.addAll(value);
+				}
+			}	 
+			List<QSVCluster> records = new ArrayList<>();
+			findOverlappingClusters(referenceKey, records, clusters, clips, true);
+			rescueQSVRecords(referenceKey, records);
+
+			qsvRecordWriter.writeTumourSVRecords(records);
 		} catch (Exception e) {
-			logger.error("Setting exit status in 1 as exception caught: "
+			logger.error("Setting exit status in annotation thread to 1 as exception caught: "
 					+ QSVUtil.getStrackTrace(e));
 			if (exitStatus.intValue() == 0) {
 				exitStatus.incrementAndGet();
 			}
-		} finally {
-			overlapThreads.shutdownNow();
-			logger.info("Finished finding clipping translocations");
 		}
 	}
 
+	private void addClipRecords(String key, List<SoftClipCluster> clips) {
+		clipRecordsMap.compute(key, (k, existing) -> {
+			if (existing == null) {
+				return clips;
+			}
+			existing.addAll(clips);
+			return existing;
+		});
+	}
+
 	private Set<String> getReferenceKeys() {
 		Set<String> referenceKeys = new HashSet<>(clipRecordsMap.keySet());
 
@@ -381,82 +488,50 @@ public class FindClipClustersMT  {
 		return list;
 	}
 
+	/*
+	 * Clusters the soft clips for the regions of a single chromosome. Intra-chromosomal breakpoints are matched across the whole
+	 * chromosome, so the chromosome is the unit that is scheduled, with the define and rescue steps split into batches on the pool.
+	 */
 	private class Clustering implements Runnable {
 
-		private final AbstractQueue<List<Chromosome>> queueIn;  
-		private final Thread mainThread;
-		private final CountDownLatch latch;
+		private final List<Chromosome> chromosomes;
         private String currentReferenceKey;
 		private Chromosome chromosome;
 		private List<QSVCluster> currentQsvRecords;
 
-		public Clustering(AbstractQueue<List<Chromosome>> readQueue,
-				Thread mainThread,
-				CountDownLatch latch) {
-			this.queueIn = readQueue;
-			this.mainThread = mainThread;
-			this.latch = latch;
+		public Clustering(List<Chromosome> chromosomes) {
+			this.chromosomes = chromosomes;
 		}
 
 		@Override
 		public void run() {
 
-			int sleepcount = 0;
-            int countOutputSleep = 0;
-			boolean run = true;
-
 			try {
+				//check to make sure exceptions haven't occurred
+				if (exitStatus.intValue() != 0) {
+					logger.error("Terminating clustering thread due to exception in another thread: ");
+					return;
+				}
 
-				List<Chromosome> chromosomes;
-
-				while (run) {
-					chromosomes = queueIn.poll();                
-
-					if (chromosomes == null) {
-						run = false;
-						// qIn maybe filled again during sleep, so sleep should
-						// be secondly
-						try {
-							Thread.sleep(sleepUnit);
-							sleepcount++;
-						} catch (InterruptedException e) {
-							logger.error("Interrupted exception caught (a): "
-									+ QSVUtil.getStrackTrace(e));
-							if (exitStatus.intValue() == 0) {
-								exitStatus.incrementAndGet();
-							}
-							throw e;
-						}
-
-					} else {
-						//check to make sure exceptions haven't occurred
-						if (exitStatus.intValue() != 0) {
-                            logger.error("Terminating clustering thread due to exception in another thread: ");
-						}
-
-
-						if (runClip) {
-							currentQsvRecords = new ArrayList<>();
-
-							for (Chromosome c: chromosomes) {
-								this.chromosome = c;            			
-								clusterSoftClips(chromosome);        						      	 
-							}
+				if (runClip) {
+					currentQsvRecords = new ArrayList<>();
 
+					for (Chromosome c: chromosomes) {
+						this.chromosome = c;            			
+						clusterSoftClips(chromosome);        						      	 
+					}
 
-							List<DiscordantPairCluster> clusterList = getTumourClustersByReferenceKey(currentReferenceKey);
-							findOverlappingClusters(currentReferenceKey, currentQsvRecords, clusterList,
-									clipRecordsMap.get(currentReferenceKey), false);
-                            clipRecordsMap.remove(currentReferenceKey);
-							rescueCurrentQSVRecords(currentReferenceKey, currentQsvRecords);						
+					List<DiscordantPairCluster> clusterList = getTumourClustersByReferenceKey(currentReferenceKey);
+					findOverlappingClusters(currentReferenceKey, currentQsvRecords, clusterList,
+							clipRecordsMap.get(currentReferenceKey), false);
+					clipRecordsMap.remove(currentReferenceKey);
+					rescueCurrentQSVRecords(currentReferenceKey, currentQsvRecords);						
 
-							currentReferenceKey = null;
-						}
-                    } // end else
-				}// end while
+					currentReferenceKey = null;
+				}
 
-				logger.info("Completed clipping thread: "
-						+ Thread.currentThread().getName());
+				logger.info("Completed clipping for: "
+						+ (chromosome == null ? "" : chromosome.getName()));
 
 			} catch (Exception e) {
 				logger.error("Setting exit status in clip cluster thread to 1 as exception caught: "
@@ -464,13 +539,6 @@ public class FindClipClustersMT  {
 				if (exitStatus.intValue() == 0) {
 					exitStatus.incrementAndGet();
 				}
-				mainThread.interrupt();
-			} finally {
-				logger.debug(String
-						.format(" total slept %d times since input queue is empty and %d time since either output queue is full. each sleep take %d mill-second. queue size for qIn are %d",
-								sleepcount, countOutputSleep, sleepUnit,
-								queueIn.size()));
-				latch.countDown();
 			}
 		}
 
@@ -504,7 +572,7 @@ public class FindClipClustersMT  {
 
 		private Map<String, List<Breakpoint>> defineClipPositions(TreeMap<Integer, Breakpoint> leftClipPositions, TreeMap<Integer, Breakpoint> rightClipPositions,TreeMap<Integer, List<UnmappedRead>> splitReads) throws Exception {
 			int buffer = tumourParameters.getUpperInsertSize() + 100;
-			AbstractQueue<Breakpoint> queueIn = new ConcurrentLinkedQueue<>();
+			List<Breakpoint> candidates = new ArrayList<>();
 			logger.info("Before " +  chromosome.getName() + " left: " + leftClipPositions.size() + " right:" + rightClipPositions.size()) ;
 			for (Entry<Integer, Breakpoint> entry : leftClipPositions.entrySet()) {
 				Integer key = entry.getKey();
@@ -519,10 +587,10 @@ public class FindClipClustersMT  {
 					logger.warn("Large number (" + splitReadsMap.size() + ") of unmapped reads for breakpoint: " + leftBP.getName());
 				}
 				leftBP.addSplitReadsMap(splitReadsMap);
-				queueIn.add(leftBP);
+				candidates.add(leftBP);
 				if (rightBP != null) {
 					rightBP.addSplitReadsMap(splitReadsMap);					
-					queueIn.add(rightBP);
+					candidates.add(rightBP);
 				}
 			}
 
@@ -536,41 +604,18 @@ public class FindClipClustersMT  {
 					logger.warn("Large number (" + splitReadsMap.size() + ") of unmapped reads for breakpoint: " + rightBP.getName());
 				}
 				rightBP.addSplitReadsMap(splitReadsMap);					
-				queueIn.add(rightBP);				
-			}
-
-			ExecutorService executorService = new CustomThreadPoolExecutor(defineThreadNo, exitStatus, logger);
-			CountDownLatch countDownLatch = new CountDownLatch(defineThreadNo);
-			Set<Future<List<Breakpoint>>> set = new HashSet<>();
-
-			for (int i=0; i<defineThreadNo; i++) {
-				Callable<List<Breakpoint>> callable = new DefineBreakpoint(queueIn, mainThread, countDownLatch, CLIP_SIZE, false);
-				Future<List<Breakpoint>> future = executorService.submit(callable);
-				set.add(future);
+				candidates.add(rightBP);
 			}
 
-			executorService.shutdown();
-
-			try {
-				if (!executorService.awaitTermination(Constants.EXECUTOR_SERVICE_AWAIT_TERMINATION, TimeUnit.HOURS)) {
-					logger.error("Threads did not finish within the time limit");
-				}
-
-
-			} catch (InterruptedException e) {             
-				logger.error("Interrupted exception caught (b): "
-						+ QSVUtil.getStrackTrace(e));
-				if (exitStatus.intValue() == 0) {
-					exitStatus.incrementAndGet();
+			List<Breakpoint> breakpoints = invokeInBatches(candidates, MAX_DEFINE_BATCH_SIZE, batch -> {
+				List<Breakpoint> defined = new ArrayList<>();
+				for (Breakpoint breakpoint : batch) {
+					if (breakpoint.defineBreakpoint(CLIP_SIZE, false)) {
+						defined.add(breakpoint);
+					}
 				}
-				executorService.shutdownNow();
-				throw e;
-			}
-			executorService.shutdownNow();
-			List<Breakpoint> breakpoints = new ArrayList<>();
-			for (Future<List<Breakpoint>> f : set) {
-				breakpoints.addAll(f.get());
-			}		         
+				return defined;
+			});
 
 			// blat for the matching breakpoint
 			int size = breakpoints.size();
@@ -594,17 +639,9 @@ public class FindClipClustersMT  {
 
 				if (key.equals(currentReferenceKey)) {
 					List<SoftClipCluster> properClipRecords = getProperClipSVs(key, bpList);
-					if (clipRecordsMap.containsKey(key)) {
-						clipRecordsMap.get(key).addAll(properClipRecords);
-					} else {
-						clipRecordsMap.put(key, properClipRecords);	
-					}
+					addClipRecords(key, properClipRecords);
 				} else {
-					if (clipRecordsMap.containsKey(key)) {
-						clipRecordsMap.get(key).addAll(bpList);
-					} else {
-						clipRecordsMap.put(key, bpList);	
-					}
+					addClipRecords(key, bpList);
 				}				 
 			}
 		}
@@ -618,7 +655,7 @@ public class FindClipClustersMT  {
 				/*
 				 * This gives me possibly many BLATRecords per sequence. Here, we only want the "best" record (the one with the highest score)
 				 */
-				Map<String, List<BLATRecord>> allBlatRecords = TiledAlignerUtil.runTiledAlignerCache(tumourParameters.getReference(), tumourParameters.getRefIndexPositionMap(), cache, sequenceNameMapToSendToTiledAligner, 13, "FindClipClustersMT.blatBreakpoints", false, false);
+				Map<String, List<BLATRecord>> allBlatRecords = tumourParameters.getContigAligner(cache).align(sequenceNameMapToSendToTiledAligner, "FindClipClustersMT.blatBreakpoints", false, false);
 				logger.debug("in blatBreakpoints all, allBlatRecords size: " + allBlatRecords.size());
 				for (Entry<String, List<BLATRecord>> entry : allBlatRecords.entrySet()) {
 					logger.debug("in blatBreakpoints all: key: " + entry.getKey() + ", blat recs: " + entry.getValue().stream().map(BLATRecord::toString).collect(Collectors.joining(",")));
@@ -709,58 +746,38 @@ public class FindClipClustersMT  {
 			logger.info("Getting  " + type + " clips for " + chromosome.getName());
 
 			if (file.exists()) {
-				try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-
-					String line = reader.readLine();
+				SoftClipStore.scan(file, chromosome.getStartPosition(), chromosome.getEndPosition(), isSplitRead, isTumour, record -> {
+					Integer key = record.getBpPos();
+					if (record.isLeft()) {
+
+						Breakpoint b = leftPositions.get(key);
+						if (isTumour) {
+							if (null == b) {
+								b = new Breakpoint(key, record.getReference(), true, CONSENSUS_LENGTH, MIN_INSERT_SIZE);
+								leftPositions.put(key, b);
+							}
+							b.addTumourClip(record);
 
-					while (line != null) {
-						if (line.startsWith("unmapped")) {
-							if (isSplitRead) {
-								UnmappedRead r = new UnmappedRead(line, isTumour);
-                                List<UnmappedRead> reads = splitReads.computeIfAbsent(r.getBpPos(), k -> new ArrayList<>());
-                                reads.add(r);
+						} else {
+							if (null != b) {
+								b.addNormalClip(record);
 							}
+						}
+					} else {
+						Breakpoint b = rightPositions.get(key);
+						if (isTumour) {
+							if (null == b) {
+								b = new Breakpoint(key, record.getReference(), false, CONSENSUS_LENGTH, MIN_INSERT_SIZE);
+								rightPositions.put(key, b);
+							}
+							b.addTumourClip(record);
 						} else {
-							Clip record = new Clip(line);
-
-							if (record.getBpPos() >= chromosome.getStartPosition()
-									&& record.getBpPos() <= chromosome.getEndPosition()) {
-								
-								Integer key = record.getBpPos();
-								if (record.isLeft()) {
-
-									Breakpoint b = leftPositions.get(key);
-									if (isTumour) {
-										if (null == b) {
-											b = new Breakpoint(key, record.getReference(), true, CONSENSUS_LENGTH, MIN_INSERT_SIZE);
-											leftPositions.put(key, b);
-										}
-										b.addTumourClip(record);
-
-									} else {
-										if (null != b) {
-											b.addNormalClip(record);
-										}
-									}
-								} else {
-									Breakpoint b = rightPositions.get(key);
-									if (isTumour) {
-										if (null == b) {
-											b = new Breakpoint(key, record.getReference(), false, CONSENSUS_LENGTH, MIN_INSERT_SIZE);
-											rightPositions.put(key, b);
-										}
-										b.addTumourClip(record);
-									} else {
-										if (null != b) {
-											b.addNormalClip(record);
-										}
-									}
-								}
+							if (null != b) {
+								b.addNormalClip(record);
 							}
 						}
-						line = reader.readLine();
 					}
-				}
+				}, r -> splitReads.computeIfAbsent(r.getBpPos(), k -> new ArrayList<>()).add(r));
 			} else {
 				logger.warn("No file found for: " + chromosome.getName() + ", file: " + file.getAbsolutePath());
 			}
@@ -772,52 +789,19 @@ public class FindClipClustersMT  {
 
 			if (!records.isEmpty()) {
 				logger.info("Finding split read alignments in " + records.size() + " records for " + key);
-				AbstractQueue<List<QSVCluster>> queueIn = new ConcurrentLinkedQueue<>();
-
-				int listSize = 50;
-
-				for (int i = 0; i < records.size(); i += listSize) {
-					if (((records.size()) - i) < listSize) {						
-						queueIn.add(records.subList(i, records.size()));
-						break;
-					}
-					if (i % listSize == 0) {						
-						queueIn.add(records.subList(i, i + listSize));
-					}							
-				}	
 				currentQsvRecords = null;
-				ExecutorService executorService = new CustomThreadPoolExecutor(defineThreadNo, exitStatus, logger);
-				CountDownLatch countDownLatch = new CountDownLatch(defineThreadNo);
-				Set<Future<List<QSVCluster>>> set = new HashSet<>();
-
-				for (int i = 0; i < defineThreadNo; i++) {
-					Callable<List<QSVCluster>> callable = new RescueRecord(queueIn, mainThread, countDownLatch, cache, tumourParameters, normalParameters, softClipDir, CONSENSUS_LENGTH, isQCMG, MIN_INSERT_SIZE, singleSided, isSplitRead, reference);
-					Future<List<QSVCluster>> future = executorService.submit(callable);
-					set.add(future);
-				}
-
-				executorService.shutdown();
-
-				try {
-					if (!executorService.awaitTermination(Constants.EXECUTOR_SERVICE_AWAIT_TERMINATION, TimeUnit.HOURS)) {
-						logger.error("Threads did not finish within the time limit");
+				List<QSVCluster> rescuedClusters = invokeInBatches(records, MAX_RESCUE_BATCH_SIZE, batch -> {
+					String blatFile = softClipDir + QSVUtil.getFileSeparator() + UUID.randomUUID();
+					boolean log = false;
+					for (QSVCluster cluster : batch) {
+						cluster.rescueClippping(cache, tumourParameters, normalParameters, softClipDir, CONSENSUS_LENGTH, MIN_INSERT_SIZE);
+						cluster.createSplitReadContig(cache, tumourParameters, normalParameters, softClipDir, isSplitRead, reference, blatFile, log);
 					}
-
-
-				} catch (InterruptedException e) {             
-					logger.error("Interrupted exception caught (c): "
-							+ QSVUtil.getStrackTrace(e));
-					if (exitStatus.intValue() == 0) {
-						exitStatus.incrementAndGet();
+					for (QSVCluster cluster : batch) {
+						cluster.findSplitReadContig(tumourParameters, isSplitRead, reference, log);
 					}
-					executorService.shutdownNow();
-					throw e;
-				}
-				executorService.shutdownNow();
-				List<QSVCluster> rescuedClusters = new ArrayList<>();
-				for (Future<List<QSVCluster>> f : set) {
-					rescuedClusters.addAll(f.get());
-				}
+					return batch;
+				});
 				int count = rescuedClusters.size();
 				records.clear();
 				
@@ -827,268 +811,25 @@ public class FindClipClustersMT  {
 		}
 	}
 
-	private class FinalOverlap implements Runnable {
-
-		private final AbstractQueue<String> queueIn;  
-		private final Thread mainThread;
-		private final CountDownLatch latch;
-
-        public FinalOverlap(AbstractQueue<String> readQueue,
-				Thread mainThread,
-				CountDownLatch latch) {
-			this.queueIn = readQueue;
-			this.mainThread = mainThread;
-			this.latch = latch;
-		}
-
-		@Override
-		public void run() {
-
-			int sleepcount = 0;
-            int countOutputSleep = 0;
-			boolean run = true;
-
-			try {
-
-				String referenceKey;
-
-				while (run) {
-					referenceKey = queueIn.poll();                
-
-					if (referenceKey == null) {
-						run = false;
-						// qIn maybe filled again during sleep, so sleep should
-						// be secondly
-						try {
-							Thread.sleep(sleepUnit);
-							sleepcount++;
-						} catch (InterruptedException e) {
-							logger.error("Interrupted exception caught (d): "
-									+ QSVUtil.getStrackTrace(e));
-							if (exitStatus.intValue() == 0) {
-								exitStatus.incrementAndGet();
-							}
-							throw e;
-						}
-
-					} else {      
-
-						logger.info("Finalising overlapping clusters for: " + referenceKey);
-						List<SoftClipCluster> clips = clipRecordsMap.get(referenceKey);
-						List<DiscordantPairCluster> clusters = new ArrayList<>();
-
-						for (Entry<PairGroup, Map<String, List<DiscordantPairCluster>>> record : tumorClusterRecords.entrySet()) {
-							List<DiscordantPairCluster> value = record.getValue().get(referenceKey);
-							if (value != null) {
-								clusters.addAll(value);
-							}
-						}	 
-						List<QSVCluster> records = new ArrayList<>();
-						findOverlappingClusters(referenceKey, records, clusters, clips, true);
-						rescueQSVRecords(referenceKey, records);
-
-						qsvRecordWriter.writeTumourSVRecords(records);
-					} // end else
-				}// end while
-				logger.info("Completed clipping thread: "
-						+ Thread.currentThread().getName());
-			} catch (Exception e) {
-				logger.error("Setting exit status in annotation thread to 1 as exception caught: "
-						+ QSVUtil.getStrackTrace(e));
-				if (exitStatus.intValue() == 0) {
-					exitStatus.incrementAndGet();
-				}
-				mainThread.interrupt();
-			} finally {
-				logger.info(String
-						.format(" total slept %d times since input queue is empty and %d time since either output queue is full. each sleep take %d mill-second. queue size for qIn are %d",
-								sleepcount, countOutputSleep, sleepUnit,
-								queueIn.size()));
-				latch.countDown();
-			}
-		}	
+	private interface BatchTask<T, R> {
+		List<R> run(List<T> batch) throws Exception;
 	}
 
-	private class DefineBreakpoint implements Callable<List<Breakpoint>> {
-
-		private final AbstractQueue<Breakpoint> queueIn;  
-		private final Thread mainThread;
-		private final CountDownLatch latch;      
-		private final List<Breakpoint> breakpoints = new ArrayList<>();
-		private final int clipSize;
-		private final boolean isRescue;
-
-		public DefineBreakpoint(AbstractQueue<Breakpoint> readQueue,
-				Thread mainThread,
-				CountDownLatch latch, int clipSize, boolean isRescue) {
-			this.queueIn = readQueue;
-			this.mainThread = mainThread;
-			this.latch = latch;
-			this.clipSize = clipSize;
-			this.isRescue = isRescue;
+	/*
+	 * Splits the items into batches that are run on the pool of the calling task, and returns the combined results in batch order
+	 */
+	private <T, R> List<R> invokeInBatches(List<T> items, int maxBatchSize, BatchTask<T, R> task) {
+		int batchSize = plan.getBatchSize(items.size(), maxBatchSize);
+		List<ForkJoinTask<List<R>>> tasks = new ArrayList<>();
+		for (int i = 0; i < items.size(); i += batchSize) {
+			List<T> batch = items.subList(i, Math.min(items.size(), i + batchSize));
+			tasks.add(ForkJoinTask.adapt(() -> task.run(batch)));
 		}
-
-		@Override
-		public List<Breakpoint> call() {
-
-			boolean run = true;
-
-			try {
-
-				Breakpoint breakpoint;
-				while (run) {
-					breakpoint = queueIn.poll();
-
-					if (breakpoint == null) {
-
-						// qIn maybe filled again during sleep, so sleep should
-						// be secondly
-
-						try {
-							Thread.sleep(sleepUnit);
-						} catch (InterruptedException e) {
-							logger.error("Interrupted exception caught (e): "
-									+ QSVUtil.getStrackTrace(e));
-							if (exitStatus.intValue() == 0) {
-								exitStatus.incrementAndGet();
-							}
-							throw e;
-						}
-
-						if (queueIn.isEmpty()) {
-							run = false;
-						}
-
-					} else {
-
-						if (breakpoint.defineBreakpoint(clipSize, isRescue)) {                		
-							breakpoints.add(breakpoint);
-						}
-					} // end else
-				}// end while
-				logger.info("Completed define breakpoint thread: "
-						+ Thread.currentThread().getName());
-			} catch (Exception e) {
-				logger.error("Setting exit status when defining breakpoint thread to 1 as exception caught: "
-						+ QSVUtil.getStrackTrace(e));
-				if (exitStatus.intValue() == 0) {
-					exitStatus.incrementAndGet();
-				}
-				mainThread.interrupt();
-			} finally {
-				latch.countDown();
-			}
-			return breakpoints;
-		}
-	}
-
-	private class RescueRecord implements Callable<List<QSVCluster>> {
-
-		private final AbstractQueue<List<QSVCluster>> queueIn;  
-		private final Thread mainThread;
-		private final CountDownLatch latch;      
-		private final List<QSVCluster> clusters = new ArrayList<>();
-		private final String reference;
-		private final boolean isSplitRead;
-		private final boolean singleSided;
-		private final Integer minInsertSize;
-		private final boolean isQCMG;
-		private final Integer consensusLength;
-		private final String softclipDir;
-		private final QSVParameters normalParameters;
-		private final QSVParameters tumourParameters;
-		private final TIntObjectMap<int[]> cache;
-
-		public RescueRecord(AbstractQueue<List<QSVCluster>> queueIn2, Thread mainThread, CountDownLatch latch, TIntObjectMap<int[]> cache,
-							QSVParameters tumourParameters, QSVParameters normalParameters, String softClipDir, Integer consensusLength,
-							boolean isQCMG, Integer minInsertSize, boolean singleSided, boolean isSplitRead, String reference) {
-			this.queueIn = queueIn2;
-			this.mainThread = mainThread;
-			this.latch = latch;
-			this.cache = cache;
-			this.tumourParameters = tumourParameters;
-			this.normalParameters = normalParameters;
-			this.softclipDir = softClipDir;
-			this.consensusLength = consensusLength;
-			this.isQCMG = isQCMG;
-			this.minInsertSize = minInsertSize;
-			this.singleSided = singleSided;
-			this.isSplitRead = isSplitRead;
-			this.reference = reference;
-		}
-
-		@Override
-		public List<QSVCluster> call() {
-
-			boolean run = true;
-
-			try {
-
-				List<QSVCluster> inputClusters;
-				while (run) {
-					inputClusters = queueIn.poll();                
-
-					if (inputClusters == null) {
-
-						// qIn maybe filled again during sleep, so sleep should
-						// be secondly
-
-						try {
-							Thread.sleep(sleepUnit);
-						} catch (InterruptedException e) {
-							logger.error("Interrupted exception caught (f): "
-									+ QSVUtil.getStrackTrace(e));
-							if (exitStatus.intValue() == 0) {
-								exitStatus.incrementAndGet();
-							}
-							throw e;
-						}
-
-						if (queueIn.isEmpty()) {
-							run = false;
-						}
-
-					} else {
-						//Rescue clipping
-
-						String blatFile = softClipDir + QSVUtil.getFileSeparator() + UUID.randomUUID();
-						boolean log = false;
-						
-						for (QSVCluster cluster: inputClusters) {
-							cluster.rescueClippping(cache, tumourParameters, normalParameters, softclipDir, consensusLength, minInsertSize);
-							logger.debug("rescue clipping about to call createSplitReadContig");
-							cluster.createSplitReadContig(cache, tumourParameters, normalParameters, softclipDir, isSplitRead, reference, blatFile, log);
-							logger.debug("rescue clipping, cluster: " + cluster.toTabString());
-						}
-						
-						for (QSVCluster cluster: inputClusters) {
-							logger.debug("rescue clipping about to call findSplitReadContig, cluster: " + cluster.toTabString());
-							logger.debug("rescue clipping about to call findSplitReadContig, getConfidenceLevel: " + cluster.getConfidenceLevel(true));
-							logger.debug("rescue clipping about to call findSplitReadContig, isPotentialSplitRead: " + cluster.isPotentialSplitRead());
-							logger.debug("tumourParameters getChromosomes size " + tumourParameters.getChromosomes().size());
-							logger.debug("isSplitRead: " + isSplitRead);
-							cluster.findSplitReadContig(tumourParameters, isSplitRead, reference, log);
-							logger.debug("rescue clipping called findSplitReadContig, cluster: " + cluster.toTabString());
-							logger.debug("rescue clipping called findSplitReadContig, getConfidenceLevel: " + cluster.getConfidenceLevel(true));
-							logger.debug("rescue clipping called findSplitReadContig, isPotentialSplitRead: " + cluster.isPotentialSplitRead());
-							clusters.add(cluster);
-						}
-
-                    } // end else
-				}// end while
-				logger.info("Completed rescue thread: "
-						+ Thread.currentThread().getName());
-			} catch (Exception e) {
-				logger.error("Setting exit status in rescue record thread to 1 as exception caught: "
-						+ QSVUtil.getStrackTrace(e));
-				if (exitStatus.intValue() == 0) {
-					exitStatus.incrementAndGet();
-				}
-				mainThread.interrupt();
-			} finally {
-				latch.countDown();
-			}
-			return clusters;
+		ForkJoinTask.invokeAll(tasks);
+		List<R> results = new ArrayList<>();
+		for (ForkJoinTask<List<R>> t : tasks) {
+			results.addAll(t.join());
 		}
+		return results;
 	}
 }
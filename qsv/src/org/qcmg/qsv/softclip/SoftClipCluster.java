@@ -7,7 +7,7 @@
 
 package org.qcmg.qsv.softclip;
 
-import gnu.trove.map.TIntObjectMap;
+import au.edu.qimr.tiledaligner.TileLookup;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMRecordIterator;
 import htsjdk.samtools.SamReader;
@@ -429,7 +429,7 @@ public class SoftClipCluster implements Comparable<SoftClipCluster> {
 //        return this.name + TAB + rightBreakpoint + TAB + rightStrand + TAB + rightMateStrand + TAB + size;
 //    }
 
-    public void rescueClips(QSVParameters p, TIntObjectMap<int[]> cache, File tumourFile, File normalFile, String softclipDir, int consensusLength, int chrBuffer, Integer minInsertSize) throws Exception {
+    public void rescueClips(QSVParameters p, TileLookup cache, File tumourFile, File normalFile, String softclipDir, int consensusLength, int chrBuffer, Integer minInsertSize) throws Exception {
 
         Map<Integer, Breakpoint> leftMap = new HashMap<>();
         Map<Integer, Breakpoint> rightMap = new HashMap<>();
@@ -445,7 +445,7 @@ public class SoftClipCluster implements Comparable<SoftClipCluster> {
         findMaxRescueBreakpoint(p, cache, leftMap, rightMap, splitReads);
     }
 
-    public void findMaxRescueBreakpoint(QSVParameters p, TIntObjectMap<int[]> cache,
+    public void findMaxRescueBreakpoint(QSVParameters p, TileLookup cache,
                                         Map<Integer, Breakpoint> leftMap,
                                         Map<Integer, Breakpoint> rightMap, TreeMap<Integer, List<UnmappedRead>> splitReads) throws Exception {
 
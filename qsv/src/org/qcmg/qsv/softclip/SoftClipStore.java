@@ -0,0 +1,383 @@
+/**
+ * © Copyright QIMR Berghofer Medical Research Institute 2014-2016.
+ *
+ * This code is released under the terms outlined in the included LICENSE file.
+ */
+package org.qcmg.qsv.softclip;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.qcmg.qsv.QSVException;
+import org.qcmg.qsv.splitread.UnmappedRead;
+import org.qcmg.qsv.util.QSVUtil;
+
+import htsjdk.samtools.SAMRecord;
+
+/**
+ * Binary store for the soft clips and unmapped reads of a chromosome, written during filtering and read when the clips are clustered.
+ * It replaces the comma separated text lines written by {@link SoftClipStaticMethods#writeSoftClipRecord}, and uses the same file names
+ * ({@link SoftClipStaticMethods#getSoftClipFile(String, String, String)}).
+ * <p>
+ * A file starts with {@link #MAGIC}, and is followed by blocks of up to {@link #BLOCK_SIZE} records of a single kind (clip or unmapped read).
+ * Each block header holds the kind, the record count, the smallest and largest position and the length of the block, so that
+ * {@link #scan} can skip blocks that fall outside the region of interest without decoding them.
+ * Within a block the records are sorted by position (ties are kept in the order in which they were added), and are stored as columns:
+ * positions, flags, clip lengths and reference indexes as primitive arrays, read names split into the name and a read group suffix taken from
+ * the block's string table, and the read sequences 2-bit packed, with any base that isn't A, C, G or T stored as an exception.
+ * The clip and reference sequences are not stored, as they are the two parts of the read sequence either side of the clip length.
+ * <p>
+ * Files in the old text format can still be read.
+ */
+public final class SoftClipStore {
+
+	/**
+	 * "QSCP"
+	 */
+	static final int MAGIC = 0x51534350;
+
+	static final int BLOCK_SIZE = 4096;
+
+	private static final byte CLIP = 0;
+	private static final byte UNMAPPED = 1;
+
+	private static final int REVERSE = 1;
+	private static final int LEFT = 2;
+
+	private static final int NO_SUFFIX = 0xFFFF;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final byte[] BASE_CODES = new byte[256];
+	private static final char[] BASES = {'A', 'C', 'G', 'T'};
+	static {
+		Arrays.fill(BASE_CODES, (byte) -1);
+		BASE_CODES['A'] = 0;
+		BASE_CODES['C'] = 1;
+		BASE_CODES['G'] = 2;
+		BASE_CODES['T'] = 3;
+	}
+
+	private SoftClipStore() {}
+
+	/*
+	 * record waiting to be written
+	 */
+	private record Entry(int position, int flags, int clipLength, String reference, String readName, String sequence) {}
+
+	private static final Comparator<Entry> POSITION_COMPARATOR = Comparator.comparingInt(Entry::position);
+
+	/**
+	 * Appends soft clips and unmapped reads to a store, creating it if it doesn't exist.
+	 * Records are buffered and written a block at a time, so {@link #close()} must be called.
+	 * An existing file must be a (binary) store - text files are not appended to.
+	 */
+	public static final class Writer implements Closeable {
+
+		private final DataOutputStream out;
+		private final List<Entry> clips = new ArrayList<>();
+		private final List<Entry> unmapped = new ArrayList<>();
+
+		public Writer(File file) throws IOException {
+			boolean newFile = ! file.exists() || file.length() == 0;
+			if ( ! newFile && ! isBinary(file)) {
+				throw new IOException("Can't append soft clips to " + file.getAbsolutePath() + " as it is not a binary soft clip store");
+			}
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), BUFFER_SIZE));
+			if (newFile) {
+				out.writeInt(MAGIC);
+			}
+		}
+
+		/**
+		 * Adds the soft clip of the record if it has one (at one end only) and the breakpoint lies between start and end.
+		 * Equivalent to {@link SoftClipStaticMethods#writeSoftClipRecord}.
+		 */
+		public void addClip(SAMRecord record, String rgId, int start, int end) throws IOException {
+			Clip clip = SoftClipStaticMethods.createSoftClipRecord(record, rgId, start, end);
+			if (null != clip) {
+				add(clip);
+			}
+		}
+
+		void add(Clip clip) throws IOException {
+			int flags = (clip.getIsReverse() ? REVERSE : 0) | (clip.isLeft() ? LEFT : 0);
+			add(clips, new Entry(clip.getBpPos(), flags, clip.getLength(), clip.getReference(), clip.getReadName(), clip.getReadSequence()), CLIP);
+		}
+
+		/**
+		 * Adds the unmapped read if its mate's start lies between start and end, and its sequence doesn't have too many Ns.
+		 * Equivalent to {@link QSVUtil#writeUnmappedRecord}.
+		 */
+		public void addUnmapped(SAMRecord record, String rgId, int start, int end) throws IOException, QSVException {
+			int recordStart = record.getMateAlignmentStart();
+			if (QSVUtil.createRecord(recordStart, start, end)) {
+				String readString = record.getReadString();
+				if ( ! QSVUtil.highNCount(readString, 0.2)) {
+					add(unmapped, new Entry(recordStart, 0, 0, record.getReferenceName(), record.getReadName() + ":" + rgId, readString), UNMAPPED);
+				}
+			}
+		}
+
+		private void add(List<Entry> entries, Entry entry, byte kind) throws IOException {
+			entries.add(entry);
+			if (entries.size() >= BLOCK_SIZE) {
+				writeBlock(out, entries, kind);
+				entries.clear();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				writeBlock(out, clips, CLIP);
+				writeBlock(out, unmapped, UNMAPPED);
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	private static void writeBlock(DataOutputStream out, List<Entry> entries, byte kind) throws IOException {
+		if (entries.isEmpty()) {
+			return;
+		}
+		List<Entry> sorted = new ArrayList<>(entries);
+		sorted.sort(POSITION_COMPARATOR);
+		int count = sorted.size();
+
+		Map<String, Integer> stringIndexes = new HashMap<>();
+		List<String> strings = new ArrayList<>();
+		ByteArrayOutputStream columns = new ByteArrayOutputStream(count * 64);
+		DataOutputStream columnsOut = new DataOutputStream(columns);
+
+		for (Entry e : sorted) {
+			columnsOut.writeInt(e.position());
+		}
+		for (Entry e : sorted) {
+			columnsOut.writeByte(e.flags());
+		}
+		if (kind == CLIP) {
+			for (Entry e : sorted) {
+				columnsOut.writeInt(e.clipLength());
+			}
+		}
+		for (Entry e : sorted) {
+			columnsOut.writeShort(indexOf(e.reference(), stringIndexes, strings));
+		}
+		for (Entry e : sorted) {
+			String name = e.readName();
+			int colon = name.lastIndexOf(':');
+			if (colon < 0) {
+				columnsOut.writeUTF(name);
+				columnsOut.writeShort(NO_SUFFIX);
+			} else {
+				columnsOut.writeUTF(name.substring(0, colon));
+				columnsOut.writeShort(indexOf(name.substring(colon + 1), stringIndexes, strings));
+			}
+		}
+
+		/*
+		 * sequences - lengths, then the bases of all records 2-bit packed, then the bases that couldn't be packed
+		 */
+		int totalBases = 0;
+		for (Entry e : sorted) {
+			columnsOut.writeInt(e.sequence().length());
+			totalBases += e.sequence().length();
+		}
+		byte[] packed = new byte[(totalBases + 3) / 4];
+		List<int[]> exceptions = new ArrayList<>();
+		int offset = 0;
+		for (Entry e : sorted) {
+			String sequence = e.sequence();
+			for (int i = 0, len = sequence.length() ; i < len ; i++, offset++) {
+				char c = sequence.charAt(i);
+				int code = c < 256 ? BASE_CODES[c] : -1;
+				if (code < 0) {
+					exceptions.add(new int[] {offset, c});
+					code = 0;
+				}
+				packed[offset >>> 2] |= (byte) (code << ((offset & 3) << 1));
+			}
+		}
+		columnsOut.write(packed);
+		columnsOut.writeInt(exceptions.size());
+		for (int[] exception : exceptions) {
+			columnsOut.writeInt(exception[0]);
+			columnsOut.writeChar(exception[1]);
+		}
+		columnsOut.flush();
+
+		ByteArrayOutputStream table = new ByteArrayOutputStream();
+		DataOutputStream tableOut = new DataOutputStream(table);
+		tableOut.writeShort(strings.size());
+		for (String s : strings) {
+			tableOut.writeUTF(s);
+		}
+		tableOut.flush();
+
+		out.writeByte(kind);
+		out.writeInt(count);
+		out.writeInt(sorted.getFirst().position());
+		out.writeInt(sorted.getLast().position());
+		out.writeInt(totalBases);
+		out.writeInt(table.size() + columns.size());
+		table.writeTo(out);
+		columns.writeTo(out);
+	}
+
+	private static int indexOf(String s, Map<String, Integer> stringIndexes, List<String> strings) {
+		return stringIndexes.computeIfAbsent(s, k -> {
+			if (strings.size() >= NO_SUFFIX) {
+				throw new IllegalStateException("Too many distinct strings in soft clip block");
+			}
+			strings.add(k);
+			return strings.size() - 1;
+		});
+	}
+
+	/**
+	 * @return true if the file starts with {@link #MAGIC}, false if it is empty or in the text format
+	 */
+	public static boolean isBinary(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+			return in.readInt() == MAGIC;
+		} catch (EOFException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Passes the clips whose breakpoint lies between start and end (inclusive) to the clip consumer and, if requested, all the unmapped reads
+	 * to the unmapped consumer. Records are passed in file order, block by block.
+	 *
+	 * @param isTumour set on the {@link UnmappedRead}s that are created
+	 */
+	public static void scan(File file, int start, int end, boolean includeUnmapped, boolean isTumour, Consumer<Clip> clipConsumer, Consumer<UnmappedRead> unmappedConsumer) throws IOException, QSVException {
+		if ( ! isBinary(file)) {
+			scanText(file, start, end, includeUnmapped, isTumour, clipConsumer, unmappedConsumer);
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()), BUFFER_SIZE))) {
+			in.readInt();
+			while (true) {
+				int kind = in.read();
+				if (kind < 0) {
+					break;
+				}
+				int count = in.readInt();
+				int minPosition = in.readInt();
+				int maxPosition = in.readInt();
+				int totalBases = in.readInt();
+				int length = in.readInt();
+				boolean wanted = kind == UNMAPPED ? includeUnmapped : (maxPosition >= start && minPosition <= end);
+				if ( ! wanted) {
+					in.skipNBytes(length);
+					continue;
+				}
+				byte[] block = new byte[length];
+				in.readFully(block);
+				decodeBlock(block, (byte) kind, count, totalBases, start, end, isTumour, clipConsumer, unmappedConsumer);
+			}
+		}
+	}
+
+	private static void decodeBlock(byte[] block, byte kind, int count, int totalBases, int start, int end, boolean isTumour, Consumer<Clip> clipConsumer, Consumer<UnmappedRead> unmappedConsumer) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(block));
+		String[] strings = new String[in.readUnsignedShort()];
+		for (int i = 0 ; i < strings.length ; i++) {
+			strings[i] = in.readUTF();
+		}
+		int[] positions = new int[count];
+		for (int i = 0 ; i < count ; i++) {
+			positions[i] = in.readInt();
+		}
+		byte[] flags = new byte[count];
+		in.readFully(flags);
+		int[] clipLengths = new int[count];
+		if (kind == CLIP) {
+			for (int i = 0 ; i < count ; i++) {
+				clipLengths[i] = in.readInt();
+			}
+		}
+		int[] references = new int[count];
+		for (int i = 0 ; i < count ; i++) {
+			references[i] = in.readUnsignedShort();
+		}
+		String[] names = new String[count];
+		for (int i = 0 ; i < count ; i++) {
+			String name = in.readUTF();
+			int suffix = in.readUnsignedShort();
+			names[i] = suffix == NO_SUFFIX ? name : name + ":" + strings[suffix];
+		}
+		int[] lengths = new int[count];
+		for (int i = 0 ; i < count ; i++) {
+			lengths[i] = in.readInt();
+		}
+		char[] bases = new char[totalBases];
+		byte[] packed = new byte[(totalBases + 3) / 4];
+		in.readFully(packed);
+		for (int i = 0 ; i < totalBases ; i++) {
+			bases[i] = BASES[(packed[i >>> 2] >>> ((i & 3) << 1)) & 3];
+		}
+		for (int i = in.readInt() ; i > 0 ; i--) {
+			int offset = in.readInt();
+			bases[offset] = in.readChar();
+		}
+
+		int offset = 0;
+		for (int i = 0 ; i < count ; i++) {
+			int position = positions[i];
+			int length = lengths[i];
+			if (kind == UNMAPPED) {
+				unmappedConsumer.accept(new UnmappedRead(names[i], strings[references[i]], position, new String(bases, offset, length), isTumour));
+			} else if (position >= start && position <= end) {
+				String read = new String(bases, offset, length);
+				boolean isLeft = (flags[i] & LEFT) != 0;
+				int cutoff = isLeft ? clipLengths[i] : length - clipLengths[i];
+				String clipSequence = isLeft ? read.substring(0, cutoff) : read.substring(cutoff);
+				String referenceSequence = isLeft ? read.substring(cutoff) : read.substring(0, cutoff);
+				clipConsumer.accept(new Clip(names[i], strings[references[i]], position, (flags[i] & REVERSE) != 0, isLeft, read, clipSequence, referenceSequence));
+			}
+			offset += length;
+		}
+	}
+
+	/*
+	 * clip files written in the old text format
+	 */
+	private static void scanText(File file, int start, int end, boolean includeUnmapped, boolean isTumour, Consumer<Clip> clipConsumer, Consumer<UnmappedRead> unmappedConsumer) throws IOException, QSVException {
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath())) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("unmapped")) {
+					if (includeUnmapped) {
+						unmappedConsumer.accept(new UnmappedRead(line, isTumour));
+					}
+				} else {
+					Clip record = new Clip(line);
+					if (record.getBpPos() >= start && record.getBpPos() <= end) {
+						clipConsumer.accept(record);
+					}
+				}
+			}
+		}
+	}
+}
@@ -25,8 +25,8 @@ import org.qcmg.qsv.assemble.QSVAssemble;
 import org.qcmg.qsv.util.QSVConstants;
 import org.qcmg.qsv.util.QSVUtil;
 
+import au.edu.qimr.tiledaligner.TileLookup;
 import au.edu.qimr.tiledaligner.util.TiledAlignerUtil;
-import gnu.trove.map.TIntObjectMap;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMRecordIterator;
 import htsjdk.samtools.SamReader;
@@ -52,7 +52,7 @@ public class SplitReadContig {
 	private String consensus;
 	private Map<String, List<Chromosome>> chromosomes;
 	private boolean hasSoftClipEvidence;
-	private final TIntObjectMap<int[]> cache;
+	private final TileLookup cache;
 	private final QSVParameters parameters;
 	private String mutationType;
 	private String blatFile;
@@ -62,7 +62,7 @@ public class SplitReadContig {
 
 	
 
-	public SplitReadContig(TIntObjectMap<int[]> cache, QSVParameters p, String leftReference, String rightReference,
+	public SplitReadContig(TileLookup cache, QSVParameters p, String leftReference, String rightReference,
 			int leftBreakpoint, int rightBreakpoint, String orientationCategory) {
 
 		if (orientationCategory.equals(QSVConstants.ORIENTATION_2)) {
@@ -74,7 +74,7 @@ public class SplitReadContig {
 		this.parameters = p;
 	}
 
-	public SplitReadContig(TIntObjectMap<int[]> cache, QSVParameters p,
+	public SplitReadContig(TileLookup cache, QSVParameters p,
 			String softclipDir, String leftReference, String rightReference, int leftRecordBreakpoint, int rightRecordBreakpoint, 
 			Set<String> expectedPairClassifications, String clipContig, String confidence, 
 			String orientationCategory, String referenceFile, Map<String, List<Chromosome>> chromosomes, boolean hasSoftClipEvidence, String blatFile, boolean log) throws Exception {
@@ -341,7 +341,7 @@ public class SplitReadContig {
 				}
 				Map<String, String> sequenceNameMap = new HashMap<>(2);
 				sequenceNameMap.put(consensus, name);
-				List<BLATRecord> records = getBlatResults(TiledAlignerUtil.runTiledAlignerCache(parameters.getReference(), parameters.getRefIndexPositionMap(), cache, sequenceNameMap, TiledAlignerUtil.TILE_LENGTH, "SplitReadContig.findSplitRead", log, true),  knownSV.getLeftReference(), knownSV.getRightReference(), name, consensus, log);
+				List<BLATRecord> records = getBlatResults(parameters.getContigAligner(cache).align(sequenceNameMap, "SplitReadContig.findSplitRead", log, true),  knownSV.getLeftReference(), knownSV.getRightReference(), name, consensus, log);
 
 				if (log) {
 					logger.info("findSplitRead, getBlatResults size: " + records.size() + ", blat rec scores: " + records.stream().map(br -> br.getScore() + "").collect(Collectors.joining(",")));
@@ -364,7 +364,7 @@ public class SplitReadContig {
 							/*
 							 * why is this run twice?
 							 */
-							records = alignConsensus(TiledAlignerUtil.runTiledAlignerCache(parameters.getReference(), parameters.getRefIndexPositionMap(), cache, sequenceNameMap, TiledAlignerUtil.TILE_LENGTH, "SplitReadContig.findSplitRead", log, true), clipContig, knownSV.getLeftReference(), knownSV.getRightReference());
+							records = alignConsensus(parameters.getContigAligner(cache).align(sequenceNameMap, "SplitReadContig.findSplitRead", log, true), clipContig, knownSV.getLeftReference(), knownSV.getRightReference());
 							if (!records.isEmpty()) {
 								if (log) {
 									logger.info("findSplitRead, about to call parseConsensusAlign again, records.size: " + records.size() + ", top rec: " + records.getLast().toString());
@@ -31,6 +31,14 @@ public class UnmappedRead {
 		this.isTumour = isTumour;
 	}
 	
+	public UnmappedRead(String readName, String reference, int bpPos, String sequence, boolean isTumour) {
+		this.readName = readName;
+		this.reference = reference;
+		this.bpPos = bpPos;
+		this.sequence = sequence;
+		this.isTumour = isTumour;
+	}
+	
 	public UnmappedRead(SAMRecord record, String readGroupId, boolean isTumour, boolean isReverse) {
 		this.readName = record.getReadName() + ":" + (readGroupId != null ? readGroupId : "");
 		this.reference = record.getReferenceName();		
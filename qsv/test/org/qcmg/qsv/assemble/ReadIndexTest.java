@@ -0,0 +1,62 @@
+package org.qcmg.qsv.assemble;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ReadIndexTest {
+
+	private static final String SEQUENCE = "GCAAAGATCAACCTGTCCTAAGTCATATAATCTCTTTGTGTAAGAGATTATACTTTGTGTAAGAGGTCCACCAGAGGAGTTCAGCAATTTGCTGCTCTTAG";
+
+	@Test
+	public void seedCodes() throws Exception {
+		Read read = new Read("read", SEQUENCE);
+		read.createHashtable();
+		assertEquals(0, read.getHashtable().get(read.getSeedCode()));
+		assertEquals(SEQUENCE.length() - QSVAssemble.SEED_LENGTH, read.getHashtable().get(read.getReverseSeedCode()));
+
+		/*
+		 * N is a distinct base
+		 */
+		assertNotEquals(new Read("a", "A" + SEQUENCE.substring(1)).getSeedCode(), new Read("n", "N" + SEQUENCE.substring(1)).getSeedCode());
+	}
+
+	@Test
+	public void candidatesAndRemoval() throws Exception {
+		List<Read> reads = new ArrayList<>();
+		reads.add(new Read("seed", SEQUENCE));
+		reads.add(new Read("dup", SEQUENCE.substring(20, 80)));
+		reads.add(new Read("other", "C".repeat(60)));
+		reads.add(new Read("dup", SEQUENCE.substring(40)));
+		reads.add(new Read("end", "TTTTTTTTTT" + SEQUENCE.substring(0, 50)));
+
+		ReadIndex index = new ReadIndex(reads);
+		Read seed = index.get(0);
+		seed.createHashtable();
+		assertArrayEquals(new int[] {1, 3, 4}, index.candidates(seed.getHashtable(), 0));
+
+		assertEquals(1, index.indexOfHeader("dup"));
+		index.removeHeader("dup");
+		assertEquals(4, index.size());
+		assertEquals(2, index.indexOfHeader("dup"));
+		assertEquals(3, index.ordinalAt(2));
+		assertEquals(4, index.ordinalAt(3));
+		assertArrayEquals(new int[] {3, 4}, index.candidates(seed.getHashtable(), 0));
+
+		index.removeHeader("dup");
+		index.removeHeader("dup");
+		assertEquals(-1, index.indexOfHeader("dup"));
+		assertEquals(-1, index.indexOfHeader("missing"));
+		assertEquals(3, index.size());
+
+		index.copyLiveReadsTo(reads);
+		assertEquals(3, reads.size());
+		assertEquals("other", reads.get(1).getHeader());
+		assertEquals("end", reads.get(2).getHeader());
+	}
+}
@@ -0,0 +1,154 @@
+package org.qcmg.qsv.blat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.qcmg.common.model.BLATRecord;
+import org.qcmg.common.model.ChrPosition;
+import org.qcmg.common.util.NumberUtils;
+
+import au.edu.qimr.tiledaligner.PositionChrPositionMap;
+import au.edu.qimr.tiledaligner.PositionChrPositionMap.LongRange;
+import au.edu.qimr.tiledaligner.TileLookup;
+import au.edu.qimr.tiledaligner.TileMap;
+import au.edu.qimr.tiledaligner.util.TiledAlignerUtil;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import htsjdk.samtools.reference.FastaSequenceIndexCreator;
+import htsjdk.samtools.util.SequenceUtil;
+
+public class TiledContigAlignerTest {
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void alignBatch() throws Exception {
+		File ref = testFolder.newFile("ref.fa");
+		TIntObjectMap<int[]> map = new TIntObjectHashMap<>();
+		int[] array = new int[10];
+		Arrays.fill(array, 10);
+		map.put(1, array);
+		TileLookup cache = new TileMap(map);
+
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			ContigAligner aligner = new TiledContigAligner(ref.getAbsolutePath(), null, cache, 13, pool);
+			try {
+				aligner.align(null, "test", false, false);
+				fail("Should have thrown an IllegalArgumentException");
+			} catch (IllegalArgumentException iae) {}
+
+			assertTrue(aligner.align(new HashMap<>(), "test", false, false).isEmpty());
+
+			Map<String, String> sequenceNameMap = new HashMap<>();
+			for (int i = 0 ; i < 20 ; i++) {
+				sequenceNameMap.put("ACGTACGTACGTACGTACGT" + "ACGT".repeat(i), "seq_" + i);
+			}
+			Map<String, List<BLATRecord>> results = aligner.align(sequenceNameMap, "test", false, false);
+			assertEquals(sequenceNameMap.keySet(), results.keySet());
+			for (List<BLATRecord> records : results.values()) {
+				assertEquals(0, records.size());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void failuresArePropagated() throws Exception {
+		File ref = testFolder.newFile("ref.fa");
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			ContigAligner aligner = new TiledContigAligner(ref.getAbsolutePath(), null, null, 13, pool);
+			Map<String, String> sequenceNameMap = new HashMap<>();
+			sequenceNameMap.put("ACGTACGTACGTACGTACGT", "seq_1");
+			sequenceNameMap.put("TTGTACGTACGTACGTACGT", "seq_2");
+			try {
+				aligner.align(sequenceNameMap, "test", false, false);
+				fail("Should have thrown an IllegalArgumentException");
+			} catch (IllegalArgumentException iae) {}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void batchMatchesSequentialAlignment() throws Exception {
+		/*
+		 * a random reference, and a tiled aligner cache built from it
+		 */
+		Random random = new Random(5);
+		String reference = randomSequence(random, 20_000);
+		File ref = testFolder.newFile("ref.fa");
+		Files.writeString(ref.toPath(), ">chr1\n" + reference.replaceAll("(.{60})", "$1\n") + "\n");
+		FastaSequenceIndexCreator.create(ref.toPath(), true);
+		Map<ChrPosition, LongRange> refIndexMap = PositionChrPositionMap.loadMap(ref.getAbsolutePath() + ".fai");
+
+		Map<Integer, TIntArrayList> positions = new HashMap<>();
+		for (int i = 0 ; i <= reference.length() - TiledAlignerUtil.TILE_LENGTH ; i++) {
+			positions.computeIfAbsent(NumberUtils.convertTileToInt(reference.substring(i, i + TiledAlignerUtil.TILE_LENGTH)), k -> new TIntArrayList()).add(i + 1);
+		}
+		TIntObjectMap<int[]> map = new TIntObjectHashMap<>();
+		for (Entry<Integer, TIntArrayList> entry : positions.entrySet()) {
+			map.put(entry.getKey(), entry.getValue().toArray());
+		}
+		TileLookup cache = new TileMap(map);
+
+		/*
+		 * contigs that match the reference exactly, with mismatches and an insertion, on the reverse strand, and split across two distant regions
+		 */
+		Map<String, String> sequenceNameMap = new HashMap<>();
+		sequenceNameMap.put(reference.substring(1000, 1200), "exact");
+		sequenceNameMap.put(reference.substring(3000, 3060) + "T" + reference.substring(3061, 3100) + "GATTACA" + reference.substring(3100, 3250), "mismatchAndInsertion");
+		sequenceNameMap.put(SequenceUtil.reverseComplement(reference.substring(7000, 7150)), "reverse");
+		sequenceNameMap.put(reference.substring(10_000, 10_080) + reference.substring(16_000, 16_090), "split");
+		sequenceNameMap.put(randomSequence(random, 150), "unmapped");
+
+		Map<String, List<BLATRecord>> expected = TiledAlignerUtil.runTiledAlignerCache(ref.getAbsolutePath(), refIndexMap, cache, sequenceNameMap, TiledAlignerUtil.TILE_LENGTH, "test", false, false);
+		assertTrue(expected.get(reference.substring(1000, 1200)).size() > 0);
+		assertTrue(expected.get(reference.substring(10_000, 10_080) + reference.substring(16_000, 16_090)).size() > 0);
+
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			Map<String, List<BLATRecord>> actual = new TiledContigAligner(ref.getAbsolutePath(), refIndexMap, cache, TiledAlignerUtil.TILE_LENGTH, pool).align(sequenceNameMap, "test", false, false);
+			assertEquals(toStrings(expected), toStrings(actual));
+
+			/*
+			 * and when called from within another fork/join pool
+			 */
+			actual = pool.submit(() -> new TiledContigAligner(ref.getAbsolutePath(), refIndexMap, cache, 1).align(sequenceNameMap, "test", false, false)).get();
+			assertEquals(toStrings(expected), toStrings(actual));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static Map<String, String> toStrings(Map<String, List<BLATRecord>> records) {
+		return records.entrySet().stream().collect(Collectors.toMap(Entry::getKey, e -> e.getValue().stream().map(BLATRecord::toString).collect(Collectors.joining("\n"))));
+	}
+
+	private static String randomSequence(Random random, int length) {
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0 ; i < length ; i++) {
+			sb.append("ACGT".charAt(random.nextInt(4)));
+		}
+		return sb.toString();
+	}
+}
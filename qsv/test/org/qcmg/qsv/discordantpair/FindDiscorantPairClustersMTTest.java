@@ -1,6 +1,7 @@
 package org.qcmg.qsv.discordantpair;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 import java.io.File;
 import java.io.IOException;
@@ -16,6 +17,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.function.Predicate;
 
 import htsjdk.samtools.SAMFileHeader.SortOrder;
 
@@ -165,6 +167,24 @@ public class FindDiscorantPairClustersMTTest {
 		assertEquals(1, findClusters.getClustersMap().get("germline").size());	
 	}
 
+	@Test
+	public void compareWindowFilterKeepsGermlineMatches() throws IOException, Exception {
+		TestUtil.createTmpClusterFile(matePairDir.getAbsolutePath() + FILE_SEPARATOR, PairClassification.AAC, "chr7_xxx_test_ND_AAC");
+		List<MatePair> pairs = TestUtil.readInMatePairs(new File(matePairDir.getAbsolutePath() + FILE_SEPARATOR + "AAC" + FILE_SEPARATOR + "chr7_xxx_test_ND_AAC"));
+		List<DiscordantPairCluster> clusters = Arrays.asList(TestUtil.setupSolidCluster(PairGroup.AAC, "somatic", testFolder.getRoot(), "chr7", "chr7"));
+
+		Predicate<MatePair> filter = FindDiscordantPairClustersMT.compareWindowFilter(clusters, normal.getUpperInsertSize());
+		List<MatePair> filtered = pairs.stream().filter(filter).toList();
+		assertEquals(pairs.size(), filtered.size());
+		assertFalse(filter.test(new MatePair("722_126_792:20110412030837875,chr7,100,200,AAC,129,false,722_126_792:20110412030837875,chr7,300,400,AAC,65,false,F2F1\n")));
+
+		findClusters = new FindDiscordantPairClustersMT(PairGroup.AAC, countDownLatch, findReader, compareReader, tumor, normal, countReport, "", true);
+		findClusters.classifyClusters(clusters, filtered);
+		assertEquals(1, findClusters.getClustersMap().get("germline").size());
+
+		assertFalse(FindDiscordantPairClustersMT.compareWindowFilter(Collections.emptyList(), 1000).test(pairs.getFirst()));
+	}
+
 	@Test
 	public void testClassifySomaticCluster() throws IOException, Exception {
 		TestUtil.createTmpClusterFile(matePairDir.getAbsolutePath() + FILE_SEPARATOR, PairClassification.AAC, "chr7_xxx_test_ND_AAC");
@@ -0,0 +1,93 @@
+package org.qcmg.qsv.discordantpair;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.qcmg.qsv.util.TestUtil;
+
+public class MatePairRunFileTest {
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	private static List<MatePair> readAll(List<File> files) throws Exception {
+		List<MatePair> pairs = new ArrayList<>();
+		try (MatePairRunFile.MergeIterator iter = new MatePairRunFile.MergeIterator(files)) {
+			iter.forEachRemaining(pairs::add);
+		}
+		return pairs;
+	}
+
+	private static List<String> toStrings(List<MatePair> pairs) {
+		return pairs.stream().map(MatePair::toString).toList();
+	}
+
+	@Test
+	public void roundTrip() throws Exception {
+		File file = testFolder.newFile("chr7_xxx_TD_AAC");
+		file.delete();
+		List<MatePair> pairs = TestUtil.setupMatePairs(PairGroup.AAC);
+		MatePairRunFile.appendRun(file, pairs);
+		assertTrue(MatePairRunFile.isBinary(file));
+
+		List<MatePair> expected = new ArrayList<>(pairs);
+		expected.sort(new MatePair.ReadMateLeftStartComparator());
+		List<MatePair> read = readAll(List.of(file));
+		assertEquals(toStrings(expected), toStrings(read));
+		for (int i = 0 ; i < read.size() ; i++) {
+			assertEquals(expected.get(i).getZpType(), read.get(i).getZpType());
+			assertEquals(expected.get(i).getLeftMate().getFlags(), read.get(i).getLeftMate().getFlags());
+		}
+	}
+
+	@Test
+	public void runsAreMergedInStartOrder() throws Exception {
+		File dir = testFolder.newFolder();
+		String textFile = TestUtil.createTmpClusterFile(dir.getAbsolutePath() + File.separator, PairClassification.AAC, "chr7_xxx_test_TD_AAC");
+		List<MatePair> pairs = TestUtil.readInMatePairs(new File(textFile));
+		assertFalse(MatePairRunFile.isBinary(new File(textFile)));
+
+		/*
+		 * spread the pairs over a number of runs in two files
+		 */
+		File first = new File(dir, "first");
+		File second = new File(dir, "second");
+		for (int i = 0 ; i < pairs.size() ; i++) {
+			MatePairRunFile.appendRun(i % 2 == 0 ? first : second, List.of(pairs.get(pairs.size() - 1 - i)));
+		}
+		MatePairRunFile.appendRun(first, List.of());
+
+		List<MatePair> expected = new ArrayList<>(pairs);
+		expected.sort(new MatePair.ReadMateLeftStartComparator());
+		List<MatePair> read = readAll(List.of(first, second));
+		assertEquals(pairs.size(), read.size());
+		for (int i = 1 ; i < read.size() ; i++) {
+			assertTrue(read.get(i - 1).getLeftMate().getStart() <= read.get(i).getLeftMate().getStart());
+		}
+		assertEquals(expected.stream().map(MatePair::getReadName).sorted().toList(), read.stream().map(MatePair::getReadName).sorted().toList());
+
+		/*
+		 * text and binary files can be mixed
+		 */
+		List<MatePair> mixed = readAll(List.of(new File(textFile), first));
+		assertEquals(pairs.size() + (pairs.size() + 1) / 2, mixed.size());
+		for (int i = 1 ; i < mixed.size() ; i++) {
+			assertTrue(mixed.get(i - 1).getLeftMate().getStart() <= mixed.get(i).getLeftMate().getStart());
+		}
+	}
+
+	@Test
+	public void emptyFile() throws Exception {
+		File file = testFolder.newFile("empty");
+		assertFalse(MatePairRunFile.isBinary(file));
+		assertTrue(readAll(List.of(file)).isEmpty());
+	}
+}
@@ -1,6 +1,7 @@
 package org.qcmg.qsv.discordantpair;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -51,7 +52,15 @@ public class MatePairsWriterTest {
         writer.writeMatePairsToFile();
         File file = new File(mateDir, "chr7-1_xxx_TD_AAC");
         assertTrue(file.exists());
-        assertTrue(file.length() > 100);
+        assertTrue(MatePairRunFile.isBinary(file));
+
+        writer.addNewMatePair(matePairs.getFirst());
+        writer.writeMatePairsToFile();
+        try (MatePairRunFile.MergeIterator iter = new MatePairRunFile.MergeIterator(List.of(file))) {
+            assertEquals(matePairs.getFirst().toString(), iter.next().toString());
+            assertEquals(matePairs.getFirst().toString(), iter.next().toString());
+            assertFalse(iter.hasNext());
+        }
     }
 
 }
@@ -0,0 +1,90 @@
+package org.qcmg.qsv.softclip;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class ClipThreadPlanTest {
+
+	@Test
+	public void parallelismFollowsProcessors() {
+		assertEquals(1, new ClipThreadPlan(0, 1000).getParallelism());
+		assertEquals(16, new ClipThreadPlan(16, 1000).getParallelism());
+		assertEquals(600, new ClipThreadPlan(16, 1000).getMemoryBudget());
+	}
+
+	@Test
+	public void batchSize() {
+		ClipThreadPlan plan = new ClipThreadPlan(4, 1000);
+		assertEquals(1, plan.getBatchSize(0, 50));
+		assertEquals(1, plan.getBatchSize(16, 50));
+		assertEquals(2, plan.getBatchSize(17, 50));
+		assertEquals(50, plan.getBatchSize(100000, 50));
+		assertEquals(1, new ClipThreadPlan(1, 1000).getBatchSize(3, 50));
+	}
+
+	@Test
+	public void memoryBudget() {
+		ClipThreadPlan plan = new ClipThreadPlan(4, 1000);
+		assertEquals(8, plan.estimateFootprint(0));
+		assertEquals(400, plan.estimateFootprint(50));
+		assertEquals(600, plan.estimateFootprint(1000000));
+
+		/*
+		 * a reservation larger than the budget is granted when nothing else is running
+		 */
+		assertTrue(plan.tryReserve(600));
+		assertFalse(plan.tryReserve(8));
+		plan.release(600);
+		assertTrue(plan.tryReserve(400));
+		assertTrue(plan.tryReserve(200));
+		assertFalse(plan.tryReserve(8));
+		plan.release(200);
+		assertTrue(plan.tryReserve(8));
+	}
+
+	@Test
+	public void overlapFootprintIsCappedAtTheBudget() {
+		ClipThreadPlan plan = new ClipThreadPlan(4, 100L * ClipThreadPlan.OVERLAP_BYTES_PER_CLUSTER);
+		assertEquals(ClipThreadPlan.OVERLAP_BYTES_PER_CLUSTER, plan.estimateOverlapFootprint(0));
+		assertEquals(10 * ClipThreadPlan.OVERLAP_BYTES_PER_CLUSTER, plan.estimateOverlapFootprint(10));
+		assertEquals(plan.getMemoryBudget(), plan.estimateOverlapFootprint(1000));
+	}
+
+	@Test
+	public void reserveWaitsForRelease() throws Exception {
+		ClipThreadPlan plan = new ClipThreadPlan(4, 1000);
+		assertTrue(plan.tryReserve(600));
+		AtomicBoolean reserved = new AtomicBoolean();
+		Thread waiter = new Thread(() -> {
+			try {
+				plan.reserve(400);
+				reserved.set(true);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		waiter.start();
+		waiter.join(200);
+		assertFalse(reserved.get());
+
+		plan.release(600);
+		waiter.join(5000);
+		assertTrue(reserved.get());
+		assertFalse(plan.tryReserve(400));
+	}
+
+	@Test
+	public void involvesChromosome() {
+		assertTrue(FindClipClustersMT.involvesChromosome("chr1:chr2", Set.of("chr2")));
+		assertTrue(FindClipClustersMT.involvesChromosome("chr1:chr2", Set.of("chr1", "chr3")));
+		assertFalse(FindClipClustersMT.involvesChromosome("chr1:chr2", Set.of("chr3", "chr12", "chr11")));
+		assertFalse(FindClipClustersMT.involvesChromosome("chr1:chr2", Set.of()));
+		assertTrue(FindClipClustersMT.involvesChromosome("chr1:HLA-A*01:01:01:01", Set.of("HLA-A*01:01:01:01")));
+	}
+}
@@ -4,12 +4,15 @@ import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +31,7 @@ import org.qcmg.qsv.discordantpair.PairGroup;
 import org.qcmg.qsv.util.QSVUtil;
 import org.qcmg.qsv.util.TestUtil;
 
+import au.edu.qimr.tiledaligner.TileMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 
 public class FindSoftClipClustersMTTest {
@@ -51,6 +55,7 @@ public class FindSoftClipClustersMTTest {
         tumor.setReference("file");
         normal.setReference("file");
         Options options = createMock(Options.class);
+		expect(options.getThreadCount()).andReturn(2);
 		expect(options.isSplitRead()).andReturn(false);
 		expect(options.isQCMG()).andReturn(true);
 		expect(options.singleSided()).andReturn(false);
@@ -91,7 +96,7 @@ public class FindSoftClipClustersMTTest {
         expect(blat.alignConsensus(softClipDir.getAbsolutePath(), "splitcon-chr10-89700299-chr10-89712341", "TTGTTTCACAAAACGAACAGATCTGCAAAGATCAACCTGTCCTAAGTCATATAATCTCTTTGTGTAAGAGATTATACTTTGTGTAAGAGGTCCACCAGAGGAGTTCAGCAATTTGCTGCTCTTAGGGCAGGGATCAATTCCTTAATATCTTAGGA", "chr10", "chr10")).andReturn(new ArrayList<BLATRecord>());
         
         replay(blat);
-        FindClipClustersMT worker = new FindClipClustersMT(tumor, normal, softClipDir.getAbsolutePath(), tumorClusterRecords,  options, "analysisId", 200, new TIntObjectHashMap<int[]>());
+        FindClipClustersMT worker = new FindClipClustersMT(tumor, normal, softClipDir.getAbsolutePath(), tumorClusterRecords,  options, "analysisId", 200, new TileMap(new TIntObjectHashMap<>()));
 		String key = "";
 		List<SoftClipCluster> clusters = new ArrayList<>();
 		List<SoftClipCluster> results = worker.getProperClipSVs(key, clusters);
@@ -107,6 +112,7 @@ public class FindSoftClipClustersMTTest {
         tumor.setReference("file");
         normal.setReference("file");
         Options options = createMock(Options.class);
+		expect(options.getThreadCount()).andReturn(2);
 		expect(options.isSplitRead()).andReturn(false);
 		expect(options.isQCMG()).andReturn(true);
 		expect(options.singleSided()).andReturn(false);
@@ -147,12 +153,75 @@ public class FindSoftClipClustersMTTest {
         
         replay(blat);
 		
-		FindClipClustersMT worker = new FindClipClustersMT(tumor, normal, softClipDir.getAbsolutePath(), tumorClusterRecords,  options, "analysisId", 200, new TIntObjectHashMap<int[]>());
+		FindClipClustersMT worker = new FindClipClustersMT(tumor, normal, softClipDir.getAbsolutePath(), tumorClusterRecords,  options, "analysisId", 200, new TileMap(new TIntObjectHashMap<>()));
         worker.execute();
         
         assertEquals(0, worker.getQSVRecordWriter().getGermlineCount().intValue());
 	}
 
+	@Test
+	public void translocationsStartedDuringClusteringGiveTheSameRecords() throws Exception {
+		List<String> early = execute(testFolder.newFolder("early"), true);
+		List<String> late = execute(testFolder.newFolder("late"), false);
+		assertTrue(early.size() > 0);
+		assertEquals(late, early);
+	}
+
+	/*
+	 * runs the clip clustering and translocations, and returns the lines of the records that are written, sorted, and without their ids
+	 */
+	private List<String> execute(File folder, boolean scheduleTranslocationsEarly) throws Exception {
+		File tumorBam = TestUtil.createHiseqBamFile(new File(folder, "tumor.bam").getAbsolutePath(), PairGroup.AAC, SortOrder.coordinate);
+		QSVParameters tumor = TestUtil.getQSVParameters(folder, tumorBam.getAbsolutePath(), tumorBam.getAbsolutePath(), true, "clip");
+		QSVParameters normal = TestUtil.getQSVParameters(folder, tumorBam.getAbsolutePath(), tumorBam.getAbsolutePath(), false, "clip");
+		tumor.setReference("file");
+		normal.setReference("file");
+		Options options = createMock(Options.class);
+		expect(options.getThreadCount()).andReturn(4);
+		expect(options.isSplitRead()).andReturn(false);
+		expect(options.isQCMG()).andReturn(true);
+		expect(options.singleSided()).andReturn(false);
+		expect(options.getConsensusLength()).andReturn(20);
+		expect(options.getClipSize()).andReturn(3);
+		expect(options.getMinInsertSize()).andReturn(50);
+		expect(options.getReference()).andReturn("file");
+		expect(options.getAnalysisMode()).andReturn("both");
+		expect(options.getPlatform()).andReturn("illumina");
+		expect(options.getIncludeTranslocations()).andReturn(true);
+		expect(options.allChromosomes()).andReturn(true);
+		expect(options.getGffFiles()).andReturn(new ArrayList<String>());
+		replay(options);
+
+		File softClipDir = new File(folder, "softclip");
+		softClipDir.mkdir();
+		writeSoftClipFiles(softClipDir);
+
+		Map<PairGroup, Map<String, List<DiscordantPairCluster>>> tumorClusterRecords = new HashMap<>();
+		Map<String, List<DiscordantPairCluster>> map = new HashMap<>();
+		for (String key : new String[] {"chr7:chr7", "chr10:chr10", "chr7:chr10", "chr1:chr4", "chrX:chr19"}) {
+			List<DiscordantPairCluster> list = new ArrayList<>();
+			list.add(TestUtil.setupSolidCluster(PairGroup.AAC, "somatic", folder, "chr7", "chr7"));
+			map.put(key, list);
+		}
+		tumorClusterRecords.put(PairGroup.AAC, map);
+
+		TIntObjectHashMap<int[]> tiles = new TIntObjectHashMap<>();
+		tiles.put(1, new int[] {1});
+		FindClipClustersMT worker = new FindClipClustersMT(tumor, normal, softClipDir.getAbsolutePath(), tumorClusterRecords, options, "analysisId", 200, new TileMap(tiles));
+		worker.scheduleTranslocationsEarly = scheduleTranslocationsEarly;
+		worker.execute();
+		assertEquals(0, worker.getExitStatus().intValue());
+
+		List<String> lines = new ArrayList<>();
+		for (String name : new String[] {"test.somatic.sv.txt", "test.somatic.dcc", "test.somatic.softclip.txt", "test.germline.sv.txt", "test.germline.dcc", "test.chr7.somatic.records"}) {
+			for (String line : Files.readAllLines(new File(folder, name).toPath())) {
+				lines.add(name + "\t" + line.replace(folder.getAbsolutePath(), "").replaceAll("(stsm|stgm|sm|gm)_\\d+", "id"));
+			}
+		}
+		Collections.sort(lines);
+		return lines;
+	}
+
 	private void writeSoftClipFiles(File softClipDir) throws IOException {
 		try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(softClipDir + QSVUtil.getFileSeparator() + "TD.chr10.clip")))) {
 			writer.write("HWI-ST1240:47:D12NAACXX:6:1213:16584:89700:20120608110941621,chr10,89700299,-,right,TTGTTTCACAAAACGAACAGATCTGCAAAGATCAACCTGTCCTAAGTCATATAATCTCTTTGTGTAAGAGATTATACTTTGTGTAAGAGGTCCACCAGAGG,GAGATTATACTTTGTGTAAGAGGTCCACCAGAGG,TTGTTTCACAAAACGAACAGATCTGCAAAGATCAACCTGTCCTAAGTCATATAATCTCTTTGTGTAA\n");
@@ -0,0 +1,170 @@
+package org.qcmg.qsv.softclip;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.qcmg.qsv.splitread.UnmappedRead;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+
+public class SoftClipStoreTest {
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	private static final String[] CLIP_LINES = {
+		"HWI-ST1240:47:D12NAACXX:6:1213:16584:89700:20120608110941621,chr10,89700299,-,right,TTGTTTCACAAAACGAACAGATCTGCAAAGATCAACCTGTCCTAAGTCATATAATCTCTTTGTGTAAGAGATTATACTTTGTGTAAGAGGTCCACCAGAGG,GAGATTATACTTTGTGTAAGAGGTCCACCAGAGG,TTGTTTCACAAAACGAACAGATCTGCAAAGATCAACCTGTCCTAAGTCATATAATCTCTTTGTGTAA",
+		"HWI-ST1240:47:D12NAACXX:5:2308:21263:96155:20120607102754932,chr10,89712341,+,left,AGTCATATAATCTCTTTGTGTAAGAGATTTTACTTTGTGTAAGAGGTCCACCAGAGGAGTTCAGCAATTTGCTGCTCTTAGGGCAGGGATCAATTCCTTAA,AGTCATATAATCTCTTTGTGTAAGAGATTTTACTTTGTGTA,AGAGGTCCACCAGAGGAGTTCAGCAATTTGCTGCTCTTAGGGCAGGGATCAATTCCTTAA",
+		"noReadGroup,chr10,89700100,+,left,NNACGTRYACGT,NNACG,TRYACGT",
+	};
+
+	private static List<String> scan(File file, int start, int end, boolean includeUnmapped, List<String> unmapped) throws Exception {
+		List<String> clips = new ArrayList<>();
+		SoftClipStore.scan(file, start, end, includeUnmapped, true, c -> clips.add(c.toString()), r -> unmapped.add(r.toString() + "," + r.isTumour()));
+		return clips;
+	}
+
+	@Test
+	public void roundTrip() throws Exception {
+		File file = testFolder.newFile("TD.chr10.clip");
+		file.delete();
+		try (SoftClipStore.Writer writer = new SoftClipStore.Writer(file)) {
+			for (String line : CLIP_LINES) {
+				writer.add(new Clip(line));
+			}
+		}
+		assertTrue(SoftClipStore.isBinary(file));
+
+		List<String> unmapped = new ArrayList<>();
+		List<String> clips = scan(file, 1, Integer.MAX_VALUE, true, unmapped);
+		assertEquals(3, clips.size());
+		assertEquals(new Clip(CLIP_LINES[2]).toString(), clips.get(0));
+		assertEquals(new Clip(CLIP_LINES[0]).toString(), clips.get(1));
+		assertEquals(new Clip(CLIP_LINES[1]).toString(), clips.get(2));
+		assertTrue(unmapped.isEmpty());
+
+		Clip clip = new Clip(CLIP_LINES[0]);
+		List<Clip> read = new ArrayList<>();
+		SoftClipStore.scan(file, 89700299, 89700299, false, true, read::add, r -> {});
+		assertEquals(1, read.size());
+		assertEquals(clip.getClipSequence(), read.getFirst().getClipSequence());
+		assertEquals(clip.getReferenceSequence(), read.getFirst().getReferenceSequence());
+		assertEquals(clip.getLength(), read.getFirst().getLength());
+		assertEquals(clip.getIsReverse(), read.getFirst().getIsReverse());
+		assertEquals(clip.isLeft(), read.getFirst().isLeft());
+		assertEquals(clip, read.getFirst());
+	}
+
+	@Test
+	public void unmappedReadsAndBlocks() throws Exception {
+		SAMSequenceDictionary dictionary = new SAMSequenceDictionary();
+		dictionary.addSequence(new SAMSequenceRecord("chr1", 1000000));
+		SAMFileHeader header = new SAMFileHeader();
+		header.setSequenceDictionary(dictionary);
+
+		File file = testFolder.newFile("TD.chr1.clip");
+		int records = SoftClipStore.BLOCK_SIZE * 2 + 10;
+		try (SoftClipStore.Writer writer = new SoftClipStore.Writer(file)) {
+			for (int i = 0 ; i < records ; i++) {
+				SAMRecord record = new SAMRecord(header);
+				record.setReadName("read" + i);
+				record.setReadUnmappedFlag(true);
+				record.setReferenceName("chr1");
+				record.setMateReferenceName("chr1");
+				record.setMateAlignmentStart(records - i);
+				record.setReadString(i % 2 == 0 ? "ACGTACGTAC" : "NNNNNNNNAC");
+				writer.addUnmapped(record, "rg1", 1, 100000);
+			}
+		}
+
+		List<UnmappedRead> unmapped = new ArrayList<>();
+		SoftClipStore.scan(file, 1, 10, true, false, c -> {}, unmapped::add);
+		/*
+		 * reads with too many Ns are not written
+		 */
+		assertEquals(records / 2, unmapped.size());
+		for (UnmappedRead r : unmapped) {
+			assertEquals("ACGTACGTAC", r.getSequence());
+			assertEquals("chr1", r.getReference());
+			assertTrue(r.getReadName().endsWith(":rg1"));
+			assertFalse(r.isTumour());
+		}
+
+		unmapped.clear();
+		SoftClipStore.scan(file, 1, 10, false, false, c -> {}, unmapped::add);
+		assertTrue(unmapped.isEmpty());
+	}
+
+	@Test
+	public void blocksOutsideRangeAreSkipped() throws Exception {
+		File file = testFolder.newFile("TD.chr10.clip");
+		String[] values = CLIP_LINES[1].split(",");
+		int records = SoftClipStore.BLOCK_SIZE * 3;
+		try (SoftClipStore.Writer writer = new SoftClipStore.Writer(file)) {
+			for (int i = 0 ; i < records ; i++) {
+				values[0] = "read" + i + ":rg" + (i % 3);
+				values[2] = String.valueOf(1000 + i);
+				writer.add(new Clip(String.join(",", values)));
+			}
+		}
+		/*
+		 * a second writer appends to the file
+		 */
+		try (SoftClipStore.Writer writer = new SoftClipStore.Writer(file)) {
+			values[0] = "extra";
+			values[2] = "1500";
+			writer.add(new Clip(String.join(",", values)));
+		}
+
+		List<Integer> positions = new ArrayList<>();
+		SoftClipStore.scan(file, 1000 + SoftClipStore.BLOCK_SIZE, 1000 + SoftClipStore.BLOCK_SIZE + 9, false, true, c -> positions.add(c.getBpPos()), r -> {});
+		assertEquals(10, positions.size());
+		assertEquals(1000 + SoftClipStore.BLOCK_SIZE, positions.getFirst().intValue());
+
+		List<String> names = new ArrayList<>();
+		SoftClipStore.scan(file, 1500, 1500, false, true, c -> names.add(c.getReadName()), r -> {});
+		assertEquals(List.of("read500:rg2", "extra"), names);
+	}
+
+	@Test
+	public void textFilesCanBeRead() throws Exception {
+		File file = testFolder.newFile("TD.chr10.clip");
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+			for (String line : CLIP_LINES) {
+				writer.write(line + "\n");
+			}
+			writer.write("unmapped,read1:rg1,chr10,89700200,ACGTACGTAC\n");
+		}
+		assertFalse(SoftClipStore.isBinary(file));
+
+		List<String> unmapped = new ArrayList<>();
+		List<String> clips = scan(file, 89700200, 89712341, true, unmapped);
+		assertEquals(List.of(new Clip(CLIP_LINES[0]).toString(), new Clip(CLIP_LINES[1]).toString()), clips);
+		assertEquals(List.of("read1:rg1,chr10,89700200,ACGTACGTAC,true"), unmapped);
+
+		/*
+		 * binary records can't be appended to a text file
+		 */
+		long length = file.length();
+		try {
+			new SoftClipStore.Writer(file).close();
+			fail("Should have thrown an IOException");
+		} catch (IOException e) {}
+		assertEquals(length, file.length());
+	}
+}
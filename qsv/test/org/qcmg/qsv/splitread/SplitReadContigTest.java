@@ -25,6 +25,7 @@ import org.qcmg.qsv.blat.BLAT;
 import org.qcmg.qsv.util.QSVConstants;
 import org.qcmg.qsv.util.QSVUtil;
 
+import au.edu.qimr.tiledaligner.TileMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 
 
@@ -539,7 +540,7 @@ public class SplitReadContigTest {
 		replay(p);
 		blat = createMock(BLAT.class);
 		replay(blat);
-		splitReadContig = new SplitReadContig(new TIntObjectHashMap<int[]>(), p, "chr10", "chr10", 89700299, 89712341, QSVConstants.ORIENTATION_1);
+		splitReadContig = new SplitReadContig(new TileMap(new TIntObjectHashMap<>()), p, "chr10", "chr10", 89700299, 89712341, QSVConstants.ORIENTATION_1);
 		splitReadContig.setConsensus("CAGATAGGCAACAGATCGAGACCTTGTTTCACAAAACGAACAGATCTGCAAAGATCAACCTGTCCTAAGTCATATAATCTCTTTGTGTAAGAGATTATACTTTGTGTAAGAGGTCCACCAGAGGAGTTCAGCAATTTGCTGCTCTTAGGGCAGGGATCAATTCCTTAATATCTTAGGAAGACTAGGTATTGACAGTAATGGTGACAAAGCAATGAAAAGGAAAGGAAGAAGTGATAAGACATGGCAGCAAGCTGAAGTATGATGAGTAAAGAATAGGAATCA");
 		left = new SplitReadAlignment("chr10", QSVUtil.PLUS, 89700210, 89700299, 1, 90);
 		right = new SplitReadAlignment("chr10", QSVUtil.PLUS, 89712341, 89712514, 109, 282);
@@ -562,7 +563,7 @@ public class SplitReadContigTest {
 		blat = createMock(BLAT.class);
 		replay(blat);
 
-		splitReadContig = new SplitReadContig(new TIntObjectHashMap<int[]>(), p, "chrUn_KI270442v1", "chrUn_KI270442v1", 45730, 44617, QSVConstants.ORIENTATION_2);
+		splitReadContig = new SplitReadContig(new TileMap(new TIntObjectHashMap<>()), p, "chrUn_KI270442v1", "chrUn_KI270442v1", 45730, 44617, QSVConstants.ORIENTATION_2);
 		splitReadContig.setConsensus("TCCCCTCCATTCGATGCCATTCAATTCCACCCGCTTCGATTCCACTTGATTCCATTGGATTCAGTTTTTTATGTTCGATTCCATTCGATTTCATTTGATTGCATATGATTCGATTTGATTCAATTTGATTCACTTCCATGTGATTCCATGTGATTCCATGCTATTCCATTACTTTCCATTCCACTCCA");
 		left = new SplitReadAlignment("chrUn_KI270442v1", QSVUtil.PLUS, 45730, 45735, 1, 5);
 		right = new SplitReadAlignment("chr10", QSVUtil.PLUS, 44617, 44627, 1, 10);
@@ -661,7 +662,7 @@ public class SplitReadContigTest {
 	}
 	private void testOrientationCategory(String leftReference, String rightReference,
 			int leftBreakpoint, int rightBreakpoint, String orientation, String consensus) throws Exception {
-		splitReadContig = new SplitReadContig(new TIntObjectHashMap<int[]>(), p, leftReference, rightReference, leftBreakpoint,
+		splitReadContig = new SplitReadContig(new TileMap(new TIntObjectHashMap<>()), p, leftReference, rightReference, leftBreakpoint,
 				rightBreakpoint, orientation);
 		splitReadContig.setConsensus(consensus);
 		splitReadContig.setConfidenceLevel(QSVConstants.LEVEL_HIGH);